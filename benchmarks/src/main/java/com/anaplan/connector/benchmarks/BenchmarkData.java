@@ -0,0 +1,197 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.benchmarks;
+
+import com.anaplan.client.AnaplanAPIException;
+import com.anaplan.client.CellReader;
+import com.anaplan.client.ServerFile;
+import com.anaplan.client.TaskResult;
+import com.anaplan.client.TaskResultDetail;
+import com.anaplan.client.TaskStatus;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Synthetic import data and mocked Anaplan client objects shared by the
+ * benchmarks. The client objects are mocked with plain Mockito, like in the
+ * unit tests, since PowerMock's class loader does not run in JMH forks.
+ */
+final class BenchmarkData {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+    static final String[] HEADER = {"Name", "Parent", "Code", "Amount",
+            "Active"};
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Row of the synthetic data, with a quoted cell every tenth row and a
+     * non-ASCII cell every hundredth row, as found in real imports.
+     */
+    static String[] row(int index) {
+        return new String[] {
+                index % 10 == 0 ? "Item, " + index : "Item " + index,
+                index % 100 == 0 ? "Cat\u00e9gorie " + (index % 37)
+                        : "Parent " + (index % 37),
+                "C" + index,
+                String.valueOf(index * 1.25),
+                String.valueOf(index % 2 == 0)};
+    }
+
+    /**
+     * CSV import data of the provided number of rows, including the header.
+     */
+    static String csv(int rows) {
+        final StringBuilder csv = new StringBuilder(rows * 48);
+        appendRow(csv, HEADER);
+        for (int i = 0; i < rows; i++) {
+            appendRow(csv, row(i));
+        }
+        return csv.toString();
+    }
+
+    private static void appendRow(StringBuilder csv, String[] cells) {
+        for (int i = 0; i < cells.length; i++) {
+            if (i > 0) {
+                csv.append(',');
+            }
+            if (cells[i].indexOf(',') >= 0) {
+                csv.append('"').append(cells[i]).append('"');
+            } else {
+                csv.append(cells[i]);
+            }
+        }
+        csv.append('\n');
+    }
+
+    /**
+     * Server-file of an export, returning a fresh cell reader over the
+     * provided number of rows for every download.
+     */
+    static ServerFile exportServerFile(final int rows)
+            throws AnaplanAPIException {
+        final ServerFile serverFile = Mockito.mock(ServerFile.class);
+        Mockito.when(serverFile.getSeparator()).thenReturn(",");
+        Mockito.when(serverFile.getDelimiter()).thenReturn("\"");
+        Mockito.when(serverFile.getDownloadCellReader()).thenAnswer(
+                new Answer<CellReader>() {
+                    @Override
+                    public CellReader answer(InvocationOnMock invocation) {
+                        return new RowCellReader(rows);
+                    }
+                });
+        return serverFile;
+    }
+
+    /**
+     * Server-file of a failure dump, returning a fresh stream over the
+     * provided bytes for every download.
+     */
+    static ServerFile dumpServerFile(final byte[] dump)
+            throws AnaplanAPIException {
+        final ServerFile serverFile = Mockito.mock(ServerFile.class);
+        Mockito.when(serverFile.getEncoding()).thenReturn("UTF-8");
+        Mockito.when(serverFile.getDownloadStream()).thenAnswer(
+                new Answer<InputStream>() {
+                    @Override
+                    public InputStream answer(InvocationOnMock invocation) {
+                        return new ByteArrayInputStream(dump);
+                    }
+                });
+        return serverFile;
+    }
+
+    /**
+     * Completed task status with the provided number of result details.
+     */
+    static TaskStatus taskStatus(int details) {
+        final List<TaskResultDetail> resultDetails = new ArrayList<>(details);
+        for (int i = 0; i < details; i++) {
+            final TaskResultDetail detail = Mockito.mock(
+                    TaskResultDetail.class);
+            Mockito.when(detail.getLocalizedMessageText()).thenReturn(
+                    "List " + i + ": 1,000 (0/1,000) rows successful, 12 "
+                            + "ignored");
+            resultDetails.add(detail);
+        }
+        final TaskResult taskResult = Mockito.mock(TaskResult.class);
+        Mockito.when(taskResult.getDetails()).thenReturn(resultDetails);
+        final TaskStatus status = Mockito.mock(TaskStatus.class);
+        Mockito.when(status.getTaskState()).thenReturn(
+                TaskStatus.State.COMPLETE);
+        Mockito.when(status.getResult()).thenReturn(taskResult);
+        return status;
+    }
+
+    /**
+     * Cell reader over synthetic rows, standing in for the download of an
+     * export.
+     */
+    private static class RowCellReader implements CellReader {
+
+        private final int rows;
+        private int index = 0;
+
+        RowCellReader(int rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public String[] getHeaderRow() {
+            return HEADER;
+        }
+
+        @Override
+        public String[] readDataRow() {
+            return index < rows ? row(index++) : null;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Upload stream of a server-file, discarding the data and only counting
+     * the bytes written.
+     */
+    static class CountingOutputStream extends OutputStream {
+
+        long count = 0;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
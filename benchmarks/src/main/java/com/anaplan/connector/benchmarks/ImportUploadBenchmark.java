@@ -0,0 +1,91 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.benchmarks;
+
+import com.anaplan.connector.utils.AnaplanUtil;
+import com.anaplan.connector.utils.ChunkedUploader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Upload loop of imports, writing CSV data of a range of sizes to a
+ * discarding upload stream, as done by runImportCsv once the server-file is
+ * fetched. The deprecated string chunking is measured alongside as a
+ * baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ImportUploadBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    @Param({"1", "4"})
+    public int chunksPreparedAhead;
+
+    private String data;
+    private byte[] encodedData;
+    private ChunkedUploader uploader;
+
+    @Setup
+    public void setUp() {
+        data = BenchmarkData.csv(rows);
+        encodedData = data.getBytes(BenchmarkData.UTF_8);
+        uploader = new ChunkedUploader(ChunkedUploader.DEFAULT_CHUNK_SIZE,
+                chunksPreparedAhead);
+    }
+
+    @Benchmark
+    public long uploadString() throws IOException {
+        return uploader.upload(data, new BenchmarkData.CountingOutputStream());
+    }
+
+    @Benchmark
+    public long uploadStream() throws IOException {
+        return uploader.upload(new ByteArrayInputStream(encodedData),
+                new BenchmarkData.CountingOutputStream());
+    }
+
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public void stringChunkReader(Blackhole blackhole) {
+        final Iterator<String> chunks = AnaplanUtil.stringChunkReader(data);
+        while (chunks.hasNext()) {
+            blackhole.consume(chunks.next().getBytes(BenchmarkData.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.benchmarks;
+
+import com.anaplan.client.AnaplanAPIException;
+import com.anaplan.connector.MulesoftAnaplanResponse;
+import com.anaplan.connector.exceptions.AnaplanOperationException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Reading of server responses: writing the rows of an export as CSV, and
+ * reading the failure dump of an import with the default row limit and
+ * without any.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ResponseBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    private MulesoftAnaplanResponse exportResponse;
+    private MulesoftAnaplanResponse dumpResponse;
+
+    @Setup
+    public void setUp() throws AnaplanAPIException {
+        exportResponse = MulesoftAnaplanResponse.exportSuccess("exported",
+                BenchmarkData.exportServerFile(rows), null);
+        dumpResponse = MulesoftAnaplanResponse.importWithFailureDump(
+                "rejected rows", BenchmarkData.dumpServerFile(
+                        BenchmarkData.csv(rows).getBytes(BenchmarkData.UTF_8)));
+    }
+
+    @Benchmark
+    public String writeExportData() throws IOException, AnaplanAPIException,
+            AnaplanOperationException {
+        return exportResponse.writeExportData(null);
+    }
+
+    @Benchmark
+    public String getDumpFileContents() {
+        return dumpResponse.getDumpFileContents();
+    }
+
+    @Benchmark
+    public String getDumpFileContentsUnbounded() {
+        return dumpResponse.getDumpFileContents(Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.benchmarks;
+
+import com.anaplan.client.TaskStatus;
+import com.anaplan.connector.utils.BaseAnaplanOperation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Collection of the server logs of a completed task, for tasks with a range
+ * of result details, e.g. processes running many imports. The details are
+ * Mockito mocks, whose invocation cost is included in the timings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TaskLogsBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int details;
+
+    private TaskStatus status;
+
+    @Setup
+    public void setUp() {
+        status = BenchmarkData.taskStatus(details);
+    }
+
+    @Benchmark
+    public String collectTaskLogs() {
+        return BaseAnaplanOperation.collectTaskLogs(status);
+    }
+}
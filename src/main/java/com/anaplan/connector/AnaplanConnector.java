@@ -17,25 +17,50 @@
 package com.anaplan.connector;
 
 
+import com.anaplan.client.Service;
+import com.anaplan.connector.connection.AnaplanConnection;
 import com.anaplan.connector.connection.BaseConnectionStrategy;
 import com.anaplan.connector.exceptions.AnaplanConnectionException;
 import com.anaplan.connector.exceptions.AnaplanOperationException;
+import com.anaplan.connector.utils.ActionResult;
+import com.anaplan.connector.utils.AnaplanActionChain;
+import com.anaplan.connector.utils.AnaplanBroadcastImport;
 import com.anaplan.connector.utils.AnaplanDeleteOperation;
 import com.anaplan.connector.utils.AnaplanExportOperation;
 import com.anaplan.connector.utils.AnaplanImportOperation;
 import com.anaplan.connector.utils.AnaplanProcessOperation;
+import com.anaplan.connector.utils.ChunkedDownloader;
+import com.anaplan.connector.utils.ChunkedUploader;
+import com.anaplan.connector.utils.Compression;
+import com.anaplan.connector.utils.ConnectorMetrics;
 import com.anaplan.connector.utils.Delimiters;
+import com.anaplan.connector.utils.ImportResult;
+import com.anaplan.connector.utils.OperationStatus;
+import com.anaplan.connector.utils.RetryPolicy;
+import com.anaplan.connector.utils.TargetImportResult;
+import org.apache.commons.io.IOUtils;
 import org.mule.api.annotations.Config;
 import org.mule.api.annotations.Connector;
 import org.mule.api.annotations.Processor;
 import org.mule.api.annotations.display.FriendlyName;
 import org.mule.api.annotations.param.Default;
+import org.mule.api.annotations.param.Optional;
 import org.mule.api.annotations.param.Payload;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
 
 /**
  * Anaplan Connector that supports Anaplan actions such as Import, Export,
- * and Delete.
+ * and Delete. Every processor call runs its own operation object on its own
+ * pooled connection, so flows may call the connector concurrently.
  *
  * @author MuleSoft, Inc.
  * @author Spondon Saha.
@@ -44,11 +69,6 @@ import org.mule.api.annotations.param.Payload;
            minMuleVersion="3.6")
 public class AnaplanConnector {
 
-	private static AnaplanExportOperation exporter;
-	private static AnaplanImportOperation importer;
-	private static AnaplanDeleteOperation deleter;
-	private static AnaplanProcessOperation processRunner;
-
 	@Config
 	private BaseConnectionStrategy connectionStrategy;
 
@@ -80,6 +100,14 @@ public class AnaplanConnector {
      * @param importId Action ID of the Import operation.
      * @param columnSeparator Column separator, defaults to comma.
      * @param delimiter Cell escape values, defaults to double-quotes.
+     * @param chunkSizeMb Size of each uploaded chunk in MB, from 1 to 50.
+     * @param chunksPreparedAhead Maximum number of chunks encoded ahead of
+     *      the chunk being uploaded. Chunks are uploaded one at a time.
+     * @param uploadAttempts Maximum number of attempts at uploading the data,
+     *      every retry uploading all of it again after a network or server
+     *      error.
+     * @param uploadRetryBackoffMillis Milliseconds to back off before the first
+     *      retry of the upload, doubling with every further retry.
      * @return Status message from running the Import operation.
      * @throws AnaplanConnectionException When an error occurs during
      * 									  authentication
@@ -95,24 +123,375 @@ public class AnaplanConnector {
 			@FriendlyName("Column separator")
 			@Default(Delimiters.COMMA) String columnSeparator,
 			@FriendlyName("Delimiter")
-			@Default(Delimiters.ESCAPE_CHARACTER) String delimiter)
+			@Default(Delimiters.ESCAPE_CHARACTER) String delimiter,
+			@FriendlyName("Chunk size (MB)")
+			@Optional @Default("1") int chunkSizeMb,
+			@FriendlyName("Chunks prepared ahead")
+			@Optional @Default("4") int chunksPreparedAhead,
+			@FriendlyName("Upload attempts")
+			@Optional @Default("3") int uploadAttempts,
+			@FriendlyName("Upload retry backoff (ms)")
+			@Optional @Default("1000") int uploadRetryBackoffMillis)
 		    		throws AnaplanConnectionException,
 		    			   AnaplanOperationException {
 		// validate API connectionStrategy
 		connectionStrategy.validateConnection();
+		final ChunkedUploader uploader = newUploader(chunkSizeMb,
+				chunksPreparedAhead, uploadAttempts,
+				uploadRetryBackoffMillis);
+
+		// start the import on a pooled connection
+		final AnaplanConnection apiConn = connectionStrategy.getApiConnection();
+		final ConnectorMetrics.Operation operation =
+				ConnectorMetrics.getShared().startOperation("import-to-model");
+		final Service service = borrowConnection(apiConn, operation);
+		try {
+			final AnaplanImportOperation importer = new AnaplanImportOperation(
+					apiConn, service, uploader);
+			final String response = importer.runImport(data, workspaceId,
+					modelId, importId, columnSeparator, delimiter);
+			operation.complete(importer.getResponseStatus());
+			return response;
+		} finally {
+			operation.close();
+			apiConn.releaseConnection(service);
+		}
+	}
+
+	/**
+	 * Streaming variant of the Import operation. Reads CSV data from the
+	 * payload stream and pipes it straight into the Anaplan server-file, so
+	 * memory usage stays flat regardless of the size of the payload.
+	 *
+	 * {@sample.xml ../../../doc/anaplan-connector.xml.sample anaplan:import-stream-to-model}
+	 *
+	 * @param data CSV data stream that is to be imported into Anaplan.
+	 * @param workspaceId Anaplan workspace ID.
+	 * @param modelId Anaplan model ID.
+	 * @param importId Action ID of the Import operation.
+	 * @param columnSeparator Column separator, defaults to comma.
+	 * @param delimiter Cell escape values, defaults to double-quotes.
+	 * @param chunkSizeMb Size of each uploaded chunk in MB, from 1 to 50.
+	 * @param chunksPreparedAhead Maximum number of chunks read ahead of the
+	 * 		chunk being uploaded. Chunks are uploaded one at a time.
+	 * @param uploadAttempts Maximum number of attempts at uploading the data,
+	 * 		every retry uploading all of it again after a network or server
+	 * 		error. With more than one attempt, the payload is spooled to a
+	 * 		temporary file as it is uploaded, so that it can be read again.
+	 * @param uploadRetryBackoffMillis Milliseconds to back off before the first
+	 *      retry of the upload, doubling with every further retry.
+	 * @param payloadCompression Compression of the payload, which is
+	 * 		decompressed on the fly while uploading.
+	 * @return Status message from running the Import operation.
+	 * @throws AnaplanConnectionException When an error occurs during
+	 * 									  authentication
+	 * @throws AnaplanOperationException When the Import operation encounters an
+	 * 									 error.
+	 */
+	@Processor(friendlyName = "Import (streaming)")
+	public String importStreamToModel(
+			@Payload InputStream data,
+			@FriendlyName("Workspace name or ID") String workspaceId,
+			@FriendlyName("Model name or ID") String modelId,
+			@FriendlyName("Import name or ID") String importId,
+			@FriendlyName("Column separator")
+			@Default(Delimiters.COMMA) String columnSeparator,
+			@FriendlyName("Delimiter")
+			@Default(Delimiters.ESCAPE_CHARACTER) String delimiter,
+			@FriendlyName("Chunk size (MB)")
+			@Optional @Default("1") int chunkSizeMb,
+			@FriendlyName("Chunks prepared ahead")
+			@Optional @Default("4") int chunksPreparedAhead,
+			@FriendlyName("Upload attempts")
+			@Optional @Default("3") int uploadAttempts,
+			@FriendlyName("Upload retry backoff (ms)")
+			@Optional @Default("1000") int uploadRetryBackoffMillis,
+			@FriendlyName("Payload compression")
+			@Optional @Default("NONE") Compression payloadCompression)
+					throws AnaplanConnectionException,
+						   AnaplanOperationException {
+		// validate API connectionStrategy, closing the payload on failure
+		final ImportPayload payload = openImportPayload(data,
+				payloadCompression, chunkSizeMb, chunksPreparedAhead,
+				uploadAttempts, uploadRetryBackoffMillis);
+
+		// start the streaming import on a pooled connection
+		final AnaplanConnection apiConn = connectionStrategy.getApiConnection();
+		final ConnectorMetrics.Operation operation =
+				ConnectorMetrics.getShared().startOperation("import-stream-to-model");
+		final Service service = borrowConnection(apiConn, operation,
+				payload.stream);
+		try {
+			final AnaplanImportOperation importer = new AnaplanImportOperation(
+					apiConn, service, payload.uploader);
+			final String response = importer.runImport(payload.stream,
+					workspaceId, modelId, importId, columnSeparator, delimiter);
+			operation.complete(importer.getResponseStatus());
+			return response;
+		} finally {
+			operation.close();
+			apiConn.releaseConnection(service);
+		}
+	}
+
+	/**
+	 * Variant of the streaming Import operation returning a structured result
+	 * instead of a status message, so that flows can read the numbers of rows
+	 * imported and ignored, the warnings and the duration of the import
+	 * directly. Rows rejected by the import are counted from the failure dump,
+	 * which is only downloaded once asked for.
+	 *
+	 * {@sample.xml ../../../doc/anaplan-connector.xml.sample anaplan:import-to-model-for-result}
+	 *
+	 * @param data CSV data stream that is to be imported into Anaplan.
+	 * @param workspaceId Anaplan workspace ID.
+	 * @param modelId Anaplan model ID.
+	 * @param importId Action ID of the Import operation.
+	 * @param columnSeparator Column separator, defaults to comma.
+	 * @param delimiter Cell escape values, defaults to double-quotes.
+	 * @param chunkSizeMb Size of each uploaded chunk in MB, from 1 to 50.
+	 * @param chunksPreparedAhead Maximum number of chunks read ahead of the
+	 * 		chunk being uploaded. Chunks are uploaded one at a time.
+	 * @param uploadAttempts Maximum number of attempts at uploading the data,
+	 * 		every retry uploading all of it again after a network or server
+	 * 		error. With more than one attempt, the payload is spooled to a
+	 * 		temporary file as it is uploaded, so that it can be read again.
+	 * @param uploadRetryBackoffMillis Milliseconds to back off before the first
+	 *      retry of the upload, doubling with every further retry.
+	 * @param payloadCompression Compression of the payload, which is
+	 * 		decompressed on the fly while uploading.
+	 * @return Result of the Import operation.
+	 * @throws AnaplanConnectionException When an error occurs during
+	 * 									  authentication
+	 * @throws AnaplanOperationException When the Import operation encounters an
+	 * 									 error.
+	 */
+	@Processor(friendlyName = "Import (result)")
+	public ImportResult importToModelForResult(
+			@Payload InputStream data,
+			@FriendlyName("Workspace name or ID") String workspaceId,
+			@FriendlyName("Model name or ID") String modelId,
+			@FriendlyName("Import name or ID") String importId,
+			@FriendlyName("Column separator")
+			@Default(Delimiters.COMMA) String columnSeparator,
+			@FriendlyName("Delimiter")
+			@Default(Delimiters.ESCAPE_CHARACTER) String delimiter,
+			@FriendlyName("Chunk size (MB)")
+			@Optional @Default("1") int chunkSizeMb,
+			@FriendlyName("Chunks prepared ahead")
+			@Optional @Default("4") int chunksPreparedAhead,
+			@FriendlyName("Upload attempts")
+			@Optional @Default("3") int uploadAttempts,
+			@FriendlyName("Upload retry backoff (ms)")
+			@Optional @Default("1000") int uploadRetryBackoffMillis,
+			@FriendlyName("Payload compression")
+			@Optional @Default("NONE") Compression payloadCompression)
+					throws AnaplanConnectionException,
+						   AnaplanOperationException {
+		// validate API connectionStrategy, closing the payload on failure
+		final ImportPayload payload = openImportPayload(data,
+				payloadCompression, chunkSizeMb, chunksPreparedAhead,
+				uploadAttempts, uploadRetryBackoffMillis);
+
+		// start the import on a pooled connection
+		final AnaplanConnection apiConn = connectionStrategy.getApiConnection();
+		final ConnectorMetrics.Operation operation =
+				ConnectorMetrics.getShared().startOperation("import-to-model-for-result");
+		final Service service = borrowConnection(apiConn, operation,
+				payload.stream);
+		try {
+			final AnaplanImportOperation importer = new AnaplanImportOperation(
+					apiConn, service, payload.uploader);
+			final ImportResult result = importer.runImportForResult(
+					payload.stream, workspaceId, modelId, importId,
+					columnSeparator, delimiter);
+			operation.complete(result.getStatus());
+			return result;
+		} finally {
+			operation.close();
+			apiConn.releaseConnection(service);
+		}
+	}
+
+	/**
+	 * Broadcast variant of the Import operation, importing the same payload
+	 * into many models, possibly of different workspaces. The payload is read
+	 * once and held in memory, and the imports run concurrently over pooled
+	 * connections, so authentication happens once for all models. An import
+	 * failing in one model does not stop the imports into the others.
+	 *
+	 * {@sample.xml ../../../doc/anaplan-connector.xml.sample anaplan:import-to-models}
+	 *
+	 * @param data CSV data stream that is to be imported into Anaplan.
+	 * @param targets Models to import into, each written as
+	 * 		"workspace/model" with names or IDs, e.g. "Finance/Budget".
+	 * @param importId Name or ID of the Import operation in every model.
+	 * @param columnSeparator Column separator, defaults to comma.
+	 * @param delimiter Cell escape values, defaults to double-quotes.
+	 * @param concurrentImports Maximum number of models imported into
+	 * 		concurrently, which is further limited by the connection pool size.
+	 * @param chunkSizeMb Size of each uploaded chunk in MB, from 1 to 50.
+	 * @param chunksPreparedAhead Maximum number of chunks read ahead of the
+	 * 		chunk being uploaded by each import. Chunks are uploaded one at a
+	 * 		time.
+	 * @param uploadAttempts Maximum number of attempts at uploading the data,
+	 * 		every retry uploading all of it again after a network or server
+	 * 		error.
+	 * @param uploadRetryBackoffMillis Milliseconds to back off before the first
+	 *      retry of the upload, doubling with every further retry.
+	 * @param payloadCompression Compression of the payload, which is
+	 * 		decompressed once before importing.
+	 * @return Results of the imports, in the order the models were provided
+	 * 		in.
+	 * @throws AnaplanConnectionException When an error occurs during
+	 * 									  authentication
+	 * @throws AnaplanOperationException When the payload cannot be read or
+	 * 									 the models are invalid.
+	 */
+	@Processor(friendlyName = "Import (many models)")
+	public List<TargetImportResult> importToModels(
+			@Payload InputStream data,
+			@FriendlyName("Models") List<String> targets,
+			@FriendlyName("Import name or ID") String importId,
+			@FriendlyName("Column separator")
+			@Default(Delimiters.COMMA) String columnSeparator,
+			@FriendlyName("Delimiter")
+			@Default(Delimiters.ESCAPE_CHARACTER) String delimiter,
+			@FriendlyName("Concurrent imports")
+			@Optional @Default("4") int concurrentImports,
+			@FriendlyName("Chunk size (MB)")
+			@Optional @Default("1") int chunkSizeMb,
+			@FriendlyName("Chunks prepared ahead")
+			@Optional @Default("4") int chunksPreparedAhead,
+			@FriendlyName("Upload attempts")
+			@Optional @Default("3") int uploadAttempts,
+			@FriendlyName("Upload retry backoff (ms)")
+			@Optional @Default("1000") int uploadRetryBackoffMillis,
+			@FriendlyName("Payload compression")
+			@Optional @Default("NONE") Compression payloadCompression)
+					throws AnaplanConnectionException,
+						   AnaplanOperationException {
+		// validate the API connectionStrategy once for all models
+		final ImportPayload payload = openImportPayload(data,
+				payloadCompression, chunkSizeMb, chunksPreparedAhead,
+				uploadAttempts, uploadRetryBackoffMillis);
+
+		// read the payload once, every import uploads it from memory
+		final byte[] bytes;
+		try {
+			bytes = IOUtils.toByteArray(payload.stream);
+		} catch (IOException e) {
+			throw new AnaplanOperationException("Could not read "
+					+ payloadCompression + " compressed payload:", e);
+		} finally {
+			IOUtils.closeQuietly(payload.stream);
+		}
+
+		final AnaplanBroadcastImport broadcast = new AnaplanBroadcastImport(
+				connectionStrategy.getApiConnection(), payload.uploader,
+				concurrentImports);
+		final ConnectorMetrics.Operation operation =
+				ConnectorMetrics.getShared().startOperation("import-to-models");
+		try {
+			final List<TargetImportResult> results = broadcast.run(bytes,
+					targets, importId, columnSeparator, delimiter);
+			boolean allSuccessful = true;
+			for (TargetImportResult result : results) {
+				allSuccessful &= result.getStatus() == OperationStatus.SUCCESS;
+			}
+			operation.complete(allSuccessful ? OperationStatus.SUCCESS
+					: OperationStatus.APPLICATION_ERROR);
+			return results;
+		} finally {
+			operation.close();
+		}
+	}
+
+	/**
+	 * Record variant of the Import operation. Serializes a collection of
+	 * records straight into the upload, a batch of records at a time, so that
+	 * flows need not render them as CSV first.
+	 *
+	 * {@sample.xml ../../../doc/anaplan-connector.xml.sample anaplan:import-records-to-model}
+	 *
+	 * @param records Records to import, each mapping keys to cell values.
+	 * @param workspaceId Anaplan workspace ID.
+	 * @param modelId Anaplan model ID.
+	 * @param importId Action ID of the Import operation.
+	 * @param columnMapping Anaplan column names mapped to the record keys
+	 * 		holding their values. When not set, the keys of the first record
+	 * 		are used as the column names.
+	 * @param batchSize Number of records serialized at a time.
+	 * @param columnSeparator Column separator, defaults to comma.
+	 * @param delimiter Cell escape values, defaults to double-quotes.
+	 * @param chunkSizeMb Size of each uploaded chunk in MB, from 1 to 50.
+	 * @param chunksPreparedAhead Maximum number of chunks read ahead of the
+	 * 		chunk being uploaded. Chunks are uploaded one at a time.
+	 * @param uploadAttempts Maximum number of attempts at uploading the data,
+	 * 		every retry uploading all of it again after a network or server
+	 * 		error. With more than one attempt, the serialized records are
+	 * 		spooled to a temporary file as they are uploaded, so that they can
+	 * 		be read again.
+	 * @param uploadRetryBackoffMillis Milliseconds to back off before the first
+	 *      retry of the upload, doubling with every further retry.
+	 * @return Status message from running the Import operation.
+	 * @throws AnaplanConnectionException When an error occurs during
+	 * 									  authentication
+	 * @throws AnaplanOperationException When the Import operation encounters an
+	 * 									 error.
+	 */
+	@Processor(friendlyName = "Import (records)")
+	public String importRecordsToModel(
+			@Payload Iterable<Map<String, Object>> records,
+			@FriendlyName("Workspace name or ID") String workspaceId,
+			@FriendlyName("Model name or ID") String modelId,
+			@FriendlyName("Import name or ID") String importId,
+			@FriendlyName("Column mapping")
+			@Optional Map<String, String> columnMapping,
+			@FriendlyName("Batch size (records)")
+			@Optional @Default("1000") int batchSize,
+			@FriendlyName("Column separator")
+			@Default(Delimiters.COMMA) String columnSeparator,
+			@FriendlyName("Delimiter")
+			@Default(Delimiters.ESCAPE_CHARACTER) String delimiter,
+			@FriendlyName("Chunk size (MB)")
+			@Optional @Default("1") int chunkSizeMb,
+			@FriendlyName("Chunks prepared ahead")
+			@Optional @Default("4") int chunksPreparedAhead,
+			@FriendlyName("Upload attempts")
+			@Optional @Default("3") int uploadAttempts,
+			@FriendlyName("Upload retry backoff (ms)")
+			@Optional @Default("1000") int uploadRetryBackoffMillis)
+					throws AnaplanConnectionException,
+						   AnaplanOperationException {
+		// validate API connectionStrategy
+		connectionStrategy.validateConnection();
+		final ChunkedUploader uploader = newUploader(chunkSizeMb,
+				chunksPreparedAhead, uploadAttempts, uploadRetryBackoffMillis);
 
-		// start the import
-		importer = new AnaplanImportOperation(
-				connectionStrategy.getApiConnection());
-		return importer.runImport(data, workspaceId, modelId, importId,
-				columnSeparator, delimiter);
+		// start the record import on a pooled connection
+		final AnaplanConnection apiConn = connectionStrategy.getApiConnection();
+		final ConnectorMetrics.Operation operation =
+				ConnectorMetrics.getShared().startOperation("import-records-to-model");
+		final Service service = borrowConnection(apiConn, operation);
+		try {
+			final AnaplanImportOperation importer = new AnaplanImportOperation(
+					apiConn, service, uploader);
+			final String response = importer.runImportRecords(
+					records.iterator(), columnMapping, batchSize, workspaceId,
+					modelId, importId, columnSeparator, delimiter);
+			operation.complete(importer.getResponseStatus());
+			return response;
+		} finally {
+			operation.close();
+			apiConn.releaseConnection(service);
+		}
 	}
 
 	/**
 	 * Run an export of an Anaplan Model specified by workspace-ID, model-ID and
-	 * the export-ID. At the end of each export, the connectionStrategy is dropped,
-	 * hence a check needs to be made to verify if the current connectionStrategy
-	 * exists. If not, re-establish it by calling .openConnection().
+	 * the export-ID. The authenticated session is kept across operations, and
+	 * is only re-established by calling .openConnection() once it expires.
 	 *
 	 * {@sample.xml ../../../doc/anaplan-connector.xml.sample anaplan:export-from-model}
 	 *
@@ -134,10 +513,221 @@ public class AnaplanConnector {
 		// validate API connectionStrategy
 		connectionStrategy.validateConnection();
 
-		// start the export
-		exporter = new AnaplanExportOperation(
-				connectionStrategy.getApiConnection());
-		return exporter.runExport(workspaceId, modelId, exportId);
+		// start the export on a pooled connection
+		final AnaplanConnection apiConn = connectionStrategy.getApiConnection();
+		final ConnectorMetrics.Operation operation =
+				ConnectorMetrics.getShared().startOperation("export-from-model");
+		final Service service = borrowConnection(apiConn, operation);
+		try {
+			final AnaplanExportOperation exporter = new AnaplanExportOperation(
+					apiConn, service, new ChunkedDownloader());
+			final String exportData = exporter.runExport(workspaceId, modelId,
+					exportId);
+			operation.complete(exporter.getResponseStatus());
+			return exportData;
+		} finally {
+			operation.close();
+			apiConn.releaseConnection(service);
+		}
+	}
+
+	/**
+	 * Streaming variant of the Export operation. Returns the export data as a
+	 * stream that is downloaded lazily from Anaplan as it is consumed, instead
+	 * of a CSV string held entirely in memory. The pooled connection of the
+	 * export stays leased until the stream is closed, so flows must close it
+	 * even when they stop reading early, else the connection is never handed
+	 * back and the pool eventually runs dry.
+	 *
+	 * {@sample.xml ../../../doc/anaplan-connector.xml.sample anaplan:export-stream-from-model}
+	 *
+	 * @param workspaceId Anaplan workspace ID.
+	 * @param modelId Anaplan model ID.
+	 * @param exportId Action ID of the export operation.
+	 * @param prefetchChunks Size of the read-ahead queue, i.e. the number of
+	 * 		chunks downloaded ahead of the consumer. Chunks are downloaded one
+	 * 		after the other over a single stream.
+	 * @param downloadAttempts Maximum number of attempts at downloading each
+	 * 		chunk, resuming at the failed chunk. Server-files can only be
+	 * 		downloaded from their start, so every retry downloads the data
+	 * 		before the failed chunk again and discards it.
+	 * @param downloadRetryBackoffMillis Milliseconds to back off before the
+	 * 		first retry of a chunk, doubling with every further retry.
+	 * @param outputCompression Compression applied on the fly to the returned
+	 * 		stream.
+	 * @return Stream of the exported data.
+	 * @throws AnaplanConnectionException When an error occurs at authentication.
+	 * @throws AnaplanOperationException When the Export operation encounters an
+	 * 									 error.
+	 */
+	@Processor(friendlyName="Export (streaming)")
+	public InputStream exportStreamFromModel(
+			@FriendlyName("Workspace name or ID") String workspaceId,
+			@FriendlyName("Model name or ID") String modelId,
+			@FriendlyName("Export name or ID") String exportId,
+			@FriendlyName("Prefetched chunks")
+			@Optional @Default("4") int prefetchChunks,
+			@FriendlyName("Download attempts")
+			@Optional @Default("3") int downloadAttempts,
+			@FriendlyName("Download retry backoff (ms)")
+			@Optional @Default("1000") int downloadRetryBackoffMillis,
+			@FriendlyName("Output compression")
+			@Optional @Default("NONE") Compression outputCompression)
+					throws AnaplanConnectionException,
+						   AnaplanOperationException {
+		// validate API connectionStrategy
+		connectionStrategy.validateConnection();
+		final ChunkedDownloader downloader = newDownloader(prefetchChunks,
+				downloadAttempts, downloadRetryBackoffMillis);
+
+		// start the streaming export on a pooled connection, which is only
+		// released once the consumer closes the returned stream
+		final AnaplanConnection apiConn = connectionStrategy.getApiConnection();
+		final ConnectorMetrics.Operation operation =
+				ConnectorMetrics.getShared().startOperation("export-stream-from-model");
+		final Service service = borrowConnection(apiConn, operation);
+		InputStream exportStream = null;
+		try {
+			final AnaplanExportOperation exporter = new AnaplanExportOperation(
+					apiConn, service, downloader);
+			exportStream = new ReleasingInputStream(
+					outputCompression.compress(exporter.runExportStream(
+							workspaceId, modelId, exportId)),
+					apiConn, service);
+			// the export completed, its data is downloaded as it is read
+			operation.complete(exporter.getResponseStatus());
+			return exportStream;
+		} finally {
+			operation.close();
+			if (exportStream == null) {
+				apiConn.releaseConnection(service);
+			}
+		}
+	}
+
+	/**
+	 * File variant of the Export operation. Downloads the export data into a
+	 * local file, resuming at the failed chunk when downloading a chunk
+	 * fails. With a checkpoint file, the completed chunks are recorded in it,
+	 * so that running the operation again after the download failed for
+	 * good resumes the download of the earlier run instead of exporting
+	 * again. The checkpoint is discarded, and the export run again, unless
+	 * it was recorded for the same export, server-file and file path.
+	 * Anaplan server-files can only be downloaded from their start, so both
+	 * retrying a chunk and resuming from a checkpoint download the server-file
+	 * again from its first byte, discarding the bytes already written: this
+	 * saves writing the file again, but not the transfer of the data before
+	 * the failed chunk. A resume compares these bytes with the file, and
+	 * downloads the whole server-file again if they differ, as the export was
+	 * run again since.
+	 *
+	 * {@sample.xml ../../../doc/anaplan-connector.xml.sample anaplan:export-to-file}
+	 *
+	 * @param workspaceId Anaplan workspace ID.
+	 * @param modelId Anaplan model ID.
+	 * @param exportId Action ID of the export operation.
+	 * @param filePath Path of the file to write the export data to.
+	 * @param checkpointPath Path of the file recording the completed chunks,
+	 * 		which is deleted once the download completed. Resuming from it
+	 * 		downloads the server-file again from its first byte.
+	 * @param downloadAttempts Maximum number of attempts at downloading each
+	 * 		chunk, resuming at the failed chunk by downloading the server-file
+	 * 		again from its first byte.
+	 * @param downloadRetryBackoffMillis Milliseconds to back off before the
+	 * 		first retry of a chunk, doubling with every further retry.
+	 * @return Path of the file holding the export data.
+	 * @throws AnaplanConnectionException When an error occurs at authentication.
+	 * @throws AnaplanOperationException When the Export operation encounters an
+	 * 									 error.
+	 */
+	@Processor(friendlyName="Export (to file)")
+	public String exportToFile(
+			@FriendlyName("Workspace name or ID") String workspaceId,
+			@FriendlyName("Model name or ID") String modelId,
+			@FriendlyName("Export name or ID") String exportId,
+			@FriendlyName("File path") String filePath,
+			@FriendlyName("Checkpoint file path")
+			@Optional String checkpointPath,
+			@FriendlyName("Download attempts")
+			@Optional @Default("3") int downloadAttempts,
+			@FriendlyName("Download retry backoff (ms)")
+			@Optional @Default("1000") int downloadRetryBackoffMillis)
+					throws AnaplanConnectionException,
+						   AnaplanOperationException {
+		// validate API connectionStrategy
+		connectionStrategy.validateConnection();
+		final ChunkedDownloader downloader = newDownloader(
+				ChunkedDownloader.DEFAULT_PREFETCH_CHUNKS, downloadAttempts,
+				downloadRetryBackoffMillis);
+
+		// start the export on a pooled connection
+		final AnaplanConnection apiConn = connectionStrategy.getApiConnection();
+		final ConnectorMetrics.Operation operation =
+				ConnectorMetrics.getShared().startOperation("export-to-file");
+		final Service service = borrowConnection(apiConn, operation);
+		try {
+			final AnaplanExportOperation exporter = new AnaplanExportOperation(
+					apiConn, service, downloader);
+			final File target = new File(filePath);
+			exporter.runExportToFile(workspaceId, modelId, exportId, target,
+					checkpointPath == null ? null : new File(checkpointPath));
+			operation.complete(exporter.getResponseStatus());
+			return target.getPath();
+		} finally {
+			operation.close();
+			apiConn.releaseConnection(service);
+		}
+	}
+
+	/**
+	 * Typed variant of the Export operation. Returns the exported rows as
+	 * records keyed by column name, with NUMBER and BOOLEAN columns converted
+	 * to numbers and booleans, so that flows need not parse CSV text. Rows are
+	 * downloaded lazily as the records are iterated. The pooled connection of
+	 * the export stays leased until all records have been read or the
+	 * iterator is closed, so flows that stop iterating early must close it.
+	 *
+	 * {@sample.xml ../../../doc/anaplan-connector.xml.sample anaplan:export-records-from-model}
+	 *
+	 * @param workspaceId Anaplan workspace ID.
+	 * @param modelId Anaplan model ID.
+	 * @param exportId Action ID of the export operation.
+	 * @return Iterator over the exported records.
+	 * @throws AnaplanConnectionException When an error occurs at authentication.
+	 * @throws AnaplanOperationException When the Export operation encounters an
+	 * 									 error.
+	 */
+	@Processor(friendlyName="Export (records)")
+	public Iterator<Map<String, Object>> exportRecordsFromModel(
+			@FriendlyName("Workspace name or ID") String workspaceId,
+			@FriendlyName("Model name or ID") String modelId,
+			@FriendlyName("Export name or ID") String exportId)
+					throws AnaplanConnectionException,
+						   AnaplanOperationException {
+		// validate API connectionStrategy
+		connectionStrategy.validateConnection();
+
+		// start the export on a pooled connection, which is only released
+		// once all records have been read or the iterator is closed
+		final AnaplanConnection apiConn = connectionStrategy.getApiConnection();
+		final ConnectorMetrics.Operation operation =
+				ConnectorMetrics.getShared().startOperation("export-records-from-model");
+		final Service service = borrowConnection(apiConn, operation);
+		Iterator<Map<String, Object>> records = null;
+		try {
+			final AnaplanExportOperation exporter = new AnaplanExportOperation(
+					apiConn, service, new ChunkedDownloader());
+			records = exporter.runExportRecords(workspaceId, modelId, exportId,
+					new ConnectionRelease(apiConn, service));
+			// the export completed, its rows are downloaded as they are read
+			operation.complete(exporter.getResponseStatus());
+			return records;
+		} finally {
+			operation.close();
+			if (records == null) {
+				apiConn.releaseConnection(service);
+			}
+		}
 	}
 
 	/**
@@ -163,10 +753,22 @@ public class AnaplanConnector {
 		// validate the API connectionStrategy
 		connectionStrategy.validateConnection();
 
-		// start the delete process
-		deleter = new AnaplanDeleteOperation(
-				connectionStrategy.getApiConnection());
-		return deleter.runDeleteAction(workspaceId, modelId, deleteActionId);
+		// start the delete process on a pooled connection
+		final AnaplanConnection apiConn = connectionStrategy.getApiConnection();
+		final ConnectorMetrics.Operation operation =
+				ConnectorMetrics.getShared().startOperation("delete-from-model");
+		final Service service = borrowConnection(apiConn, operation);
+		try {
+			final AnaplanDeleteOperation deleter = new AnaplanDeleteOperation(
+					apiConn, service);
+			final String response = deleter.runDeleteAction(workspaceId,
+					modelId, deleteActionId);
+			operation.complete(deleter.getResponseStatus());
+			return response;
+		} finally {
+			operation.close();
+			apiConn.releaseConnection(service);
+		}
 	}
 
 	/**
@@ -193,10 +795,270 @@ public class AnaplanConnector {
 		// validate the API connectionStrategy
 		connectionStrategy.validateConnection();
 
-		// run the process
-		processRunner = new AnaplanProcessOperation(
-				connectionStrategy.getApiConnection());
-		return processRunner.runProcess(workspaceId, modelId, processId);
+		// run the process on a pooled connection
+		final AnaplanConnection apiConn = connectionStrategy.getApiConnection();
+		final ConnectorMetrics.Operation operation =
+				ConnectorMetrics.getShared().startOperation("run-process");
+		final Service service = borrowConnection(apiConn, operation);
+		try {
+			final AnaplanProcessOperation processRunner =
+					new AnaplanProcessOperation(apiConn, service);
+			final String response = processRunner.runProcess(workspaceId,
+					modelId, processId);
+			operation.complete(processRunner.getResponseStatus());
+			return response;
+		} finally {
+			operation.close();
+			apiConn.releaseConnection(service);
+		}
+	}
+
+	/**
+	 * Runs a chain of import, export, delete and process actions of a model,
+	 * running independent actions concurrently over pooled connections.
+	 * Actions only run as server tasks: imports use the data last uploaded to
+	 * their source files and exports leave their data on the server. When an
+	 * action fails, the actions depending on it are skipped while all others
+	 * still run.
+	 *
+	 * {@sample.xml ../../../doc/anaplan-connector.xml.sample anaplan:run-actions}
+	 *
+	 * @param workspaceId Anaplan workspace ID.
+	 * @param modelId Anaplan model ID.
+	 * @param actions Actions to run, each written as "type:ID" with a type
+	 * 		of import, export, delete or process, e.g. "import:Load".
+	 * @param dependencies Dependencies between the actions, each written as
+	 * 		"action -> dependent action", e.g. "import:Load -> process:Sync".
+	 * @param concurrentActions Maximum number of actions run concurrently,
+	 * 		which is further limited by the connection pool size.
+	 * @return Results of the actions, in the order they were provided in.
+	 * @throws AnaplanConnectionException When an error occurs at authentication.
+	 * @throws AnaplanOperationException When the actions or dependencies are
+	 * 									 invalid.
+	 */
+	@Processor(friendlyName="Run actions")
+	public List<ActionResult> runActions(
+			@FriendlyName("Workspace name or ID") String workspaceId,
+			@FriendlyName("Model name or ID") String modelId,
+			@FriendlyName("Actions") List<String> actions,
+			@FriendlyName("Dependencies")
+			@Optional List<String> dependencies,
+			@FriendlyName("Concurrent actions")
+			@Optional @Default("4") int concurrentActions)
+					throws AnaplanConnectionException,
+						   AnaplanOperationException {
+		// validate the API connectionStrategy once for the whole chain
+		connectionStrategy.validateConnection();
+
+		final AnaplanActionChain chain = new AnaplanActionChain(
+				connectionStrategy.getApiConnection(), concurrentActions);
+		final ConnectorMetrics.Operation operation =
+				ConnectorMetrics.getShared().startOperation("run-actions");
+		try {
+			final List<ActionResult> results = chain.run(workspaceId, modelId,
+					actions, dependencies);
+			boolean allSuccessful = true;
+			for (ActionResult result : results) {
+				allSuccessful &= result.getStatus() == OperationStatus.SUCCESS;
+			}
+			operation.complete(allSuccessful ? OperationStatus.SUCCESS
+					: OperationStatus.APPLICATION_ERROR);
+			return results;
+		} finally {
+			operation.close();
+		}
+	}
+
+	/**
+	 * Drops all cached workspace, model and action metadata, so that it is
+	 * fetched again by the next operations, e.g. after actions were changed
+	 * in a model.
+	 *
+	 * {@sample.xml ../../../doc/anaplan-connector.xml.sample anaplan:clear-metadata-cache}
+	 */
+	@Processor(friendlyName="Clear metadata cache")
+	public void clearMetadataCache() {
+		connectionStrategy.getApiConnection().invalidateMetadata();
+	}
+
+	/**
+	 * Validates the API connectionStrategy and the upload settings of an
+	 * import, then opens its payload through the provided compression. The
+	 * payload is closed if any of these fail.
+	 */
+	private ImportPayload openImportPayload(InputStream data,
+			Compression compression, int chunkSizeMb, int chunksPreparedAhead,
+			int uploadAttempts, int uploadRetryBackoffMillis)
+					throws AnaplanConnectionException,
+						   AnaplanOperationException {
+		try {
+			connectionStrategy.validateConnection();
+			final ChunkedUploader uploader = newUploader(chunkSizeMb,
+					chunksPreparedAhead, uploadAttempts,
+					uploadRetryBackoffMillis);
+			return new ImportPayload(compression.decompress(data), uploader);
+		} catch (IOException e) {
+			IOUtils.closeQuietly(data);
+			throw new AnaplanOperationException("Could not read "
+					+ compression + " compressed payload:", e);
+		} catch (AnaplanConnectionException | AnaplanOperationException
+				| RuntimeException e) {
+			IOUtils.closeQuietly(data);
+			throw e;
+		}
+	}
+
+	/**
+	 * Creates the uploader of an import, retrying failed uploads with a
+	 * backoff starting at the provided one, rejecting settings out of range
+	 * before any connection is borrowed.
+	 */
+	private static ChunkedUploader newUploader(int chunkSizeMb,
+			int chunksPreparedAhead, int uploadAttempts,
+			int uploadRetryBackoffMillis) throws AnaplanOperationException {
+		final RetryPolicy retryPolicy = newRetryPolicy(uploadAttempts,
+				uploadRetryBackoffMillis);
+		final int maxChunkSizeMb = ChunkedUploader.MAX_CHUNK_SIZE
+				/ ChunkedUploader.MEGABYTE;
+		if (chunkSizeMb < 1 || chunkSizeMb > maxChunkSizeMb) {
+			throw new AnaplanOperationException("Chunk size must be between 1 "
+					+ "and " + maxChunkSizeMb + " MB: " + chunkSizeMb);
+		}
+		if (chunksPreparedAhead < 1) {
+			throw new AnaplanOperationException("At least one chunk prepared "
+					+ "ahead is required: " + chunksPreparedAhead);
+		}
+		return new ChunkedUploader(chunkSizeMb * ChunkedUploader.MEGABYTE,
+				chunksPreparedAhead, retryPolicy);
+	}
+
+	/**
+	 * Creates the downloader of an export, rejecting settings out of range
+	 * before any connection is borrowed.
+	 */
+	private static ChunkedDownloader newDownloader(int prefetchChunks,
+			int downloadAttempts, int downloadRetryBackoffMillis)
+					throws AnaplanOperationException {
+		if (prefetchChunks < 1) {
+			throw new AnaplanOperationException("At least one prefetched "
+					+ "chunk is required: " + prefetchChunks);
+		}
+		return new ChunkedDownloader(ChunkedDownloader.DEFAULT_CHUNK_SIZE,
+				prefetchChunks, newRetryPolicy(downloadAttempts,
+						downloadRetryBackoffMillis));
+	}
+
+	/**
+	 * Creates the retry policy of a transfer, with a backoff starting at the
+	 * provided one, rejecting settings out of range.
+	 */
+	private static RetryPolicy newRetryPolicy(int attempts,
+			int retryBackoffMillis) throws AnaplanOperationException {
+		if (attempts < 1) {
+			throw new AnaplanOperationException("At least one attempt is "
+					+ "required: " + attempts);
+		}
+		if (retryBackoffMillis < 0) {
+			throw new AnaplanOperationException("Retry backoff must not be "
+					+ "negative: " + retryBackoffMillis);
+		}
+		return new RetryPolicy(attempts, retryBackoffMillis, Math.max(
+				retryBackoffMillis, RetryPolicy.DEFAULT_MAX_BACKOFF));
+	}
+
+	/**
+	 * Borrows a pooled connection for the provided operation, which counts as
+	 * failed if no connection could be borrowed.
+	 */
+	private static Service borrowConnection(AnaplanConnection apiConn,
+			ConnectorMetrics.Operation operation)
+					throws AnaplanConnectionException {
+		try {
+			return apiConn.borrowConnection();
+		} catch (AnaplanConnectionException | RuntimeException e) {
+			operation.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Borrows a pooled connection for the provided operation reading the
+	 * provided payload, which is closed if no connection could be borrowed.
+	 */
+	private static Service borrowConnection(AnaplanConnection apiConn,
+			ConnectorMetrics.Operation operation, InputStream payload)
+					throws AnaplanConnectionException {
+		try {
+			return borrowConnection(apiConn, operation);
+		} catch (AnaplanConnectionException | RuntimeException e) {
+			IOUtils.closeQuietly(payload);
+			throw e;
+		}
+	}
+
+	/**
+	 * Payload stream of an import, with the uploader writing it.
+	 */
+	private static class ImportPayload {
+
+		final InputStream stream;
+		final ChunkedUploader uploader;
+
+		ImportPayload(InputStream stream, ChunkedUploader uploader) {
+			this.stream = stream;
+			this.uploader = uploader;
+		}
+	}
+
+	/**
+	 * Export stream that hands its pooled connection back once closed.
+	 */
+	private static class ReleasingInputStream extends FilterInputStream {
+
+		private final AnaplanConnection apiConn;
+		private final Service service;
+		private boolean released = false;
+
+		ReleasingInputStream(InputStream in, AnaplanConnection apiConn,
+				Service service) {
+			super(in);
+			this.apiConn = apiConn;
+			this.service = service;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				if (!released) {
+					released = true;
+					apiConn.releaseConnection(service);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Hands a pooled connection back once closed, at most once.
+	 */
+	private static class ConnectionRelease implements Closeable {
+
+		private final AnaplanConnection apiConn;
+		private final Service service;
+		private boolean released = false;
+
+		ConnectionRelease(AnaplanConnection apiConn, Service service) {
+			this.apiConn = apiConn;
+			this.service = service;
+		}
 
+		@Override
+		public void close() {
+			if (!released) {
+				released = true;
+				apiConn.releaseConnection(service);
+			}
+		}
 	}
 }
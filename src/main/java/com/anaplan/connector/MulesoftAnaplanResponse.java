@@ -22,14 +22,28 @@ import com.anaplan.client.ExportMetadata;
 import com.anaplan.client.ServerFile;
 import com.anaplan.connector.connection.AnaplanConnection;
 import com.anaplan.connector.exceptions.AnaplanOperationException;
+import com.anaplan.connector.utils.ChunkedDownloader;
+import com.anaplan.connector.utils.ConnectorMetrics;
+import com.anaplan.connector.utils.CsvWriter;
+import com.anaplan.connector.utils.DownloadCheckpoint;
+import com.anaplan.connector.utils.ExportRecordIterator;
 import com.anaplan.connector.utils.OperationStatus;
-import org.apache.commons.lang3.StringUtils;
+import com.anaplan.connector.utils.ServerFileChunkSource;
+import com.anaplan.connector.utils.UserMessages;
+import org.apache.commons.io.IOUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Serializable;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 
 
 /**
@@ -47,6 +61,9 @@ public class MulesoftAnaplanResponse implements Serializable {
     private static Logger logger = LogManager.getLogger(MulesoftAnaplanResponse.class.getName());
 
     private static final long serialVersionUID = 1L;
+    public static final int NO_DUMP_ROW_LIMIT = -1;
+    private static final int DUMP_BUFFER_SIZE = 64 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
     private final String responseMessage;
     private final ServerFile serverFile;
     private final ExportMetadata exportMetadata;
@@ -97,35 +114,54 @@ public class MulesoftAnaplanResponse implements Serializable {
 
     /**
      * Uses the server cell-reader handler to read the server response contents
-     * and then write it to a string-buffer to be returned as a response.
-     *
-     * TODO: Use CSVPrinter to create the response. Check
-     * DO_NOT_REBASE_writeResponseOptimization for suggested changes.
+     * and write them as RFC-4180 CSV to the provided writer, using the
+     * separator and delimiter of the export.
      *
      * @param cellReader CellReader object to write server response.
-     * @return The string response.
+     * @param out Writer to write the CSV data to.
      * @throws AnaplanAPIException Exception thrown when reading rows of data.
      * @throws IOException Exception thrown when reading rows of data.
      */
-    private String writeResponse(CellReader cellReader)
+    private void writeResponse(CellReader cellReader, Writer out)
             throws AnaplanAPIException, IOException {
 
-        StringBuilder sb = new StringBuilder();
-        final String header = StringUtils.join(cellReader.getHeaderRow(), ',');
-        sb.append(header);
-        logger.debug("{}", header);
+        final CsvWriter csvWriter = CsvWriter.create(out, getSeparator(),
+                getDelimiter());
+        csvWriter.writeRow(cellReader.getHeaderRow());
 
-        String dataLine = StringUtils.join(cellReader.readDataRow(), ',');
+        String[] dataRow;
+        while ((dataRow = cellReader.readDataRow()) != null) {
+            csvWriter.writeRow(dataRow);
+        }
+        csvWriter.flush();
+        logger.debug("finished writing file: {} rows",
+                csvWriter.getRowCount());
+        // not counting the header row
+        ConnectorMetrics.getShared().increment(
+                ConnectorMetrics.Counter.ROWS_EXPORTED,
+                Math.max(csvWriter.getRowCount() - 1, 0));
+    }
+
+    /**
+     * Column separator of the export, as defined by its metadata or else by
+     * its server-file.
+     */
+    private String getSeparator() {
+        if (exportMetadata != null && exportMetadata.getSeparator() != null) {
+            return exportMetadata.getSeparator();
+        }
+        return serverFile == null ? null : serverFile.getSeparator();
+    }
 
-        String[] dataLineArr;
-        while (dataLine != null) {
-            sb.append("\n").append(dataLine);
-            dataLineArr = cellReader.readDataRow();
-            dataLine = (dataLineArr == null) ? null
-                    : StringUtils.join(dataLineArr, ',');
+    /**
+     * Cell delimiter of the export, as defined by its metadata or else by its
+     * server-file.
+     */
+    private String getDelimiter() {
+        if (exportMetadata != null && exportMetadata.getDelimiter() != null) {
+            return exportMetadata.getDelimiter();
         }
-        logger.debug("finished writing file");
-        return sb.toString();
+        return serverFile == null ? null : serverFile.getDelimiter();
     }
 
     /**
@@ -141,8 +177,18 @@ public class MulesoftAnaplanResponse implements Serializable {
         if (serverFile == null) {
             throw new AnaplanAPIException("Response is empty: " + getStatus());
         }
-        final CellReader cellReader = serverFile.getDownloadCellReader();
-        return writeResponse(cellReader);
+        final long startNanos = System.nanoTime();
+        boolean failed = true;
+        try {
+            final CellReader cellReader = serverFile.getDownloadCellReader();
+            final StringWriter out = new StringWriter();
+            writeResponse(cellReader, out);
+            failed = false;
+            return out.toString();
+        } finally {
+            ConnectorMetrics.getShared().recordPhase(
+                    ConnectorMetrics.Phase.DOWNLOAD, startNanos, failed);
+        }
     }
 
     /**
@@ -159,6 +205,106 @@ public class MulesoftAnaplanResponse implements Serializable {
             throws IOException,
             AnaplanAPIException,
             AnaplanOperationException {
+        checkExportStatus(connection);
+        return responseServerFile(getServerFile());
+    }
+
+    /**
+     * Streaming counterpart of {@link #writeExportData(AnaplanConnection)}.
+     * Rather than building the export data up as a string, returns a stream
+     * backed directly by the chunked download of the registered ServerFile,
+     * so that downstream flows can consume rows as they arrive. A chunk whose
+     * download fails is fetched again as allowed by the downloader's retry
+     * policy, without fetching the chunks before it into the stream again.
+     *
+     * @param connection Anaplan API connection object.
+     * @param downloader Downloader used to fetch chunks ahead of the consumer.
+     * @return Stream of the raw export data.
+     * @throws IOException Thrown when the download stream could not be
+     *      opened.
+     * @throws AnaplanAPIException Thrown when no server-file is available.
+     * @throws AnaplanOperationException
+     */
+    public InputStream streamExportData(AnaplanConnection connection,
+                                        ChunkedDownloader downloader)
+            throws IOException,
+            AnaplanAPIException,
+            AnaplanOperationException {
+        checkExportStatus(connection);
+        if (getServerFile() == null) {
+            throw new AnaplanAPIException("Response is empty: " + getStatus());
+        }
+        return downloader.download(new ServerFileChunkSource(getServerFile()));
+    }
+
+    /**
+     * File counterpart of {@link #streamExportData(AnaplanConnection,
+     * ChunkedDownloader)}. Downloads the raw export data of the registered
+     * ServerFile into a local file, resuming at the first chunk missing from
+     * the provided checkpoint.
+     *
+     * @param connection Anaplan API connection object.
+     * @param downloader Downloader used to fetch the chunks.
+     * @param target File to write the export data to.
+     * @param checkpoint Checkpoint of the chunks already in the file.
+     * @return Size of the export data in bytes.
+     * @throws IOException Thrown when the download fails for good, or the
+     *      file could not be written.
+     * @throws AnaplanAPIException Thrown when no server-file is available.
+     * @throws AnaplanOperationException
+     */
+    public long downloadExportData(AnaplanConnection connection,
+                                   ChunkedDownloader downloader, File target,
+                                   DownloadCheckpoint checkpoint)
+            throws IOException,
+            AnaplanAPIException,
+            AnaplanOperationException {
+        checkExportStatus(connection);
+        if (getServerFile() == null) {
+            throw new AnaplanAPIException("Response is empty: " + getStatus());
+        }
+        return downloader.download(new ServerFileChunkSource(getServerFile()),
+                target, checkpoint);
+    }
+
+    /**
+     * Typed counterpart of {@link #writeExportData(AnaplanConnection)}.
+     * Returns the rows of the registered ServerFile as records keyed by the
+     * export's column names, with values converted according to the export
+     * metadata. Rows are read as the iterator is consumed.
+     *
+     * @param connection Anaplan API connection object.
+     * @param onClose Resource to close once all records have been read or the
+     *      iterator is closed, may be null.
+     * @return Iterator over the export records.
+     * @throws IOException IO exception
+     * @throws AnaplanAPIException Thrown when no server-file is available or
+     *      the header row could not be read.
+     * @throws AnaplanOperationException
+     */
+    public ExportRecordIterator readExportRecords(AnaplanConnection connection,
+                                                  Closeable onClose)
+            throws IOException,
+            AnaplanAPIException,
+            AnaplanOperationException {
+        checkExportStatus(connection);
+        if (getServerFile() == null) {
+            throw new AnaplanAPIException("Response is empty: " + getStatus());
+        }
+        return new ExportRecordIterator(
+                getServerFile().getDownloadCellReader(), exportMetadata,
+                onClose);
+    }
+
+    /**
+     * Logs or escalates the failure of an export before its data is read.
+     *
+     * @param connection Anaplan API connection object.
+     * @throws AnaplanOperationException Thrown when the export failed with an
+     *      exception.
+     */
+    private void checkExportStatus(AnaplanConnection connection)
+            throws AnaplanOperationException {
         if (getStatus() != OperationStatus.SUCCESS) {
             if (getException() == null) {
                 responseFail(connection, getResponseMessage());
@@ -167,7 +313,6 @@ public class MulesoftAnaplanResponse implements Serializable {
                         getResponseMessage());
             }
         }
-        return responseServerFile(getServerFile());
     }
 
     @Override
@@ -355,32 +500,87 @@ public class MulesoftAnaplanResponse implements Serializable {
                 null, null, cause);
     }
 
+	/**
+	 * Opens the dump file of the server response, if any, as a buffered reader
+	 * decoding it in the server-file's encoding, falling back to UTF-8. The
+	 * caller is responsible for closing the reader.
+	 *
+	 * @return Reader of the dump file, or null if there is none.
+	 * @throws AnaplanAPIException Thrown when the download cannot be started.
+	 */
+	public BufferedReader openDumpFileReader() throws AnaplanAPIException {
+		if (serverFile == null) {
+			return null;
+		}
+		final InputStream dumpFileStream = serverFile.getDownloadStream();
+		if (dumpFileStream == null) {
+			return null;
+		}
+		Charset charset = UTF_8;
+		final String encoding = serverFile.getEncoding();
+		if (encoding != null && !encoding.isEmpty()) {
+			try {
+				charset = Charset.forName(encoding);
+			} catch (IllegalArgumentException e) {
+				logger.warn("Unknown dump file encoding {}, reading it as {}",
+						encoding, UTF_8);
+			}
+		}
+		return new BufferedReader(new InputStreamReader(dumpFileStream,
+				charset), DUMP_BUFFER_SIZE);
+	}
+
 	/**
 	 * Fetches dump file contents from Server response if any, otherwise returns
 	 * an empty string.
 	 *
-	 * TODO: Move this to Anaplan-Connect.
-	 *
 	 * @return Response message from Dump-file.
 	 */
 	public String getDumpFileContents() {
-		StringBuilder dumpFileContents = new StringBuilder();
-		if (this.serverFile != null) {
-			InputStream dumpFileStream;
-			try {
-				dumpFileStream = serverFile.getDownloadStream();
-				if (dumpFileStream != null) {
-					byte[] buffer = new byte[5];
-					int read;
-					do {
-						if ((read = dumpFileStream.read(buffer)) > 0) {
-							dumpFileContents.append(new String(buffer));
+		return getDumpFileContents(NO_DUMP_ROW_LIMIT);
+	}
+
+	/**
+	 * Fetches the header and up to the given number of rejected rows of the
+	 * dump file from Server response if any, otherwise returns an empty
+	 * string. The rest of the dump is not downloaded, and a note saying it was
+	 * truncated is appended instead.
+	 *
+	 * @param maxRows Maximum number of rejected rows to include, or
+	 * 		{@link #NO_DUMP_ROW_LIMIT} to include all of them.
+	 * @return Response message from Dump-file.
+	 */
+	public String getDumpFileContents(int maxRows) {
+		final StringBuilder dumpFileContents = new StringBuilder();
+		BufferedReader dumpFileReader = null;
+		try {
+			dumpFileReader = openDumpFileReader();
+			if (dumpFileReader != null) {
+				final char[] buffer = new char[DUMP_BUFFER_SIZE];
+				// the header row is followed by the rejected rows
+				final long maxLines = maxRows + 1L;
+				long lines = 0;
+				int read;
+				while ((read = dumpFileReader.read(buffer)) != -1) {
+					for (int i = 0; i < read; i++) {
+						if (buffer[i] == '\n' && ++lines == maxLines
+								&& maxRows >= 0) {
+							dumpFileContents.append(buffer, 0, i + 1);
+							if (i + 1 < read || dumpFileReader.read() != -1) {
+								dumpFileContents.append(UserMessages.getMessage(
+										"failureDumpTruncated",
+										String.valueOf(maxRows)));
+							}
+							return dumpFileContents.toString();
 						}
-					} while (read != -1);
+					}
+					dumpFileContents.append(buffer, 0, read);
 				}
-			} catch (IOException | AnaplanAPIException e) {
-				logger.info("No Dump file found. Proceeding...");
 			}
+		} catch (IOException | AnaplanAPIException e) {
+			logger.info("No Dump file found. Proceeding...");
+		} finally {
+			IOUtils.closeQuietly(dumpFileReader);
 		}
 		return dumpFileContents.toString();
 	}
@@ -28,8 +28,12 @@ import com.anaplan.client.Credentials;
 import com.anaplan.client.Service;
 import com.anaplan.client.Workspace;
 import com.anaplan.connector.AnaplanConnectorProperties;
+import com.anaplan.connector.MulesoftAnaplanResponse;
 import com.anaplan.connector.exceptions.AnaplanConnectionException;
 import com.anaplan.connector.exceptions.ConnectorPropertiesException;
+import com.anaplan.connector.utils.ApiGovernor;
+import com.anaplan.connector.utils.ConnectorMetrics;
+import com.anaplan.connector.utils.MetadataCache;
 import com.anaplan.connector.utils.UserMessages;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -43,7 +47,12 @@ import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
 /**
@@ -65,8 +74,31 @@ public class AnaplanConnection {
 	private final AnaplanConnectorProperties connectionConfig;
 	private final boolean isCertificate;
 
-	// cached Anaplan objects when a valid open connection exists, else null
+	// default lifetime of an authenticated session before re-authenticating
+	public static final long DEFAULT_SESSION_TIMEOUT = 30 * 60 * 1000L;
+
+	// pooled service last validated by openConnection(), else null
 	private Service openConnection = null;
+	private long sessionTimeout = DEFAULT_SESSION_TIMEOUT;
+	private long sessionExpiresAt = 0;
+	// pool of services borrowed by concurrently running operations
+	private ServicePool servicePool = null;
+	private int poolMinIdle = ServicePool.DEFAULT_MIN_IDLE;
+	private int poolMaxSize = ServicePool.DEFAULT_MAX_SIZE;
+	private long poolIdleTimeout = ServicePool.DEFAULT_IDLE_TIMEOUT;
+	private long poolBorrowTimeout = ServicePool.DEFAULT_BORROW_TIMEOUT;
+	// services discarded while leased, which are not released again
+	private final Set<Service> invalidated = Collections.newSetFromMap(
+			new WeakHashMap<Service, Boolean>());
+	// metadata fetched through each service, dropped when the service closes
+	private final ConcurrentMap<Service, MetadataCache> metadataCaches =
+			new ConcurrentHashMap<>();
+	private volatile long metadataCacheTtl = MetadataCache.DEFAULT_TTL;
+	// rejected rows of a failure dump included in import responses
+	private volatile int failureDumpRows =
+			MulesoftAnaplanResponse.NO_DUMP_ROW_LIMIT;
+	// governor of API calls, shared with the connections of the same tenant
+	private ApiGovernor governor = null;
 
 
 	/**
@@ -151,15 +183,61 @@ public class AnaplanConnection {
 	}
 
 	/**
-	 * Opens a service for accessing anaplan workspaces with this connection's
-	 * API endpoint and credentials.
-
-	 * @return The service object that contains workspace/model details for the
-	 *      authenticated user.
+	 * Creates and authenticates a new service with this connection's API
+	 * endpoint and credentials, validating it by fetching the user's
+	 * workspaces. Every authentication is timed in the connector metrics, and
+	 * paced by the API governor.
+	 *
+	 * @return The authenticated service object.
 	 * @throws AnaplanConnectionException If there was an error with the service
-     *      or any or the required properties.
+	 *      or any or the required properties.
 	 */
-	private Service cacheService() throws AnaplanConnectionException {
+	Service createService() throws AnaplanConnectionException {
+		try {
+			getGovernor().acquireRequest();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AnaplanConnectionException("Interrupted while waiting "
+					+ "to authenticate!", e);
+		}
+		final long startNanos = System.nanoTime();
+		boolean failed = true;
+		try {
+			final Service service = authenticate();
+			failed = false;
+			return service;
+		} finally {
+			ConnectorMetrics.getShared().recordPhase(
+					ConnectorMetrics.Phase.AUTHENTICATION, startNanos, failed);
+		}
+	}
+
+	/**
+	 * Checks whether the server still accepts the provided service by
+	 * fetching the user's workspaces, paced by the API governor.
+	 *
+	 * @param service Authenticated service to check.
+	 * @return False if the request failed, e.g. as the session was dropped.
+	 */
+	boolean isValid(Service service) {
+		try {
+			getGovernor().acquireRequest();
+			service.getWorkspaces();
+			return true;
+		} catch (AnaplanAPIException e) {
+			logger.info("Pooled connection is no longer valid: {}",
+					e.getMessage());
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Authenticates a new service, see {@link #createService()}.
+	 */
+	private Service authenticate() throws AnaplanConnectionException {
 		logger.debug("Trying Anaplan service connection...");
 
 		final String apiUrl = connectionConfig.getStringProperty(URL_FIELD);
@@ -168,7 +246,6 @@ public class AnaplanConnection {
 		try {
 			service = new Service(new URI(apiUrl));
 		} catch (URISyntaxException e) {
-			closeConnection();
 			throw new AnaplanConnectionException(
 					UserMessages.getMessage("invalidApiUri", apiUrl), e);
 		}
@@ -200,7 +277,7 @@ public class AnaplanConnection {
 				}
 			}
 		} catch (AnaplanAPIException | URISyntaxException e) {
-			closeConnection();
+			service.close();
 			final String msg = UserMessages.getMessage("apiConnectFail",
 					e.getMessage());
 			logger.error(msg, e);
@@ -214,7 +291,7 @@ public class AnaplanConnection {
 		try {
 			availableWorkspaces = service.getWorkspaces();
 		} catch (AnaplanAPIException e) {
-			closeConnection();
+			service.close();
 
 			logger.error(e.getMessage(), e);
 
@@ -233,56 +310,305 @@ public class AnaplanConnection {
 		if (availableWorkspaces == null || availableWorkspaces.isEmpty()) {
 			final String msg = UserMessages.getMessage("accessFail");
 			logger.error("{} (availableWorkspaces={})", msg, availableWorkspaces);
+			service.close();
 			throw new AnaplanConnectionException(msg);
 		}
 
 		logger.debug("Anaplan service connection validated successfully");
 
-		openConnection = service;
-
 		return service;
 	}
 
 	/**
-	 * Note that model's associated service object is left open for model
-	 * access. Service should be closed by caller when access complete using
-	 * {@link #closeConnection()}.
+	 * Getter for the session timeout.
+	 *
+	 * @return Lifetime of an authenticated session in milliseconds.
+	 */
+	public long getSessionTimeout() {
+		return sessionTimeout;
+	}
+
+	/**
+	 * Setter for the session timeout, which applies from the next time the
+	 * service is authenticated.
+	 *
+	 * @param sessionTimeout Lifetime of an authenticated session in
+	 *      milliseconds.
+	 */
+	public void setSessionTimeout(long sessionTimeout) {
+		this.sessionTimeout = sessionTimeout;
+	}
+
+	/**
+	 * Checks whether the cached service has outlived its session timeout and
+	 * needs to be re-authenticated.
 	 *
-	 * If any open connection already exists it will be closed.
+	 * @return True if an open connection exists but has expired.
+	 */
+	public synchronized boolean isSessionExpired() {
+		return openConnection != null
+				&& System.currentTimeMillis() >= sessionExpiresAt;
+	}
+
+	/**
+	 * Validates the connection by borrowing a service from the pool and
+	 * handing it straight back, so that the service authenticated for the
+	 * validation is reused by the next operation instead of costing a login
+	 * of its own. The validated service is kept as the open connection until
+	 * its session expires, at which point the next call validates again. The
+	 * pool and the cached metadata are left untouched either way. Waiting for
+	 * the API governor and authenticating happen outside of this connection's
+	 * lock, so other threads are not held up meanwhile.
 	 *
-	 * @return null if workspace or model is not valid, else anaplan model
-	 *         object
+	 * @return Validated service object, owned by the pool.
 	 * @throws AnaplanConnectionException
-	 *             With user-friendly message if the model cannot be opened.
+	 *             With user-friendly message if no service can be
+	 *             authenticated.
 	 */
 	public Service openConnection() throws AnaplanConnectionException {
 		logger.info("Establishing connection....");
-		if (openConnection == null) {
-			logger.info("No new connection found, establishing new connection!");
-			return cacheService();
-		} else {
-			logger.info("Connection exists, returning cached connection!");
-			return this.openConnection;
+		synchronized (this) {
+			if (openConnection != null && !isSessionExpired()) {
+				logger.info("Connection exists, returning cached connection!");
+				return openConnection;
+			}
+		}
+		logger.info("No valid connection found, validating pooled connection!");
+		final Service service = borrowConnection();
+		releaseConnection(service);
+		synchronized (this) {
+			openConnection = service;
+			sessionExpiresAt = System.currentTimeMillis() + sessionTimeout;
 		}
+		return service;
 	}
 
 	/**
 	 * Getter for retrieving the open-connection, which is the service object
-	 * to use for querying workspace and model details.
+	 * to use for querying workspace and model details. The service is owned
+	 * by the pool, hence may also be leased by concurrent operations.
 	 * @return
 	 */
-	public Service getConnection() {
+	public synchronized Service getConnection() {
 		return this.openConnection;
 	}
 
 	/**
-	 * Closes the open-connection if one exists.
+	 * Configures the pool of services borrowed by concurrent operations. Any
+	 * existing pool is closed, and a new one created on the next borrow.
+	 *
+	 * @param minIdle Number of idle services kept regardless of idle time.
+	 * @param maxSize Maximum number of services leased at once.
+	 * @param idleTimeout Milliseconds after which surplus idle services are
+	 *      evicted.
+	 * @param borrowTimeout Milliseconds to wait for a service when the pool is
+	 *      exhausted.
+	 */
+	public synchronized void configurePool(int minIdle, int maxSize,
+			long idleTimeout, long borrowTimeout) {
+		poolMinIdle = minIdle;
+		poolMaxSize = maxSize;
+		poolIdleTimeout = idleTimeout;
+		poolBorrowTimeout = borrowTimeout;
+		closePool();
+	}
+
+	/**
+	 * Lazily creates the service pool.
+	 */
+	private synchronized ServicePool getServicePool() {
+		if (servicePool == null) {
+			servicePool = new ServicePool(new ServicePool.ServiceFactory() {
+				@Override
+				public Service create() throws AnaplanConnectionException {
+					return createService();
+				}
+
+				@Override
+				public boolean validate(Service service) {
+					return isValid(service);
+				}
+
+				@Override
+				public void destroy(Service service) {
+					closeService(service);
+				}
+			}, poolMinIdle, poolMaxSize, poolIdleTimeout, poolBorrowTimeout,
+					sessionTimeout);
+		}
+		return servicePool;
+	}
+
+	/**
+	 * Borrows an authenticated service for the exclusive use of a single
+	 * operation. Must be handed back using {@link #releaseConnection(Service)}
+	 * once the operation completes.
+	 *
+	 * @return Authenticated service object.
+	 * @throws AnaplanConnectionException If no service became available within
+	 *      the borrow timeout, or a new one could not be authenticated.
+	 */
+	public Service borrowConnection() throws AnaplanConnectionException {
+		return getServicePool().borrow();
+	}
+
+	/**
+	 * Hands a borrowed service back to the pool for reuse. Does nothing for a
+	 * service that was discarded using {@link #invalidateConnection(Service)}.
+	 *
+	 * @param service Service obtained from {@link #borrowConnection()}.
+	 */
+	public void releaseConnection(Service service) {
+		final ServicePool pool;
+		synchronized (this) {
+			if (invalidated.remove(service)) {
+				return;
+			}
+			pool = servicePool;
+		}
+		if (pool == null || !pool.release(service)) {
+			closeService(service);
+		}
+	}
+
+	/**
+	 * Discards a service that is no longer usable, e.g. after an
+	 * authentication failure, so that a fresh one is authenticated next time.
+	 * Releasing the service afterwards does nothing.
+	 *
+	 * @param service Service to discard.
+	 */
+	public void invalidateConnection(Service service) {
+		final ServicePool pool;
+		synchronized (this) {
+			invalidated.add(service);
+			if (service == openConnection) {
+				openConnection = null;
+				sessionExpiresAt = 0;
+			}
+			pool = servicePool;
+		}
+		if (pool == null || !pool.invalidate(service)) {
+			closeService(service);
+		}
+	}
+
+	/**
+	 * Closes the provided service and drops the metadata cached for it.
+	 * Called by the pool without holding this connection's lock, hence the
+	 * metadata caches are kept in a concurrent map.
+	 */
+	private void closeService(Service service) {
+		metadataCaches.remove(service);
+		service.close();
+	}
+
+	/**
+	 * Getter for the cache of workspace, model and action metadata fetched
+	 * through the provided service. Metadata objects are bound to the service
+	 * that fetched them, hence every service has a cache of its own.
+	 *
+	 * @param service Service the metadata is fetched through.
+	 * @return Metadata cache of the service.
+	 */
+	public MetadataCache getMetadataCache(Service service) {
+		MetadataCache cache = metadataCaches.get(service);
+		if (cache == null) {
+			final MetadataCache created = new MetadataCache(
+					metadataCacheTtl, MetadataCache.DEFAULT_MAX_ENTRIES);
+			cache = metadataCaches.putIfAbsent(service, created);
+			if (cache == null) {
+				cache = created;
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * Sets the time-to-live of cached metadata, dropping all metadata cached
+	 * so far.
+	 *
+	 * @param metadataCacheTtl Milliseconds after which metadata is fetched
+	 *      again.
+	 */
+	public synchronized void setMetadataCacheTtl(long metadataCacheTtl) {
+		this.metadataCacheTtl = metadataCacheTtl;
+		invalidateMetadata();
+	}
+
+	public int getFailureDumpRows() {
+		return failureDumpRows;
+	}
+
+	/**
+	 * Sets the maximum number of rejected rows of a failure dump that are
+	 * included in import responses.
+	 *
+	 * @param failureDumpRows Maximum number of rejected rows, or
+	 *      {@link MulesoftAnaplanResponse#NO_DUMP_ROW_LIMIT} for all of them.
 	 */
-	public void closeConnection() {
-		if (openConnection != null) {
-			openConnection.close();
+	public void setFailureDumpRows(int failureDumpRows) {
+		this.failureDumpRows = failureDumpRows;
+	}
+
+	/**
+	 * Getter for the governor of the API calls of this connection, which is
+	 * shared by all connections of the same tenant, i.e. of the same API URL
+	 * and user name or certificate.
+	 *
+	 * @return Governor of the API calls.
+	 */
+	public synchronized ApiGovernor getGovernor() {
+		if (governor == null) {
+			final String identity = connectionConfig.getStringProperty(
+					isCertificate ? CERT_PATH : USERNAME_FIELD);
+			governor = ApiGovernor.forTenant(connectionConfig.getStringProperty(
+					URL_FIELD) + "|" + identity);
 		}
+		return governor;
+	}
+
+	/**
+	 * Sets the limits of the governor of the API calls, which applies to all
+	 * connections of the same tenant.
+	 *
+	 * @param requestsPerSecond Maximum number of requests per second, 0 for
+	 *      no limit.
+	 * @param tasksPerModel Maximum number of tasks running at once on a
+	 *      single model, 0 for no limit.
+	 */
+	public void configureGovernor(double requestsPerSecond,
+			int tasksPerModel) {
+		getGovernor().configure(requestsPerSecond, tasksPerModel);
+	}
+
+	/**
+	 * Drops all cached metadata, e.g. after actions were changed in a model,
+	 * so that it is fetched again by the next operations.
+	 */
+	public synchronized void invalidateMetadata() {
+		metadataCaches.clear();
+	}
+
+	/**
+	 * Closes the service pool if one exists.
+	 */
+	private synchronized void closePool() {
+		if (servicePool != null) {
+			servicePool.close();
+			servicePool = null;
+		}
+	}
+
+	/**
+	 * Closes the service pool, along with the open-connection it owns, if
+	 * they exist.
+	 */
+	public synchronized void closeConnection() {
 		openConnection = null;
+		sessionExpiresAt = 0;
+		closePool();
+		invalidateMetadata();
 		logger.info("Connection closed.");
 	}
 }
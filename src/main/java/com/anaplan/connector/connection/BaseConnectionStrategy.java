@@ -18,14 +18,24 @@ package com.anaplan.connector.connection;
 
 
 import com.anaplan.client.Service;
+import com.anaplan.connector.MulesoftAnaplanResponse;
 import com.anaplan.connector.exceptions.AnaplanConnectionException;
+import com.anaplan.connector.utils.ConnectorMetrics;
+import com.anaplan.connector.utils.MetadataCache;
+import com.anaplan.connector.utils.MetricsListener;
+import com.anaplan.connector.utils.TaskScheduler;
+import com.anaplan.connector.utils.Tracer;
+import com.anaplan.connector.utils.Tracing;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.mule.api.ConnectionException;
 import org.mule.api.ConnectionExceptionCode;
+import org.mule.api.annotations.Configurable;
 import org.mule.api.annotations.ConnectionIdentifier;
 import org.mule.api.annotations.Disconnect;
 import org.mule.api.annotations.ValidateConnection;
+import org.mule.api.annotations.param.Default;
+import org.mule.api.annotations.param.Optional;
 
 
 /**
@@ -39,6 +49,199 @@ public class BaseConnectionStrategy {
 
 	protected AnaplanConnection apiConn;
 
+	/**
+	 * Number of idle pooled connections kept open regardless of idle time.
+	 */
+	@Configurable
+	@Optional
+	@Default("1")
+	private int poolMinIdle;
+
+	/**
+	 * Maximum number of pooled connections used concurrently.
+	 */
+	@Configurable
+	@Optional
+	@Default("8")
+	private int poolMaxSize;
+
+	/**
+	 * Seconds after which surplus idle pooled connections are closed.
+	 */
+	@Configurable
+	@Optional
+	@Default("300")
+	private int poolIdleTimeoutSeconds;
+
+	/**
+	 * Seconds to wait for a pooled connection when all are in use.
+	 */
+	@Configurable
+	@Optional
+	@Default("60")
+	private int poolBorrowTimeoutSeconds;
+
+	/**
+	 * Seconds for which workspace, model and action metadata is cached.
+	 */
+	@Configurable
+	@Optional
+	@Default("600")
+	private int metadataCacheTtlSeconds;
+
+	/**
+	 * Maximum number of rejected rows of a failure dump included in the
+	 * response of an import, 0 for no limit.
+	 */
+	@Configurable
+	@Optional
+	@Default("0")
+	private int failureDumpRows;
+
+	/**
+	 * Maximum number of requests per second sent to the Anaplan API by all
+	 * connections of the same user, 0 for no limit. Requests in excess wait
+	 * their turn rather than being throttled by the server. Covers logins,
+	 * metadata fetches, task starts and status polls, and upload chunks, but
+	 * not the chunks of downloads, which the download streams fetch as they
+	 * are read.
+	 */
+	@Configurable
+	@Optional
+	@Default("0")
+	private double maxRequestsPerSecond;
+
+	/**
+	 * Maximum number of tasks run at once on a single model by all
+	 * connections of the same user, 0 for no limit.
+	 */
+	@Configurable
+	@Optional
+	@Default("0")
+	private int maxConcurrentTasksPerModel;
+
+	/**
+	 * Maximum number of task status requests sent at once by all
+	 * connections, so that slow polls do not delay other tasks. The largest
+	 * value configured by any connection applies.
+	 */
+	@Configurable
+	@Optional
+	@Default("8")
+	private int maxConcurrentTaskPolls;
+
+	/**
+	 * Class name of a {@link MetricsListener} receiving the connector's
+	 * metrics, e.g. to forward them to a monitoring system. The metrics are
+	 * also exposed through JMX regardless.
+	 */
+	@Configurable
+	@Optional
+	private String metricsListenerClass;
+
+	/**
+	 * Class name of a {@link Tracer} receiving the spans of the phases of
+	 * every operation, e.g. to forward them to OpenTelemetry. Spans are not
+	 * recorded unless set.
+	 */
+	@Configurable
+	@Optional
+	private String tracerClass;
+
+	// listener created from metricsListenerClass, kept across reconnects
+	private MetricsListener metricsListener;
+
+	// tracer created from tracerClass, kept across reconnects
+	private Tracer tracer;
+
+	public int getPoolMinIdle() {
+		return poolMinIdle;
+	}
+
+	public void setPoolMinIdle(int poolMinIdle) {
+		this.poolMinIdle = poolMinIdle;
+	}
+
+	public int getPoolMaxSize() {
+		return poolMaxSize;
+	}
+
+	public void setPoolMaxSize(int poolMaxSize) {
+		this.poolMaxSize = poolMaxSize;
+	}
+
+	public int getPoolIdleTimeoutSeconds() {
+		return poolIdleTimeoutSeconds;
+	}
+
+	public void setPoolIdleTimeoutSeconds(int poolIdleTimeoutSeconds) {
+		this.poolIdleTimeoutSeconds = poolIdleTimeoutSeconds;
+	}
+
+	public int getPoolBorrowTimeoutSeconds() {
+		return poolBorrowTimeoutSeconds;
+	}
+
+	public void setPoolBorrowTimeoutSeconds(int poolBorrowTimeoutSeconds) {
+		this.poolBorrowTimeoutSeconds = poolBorrowTimeoutSeconds;
+	}
+
+	public int getMetadataCacheTtlSeconds() {
+		return metadataCacheTtlSeconds;
+	}
+
+	public void setMetadataCacheTtlSeconds(int metadataCacheTtlSeconds) {
+		this.metadataCacheTtlSeconds = metadataCacheTtlSeconds;
+	}
+
+	public int getFailureDumpRows() {
+		return failureDumpRows;
+	}
+
+	public void setFailureDumpRows(int failureDumpRows) {
+		this.failureDumpRows = failureDumpRows;
+	}
+
+	public double getMaxRequestsPerSecond() {
+		return maxRequestsPerSecond;
+	}
+
+	public void setMaxRequestsPerSecond(double maxRequestsPerSecond) {
+		this.maxRequestsPerSecond = maxRequestsPerSecond;
+	}
+
+	public int getMaxConcurrentTasksPerModel() {
+		return maxConcurrentTasksPerModel;
+	}
+
+	public void setMaxConcurrentTasksPerModel(int maxConcurrentTasksPerModel) {
+		this.maxConcurrentTasksPerModel = maxConcurrentTasksPerModel;
+	}
+
+	public int getMaxConcurrentTaskPolls() {
+		return maxConcurrentTaskPolls;
+	}
+
+	public void setMaxConcurrentTaskPolls(int maxConcurrentTaskPolls) {
+		this.maxConcurrentTaskPolls = maxConcurrentTaskPolls;
+	}
+
+	public String getMetricsListenerClass() {
+		return metricsListenerClass;
+	}
+
+	public void setMetricsListenerClass(String metricsListenerClass) {
+		this.metricsListenerClass = metricsListenerClass;
+	}
+
+	public String getTracerClass() {
+		return tracerClass;
+	}
+
+	public void setTracerClass(String tracerClass) {
+		this.tracerClass = tracerClass;
+	}
+
 	/**
 	 * Getter for the AnaplanConnection object, initiated using basic auth
 	 * credentials or certificate.
@@ -88,6 +291,16 @@ public class BaseConnectionStrategy {
 	 */
 	protected synchronized void connectToApi() throws ConnectionException {
 		Service service;
+		configurePool();
+		apiConn.setMetadataCacheTtl(metadataCacheTtlSeconds > 0
+				? metadataCacheTtlSeconds * 1000L : MetadataCache.DEFAULT_TTL);
+		apiConn.setFailureDumpRows(failureDumpRows > 0
+				? failureDumpRows : MulesoftAnaplanResponse.NO_DUMP_ROW_LIMIT);
+		apiConn.configureGovernor(Math.max(maxRequestsPerSecond, 0),
+				Math.max(maxConcurrentTasksPerModel, 0));
+		TaskScheduler.getShared().ensurePollerThreads(maxConcurrentTaskPolls);
+		registerMetricsListener();
+		registerTracer();
 		// Connect to the Anaplan API.
 		try {
 			service = apiConn.openConnection();
@@ -107,17 +320,94 @@ public class BaseConnectionStrategy {
 		}
 	}
 
+	/**
+	 * Creates the configured metrics listener, if any, and registers it with
+	 * the shared connector metrics the first time the connector connects.
+	 *
+	 * @throws ConnectionException If the listener class cannot be created.
+	 */
+	private void registerMetricsListener() throws ConnectionException {
+		if (metricsListener != null || metricsListenerClass == null
+				|| metricsListenerClass.trim().isEmpty()) {
+			return;
+		}
+		metricsListener = newInstance(metricsListenerClass,
+				MetricsListener.class, "metrics listener");
+		ConnectorMetrics.getShared().addListener(metricsListener);
+		logger.info("Registered metrics listener {}", metricsListenerClass);
+	}
+
+	/**
+	 * Creates the configured tracer, if any, and makes it the shared tracer
+	 * the first time the connector connects.
+	 *
+	 * @throws ConnectionException If the tracer class cannot be created.
+	 */
+	private void registerTracer() throws ConnectionException {
+		if (tracer != null || tracerClass == null
+				|| tracerClass.trim().isEmpty()) {
+			return;
+		}
+		tracer = newInstance(tracerClass, Tracer.class, "tracer");
+		Tracing.setTracer(tracer);
+		logger.info("Registered tracer {}", tracerClass);
+	}
+
+	/**
+	 * Creates an instance of the provided class through its no-argument
+	 * constructor.
+	 *
+	 * @param className Name of the class to create.
+	 * @param type Type the class is expected to implement.
+	 * @param description Description of the instance, for error messages.
+	 * @return Created instance.
+	 * @throws ConnectionException If the class cannot be created.
+	 */
+	private static <T> T newInstance(String className, Class<T> type,
+			String description) throws ConnectionException {
+		// the class may be a class of the application using the connector
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		if (classLoader == null) {
+			classLoader = BaseConnectionStrategy.class.getClassLoader();
+		}
+		try {
+			return type.cast(Class.forName(className.trim(), true,
+					classLoader).newInstance());
+		} catch (ClassNotFoundException | InstantiationException
+				| IllegalAccessException | ClassCastException e) {
+			throw new ConnectionException(ConnectionExceptionCode.UNKNOWN,
+					null, "Could not create " + description + " "
+					+ className + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Applies the configured pool settings to the API connection, falling back
+	 * to the pool defaults for any unset value.
+	 */
+	private void configurePool() {
+		final int maxSize = poolMaxSize > 0 ? poolMaxSize
+				: ServicePool.DEFAULT_MAX_SIZE;
+		apiConn.configurePool(Math.min(Math.max(poolMinIdle, 0), maxSize),
+				maxSize,
+				poolIdleTimeoutSeconds > 0 ? poolIdleTimeoutSeconds * 1000L
+						: ServicePool.DEFAULT_IDLE_TIMEOUT,
+				poolBorrowTimeoutSeconds > 0 ? poolBorrowTimeoutSeconds * 1000L
+						: ServicePool.DEFAULT_BORROW_TIMEOUT);
+	}
+
 	/**
 	 * Checks if the API connStrategy has been established. If no connStrategy
 	 * object was found, then throws {@link AnaplanConnectionException}, else
-	 * opens the connStrategy and registers the service object.
+	 * opens the connStrategy and registers the service object. An existing
+	 * session is reused until it expires.
 	 *
 	 * @throws AnaplanConnectionException
 	 */
 	public void validateConnection() throws AnaplanConnectionException {
 		// validate API connStrategy
 		if (isConnected()) {
-			if (apiConn.getConnection() == null) {
+			if (apiConn.getConnection() == null || apiConn.isSessionExpired()) {
 				apiConn.openConnection();
 			} else {
 				logger.info("Connection to API exists. Proceeding...");
@@ -0,0 +1,297 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.connection;
+
+import com.anaplan.client.Service;
+import com.anaplan.connector.exceptions.AnaplanConnectionException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Bounded pool of authenticated Anaplan services, so that concurrent flows
+ * sharing one connection configuration each get a service of their own
+ * instead of contending for a single one. Services are created on demand up
+ * to the maximum size, re-authenticated once their session expires, and
+ * surplus idle services are evicted after the idle timeout. Services that
+ * were idle for longer than the validation interval are validated before
+ * being handed out, so that a session the server dropped early is replaced
+ * instead of failing the operation.
+ */
+public class ServicePool {
+
+	private static final Logger logger = LogManager.getLogger(
+			ServicePool.class.getName());
+
+	public static final int DEFAULT_MIN_IDLE = 1;
+	public static final int DEFAULT_MAX_SIZE = 8;
+	public static final long DEFAULT_IDLE_TIMEOUT = 5 * 60 * 1000L;
+	public static final long DEFAULT_BORROW_TIMEOUT = 60 * 1000L;
+	public static final long DEFAULT_VALIDATION_INTERVAL = 60 * 1000L;
+
+	/**
+	 * Creates, validates and closes the services of the pool.
+	 */
+	public interface ServiceFactory {
+		Service create() throws AnaplanConnectionException;
+
+		/**
+		 * Checks cheaply whether the server still accepts an idle service.
+		 */
+		boolean validate(Service service);
+
+		/**
+		 * Closes a service the pool discards, along with anything kept for
+		 * it.
+		 */
+		void destroy(Service service);
+	}
+
+	/**
+	 * Pool bookkeeping for a single service.
+	 */
+	private static class PooledService {
+		final Service service;
+		final long expiresAt;
+		long lastUsed;
+
+		PooledService(Service service, long now, long sessionTimeout) {
+			this.service = service;
+			this.expiresAt = now + sessionTimeout;
+			this.lastUsed = now;
+		}
+
+		boolean isExpired(long now) {
+			return now >= expiresAt;
+		}
+	}
+
+	private final ServiceFactory factory;
+	private final int minIdle;
+	private final int maxSize;
+	private final long idleTimeout;
+	private final long borrowTimeout;
+	private final long sessionTimeout;
+	private final long validationInterval;
+	private final Semaphore permits;
+	// most recently used services first
+	private final Deque<PooledService> idle = new ArrayDeque<>();
+	private final Map<Service, PooledService> leased = new IdentityHashMap<>();
+	private boolean closed = false;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param factory Factory creating new authenticated services.
+	 * @param minIdle Number of idle services kept regardless of idle time.
+	 * @param maxSize Maximum number of services leased at once.
+	 * @param idleTimeout Milliseconds after which surplus idle services are
+	 *      evicted.
+	 * @param borrowTimeout Milliseconds to wait for a service when the pool is
+	 *      exhausted.
+	 * @param sessionTimeout Milliseconds after which a service is
+	 *      re-authenticated.
+	 * @throws IllegalArgumentException If the sizes are out of range.
+	 */
+	public ServicePool(ServiceFactory factory, int minIdle, int maxSize,
+			long idleTimeout, long borrowTimeout, long sessionTimeout) {
+		this(factory, minIdle, maxSize, idleTimeout, borrowTimeout,
+				sessionTimeout, DEFAULT_VALIDATION_INTERVAL);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param factory Factory creating and validating authenticated services.
+	 * @param minIdle Number of idle services kept regardless of idle time.
+	 * @param maxSize Maximum number of services leased at once.
+	 * @param idleTimeout Milliseconds after which surplus idle services are
+	 *      evicted.
+	 * @param borrowTimeout Milliseconds to wait for a service when the pool is
+	 *      exhausted.
+	 * @param sessionTimeout Milliseconds after which a service is
+	 *      re-authenticated.
+	 * @param validationInterval Milliseconds of idle time after which a
+	 *      service is validated before being handed out.
+	 * @throws IllegalArgumentException If the sizes are out of range.
+	 */
+	public ServicePool(ServiceFactory factory, int minIdle, int maxSize,
+			long idleTimeout, long borrowTimeout, long sessionTimeout,
+			long validationInterval) {
+		if (maxSize < 1 || minIdle < 0 || minIdle > maxSize) {
+			throw new IllegalArgumentException("Invalid pool size: min idle "
+					+ minIdle + ", max " + maxSize);
+		}
+		this.factory = factory;
+		this.minIdle = minIdle;
+		this.maxSize = maxSize;
+		this.idleTimeout = idleTimeout;
+		this.borrowTimeout = borrowTimeout;
+		this.sessionTimeout = sessionTimeout;
+		this.validationInterval = validationInterval;
+		this.permits = new Semaphore(maxSize, true);
+	}
+
+	/**
+	 * Borrows a service, reusing the most recently used idle one that has not
+	 * expired and is still valid, else authenticating a new one. Waits up to
+	 * the borrow timeout when all services are leased.
+	 *
+	 * @return Authenticated service object.
+	 * @throws AnaplanConnectionException If the pool is closed, no service
+	 *      became available in time, or a new one failed to authenticate.
+	 */
+	public Service borrow() throws AnaplanConnectionException {
+		try {
+			if (!permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+				throw new AnaplanConnectionException("Timed out after "
+						+ borrowTimeout + "ms waiting for one of " + maxSize
+						+ " pooled connections");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AnaplanConnectionException("Interrupted while waiting "
+					+ "for a pooled connection", e);
+		}
+
+		try {
+			final long now = System.currentTimeMillis();
+			PooledService entry = pollIdle(now);
+			while (entry != null && now - entry.lastUsed > validationInterval
+					&& !factory.validate(entry.service)) {
+				factory.destroy(entry.service);
+				logger.debug("Discarded pooled connection failing validation");
+				entry = pollIdle(now);
+			}
+			if (entry == null) {
+				logger.debug("No idle pooled connection, authenticating new one");
+				entry = new PooledService(factory.create(), now, sessionTimeout);
+			}
+			entry.lastUsed = now;
+			synchronized (this) {
+				leased.put(entry.service, entry);
+			}
+			return entry.service;
+		} catch (AnaplanConnectionException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Takes the most recently used idle service that has not expired.
+	 *
+	 * @return Idle service, or null if there is none.
+	 * @throws AnaplanConnectionException If the pool is closed.
+	 */
+	private synchronized PooledService pollIdle(long now)
+			throws AnaplanConnectionException {
+		if (closed) {
+			throw new AnaplanConnectionException("Connection pool is closed");
+		}
+		evictIdle(now);
+		return idle.pollFirst();
+	}
+
+	/**
+	 * Hands a borrowed service back to the pool.
+	 *
+	 * @param service Borrowed service.
+	 * @return False if the service was not leased from this pool.
+	 */
+	public boolean release(Service service) {
+		final long now = System.currentTimeMillis();
+		synchronized (this) {
+			final PooledService entry = leased.remove(service);
+			if (entry == null) {
+				return false;
+			}
+			if (closed || entry.isExpired(now)) {
+				factory.destroy(entry.service);
+			} else {
+				entry.lastUsed = now;
+				idle.addFirst(entry);
+				evictIdle(now);
+			}
+		}
+		permits.release();
+		return true;
+	}
+
+	/**
+	 * Discards a borrowed service instead of returning it to the pool.
+	 *
+	 * @param service Borrowed service.
+	 * @return False if the service was not leased from this pool.
+	 */
+	public boolean invalidate(Service service) {
+		synchronized (this) {
+			final PooledService entry = leased.remove(service);
+			if (entry == null) {
+				return false;
+			}
+			factory.destroy(entry.service);
+		}
+		permits.release();
+		return true;
+	}
+
+	/**
+	 * Closes expired idle services, and surplus idle services that have not
+	 * been used within the idle timeout.
+	 */
+	private void evictIdle(long now) {
+		final Iterator<PooledService> oldestFirst = idle.descendingIterator();
+		while (oldestFirst.hasNext()) {
+			final PooledService entry = oldestFirst.next();
+			if (entry.isExpired(now) || (idle.size() > minIdle
+					&& now - entry.lastUsed > idleTimeout)) {
+				oldestFirst.remove();
+				factory.destroy(entry.service);
+				logger.debug("Evicted pooled connection");
+			}
+		}
+	}
+
+	/**
+	 * Closes all idle services. Leased services are closed as they are
+	 * released.
+	 */
+	public synchronized void close() {
+		closed = true;
+		for (PooledService entry : idle) {
+			factory.destroy(entry.service);
+		}
+		idle.clear();
+	}
+
+	public synchronized int getIdleCount() {
+		return idle.size();
+	}
+
+	public synchronized int getLeasedCount() {
+		return leased.size();
+	}
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.utils;
+
+import java.io.Serializable;
+
+
+/**
+ * Outcome of a single action run as part of a chain of actions.
+ */
+public class ActionResult implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final ActionType actionType;
+	private final String actionId;
+	private final OperationStatus status;
+	private final String message;
+	private final long durationMillis;
+	private final boolean skipped;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param actionType Type of the action.
+	 * @param actionId ID or name of the action.
+	 * @param status Status of the action, where APPLICATION_ERROR means it
+	 *      completed with warnings, e.g. rows rejected by an import.
+	 * @param message Server logs of the action, or the cause of its failure.
+	 * @param durationMillis Milliseconds it took to run the action.
+	 * @param skipped Whether the action was not run since an action it
+	 *      depends on failed.
+	 */
+	public ActionResult(ActionType actionType, String actionId,
+			OperationStatus status, String message, long durationMillis,
+			boolean skipped) {
+		this.actionType = actionType;
+		this.actionId = actionId;
+		this.status = status;
+		this.message = message;
+		this.durationMillis = durationMillis;
+		this.skipped = skipped;
+	}
+
+	/**
+	 * Result of an action that was not run since the provided dependency
+	 * failed.
+	 *
+	 * @param actionType Type of the skipped action.
+	 * @param actionId ID or name of the skipped action.
+	 * @param failedDependency Action that failed, e.g. "import:Load".
+	 * @return Result of the skipped action.
+	 */
+	public static ActionResult skipped(ActionType actionType, String actionId,
+			String failedDependency) {
+		return new ActionResult(actionType, actionId, OperationStatus.FAILURE,
+				"Skipped since " + failedDependency + " failed", 0, true);
+	}
+
+	public ActionType getActionType() {
+		return actionType;
+	}
+
+	public String getActionId() {
+		return actionId;
+	}
+
+	public OperationStatus getStatus() {
+		return status;
+	}
+
+	/**
+	 * Whether the action ran, even if with warnings.
+	 */
+	public boolean isSuccessful() {
+		return status != OperationStatus.FAILURE;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	public boolean isSkipped() {
+		return skipped;
+	}
+
+	@Override
+	public String toString() {
+		return actionType.name().toLowerCase() + ":" + actionId + " "
+				+ (skipped ? "SKIPPED" : status) + " in " + durationMillis
+				+ " ms";
+	}
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.utils;
+
+/**
+ * Types of Anaplan actions that can be run as server tasks on their own.
+ */
+public enum ActionType {
+
+	IMPORT,
+	EXPORT,
+	DELETE,
+	PROCESS;
+
+	/**
+	 * Looks up the type by its case-insensitive name, e.g. "import".
+	 *
+	 * @param name Name of the action type.
+	 * @return Action type.
+	 * @throws IllegalArgumentException If no type has the provided name.
+	 */
+	public static ActionType fromName(String name) {
+		for (ActionType type : values()) {
+			if (type.name().equalsIgnoreCase(name.trim())) {
+				return type;
+			}
+		}
+		throw new IllegalArgumentException("Unknown action type: " + name);
+	}
+}
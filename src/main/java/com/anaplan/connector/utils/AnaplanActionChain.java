@@ -0,0 +1,366 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.utils;
+
+
+import com.anaplan.client.Service;
+import com.anaplan.connector.connection.AnaplanConnection;
+import com.anaplan.connector.exceptions.AnaplanConnectionException;
+import com.anaplan.connector.exceptions.AnaplanOperationException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Runs a chain of import, export, delete and process actions of a single
+ * model, running every action as soon as the actions it depends on have
+ * completed, with up to a bounded number of actions running concurrently.
+ * Every action runs on a connection borrowed from the pool of the shared
+ * API connection, so sessions are reused across the chain. When an action
+ * fails, the actions depending on it, directly or not, are skipped while
+ * all others still run.
+ *
+ * Actions are written as "type:ID", e.g. "import:Load Employees", and
+ * dependencies as "action -> dependent action", e.g.
+ * "import:Load Employees -> process:Recalculate".
+ */
+public class AnaplanActionChain {
+
+	private static Logger logger = LogManager.getLogger(
+			AnaplanActionChain.class.getName());
+
+	public static final int DEFAULT_CONCURRENT_ACTIONS = 4;
+	private static final String DEPENDENCY_ARROW = "->";
+
+	private final AnaplanConnection apiConn;
+	private final int maxConcurrentActions;
+
+	/**
+	 * An action of the chain, along with the actions depending on it.
+	 */
+	private static class Node {
+		final String name;
+		final ActionType actionType;
+		final String actionId;
+		final List<Node> dependents = new ArrayList<>();
+		int pendingDependencies = 0;
+		ActionResult result;
+
+		Node(String name, ActionType actionType, String actionId) {
+			this.name = name;
+			this.actionType = actionType;
+			this.actionId = actionId;
+		}
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param apiConn Anaplan API connection object to borrow connections from.
+	 * @param maxConcurrentActions Maximum number of actions run concurrently.
+	 * @throws IllegalArgumentException If the concurrency is not positive.
+	 */
+	public AnaplanActionChain(AnaplanConnection apiConn,
+			int maxConcurrentActions) {
+		if (maxConcurrentActions < 1) {
+			throw new IllegalArgumentException("At least one concurrent action "
+					+ "is required: " + maxConcurrentActions);
+		}
+		this.apiConn = apiConn;
+		this.maxConcurrentActions = maxConcurrentActions;
+	}
+
+	/**
+	 * Runs the provided actions, respecting the provided dependencies, and
+	 * waits for all of them to complete or be skipped.
+	 *
+	 * @param workspaceId Anaplan Workspace ID
+	 * @param modelId Anaplan Model ID
+	 * @param actions Actions to run, as "type:ID".
+	 * @param dependencies Dependencies between the actions, as
+	 *      "action -> dependent action". May be null.
+	 * @return Results of the actions, in the order they were provided in.
+	 * @throws AnaplanOperationException Thrown when an action or dependency
+	 *      is malformed, the dependencies are cyclic, or the chain is
+	 *      interrupted.
+	 */
+	public List<ActionResult> run(final String workspaceId,
+			final String modelId, List<String> actions,
+			List<String> dependencies) throws AnaplanOperationException {
+
+		final Map<String, Node> nodes = parseActions(actions);
+		parseDependencies(nodes, dependencies);
+		checkAcyclic(nodes);
+
+		logger.info("<< Starting chain of {} actions >>", nodes.size());
+		final ExecutorService workers = Executors.newFixedThreadPool(
+				Math.min(maxConcurrentActions, Math.max(nodes.size(), 1)),
+				new ChainThreadFactory());
+		final CompletionService<Node> completions =
+				new ExecutorCompletionService<>(workers);
+		int running = 0;
+		try {
+			for (Node node : nodes.values()) {
+				if (node.pendingDependencies == 0) {
+					submit(completions, node, workspaceId, modelId);
+					running++;
+				}
+			}
+			while (running > 0) {
+				final Node done = completions.take().get();
+				running--;
+				for (Node dependent : done.dependents) {
+					if (dependent.result != null) {
+						continue;
+					}
+					if (!done.result.isSuccessful()) {
+						skip(dependent, done.name);
+					} else if (--dependent.pendingDependencies == 0) {
+						submit(completions, dependent, workspaceId, modelId);
+						running++;
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AnaplanOperationException("Interrupted while running "
+					+ "actions!", e);
+		} catch (ExecutionException e) {
+			// failures are reported in the results, so this is unexpected
+			throw new AnaplanOperationException("Error running actions:",
+					e.getCause());
+		} finally {
+			workers.shutdownNow();
+		}
+
+		final List<ActionResult> results = new ArrayList<>(nodes.size());
+		for (Node node : nodes.values()) {
+			results.add(node.result);
+		}
+		logger.info("Chain complete: {}", results);
+		return results;
+	}
+
+	private void submit(CompletionService<Node> completions, final Node node,
+			final String workspaceId, final String modelId) {
+		completions.submit(new Callable<Node>() {
+			@Override
+			public Node call() {
+				try {
+					node.result = runAction(workspaceId, modelId,
+							node.actionType, node.actionId);
+				} catch (RuntimeException e) {
+					logger.error("Error running " + node.name, e);
+					node.result = new ActionResult(node.actionType,
+							node.actionId, OperationStatus.FAILURE,
+							e.toString(), 0, false);
+				}
+				return node;
+			}
+		});
+	}
+
+	/**
+	 * Skips the provided action and, transitively, all actions depending on
+	 * it.
+	 */
+	private static void skip(Node node, String failedDependency) {
+		final Deque<Node> toSkip = new ArrayDeque<>();
+		node.result = ActionResult.skipped(node.actionType, node.actionId,
+				failedDependency);
+		toSkip.push(node);
+		while (!toSkip.isEmpty()) {
+			final Node skipped = toSkip.pop();
+			for (Node dependent : skipped.dependents) {
+				if (dependent.result == null) {
+					dependent.result = ActionResult.skipped(
+							dependent.actionType, dependent.actionId,
+							skipped.name);
+					toSkip.push(dependent);
+				}
+			}
+		}
+		logger.warn("Skipped {} since {} failed", node.name, failedDependency);
+	}
+
+	/**
+	 * Runs a single action on a connection borrowed from the pool.
+	 *
+	 * @param workspaceId Anaplan Workspace ID
+	 * @param modelId Anaplan Model ID
+	 * @param actionType Type of the action.
+	 * @param actionId Anaplan action ID.
+	 * @return Result of running the action.
+	 */
+	protected ActionResult runAction(String workspaceId, String modelId,
+			ActionType actionType, String actionId) {
+		final Service service;
+		try {
+			service = apiConn.borrowConnection();
+		} catch (AnaplanConnectionException e) {
+			return new ActionResult(actionType, actionId,
+					OperationStatus.FAILURE, e.getMessage(), 0, false);
+		}
+		try {
+			return new AnaplanActionOperation(apiConn, service).runAction(
+					workspaceId, modelId, actionType, actionId);
+		} finally {
+			apiConn.releaseConnection(service);
+		}
+	}
+
+	private static Map<String, Node> parseActions(List<String> actions)
+			throws AnaplanOperationException {
+		if (actions == null || actions.isEmpty()) {
+			throw new AnaplanOperationException("No actions provided!");
+		}
+		final Map<String, Node> nodes = new LinkedHashMap<>();
+		for (String action : actions) {
+			final int separator = action.indexOf(':');
+			if (separator < 1 || separator == action.length() - 1) {
+				throw new AnaplanOperationException("Invalid action, expected "
+						+ "\"type:ID\": " + action);
+			}
+			final ActionType actionType;
+			try {
+				actionType = ActionType.fromName(
+						action.substring(0, separator));
+			} catch (IllegalArgumentException e) {
+				throw new AnaplanOperationException(e.getMessage());
+			}
+			final String actionId = action.substring(separator + 1).trim();
+			final String name = actionType.name().toLowerCase() + ":"
+					+ actionId;
+			if (nodes.containsKey(name)) {
+				throw new AnaplanOperationException("Duplicate action: "
+						+ action);
+			}
+			nodes.put(name, new Node(name, actionType, actionId));
+		}
+		return nodes;
+	}
+
+	private static void parseDependencies(Map<String, Node> nodes,
+			List<String> dependencies) throws AnaplanOperationException {
+		if (dependencies == null) {
+			return;
+		}
+		for (String dependency : dependencies) {
+			final String[] ends = dependency.split(DEPENDENCY_ARROW);
+			if (ends.length != 2) {
+				throw new AnaplanOperationException("Invalid dependency, "
+						+ "expected \"action -> dependent action\": "
+						+ dependency);
+			}
+			final Node before = findNode(nodes, ends[0], dependency);
+			final Node after = findNode(nodes, ends[1], dependency);
+			before.dependents.add(after);
+			after.pendingDependencies++;
+		}
+	}
+
+	private static Node findNode(Map<String, Node> nodes, String action,
+			String dependency) throws AnaplanOperationException {
+		final int separator = action.indexOf(':');
+		Node node = null;
+		if (separator > 0) {
+			try {
+				node = nodes.get(ActionType.fromName(
+						action.substring(0, separator)).name().toLowerCase()
+						+ ":" + action.substring(separator + 1).trim());
+			} catch (IllegalArgumentException e) {
+				// reported below
+			}
+		}
+		if (node == null) {
+			throw new AnaplanOperationException("Dependency refers to an "
+					+ "action not being run: " + dependency);
+		}
+		return node;
+	}
+
+	/**
+	 * Checks that the dependencies contain no cycles, which would leave the
+	 * actions on them waiting forever.
+	 */
+	private static void checkAcyclic(Map<String, Node> nodes)
+			throws AnaplanOperationException {
+		final Map<Node, Integer> pending = new LinkedHashMap<>();
+		final Deque<Node> ready = new ArrayDeque<>();
+		for (Node node : nodes.values()) {
+			pending.put(node, node.pendingDependencies);
+			if (node.pendingDependencies == 0) {
+				ready.add(node);
+			}
+		}
+		int ordered = 0;
+		while (!ready.isEmpty()) {
+			final Node node = ready.poll();
+			ordered++;
+			for (Node dependent : node.dependents) {
+				final int left = pending.get(dependent) - 1;
+				pending.put(dependent, left);
+				if (left == 0) {
+					ready.add(dependent);
+				}
+			}
+		}
+		if (ordered < nodes.size()) {
+			final List<String> cyclic = new ArrayList<>();
+			for (Map.Entry<Node, Integer> entry : pending.entrySet()) {
+				if (entry.getValue() > 0) {
+					cyclic.add(entry.getKey().name);
+				}
+			}
+			throw new AnaplanOperationException("Cyclic dependencies between "
+					+ "actions: " + cyclic);
+		}
+	}
+
+	/**
+	 * Names the worker threads, so they can be told apart in thread dumps.
+	 */
+	private static class ChainThreadFactory implements ThreadFactory {
+
+		private static final AtomicInteger chainCount = new AtomicInteger();
+		private final int chainNumber = chainCount.incrementAndGet();
+		private final AtomicInteger threadCount = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			final Thread thread = new Thread(runnable, "anaplan-action-chain-"
+					+ chainNumber + "-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
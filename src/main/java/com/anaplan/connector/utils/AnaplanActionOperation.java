@@ -0,0 +1,158 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.utils;
+
+
+import com.anaplan.client.AnaplanAPIException;
+import com.anaplan.client.Service;
+import com.anaplan.client.TaskFactory;
+import com.anaplan.client.TaskResult;
+import com.anaplan.client.TaskStatus;
+import com.anaplan.connector.connection.AnaplanConnection;
+import com.anaplan.connector.exceptions.AnaplanOperationException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * Runs an import, export, delete or process action as a server task on its
+ * own, without uploading or downloading any data. Imports run on the data
+ * last uploaded to their source file, and exports leave their data in their
+ * server-file.
+ */
+public class AnaplanActionOperation extends BaseAnaplanOperation {
+
+	private static Logger logger = LogManager.getLogger(
+			AnaplanActionOperation.class.getName());
+
+	/**
+	 * Constructor.
+	 *
+	 * @param apiConn Anaplan API connection object.
+	 * @param service Service object to run the operation with.
+	 */
+	public AnaplanActionOperation(AnaplanConnection apiConn, Service service) {
+		super(apiConn, service);
+	}
+
+	/**
+	 * Fetches the action of the provided type through the metadata cache.
+	 */
+	private TaskFactory fetchAction(final ActionType actionType,
+			final String actionId) throws AnaplanAPIException {
+		return fetchModelMetadata(metadataType(actionType), actionId,
+				new MetadataCache.Loader<TaskFactory>() {
+					@Override
+					public TaskFactory load() throws AnaplanAPIException {
+						switch (actionType) {
+							case IMPORT:
+								return model.getImport(actionId);
+							case EXPORT:
+								return model.getExport(actionId);
+							case DELETE:
+								return model.getAction(actionId);
+							default:
+								return model.getProcess(actionId);
+						}
+					}
+				});
+	}
+
+	/**
+	 * Metadata cache type of the actions of the provided type, shared with
+	 * the respective operations.
+	 */
+	private static String metadataType(ActionType actionType) {
+		switch (actionType) {
+			case IMPORT:
+				return IMPORT_METADATA;
+			case EXPORT:
+				return EXPORT_METADATA;
+			case DELETE:
+				return ACTION_METADATA;
+			default:
+				return PROCESS_METADATA;
+		}
+	}
+
+	/**
+	 * Runs the provided action and waits for it to complete. Failures are
+	 * reported in the result rather than thrown, so that a chain of actions
+	 * can carry on with the actions not depending on the failed one.
+	 *
+	 * @param workspaceId Anaplan Workspace ID
+	 * @param modelId Anaplan Model ID
+	 * @param actionType Type of the action.
+	 * @param actionId Anaplan action ID.
+	 * @return Result of running the action.
+	 */
+	public ActionResult runAction(String workspaceId, String modelId,
+			ActionType actionType, String actionId) {
+
+		logger.info("<< Starting {} action >>", actionType);
+		logger.info("Workspace-ID: {}", workspaceId);
+		logger.info("Model-ID: {}", modelId);
+		logger.info("Action-ID: {}", actionId);
+
+		final long startTime = System.currentTimeMillis();
+		try {
+			// validate workspace-ID and model-ID are valid
+			validateInput(workspaceId, modelId);
+
+			final TaskFactory action = fetchAction(actionType, actionId);
+			if (action == null) {
+				return result(actionType, actionId, OperationStatus.FAILURE,
+						"Invalid " + actionType.name().toLowerCase()
+								+ " ID provided: " + actionId, startTime);
+			}
+			final TaskStatus status = runTask(action, actionId);
+			setRunStatusDetails(collectTaskLogs(status));
+
+			final TaskResult taskResult = status.getResult();
+			final OperationStatus operationStatus;
+			if (status.getTaskState() != TaskStatus.State.COMPLETE
+					|| taskResult == null) {
+				operationStatus = OperationStatus.FAILURE;
+			} else if (taskResult.isFailureDumpAvailable()) {
+				operationStatus = OperationStatus.APPLICATION_ERROR;
+			} else if (taskResult.isSuccessful()) {
+				operationStatus = OperationStatus.SUCCESS;
+			} else {
+				operationStatus = OperationStatus.FAILURE;
+			}
+			return result(actionType, actionId, operationStatus,
+					getRunStatusDetails(), startTime);
+		} catch (AnaplanAPIException e) {
+			// the cached action may have been changed or removed on the server
+			invalidateModelMetadata(metadataType(actionType), actionId);
+			return result(actionType, actionId, OperationStatus.FAILURE,
+					"Error running " + actionType.name().toLowerCase()
+							+ " action: " + e.getMessage(), startTime);
+		} catch (AnaplanOperationException e) {
+			return result(actionType, actionId, OperationStatus.FAILURE,
+					e.getMessage(), startTime);
+		}
+	}
+
+	private static ActionResult result(ActionType actionType, String actionId,
+			OperationStatus status, String message, long startTime) {
+		final ActionResult result = new ActionResult(actionType, actionId,
+				status, message, System.currentTimeMillis() - startTime, false);
+		logger.info("Action complete: {}", result);
+		return result;
+	}
+}
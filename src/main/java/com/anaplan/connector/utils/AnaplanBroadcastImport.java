@@ -0,0 +1,235 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.utils;
+
+
+import com.anaplan.client.Service;
+import com.anaplan.connector.connection.AnaplanConnection;
+import com.anaplan.connector.exceptions.AnaplanConnectionException;
+import com.anaplan.connector.exceptions.AnaplanOperationException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Imports the same data into many models, possibly of different workspaces,
+ * with up to a bounded number of imports running concurrently. The data is
+ * read and encoded once and every import uploads it from memory, on a
+ * connection borrowed from the pool of the shared API connection, so
+ * authentication happens once for all targets.
+ *
+ * Targets are written as "workspace/model", with the workspace and model
+ * given by name or ID, e.g. "Finance/Reference Data".
+ */
+public class AnaplanBroadcastImport {
+
+	private static Logger logger = LogManager.getLogger(
+			AnaplanBroadcastImport.class.getName());
+
+	public static final int DEFAULT_CONCURRENT_IMPORTS = 4;
+	private static final char TARGET_SEPARATOR = '/';
+
+	private final AnaplanConnection apiConn;
+	private final ChunkedUploader uploader;
+	private final int maxConcurrentImports;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param apiConn Anaplan API connection object to borrow connections from.
+	 * @param uploader Chunked uploader shared by all imports.
+	 * @param maxConcurrentImports Maximum number of imports run concurrently.
+	 * @throws IllegalArgumentException If the concurrency is not positive.
+	 */
+	public AnaplanBroadcastImport(AnaplanConnection apiConn,
+			ChunkedUploader uploader, int maxConcurrentImports) {
+		if (maxConcurrentImports < 1) {
+			throw new IllegalArgumentException("At least one concurrent import "
+					+ "is required: " + maxConcurrentImports);
+		}
+		this.apiConn = apiConn;
+		this.uploader = uploader;
+		this.maxConcurrentImports = maxConcurrentImports;
+	}
+
+	/**
+	 * Imports the provided data into every target and waits for all imports
+	 * to complete. A failed import does not stop the imports into the other
+	 * targets, it is reported in its result instead.
+	 *
+	 * @param data Encoded import CSV data.
+	 * @param targets Targets to import into, as "workspace/model".
+	 * @param importId Anaplan Import name or ID, the same in every model.
+	 * @param columnSeparator Column separator for cell values.
+	 * @param delimiter Escape character for cell values.
+	 * @return Results of the imports, in the order the targets were provided
+	 *      in.
+	 * @throws AnaplanOperationException Thrown when a target is malformed or
+	 *      the broadcast is interrupted.
+	 */
+	public List<TargetImportResult> run(final byte[] data,
+			List<String> targets, final String importId,
+			final String columnSeparator, final String delimiter)
+					throws AnaplanOperationException {
+
+		final List<String[]> parsedTargets = parseTargets(targets);
+
+		logger.info("<< Starting import of {} bytes into {} models >>",
+				data.length, parsedTargets.size());
+		final ExecutorService workers = Executors.newFixedThreadPool(
+				Math.min(maxConcurrentImports, parsedTargets.size()),
+				new BroadcastThreadFactory());
+		final List<Future<TargetImportResult>> pending = new ArrayList<>();
+		final List<TargetImportResult> results = new ArrayList<>();
+		try {
+			for (final String[] target : parsedTargets) {
+				pending.add(workers.submit(new Callable<TargetImportResult>() {
+					@Override
+					public TargetImportResult call() {
+						return importInto(target[0], target[1], data,
+								importId, columnSeparator, delimiter);
+					}
+				}));
+			}
+			for (Future<TargetImportResult> future : pending) {
+				results.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AnaplanOperationException("Interrupted while importing "
+					+ "into models!", e);
+		} catch (ExecutionException e) {
+			// failures are reported in the results, so this is unexpected
+			throw new AnaplanOperationException("Error importing into models:",
+					e.getCause());
+		} finally {
+			workers.shutdownNow();
+		}
+		logger.info("Broadcast import complete: {}", results);
+		return results;
+	}
+
+	private TargetImportResult importInto(String workspaceId, String modelId,
+			byte[] data, String importId, String columnSeparator,
+			String delimiter) {
+		final long startTime = System.currentTimeMillis();
+		try {
+			return new TargetImportResult(workspaceId, modelId,
+					runImport(ReplayableInputStream.of(data), workspaceId,
+							modelId, importId, columnSeparator, delimiter));
+		} catch (AnaplanOperationException | AnaplanConnectionException e) {
+			return failure(workspaceId, modelId, e.getMessage(), startTime);
+		} catch (RuntimeException e) {
+			logger.error("Error importing into " + workspaceId
+					+ TARGET_SEPARATOR + modelId, e);
+			return failure(workspaceId, modelId, e.toString(), startTime);
+		}
+	}
+
+	private static TargetImportResult failure(String workspaceId,
+			String modelId, String message, long startTime) {
+		logger.warn("Import into {}{}{} failed: {}", workspaceId,
+				TARGET_SEPARATOR, modelId, message);
+		return new TargetImportResult(workspaceId, modelId, message,
+				System.currentTimeMillis() - startTime);
+	}
+
+	/**
+	 * Runs a single import on a connection borrowed from the pool.
+	 *
+	 * @param data Import CSV data stream.
+	 * @param workspaceId Anaplan Workspace ID
+	 * @param modelId Anaplan Model ID
+	 * @param importId Anaplan Import ID
+	 * @param columnSeparator Column separator for cell values.
+	 * @param delimiter Escape character for cell values.
+	 * @return Result of the import.
+	 * @throws AnaplanConnectionException Thrown when no connection could be
+	 *      borrowed.
+	 * @throws AnaplanOperationException Thrown when the import fails.
+	 */
+	protected ImportResult runImport(InputStream data, String workspaceId,
+			String modelId, String importId, String columnSeparator,
+			String delimiter) throws AnaplanConnectionException,
+					AnaplanOperationException {
+		final Service service = apiConn.borrowConnection();
+		try {
+			return new AnaplanImportOperation(apiConn, service, uploader)
+					.runImportForResult(data, workspaceId, modelId, importId,
+							columnSeparator, delimiter);
+		} finally {
+			apiConn.releaseConnection(service);
+		}
+	}
+
+	private static List<String[]> parseTargets(List<String> targets)
+			throws AnaplanOperationException {
+		if (targets == null || targets.isEmpty()) {
+			throw new AnaplanOperationException("No target models provided!");
+		}
+		final Set<String> seen = new LinkedHashSet<>();
+		final List<String[]> parsed = new ArrayList<>(targets.size());
+		for (String target : targets) {
+			final int separator = target.indexOf(TARGET_SEPARATOR);
+			final String workspaceId = separator < 0 ? ""
+					: target.substring(0, separator).trim();
+			final String modelId = separator < 0 ? ""
+					: target.substring(separator + 1).trim();
+			if (workspaceId.isEmpty() || modelId.isEmpty()) {
+				throw new AnaplanOperationException("Invalid target, expected "
+						+ "\"workspace/model\": " + target);
+			}
+			if (!seen.add(workspaceId + TARGET_SEPARATOR + modelId)) {
+				throw new AnaplanOperationException("Duplicate target: "
+						+ target);
+			}
+			parsed.add(new String[] {workspaceId, modelId});
+		}
+		return parsed;
+	}
+
+	/**
+	 * Names the worker threads, so they can be told apart in thread dumps.
+	 */
+	private static class BroadcastThreadFactory implements ThreadFactory {
+
+		private static final AtomicInteger broadcastCount = new AtomicInteger();
+		private final int broadcastNumber = broadcastCount.incrementAndGet();
+		private final AtomicInteger threadCount = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			final Thread thread = new Thread(runnable, "anaplan-broadcast-"
+					+ broadcastNumber + "-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
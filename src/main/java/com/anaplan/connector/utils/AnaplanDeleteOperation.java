@@ -19,8 +19,7 @@ package com.anaplan.connector.utils;
 
 import com.anaplan.client.Action;
 import com.anaplan.client.AnaplanAPIException;
-import com.anaplan.client.Model;
-import com.anaplan.client.Task;
+import com.anaplan.client.Service;
 import com.anaplan.client.TaskStatus;
 import com.anaplan.connector.MulesoftAnaplanResponse;
 import com.anaplan.connector.connection.AnaplanConnection;
@@ -46,21 +45,35 @@ public class AnaplanDeleteOperation extends BaseAnaplanOperation {
 		super(apiConn);
 	}
 
+	/**
+	 * Constructor.
+	 * @param apiConn Anaplan API connection object.
+	 * @param service Service object to run the operation with.
+	 */
+	public AnaplanDeleteOperation(AnaplanConnection apiConn, Service service) {
+		super(apiConn, service);
+	}
+
 	/**
 	 * Used to run delete or M2M operations, or any such action that does not
 	 * rely on any input from the flow or outputs any data to the flow. This
 	 * allows you to execute any inert operation within Anaplan's core
 	 * infrastructure.
 	 *
-	 * @param model Anaplan Model object.
 	 * @param actionId Anaplan Delete action ID.
 	 * @return Response object containing details of executing delete.
 	 * @throws AnaplanAPIException Thrown when errors at talkng to API.
 	 */
-	private static MulesoftAnaplanResponse runDeleteAction(Model model,
-			String actionId) throws AnaplanAPIException {
+	private MulesoftAnaplanResponse runDeleteAction(final String actionId)
+			throws AnaplanAPIException {
 
-		final Action action = model.getAction(actionId);
+		final Action action = fetchModelMetadata(ACTION_METADATA, actionId,
+				new MetadataCache.Loader<Action>() {
+					@Override
+					public Action load() throws AnaplanAPIException {
+						return model.getAction(actionId);
+					}
+				});
 
 		if (action == null) {
 			final String msg = UserMessages.getMessage("invalidAction",
@@ -68,8 +81,7 @@ public class AnaplanDeleteOperation extends BaseAnaplanOperation {
 			return MulesoftAnaplanResponse.executeActionFailure(msg, null);
 		}
 
-		final Task task = action.createTask();
-		final TaskStatus status = AnaplanUtil.runServerTask(task);
+		final TaskStatus status = runTask(action, actionId);
 
 		if (status.getTaskState() == TaskStatus.State.COMPLETE &&
 		    status.getResult().isSuccessful()) {
@@ -110,16 +122,15 @@ public class AnaplanDeleteOperation extends BaseAnaplanOperation {
 
 		// run the export
 		try {
-			final MulesoftAnaplanResponse anaplanResponse = runDeleteAction(model,
+			final MulesoftAnaplanResponse anaplanResponse = runDeleteAction(
 					deleteActionId);
+			setResponseStatus(anaplanResponse.getStatus());
 			logger.info("Action complete: Status: {}, Response message: {}",
 					anaplanResponse.getStatus(),
 					anaplanResponse.getResponseMessage());
 
 		} catch (AnaplanAPIException e) {
 			throw new AnaplanOperationException(e.getMessage(), e);
-		} finally {
-			apiConn.closeConnection();
 		}
 
 		String statusMsg = "[" + deleteActionId + "] completed successfully!";
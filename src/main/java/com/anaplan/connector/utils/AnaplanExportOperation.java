@@ -20,9 +20,8 @@ package com.anaplan.connector.utils;
 import com.anaplan.client.AnaplanAPIException;
 import com.anaplan.client.Export;
 import com.anaplan.client.ExportMetadata;
-import com.anaplan.client.Model;
 import com.anaplan.client.ServerFile;
-import com.anaplan.client.Task;
+import com.anaplan.client.Service;
 import com.anaplan.client.TaskStatus;
 import com.anaplan.connector.MulesoftAnaplanResponse;
 import com.anaplan.connector.connection.AnaplanConnection;
@@ -30,7 +29,10 @@ import com.anaplan.connector.exceptions.AnaplanOperationException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 
 
 /**
@@ -44,67 +46,63 @@ public class AnaplanExportOperation extends BaseAnaplanOperation {
     private static Logger logger = LogManager.getLogger(
             AnaplanExportOperation.class.getName());
 
+	private final ChunkedDownloader downloader;
+
 	/**
 	 * Constructor
 	 * @param apiConn Anaplan API connection
 	 */
 	public AnaplanExportOperation(AnaplanConnection apiConn) {
 		super(apiConn);
+		this.downloader = new ChunkedDownloader();
+	}
+
+	/**
+	 * Constructor
+	 * @param apiConn Anaplan API connection
+	 * @param service Service object to run the export with.
+	 * @param downloader Downloader used by streaming exports to fetch chunks
+	 *                   ahead of the consumer.
+	 */
+	public AnaplanExportOperation(AnaplanConnection apiConn, Service service,
+			ChunkedDownloader downloader) {
+		super(apiConn, service);
+		this.downloader = downloader;
 	}
 
 	/**
 	 * Performs the Model export operation.
 	 *
-	 * @param model Anaplan Model object.
+	 * The export action and its metadata are fetched through the metadata
+	 * cache, whereas the export's server-file is always fetched anew since its
+	 * contents change with every run.
+	 *
 	 * @param exportId Anaplan Export ID
 	 * @return <code>AnaplanResponse</code> object.
 	 * @throws AnaplanAPIException Thrown when error creating export task, or
 	 *                             running it, or when building the response
 	 */
-	private static MulesoftAnaplanResponse doExport(Model model, String exportId)
+	private MulesoftAnaplanResponse doExport(final String exportId)
 			throws AnaplanOperationException {
 
-		Export exp;
-		try {
-			exp = model.getExport(exportId);
-		} catch (AnaplanAPIException e) {
-			throw new AnaplanOperationException("Error fetching Export action:", e);
-		}
-		if (exp == null) {
-			throw new AnaplanOperationException(UserMessages.getMessage(
-					"invalidExport", exportId));
-		}
+		final Export exp = fetchExport(exportId);
 
-		Task task;
 		TaskStatus status;
 		try {
-			task = exp.createTask();
-			status = AnaplanUtil.runServerTask(task);
+			status = runTask(exp, exportId);
 		} catch (AnaplanAPIException e) {
+			// the cached action may have been changed or removed on the server
+			invalidateModelMetadata(EXPORT_METADATA, exportId);
 			throw new AnaplanOperationException("Error running Export action:", e);
 		}
 
-		ExportMetadata exportMetadata;
-		try {
-			exportMetadata = exp.getExportMetadata();
-		} catch (AnaplanAPIException e) {
-			throw new AnaplanOperationException("Error fetching Export-metadata!");
-		}
+		final ExportMetadata exportMetadata = fetchExportMetadata(exp,
+				exportId);
 		if (status.getTaskState() == TaskStatus.State.COMPLETE &&
 			status.getResult().isSuccessful()) {
 			logger.info("Export completed successfully!");
 
-			ServerFile serverFile;
-			try {
-				serverFile = model.getServerFile(exp.getName());
-				if (serverFile == null) {
-					throw new AnaplanOperationException(UserMessages.getMessage(
-							"exportRetrieveError", exp.getName()));
-				}
-			} catch (AnaplanAPIException e) {
-				throw new AnaplanOperationException("Error fetching export " +
-						"Server-File:", e);
-			}
+			final ServerFile serverFile = fetchServerFile(exp, exportId);
 			// collect all server messages regarding the export, if any
 			setRunStatusDetails(collectTaskLogs(status));
 			logger.info(getRunStatusDetails());
@@ -118,6 +116,97 @@ public class AnaplanExportOperation extends BaseAnaplanOperation {
 		}
 	}
 
+	/**
+	 * Fetches the export action through the metadata cache.
+	 */
+	private Export fetchExport(final String exportId)
+			throws AnaplanOperationException {
+		final Export exp;
+		try {
+			exp = fetchModelMetadata(EXPORT_METADATA, exportId,
+					new MetadataCache.Loader<Export>() {
+						@Override
+						public Export load() throws AnaplanAPIException {
+							return model.getExport(exportId);
+						}
+					});
+		} catch (AnaplanAPIException e) {
+			throw new AnaplanOperationException("Error fetching Export action:", e);
+		}
+		if (exp == null) {
+			throw new AnaplanOperationException(UserMessages.getMessage(
+					"invalidExport", exportId));
+		}
+		return exp;
+	}
+
+	/**
+	 * Fetches the definition of the columns of the provided export through
+	 * the metadata cache.
+	 */
+	private ExportMetadata fetchExportMetadata(final Export exp,
+			String exportId) throws AnaplanOperationException {
+		try {
+			return fetchModelMetadata(EXPORT_DEFINITION_METADATA, exportId,
+					new MetadataCache.Loader<ExportMetadata>() {
+						@Override
+						public ExportMetadata load() throws AnaplanAPIException {
+							return exp.getExportMetadata();
+						}
+					});
+		} catch (AnaplanAPIException e) {
+			throw new AnaplanOperationException("Error fetching Export-metadata!");
+		}
+	}
+
+	/**
+	 * Fetches the server-file holding the data of the last run of the
+	 * provided export.
+	 */
+	private ServerFile fetchServerFile(Export exp, String exportId)
+			throws AnaplanOperationException {
+		final Span span = startSpan(Tracing.SERVER_FILE_SPAN, exportId);
+		try {
+			awaitRequest();
+			final ServerFile serverFile = model.getServerFile(exp.getName());
+			if (serverFile == null) {
+				throw new AnaplanOperationException(UserMessages.getMessage(
+						"exportRetrieveError", exp.getName()));
+			}
+			return serverFile;
+		} catch (AnaplanAPIException e) {
+			span.recordException(e);
+			throw new AnaplanOperationException("Error fetching export " +
+					"Server-File:", e);
+		} catch (AnaplanOperationException e) {
+			span.recordException(e);
+			throw e;
+		} finally {
+			span.end();
+		}
+	}
+
+	/**
+	 * Downloads the data of a completed export as a CSV string, traced as the
+	 * download phase of this operation.
+	 */
+	private String downloadExportData(MulesoftAnaplanResponse anaplanResponse,
+			String exportId) throws IOException, AnaplanAPIException,
+			AnaplanOperationException {
+		final Span span = startSpan(Tracing.DOWNLOAD_SPAN, exportId);
+		try {
+			final String exportData = anaplanResponse.writeExportData(apiConn);
+			span.setAttribute(Tracing.CHARACTERS, exportData.length());
+			return exportData;
+		} catch (IOException | AnaplanAPIException | AnaplanOperationException
+				| RuntimeException e) {
+			span.recordException(e);
+			throw e;
+		} finally {
+			span.end();
+		}
+	}
+
 	/**
 	 * Exports a model as a CSV using the provided workspace-ID, model-ID and
 	 * the export-ID.
@@ -143,20 +232,248 @@ public class AnaplanExportOperation extends BaseAnaplanOperation {
 		// run the export
 		MulesoftAnaplanResponse anaplanResponse = null;
 		try {
-			anaplanResponse = doExport(model, exportId);
+			anaplanResponse = doExport(exportId);
 			response = createResponse(anaplanResponse);
-			exportData = anaplanResponse.writeExportData(apiConn);
+			exportData = downloadExportData(anaplanResponse, exportId);
 			logger.info("Query complete: Status: {}, Response message: {}",
 					anaplanResponse.getStatus(),
 					anaplanResponse.getResponseMessage());
 
 		} catch (IOException | AnaplanAPIException e) {
 			throw new AnaplanOperationException(e.getMessage(), e);
-		} finally {
-			apiConn.closeConnection();
 		}
 
 		logger.info("{}", response);
 		return exportData;
 	}
+
+	/**
+	 * Streaming variant of {@link #runExport(String, String, String)}, which
+	 * returns the export data as a lazily downloaded stream instead of a
+	 * concatenated CSV string.
+	 *
+	 * @param workspaceId Anaplan Workspace ID
+	 * @param modelId Anaplan Model ID
+	 * @param exportId Anaplan Export action ID
+	 * @return Stream of the exported data.
+	 * @throws AnaplanOperationException
+	 */
+	public InputStream runExportStream(String workspaceId, String modelId,
+			String exportId) throws AnaplanOperationException {
+
+		String response;
+		InputStream exportStream;
+
+		logger.info("<< Starting streaming export >>");
+		logger.info("Workspace-ID: {}", workspaceId);
+		logger.info("Model-ID: {}", modelId);
+		logger.info("Export-ID: {}", exportId);
+
+		// validate that workspace, model and export-ID are valid.
+		validateInput(workspaceId, modelId);
+
+		// run the export
+		MulesoftAnaplanResponse anaplanResponse;
+		try {
+			anaplanResponse = doExport(exportId);
+			response = createResponse(anaplanResponse);
+			exportStream = anaplanResponse.streamExportData(apiConn, downloader);
+			logger.info("Query complete: Status: {}, Response message: {}",
+					anaplanResponse.getStatus(),
+					anaplanResponse.getResponseMessage());
+
+		} catch (IOException | AnaplanAPIException e) {
+			throw new AnaplanOperationException(e.getMessage(), e);
+		}
+
+		logger.info("{}", response);
+		return exportStream;
+	}
+
+	/**
+	 * Typed variant of {@link #runExport(String, String, String)}, which
+	 * returns the exported rows as records keyed by column name, with values
+	 * converted according to the export's data types. Rows are downloaded as
+	 * the records are iterated.
+	 *
+	 * @param workspaceId Anaplan Workspace ID
+	 * @param modelId Anaplan Model ID
+	 * @param exportId Anaplan Export action ID
+	 * @param onClose Resource to close once all records have been read or the
+	 *      iterator is closed, may be null.
+	 * @return Iterator over the exported records.
+	 * @throws AnaplanOperationException
+	 */
+	public ExportRecordIterator runExportRecords(String workspaceId,
+			String modelId, String exportId, Closeable onClose)
+					throws AnaplanOperationException {
+
+		String response;
+		ExportRecordIterator records;
+
+		logger.info("<< Starting record export >>");
+		logger.info("Workspace-ID: {}", workspaceId);
+		logger.info("Model-ID: {}", modelId);
+		logger.info("Export-ID: {}", exportId);
+
+		// validate that workspace, model and export-ID are valid.
+		validateInput(workspaceId, modelId);
+
+		// run the export
+		MulesoftAnaplanResponse anaplanResponse;
+		try {
+			anaplanResponse = doExport(exportId);
+			response = createResponse(anaplanResponse);
+			records = anaplanResponse.readExportRecords(apiConn, onClose);
+			logger.info("Query complete: Status: {}, Response message: {}",
+					anaplanResponse.getStatus(),
+					anaplanResponse.getResponseMessage());
+
+		} catch (IOException | AnaplanAPIException e) {
+			throw new AnaplanOperationException(e.getMessage(), e);
+		}
+
+		logger.info("{}", response);
+		return records;
+	}
+
+	/**
+	 * File variant of {@link #runExport(String, String, String)}, which
+	 * downloads the export data into a local file, resuming at the failed
+	 * chunk when downloading a chunk fails. With a checkpoint file, the
+	 * completed chunks are also recorded in it, so that a later run resumes
+	 * a download that failed for good: the export is then not run again, and
+	 * the missing chunks are downloaded from its server-file, which still
+	 * holds the data of the earlier run. The checkpoint is discarded and the
+	 * export run again unless it was recorded for the same export,
+	 * server-file ID and chunk count, target and chunk size. As server-files
+	 * can only be downloaded from their start, resuming downloads the
+	 * completed chunks again, and compares them with the target rather than
+	 * writing them: if they differ, the export was run again since, and the
+	 * whole server-file is downloaded again.
+	 *
+	 * @param workspaceId Anaplan Workspace ID
+	 * @param modelId Anaplan Model ID
+	 * @param exportId Anaplan Export action ID
+	 * @param target File to write the export data to.
+	 * @param checkpointFile File recording the completed chunks, which is
+	 *      deleted once the download completed. May be null.
+	 * @return Size of the export data in bytes.
+	 * @throws AnaplanOperationException
+	 */
+	public long runExportToFile(String workspaceId, String modelId,
+			String exportId, File target, File checkpointFile)
+					throws AnaplanOperationException {
+
+		logger.info("<< Starting export to file >>");
+		logger.info("Workspace-ID: {}", workspaceId);
+		logger.info("Model-ID: {}", modelId);
+		logger.info("Export-ID: {}", exportId);
+		logger.info("Target: {}", target);
+
+		// validate that workspace, model and export-ID are valid.
+		validateInput(workspaceId, modelId);
+
+		final DownloadCheckpoint checkpoint;
+		try {
+			checkpoint = checkpointFile == null ? new DownloadCheckpoint()
+					: new DownloadCheckpoint(checkpointFile);
+		} catch (IOException e) {
+			throw new AnaplanOperationException("Error opening download "
+					+ "checkpoint " + checkpointFile + ":", e);
+		}
+		try {
+			// run the export, unless resuming the download of an earlier run
+			MulesoftAnaplanResponse anaplanResponse = null;
+			if (checkpoint.getCompletedCount() > 0) {
+				anaplanResponse = resumeExport(exportId, target, checkpoint);
+			}
+			if (anaplanResponse == null) {
+				anaplanResponse = doExport(exportId);
+			}
+			final String response = createResponse(anaplanResponse);
+			bindCheckpoint(checkpoint, exportId,
+					anaplanResponse.getServerFile(), target);
+			final long bytes = downloadExportData(anaplanResponse, exportId,
+					target, checkpoint);
+			logger.info("Query complete: Status: {}, Response message: {}",
+					anaplanResponse.getStatus(),
+					anaplanResponse.getResponseMessage());
+			logger.info("{}", response);
+			return bytes;
+		} finally {
+			try {
+				checkpoint.close();
+			} catch (IOException e) {
+				logger.warn("Error closing {}: {}", checkpoint, e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Builds the response of an earlier run of the provided export, whose
+	 * download is resumed from the checkpoint.
+	 *
+	 * @return The response, or null if the checkpoint was recorded for
+	 *      another download and was discarded.
+	 */
+	private MulesoftAnaplanResponse resumeExport(String exportId, File target,
+			DownloadCheckpoint checkpoint) throws AnaplanOperationException {
+		final Export exp = fetchExport(exportId);
+		final ServerFile serverFile = fetchServerFile(exp, exportId);
+		if (!bindCheckpoint(checkpoint, exportId, serverFile, target)) {
+			logger.info("Checkpoint does not match the server-file of Export "
+					+ "{}, running it again", exportId);
+			return null;
+		}
+		logger.info("Resuming download from {}", checkpoint);
+		return MulesoftAnaplanResponse.exportSuccess("RESUMED", serverFile,
+				fetchExportMetadata(exp, exportId));
+	}
+
+	/**
+	 * Binds the checkpoint to the download of the provided server-file into
+	 * the target.
+	 *
+	 * @return Whether the completed chunks of the checkpoint were kept.
+	 */
+	private boolean bindCheckpoint(DownloadCheckpoint checkpoint,
+			String exportId, ServerFile serverFile, File target)
+					throws AnaplanOperationException {
+		final String identity = "export=" + exportId
+				+ " serverFile=" + serverFile.getId()
+				+ " chunks=" + serverFile.getChunkCount()
+				+ " chunkSize=" + downloader.getChunkSize()
+				+ " target=" + target.getAbsolutePath();
+		try {
+			return checkpoint.bind(identity);
+		} catch (IOException e) {
+			throw new AnaplanOperationException("Error writing download "
+					+ "checkpoint " + checkpoint.getFile() + ":", e);
+		}
+	}
+
+	/**
+	 * Downloads the data of a completed export into a local file, traced as
+	 * the download phase of this operation.
+	 */
+	private long downloadExportData(MulesoftAnaplanResponse anaplanResponse,
+			String exportId, File target, DownloadCheckpoint checkpoint)
+					throws AnaplanOperationException {
+		final Span span = startSpan(Tracing.DOWNLOAD_SPAN, exportId);
+		try {
+			final long bytes = anaplanResponse.downloadExportData(apiConn,
+					downloader, target, checkpoint);
+			span.setAttribute(Tracing.BYTES, bytes);
+			return bytes;
+		} catch (AnaplanOperationException | RuntimeException e) {
+			span.recordException(e);
+			throw e;
+		} catch (IOException | AnaplanAPIException e) {
+			span.recordException(e);
+			throw new AnaplanOperationException(e.getMessage(), e);
+		} finally {
+			span.end();
+		}
+	}
 }
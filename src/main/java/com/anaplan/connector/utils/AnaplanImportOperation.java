@@ -19,22 +19,23 @@ package com.anaplan.connector.utils;
 
 import com.anaplan.client.AnaplanAPIException;
 import com.anaplan.client.Import;
-import com.anaplan.client.Model;
 import com.anaplan.client.ServerFile;
-import com.anaplan.client.Task;
+import com.anaplan.client.Service;
 import com.anaplan.client.TaskResult;
 import com.anaplan.client.TaskStatus;
 import com.anaplan.connector.MulesoftAnaplanResponse;
 import com.anaplan.connector.connection.AnaplanConnection;
 import com.anaplan.connector.exceptions.AnaplanOperationException;
 import com.google.gson.JsonSyntaxException;
+import org.apache.commons.io.IOUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.InputStream;
 import java.text.MessageFormat;
 import java.util.Iterator;
+import java.util.Map;
 
 
 /**
@@ -47,38 +48,47 @@ public class AnaplanImportOperation extends BaseAnaplanOperation{
     private static Logger logger = LogManager.getLogger(
             AnaplanImportOperation.class.getName());
 
+    private final ChunkedUploader uploader;
+
     public AnaplanImportOperation(AnaplanConnection apiConn) {
         super(apiConn);
+        this.uploader = new ChunkedUploader();
     }
 
     /**
-     * Core method to run the Import operation. Expects data as a string-ified
-     * CSV, parses the data based on provided column-separator and delimiter,
-     * creates an import action based on Model provided, writes the provided
-     * data to the action object, executes the action on the server and
-     * monitor's the status until the import completes successfully and responds
-     * the status (failed/succeeded) via an AnaplanResponse object.
+     * Constructor.
+     *
+     * @param apiConn Anaplan API connection object.
+     * @param service Service object to run the import with.
+     * @param uploader Chunked uploader used to write the import data.
+     */
+    public AnaplanImportOperation(AnaplanConnection apiConn, Service service,
+                                  ChunkedUploader uploader) {
+        super(apiConn, service);
+        this.uploader = uploader;
+    }
+
+    /**
+     * Fetches the import action keyed by the provided import ID from the
+     * current model, through the metadata cache.
      *
-     * @param data Import CSV data
-     * @param model Model object to which to import to
      * @param importId Import action ID
-     * @param delimiter Escape character for cell values.
-     * @throws AnaplanAPIException Thrown when Anaplan API operation fails or
-     *                             error is encountered when writing to
-     *                             cell data writer.
+     * @return Import action object.
+     * @throws AnaplanOperationException Thrown when the import action could
+     *                                   not be fetched or does not exist.
      */
-    private static MulesoftAnaplanResponse runImportCsv(String data,
-                                                        Model model,
-                                                        String importId,
-                                                        String columnSeparator,
-                                                        String delimiter)
+    private Import fetchImport(final String importId)
             throws AnaplanOperationException {
 
-        // 1. Write the provided CSV data to the data-writer.
-
         Import imp;
         try {
-            imp = model.getImport(importId);
+            imp = fetchModelMetadata(IMPORT_METADATA, importId,
+                    new MetadataCache.Loader<Import>() {
+                        @Override
+                        public Import load() throws AnaplanAPIException {
+                            return model.getImport(importId);
+                        }
+                    });
         } catch (AnaplanAPIException e) {
             throw new AnaplanOperationException("Error fetching Import action:", e);
         }
@@ -86,68 +96,248 @@ public class AnaplanImportOperation extends BaseAnaplanOperation{
             throw new AnaplanOperationException(MessageFormat.format("Invalid " +
                     "import ID provided: {0}", importId));
         }
+        return imp;
+    }
+
+    /**
+     * Fetches the server-file that is the source of the provided import
+     * action, and sets the column-separator and delimiter for the input. The
+     * server-file is fetched for every run rather than taken from the
+     * metadata cache, so that runs with different separators never share it.
+     *
+     * @param imp Import action object.
+     * @param columnSeparator Column separator for cell values.
+     * @param delimiter Escape character for cell values.
+     * @return Server-file to upload the import data to.
+     * @throws AnaplanOperationException Thrown when the server-file could not
+     *                                   be fetched.
+     */
+    private ServerFile fetchImportFile(Import imp,
+                                       String columnSeparator,
+                                       String delimiter)
+            throws AnaplanOperationException {
 
         ServerFile serverFile;
         try {
+            awaitRequest();
             serverFile = model.getServerFile(imp.getSourceFileId());
-            if (serverFile == null) {
-                throw new AnaplanOperationException("Could not fetch server-file!");
-            }
-            // set the column-separator and delimiter for the input
-            serverFile.setSeparator(columnSeparator);
-            serverFile.setDelimiter(delimiter);
-
-            // upload the data file as a stream
-            OutputStream uploadStream = serverFile.getUploadStream();
-            Iterator<String> iterator = AnaplanUtil.stringChunkReader(data);
-            byte[] dataChunk;
-            while (iterator.hasNext()) {
-                dataChunk = iterator.next().getBytes("UTF-8");
-                uploadStream.write(dataChunk);
+        } catch (AnaplanAPIException e) {
+            throw new AnaplanOperationException("Error encountered while " +
+                    "importing data: ", e);
+        }
+        if (serverFile == null) {
+            throw new AnaplanOperationException("Could not fetch server-file!");
+        }
+        // set the column-separator and delimiter for the input
+        serverFile.setSeparator(columnSeparator);
+        serverFile.setDelimiter(delimiter);
+        return serverFile;
+    }
+
+    /**
+     * Uploads the provided CSV string to the server-file in chunks, starting
+     * the upload over after transient failures as the uploader's retry
+     * policy allows.
+     *
+     * @param data Import CSV data
+     * @param importId Import action ID
+     * @param serverFile Server-file to upload the data to.
+     * @param uploader Chunked uploader to write the data with.
+     * @throws AnaplanOperationException Thrown when the upload fails.
+     */
+    private void uploadCsv(String data, String importId,
+                           ServerFile serverFile, ChunkedUploader uploader)
+            throws AnaplanOperationException {
+        final long startNanos = System.nanoTime();
+        final Span span = startSpan(Tracing.UPLOAD_SPAN, importId);
+        boolean failed = true;
+        ChunkSink sink = null;
+        try {
+            // upload the data file in chunks, starting over on failures
+            sink = new ServerFileChunkSink(serverFile, governor);
+            long bytesUploaded = uploader.upload(data, sink);
+            sink.close();
+            ConnectorMetrics.getShared().increment(
+                    ConnectorMetrics.Counter.BYTES_UPLOADED, bytesUploaded);
+            span.setAttribute(Tracing.BYTES, bytesUploaded);
+            failed = false;
+        } catch (AnaplanAPIException | IOException e) {
+            span.recordException(e);
+            throw new AnaplanOperationException("Error encountered while " +
+                    "importing data: ", e);
+        } finally {
+            if (failed && sink != null) {
+                sink.abort();
             }
-            uploadStream.close();
+            ConnectorMetrics.getShared().recordPhase(
+                    ConnectorMetrics.Phase.UPLOAD, startNanos, failed);
+            span.end();
+        }
+    }
 
+    /**
+     * Pipes the provided CSV stream straight into the server-file's upload
+     * stream, so that only a bounded number of chunks is held in memory at
+     * any time regardless of the size of the input.
+     *
+     * @param data Import CSV data stream.
+     * @param importId Import action ID
+     * @param serverFile Server-file to upload the data to.
+     * @param uploader Chunked uploader to write the data with.
+     * @throws AnaplanOperationException Thrown when reading the input or
+     *                                   uploading to the server fails.
+     */
+    private void uploadCsv(InputStream data, String importId,
+                           ServerFile serverFile, ChunkedUploader uploader)
+            throws AnaplanOperationException {
+        final long startNanos = System.nanoTime();
+        final Span span = startSpan(Tracing.UPLOAD_SPAN, importId);
+        boolean failed = true;
+        ChunkSink sink = null;
+        try {
+            sink = new ServerFileChunkSink(serverFile, governor);
+            long bytesUploaded = uploader.upload(data, sink);
+            sink.close();
+            logger.info("Uploaded {} bytes of import data", bytesUploaded);
+            ConnectorMetrics.getShared().increment(
+                    ConnectorMetrics.Counter.BYTES_UPLOADED, bytesUploaded);
+            span.setAttribute(Tracing.BYTES, bytesUploaded);
+            failed = false;
         } catch (AnaplanAPIException | IOException e) {
+            span.recordException(e);
             throw new AnaplanOperationException("Error encountered while " +
                     "importing data: ", e);
+        } finally {
+            if (failed && sink != null) {
+                sink.abort();
+            }
+            IOUtils.closeQuietly(data);
+            ConnectorMetrics.getShared().recordPhase(
+                    ConnectorMetrics.Phase.UPLOAD, startNanos, failed);
+            span.end();
         }
+    }
 
-        // 2. Create the task that will import the data to the server.
+    /**
+     * Creates the import task on the server for the uploaded data, monitors
+     * its status until the import completes and responds the status
+     * (failed/succeeded) via an ImportResult object.
+     *
+     * @param imp Import action object.
+     * @param importId Import action ID
+     * @param serverFile Server-file the import data was uploaded to.
+     * @return Result object containing import status details.
+     * @throws AnaplanOperationException Thrown when running the import task
+     *                                   fails.
+     */
+    private ImportResult runImportTask(Import imp,
+                                       String importId,
+                                       ServerFile serverFile)
+            throws AnaplanOperationException {
 
-        Task task;
         TaskStatus status;
+        final long startTime = System.currentTimeMillis();
         try {
-            task = imp.createTask();
-            status = AnaplanUtil.runServerTask(task);
+            status = runTask(imp, importId);
         } catch (AnaplanAPIException e) {
+            // the cached action may have been changed or removed on the server
+            invalidateModelMetadata(IMPORT_METADATA, importId);
             throw new AnaplanOperationException("Error running Import action:", e);
         }
 
-        // 3. Get task status details and fetch the row counts
+        // Get task status details and fetch the row counts
         String taskDetailsMsg = collectTaskLogs(status);
         setRunStatusDetails(taskDetailsMsg);
         logger.info(getRunStatusDetails());
 
-        // 3. Determine execution status and create response.
+        // Determine execution status and create response.
 
+        final long duration = System.currentTimeMillis() - startTime;
         final TaskResult taskResult = status.getResult();
+        final MulesoftAnaplanResponse anaplanResponse;
         if (taskResult.isFailureDumpAvailable()) {
             logger.info(UserMessages.getMessage("failureDump"));
             final ServerFile failDump = taskResult.getFailureDump();
-            return MulesoftAnaplanResponse.importWithFailureDump(
+            anaplanResponse = MulesoftAnaplanResponse.importWithFailureDump(
                     UserMessages.getMessage("importBadData", importId),
                     failDump);
         } else {
             logger.info(UserMessages.getMessage("noFailureDump"));
 
             if (taskResult.isSuccessful()) {
-                return MulesoftAnaplanResponse.importSuccess(getRunStatusDetails(),
-                        serverFile);
+                anaplanResponse = MulesoftAnaplanResponse.importSuccess(
+                        getRunStatusDetails(), serverFile);
             } else {
-                return MulesoftAnaplanResponse.importFailure(getRunStatusDetails(),
-                        null);
+                anaplanResponse = MulesoftAnaplanResponse.importFailure(
+                        getRunStatusDetails(), null);
             }
         }
+        final ImportResult importResult = new ImportResult(importId,
+                anaplanResponse, taskResult, duration);
+        final ConnectorMetrics metrics = ConnectorMetrics.getShared();
+        metrics.increment(ConnectorMetrics.Counter.ROWS_IMPORTED,
+                importResult.getRowsImported());
+        metrics.increment(ConnectorMetrics.Counter.ROWS_IGNORED,
+                importResult.getRowsIgnored());
+        return importResult;
+    }
+
+    /**
+     * Core method to run the Import operation. Expects data as a string-ified
+     * CSV, parses the data based on provided column-separator and delimiter,
+     * creates an import action based on Model provided, writes the provided
+     * data to the action object, executes the action on the server and
+     * monitor's the status until the import completes successfully and responds
+     * the status (failed/succeeded) via an AnaplanResponse object.
+     *
+     * @param data Import CSV data
+     * @param importId Import action ID
+     * @param delimiter Escape character for cell values.
+     * @param uploader Chunked uploader to write the data with.
+     * @throws AnaplanAPIException Thrown when Anaplan API operation fails or
+     *                             error is encountered when writing to
+     *                             cell data writer.
+     */
+    private ImportResult runImportCsv(String data,
+                                      String importId,
+                                      String columnSeparator,
+                                      String delimiter,
+                                      ChunkedUploader uploader)
+            throws AnaplanOperationException {
+
+        Import imp = fetchImport(importId);
+        ServerFile serverFile = fetchImportFile(imp, columnSeparator,
+                delimiter);
+        uploadCsv(data, importId, serverFile, uploader);
+        return runImportTask(imp, importId, serverFile);
+    }
+
+    /**
+     * Streaming variant of {@link #runImportCsv(String, String, String, String,
+     * ChunkedUploader)} which reads the CSV data from the provided
+     * stream.
+     *
+     * @param data Import CSV data stream.
+     * @param importId Import action ID
+     * @param columnSeparator Column separator for cell values.
+     * @param delimiter Escape character for cell values.
+     * @param uploader Chunked uploader to write the data with.
+     * @throws AnaplanOperationException Thrown when Anaplan API operation fails
+     *                                   or error is encountered when reading
+     *                                   from the input stream.
+     */
+    private ImportResult runImportCsv(InputStream data,
+                                      String importId,
+                                      String columnSeparator,
+                                      String delimiter,
+                                      ChunkedUploader uploader)
+            throws AnaplanOperationException {
+
+        Import imp = fetchImport(importId);
+        ServerFile serverFile = fetchImportFile(imp, columnSeparator,
+                delimiter);
+        uploadCsv(data, importId, serverFile, uploader);
+        return runImportTask(imp, importId, serverFile);
     }
 
     /**
@@ -178,17 +368,145 @@ public class AnaplanImportOperation extends BaseAnaplanOperation{
         String importResponse = "";
         try {
             logger.info("Starting import: {}", importId);
-            anaplanResponse = runImportCsv(data, model, importId, columnSeparator,
-                    delimiter);
+            anaplanResponse = runImportCsv(data, importId, columnSeparator,
+                    delimiter, uploader).getResponse();
+            importResponse = createResponse(anaplanResponse);
+            logger.info("Import complete: Status: {}, Response message: {}",
+                    anaplanResponse.getStatus(), importResponse);
+        } catch (JsonSyntaxException e) {
+            MulesoftAnaplanResponse.responseEpicFail(apiConn, e, null);
+        }
+
+        return importResponse;
+    }
+
+    /**
+     * Streaming variant of {@link #runImport(String, String, String, String,
+     * String, String)}, which pipes the provided CSV stream into Anaplan
+     * without ever holding the complete payload in memory.
+     *
+     * @param data Import CSV data stream.
+     * @param workspaceId Anaplan Workspace ID
+     * @param modelId Anaplan Model ID
+     * @param importId Anaplan Import ID
+     * @param columnSeparator Column separator for cell values.
+     * @param delimiter Escape character for cell values.
+     * @return Status message from running the Import operation.
+     * @throws AnaplanOperationException Internal operation exception thrown to
+     *     capture any IOException, JsonSyntaxException or AnaplanAPIException.
+     */
+    public String runImport(InputStream data,
+                            String workspaceId,
+                            String modelId,
+                            String importId,
+                            String columnSeparator,
+                            String delimiter) throws AnaplanOperationException {
+
+        logger.info("<< Starting streaming import >>");
+        logger.info("Workspace-ID: {}", workspaceId);
+        logger.info("Model-ID: {}", modelId);
+        logger.info("Import-ID: {}", importId);
+
+        // validate workspace-ID and model-ID are valid, else throw exception
+        validateInput(workspaceId, modelId);
+
+        MulesoftAnaplanResponse anaplanResponse;
+        String importResponse = "";
+        try {
+            logger.info("Starting import: {}", importId);
+            anaplanResponse = runImportCsv(data, importId, columnSeparator,
+                    delimiter, uploader).getResponse();
             importResponse = createResponse(anaplanResponse);
             logger.info("Import complete: Status: {}, Response message: {}",
                     anaplanResponse.getStatus(), importResponse);
         } catch (JsonSyntaxException e) {
             MulesoftAnaplanResponse.responseEpicFail(apiConn, e, null);
-        } finally {
-            apiConn.closeConnection();
         }
 
         return importResponse;
     }
-}
\ No newline at end of file
+
+    /**
+     * Variant of {@link #runImport(InputStream, String, String, String,
+     * String, String)} returning the outcome of the import as a structured
+     * result, with row counts as numbers and the failure dump only downloaded
+     * on demand, instead of a formatted status message.
+     *
+     * @param data Import CSV data stream.
+     * @param workspaceId Anaplan Workspace ID
+     * @param modelId Anaplan Model ID
+     * @param importId Anaplan Import ID
+     * @param columnSeparator Column separator for cell values.
+     * @param delimiter Escape character for cell values.
+     * @return Result of the Import operation.
+     * @throws AnaplanOperationException Thrown when the import failed, or to
+     *     capture any IOException, JsonSyntaxException or AnaplanAPIException.
+     */
+    public ImportResult runImportForResult(InputStream data,
+                                           String workspaceId,
+                                           String modelId,
+                                           String importId,
+                                           String columnSeparator,
+                                           String delimiter)
+            throws AnaplanOperationException {
+
+        logger.info("<< Starting import >>");
+        logger.info("Workspace-ID: {}", workspaceId);
+        logger.info("Model-ID: {}", modelId);
+        logger.info("Import-ID: {}", importId);
+
+        // validate workspace-ID and model-ID are valid, else throw exception
+        validateInput(workspaceId, modelId);
+
+        ImportResult importResult = null;
+        try {
+            logger.info("Starting import: {}", importId);
+            importResult = runImportCsv(data, importId, columnSeparator,
+                    delimiter, uploader);
+            setResponseStatus(importResult.getStatus());
+            checkResponseStatus(importResult.getResponse());
+            logger.info("Import complete: {}", importResult);
+        } catch (JsonSyntaxException e) {
+            MulesoftAnaplanResponse.responseEpicFail(apiConn, e, null);
+        }
+
+        return importResult;
+    }
+
+    /**
+     * Record variant of {@link #runImport(InputStream, String, String, String,
+     * String, String)}, which serializes the provided records into the
+     * upload a batch at a time, without rendering them as one CSV string.
+     *
+     * @param records Records to import.
+     * @param columnMapping Anaplan column names mapped to the record keys
+     *                      holding their values. May be null, in which case
+     *                      the keys of the first record are used.
+     * @param batchSize Number of records serialized at a time.
+     * @param workspaceId Anaplan Workspace ID
+     * @param modelId Anaplan Model ID
+     * @param importId Anaplan Import ID
+     * @param columnSeparator Column separator for cell values.
+     * @param delimiter Escape character for cell values.
+     * @return Status message from running the Import operation.
+     * @throws AnaplanOperationException Internal operation exception thrown to
+     *     capture any IOException, JsonSyntaxException or AnaplanAPIException.
+     */
+    public String runImportRecords(Iterator<? extends Map<String, ?>> records,
+                                   Map<String, String> columnMapping,
+                                   int batchSize,
+                                   String workspaceId,
+                                   String modelId,
+                                   String importId,
+                                   String columnSeparator,
+                                   String delimiter)
+            throws AnaplanOperationException {
+
+        final RecordCsvInputStream data = new RecordCsvInputStream(records,
+                columnMapping, columnSeparator, delimiter, batchSize);
+        final String importResponse = runImport(data, workspaceId, modelId,
+                importId, columnSeparator, delimiter);
+        logger.info("Imported {} records", data.getRecordCount());
+        return importResponse;
+    }
+}
@@ -18,9 +18,8 @@ package com.anaplan.connector.utils;
 
 
 import com.anaplan.client.AnaplanAPIException;
-import com.anaplan.client.Model;
 import com.anaplan.client.Process;
-import com.anaplan.client.Task;
+import com.anaplan.client.Service;
 import com.anaplan.client.TaskStatus;
 import com.anaplan.connector.MulesoftAnaplanResponse;
 import com.anaplan.connector.connection.AnaplanConnection;
@@ -47,20 +46,34 @@ public class AnaplanProcessOperation extends BaseAnaplanOperation {
 		super(apiConn);
 	}
 
+	/**
+	 * Constructor.
+	 * @param apiConn Anaplan API connection object.
+	 * @param service Service object to run the operation with.
+	 */
+	public AnaplanProcessOperation(AnaplanConnection apiConn, Service service) {
+		super(apiConn, service);
+	}
+
 	/**
 	 * Runs/Executes an Anaplan Process using the provided model, process-ID and
 	 * log-context.
 	 *
-	 * @param model Anaplan Model object.
 	 * @param processId Anaplan Process ID.
 	 * @return Anaplan response object with execution details.
 	 * @throws AnaplanAPIException thrown if fetching the process or creating the task
 	 *                             to run the process is met with failure.
 	 */
-	private MulesoftAnaplanResponse runProcessTask(Model model, String processId)
+	private MulesoftAnaplanResponse runProcessTask(final String processId)
             throws AnaplanAPIException {
 
-		final Process process = model.getProcess(processId);
+		final Process process = fetchModelMetadata(PROCESS_METADATA, processId,
+				new MetadataCache.Loader<Process>() {
+					@Override
+					public Process load() throws AnaplanAPIException {
+						return model.getProcess(processId);
+					}
+				});
 
 		if (process == null) {
 			final String msg = UserMessages.getMessage("invalidProcess",
@@ -68,8 +81,7 @@ public class AnaplanProcessOperation extends BaseAnaplanOperation {
 			return MulesoftAnaplanResponse.runProcessFailure(msg, null);
 		}
 
-		final Task task = process.createTask();
-		final TaskStatus status = AnaplanUtil.runServerTask(task);
+		final TaskStatus status = runTask(process, processId);
 
 		if (status.getTaskState() == TaskStatus.State.COMPLETE &&
 			status.getResult().isSuccessful()) {
@@ -110,15 +122,14 @@ public class AnaplanProcessOperation extends BaseAnaplanOperation {
 
 		try {
 			logger.info("Starting process: {}", processId);
-			final MulesoftAnaplanResponse anaplanResponse = runProcessTask(model,
+			final MulesoftAnaplanResponse anaplanResponse = runProcessTask(
 					processId);
+			setResponseStatus(anaplanResponse.getStatus());
 			logger.info("Process ran successfully: {}, Response message: {}",
 					anaplanResponse.getStatus(),
 					anaplanResponse.getResponseMessage());
 		} catch (AnaplanAPIException e) {
 			throw new AnaplanOperationException(e.getMessage(), e);
-		} finally {
-			apiConn.closeConnection();
 		}
 
 		String statusMsg = "[" + processId + "] completed successfully!";
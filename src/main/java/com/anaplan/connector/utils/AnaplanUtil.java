@@ -24,6 +24,7 @@ import org.apache.logging.log4j.Logger;
 
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
 
 
 /**
@@ -35,13 +36,16 @@ public class AnaplanUtil {
 
     private static final Logger logger = LogManager.getLogger(AnaplanUtil.class.getName());
     public static final int CHUNKSIZE = 2048;
+    public static final PollingStrategy DEFAULT_POLLING_STRATEGY =
+            new BackoffPollingStrategy();
 
     private AnaplanUtil() {
         // static-only
     }
 
     /**
-     * Executes an Anaplan task and polls the status until its complete.
+     * Executes an Anaplan task and polls the status until its complete, using
+     * the default backoff polling strategy.
      *
      * @param task Server task object to run.
      * @return The status message from the running the task.
@@ -50,22 +54,78 @@ public class AnaplanUtil {
      */
     public static TaskStatus runServerTask(Task task)
             throws AnaplanAPIException {
-        TaskStatus status = task.getStatus();
-        logger.info("TASK STATUS: {}", status.getTaskState());
-        while (status.getTaskState() != TaskStatus.State.COMPLETE
-                && status.getTaskState() != TaskStatus.State.CANCELLED) {
-
-            // if busy, nap and check again after 1 second
-            try {
-                Thread.sleep(1000);
-                logger.info("Running Task = {}", task.getStatus().getProgress());
-            } catch (InterruptedException e) {
-                logger.error("Task interrupted!\n{}", e.getMessage());
+        return runServerTask(task, DEFAULT_POLLING_STRATEGY);
+    }
+
+    /**
+     * Executes an Anaplan task and waits until its complete, while the shared
+     * {@link TaskScheduler} polls the status paced by the provided strategy.
+     * The status is fetched only once per poll, and the whole run is timed in
+     * the connector metrics. Callers that should not block
+     * can submit the task to the scheduler directly.
+     *
+     * @param task Server task object to run.
+     * @param pollingStrategy Strategy deciding the delay between polls.
+     * @return The status message from the running the task.
+     * @throws AnaplanAPIException API exception thrown whenever server task
+     *      fails, or the polling thread is interrupted.
+     */
+    public static TaskStatus runServerTask(Task task,
+                                           PollingStrategy pollingStrategy)
+            throws AnaplanAPIException {
+        return runServerTask(task, pollingStrategy, null);
+    }
+
+    /**
+     * Executes an Anaplan task and waits until its complete, see
+     * {@link #runServerTask(Task, PollingStrategy)}, pacing every status
+     * request with the provided API governor.
+     *
+     * @param task Server task object to run.
+     * @param pollingStrategy Strategy deciding the delay between polls.
+     * @param governor Governor of the status requests, null for none.
+     * @return The status message from the running the task.
+     * @throws AnaplanAPIException API exception thrown whenever server task
+     *      fails, or the polling thread is interrupted.
+     */
+    public static TaskStatus runServerTask(Task task,
+                                           PollingStrategy pollingStrategy,
+                                           ApiGovernor governor)
+            throws AnaplanAPIException {
+        final long startNanos = System.nanoTime();
+        boolean failed = true;
+        final TaskHandle handle = TaskScheduler.getShared().submit(task,
+                pollingStrategy, governor);
+        try {
+            final TaskStatus status = handle.get();
+            failed = status.getTaskState() != TaskStatus.State.COMPLETE;
+            return status;
+        } catch (InterruptedException e) {
+            handle.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new AnaplanAPIException("Task interrupted!", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AnaplanAPIException) {
+                throw (AnaplanAPIException) e.getCause();
             }
-            status = task.getStatus();
+            throw new AnaplanAPIException("Error polling task status!",
+                    e.getCause());
+        } finally {
+            ConnectorMetrics.getShared().recordPhase(
+                    ConnectorMetrics.Phase.TASK, startNanos, failed);
         }
+    }
 
-        return status;
+    /**
+     * Checks whether the task has reached a final state.
+     *
+     * @param status Latest task status.
+     * @return True if the task completed or was cancelled.
+     */
+    public static boolean isTaskDone(TaskStatus status) {
+        final TaskStatus.State state = status.getTaskState();
+        return state == TaskStatus.State.COMPLETE
+                || state == TaskStatus.State.CANCELLED;
     }
 
     /**
@@ -74,7 +134,10 @@ public class AnaplanUtil {
      * @param data
      *            String data.
      * @return
+     * @deprecated Allocates a new string per chunk, imports encode their data
+     *            through {@link ChunkedUploader} instead.
      */
+    @Deprecated
     public static Iterator<String> stringChunkReader(final String data) {
         return stringChunkReader(data, CHUNKSIZE);
     }
@@ -89,7 +152,10 @@ public class AnaplanUtil {
      * @param chunkSize
      *            Chunk size limit, defaults to 2048 characters.
      * @return Iterator to iterate over each data-chunk.
+     * @deprecated Allocates a new string per chunk, imports encode their data
+     *            through {@link ChunkedUploader} instead.
      */
+    @Deprecated
     public static Iterator<String> stringChunkReader(final String data,
                                                     final int chunkSize) {
 
@@ -0,0 +1,307 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.anaplan.connector.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Client-side governor of the requests sent to the Anaplan API, keeping them
+ * under the server's throttling limits rather than having them rejected.
+ * Requests are paced by a token bucket allowing a number of requests per
+ * second, with bursts of up to one second's worth of requests, and the
+ * number of tasks running at once on a model is capped. Callers in excess
+ * wait in the order they arrived in, and the time they wait is recorded as
+ * the queueing phase in the connector metrics.
+ *
+ * The requests paced are the authentications, metadata fetches, task starts
+ * and status polls, and the chunks of uploads. The chunks of downloads are
+ * fetched by the server-file's download stream as it is read, hence are not
+ * paced.
+ *
+ * Governors are shared by all connections of a tenant, see
+ * {@link #forTenant(String)}. Both limits are off until configured.
+ */
+public class ApiGovernor {
+
+	private static final Logger logger = LogManager.getLogger(
+			ApiGovernor.class.getName());
+
+	private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+	private static final ConcurrentMap<String, ApiGovernor> tenantGovernors =
+			new ConcurrentHashMap<>();
+
+	// fair, so that waiting callers get their permits in arrival order
+	private final ReentrantLock bucketLock = new ReentrantLock(true);
+	private final ConcurrentMap<String, TaskSemaphore> modelTasks =
+			new ConcurrentHashMap<>();
+	private boolean configured = false;
+	private double requestsPerSecond = 0;
+	private double availablePermits = 0;
+	private long refilledAt = System.nanoTime();
+	private volatile int tasksPerModel = 0;
+
+	/**
+	 * Getter for the governor shared by all connections of the provided
+	 * tenant, created on first use.
+	 *
+	 * @param tenant Key of the tenant, e.g. the API URL and user name.
+	 * @return Governor of the tenant.
+	 */
+	public static ApiGovernor forTenant(String tenant) {
+		ApiGovernor governor = tenantGovernors.get(tenant);
+		if (governor == null) {
+			final ApiGovernor created = new ApiGovernor();
+			governor = tenantGovernors.putIfAbsent(tenant, created);
+			if (governor == null) {
+				governor = created;
+			}
+		}
+		return governor;
+	}
+
+	/**
+	 * Sets the limits of the governor, which apply to requests and tasks
+	 * started from now on. The task limit of models with tasks in flight is
+	 * resized rather than reset, so that the running tasks still count
+	 * against it. As the governor is shared by the connections of a tenant,
+	 * the last limits configured apply to all of them, and conflicting limits
+	 * are logged.
+	 *
+	 * @param requestsPerSecond Maximum number of requests per second, 0 for
+	 *      no limit.
+	 * @param tasksPerModel Maximum number of tasks running at once on a
+	 *      single model, 0 for no limit.
+	 * @throws IllegalArgumentException If a limit is negative.
+	 */
+	public void configure(double requestsPerSecond, int tasksPerModel) {
+		if (requestsPerSecond < 0 || tasksPerModel < 0) {
+			throw new IllegalArgumentException("Governor limits must not be "
+					+ "negative: " + requestsPerSecond + " requests per "
+					+ "second, " + tasksPerModel + " tasks per model");
+		}
+		bucketLock.lock();
+		try {
+			if (configured && (this.requestsPerSecond != requestsPerSecond
+					|| this.tasksPerModel != tasksPerModel)) {
+				logger.warn("Connections of the same tenant configure "
+						+ "conflicting limits, {} requests per second and {} "
+						+ "tasks per model replace {} and {}",
+						requestsPerSecond, tasksPerModel,
+						this.requestsPerSecond, this.tasksPerModel);
+			}
+			configured = true;
+			if (this.requestsPerSecond != requestsPerSecond) {
+				this.requestsPerSecond = requestsPerSecond;
+				this.availablePermits = Math.max(requestsPerSecond, 1);
+				this.refilledAt = System.nanoTime();
+			}
+		} finally {
+			bucketLock.unlock();
+		}
+		synchronized (modelTasks) {
+			if (this.tasksPerModel != tasksPerModel) {
+				this.tasksPerModel = tasksPerModel;
+				for (TaskSemaphore tasks : modelTasks.values()) {
+					tasks.resize(tasksPerModel);
+				}
+			}
+		}
+		logger.info("Governing API calls to {} requests per second and {} "
+				+ "tasks per model (0 for no limit)", requestsPerSecond,
+				tasksPerModel);
+	}
+
+	public double getRequestsPerSecond() {
+		bucketLock.lock();
+		try {
+			return requestsPerSecond;
+		} finally {
+			bucketLock.unlock();
+		}
+	}
+
+	public int getTasksPerModel() {
+		return tasksPerModel;
+	}
+
+	/**
+	 * Waits until a request may be sent.
+	 *
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	public void acquireRequest() throws InterruptedException {
+		acquireRequests(1);
+	}
+
+	/**
+	 * Waits until the provided number of requests may be sent.
+	 *
+	 * @param requests Number of requests about to be sent.
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	public void acquireRequests(int requests) throws InterruptedException {
+		final long startNanos = System.nanoTime();
+		bucketLock.lockInterruptibly();
+		try {
+			if (requestsPerSecond <= 0) {
+				return;
+			}
+			// the lock is held while waiting, which queues later callers
+			// behind this one
+			refill();
+			availablePermits -= requests;
+			if (availablePermits < 0) {
+				try {
+					TimeUnit.NANOSECONDS.sleep((long) (-availablePermits
+							* NANOS_PER_SECOND / requestsPerSecond));
+				} catch (InterruptedException e) {
+					// hand back the permits this caller will not use
+					availablePermits += requests;
+					throw e;
+				}
+				refill();
+			}
+		} finally {
+			bucketLock.unlock();
+		}
+		recordQueueing(startNanos);
+	}
+
+	/**
+	 * Adds the permits accrued since the last refill, up to the burst size.
+	 */
+	private void refill() {
+		final long now = System.nanoTime();
+		availablePermits = Math.min(Math.max(requestsPerSecond, 1),
+				availablePermits + (now - refilledAt) * requestsPerSecond
+						/ NANOS_PER_SECOND);
+		refilledAt = now;
+	}
+
+	/**
+	 * Waits until a task may be started on the provided model. The returned
+	 * permit must be released once the task completes. The limit is kept per
+	 * pair of IDs, so they must be the resolved IDs rather than names, else
+	 * the same model gets a limit of each.
+	 *
+	 * @param workspaceId Anaplan Workspace ID, never its name.
+	 * @param modelId Anaplan Model ID, never its name.
+	 * @return Permit to release once the task completes.
+	 * @throws InterruptedException If interrupted while waiting.
+	 */
+	public TaskPermit acquireTask(String workspaceId, String modelId)
+			throws InterruptedException {
+		final int limit = tasksPerModel;
+		if (limit <= 0) {
+			return TaskPermit.NONE;
+		}
+		final String model = MetadataCache.key(workspaceId, modelId);
+		TaskSemaphore tasks = modelTasks.get(model);
+		if (tasks == null) {
+			// created under the lock of configure(), so that a semaphore is
+			// never created with a limit that is being replaced
+			synchronized (modelTasks) {
+				tasks = modelTasks.get(model);
+				if (tasks == null) {
+					if (tasksPerModel <= 0) {
+						return TaskPermit.NONE;
+					}
+					tasks = new TaskSemaphore(tasksPerModel);
+					modelTasks.put(model, tasks);
+				}
+			}
+		}
+		final long startNanos = System.nanoTime();
+		tasks.acquire();
+		recordQueueing(startNanos);
+		return new TaskPermit(tasks);
+	}
+
+	private static void recordQueueing(long startNanos) {
+		ConnectorMetrics.getShared().recordPhase(
+				ConnectorMetrics.Phase.QUEUEING, startNanos, false);
+	}
+
+	/**
+	 * Semaphore of the tasks of a model, which can be resized while tasks
+	 * hold permits. Shrinking it below the number of running tasks leaves it
+	 * with negative permits, so that no task starts until enough have
+	 * completed.
+	 */
+	private static class TaskSemaphore extends Semaphore {
+
+		private static final long serialVersionUID = 1L;
+
+		private int limit;
+
+		TaskSemaphore(int limit) {
+			super(limit, true);
+			this.limit = limit;
+		}
+
+		/**
+		 * Resizes the semaphore, a limit of 0 keeping the current size since
+		 * tasks then no longer take permits.
+		 */
+		synchronized void resize(int newLimit) {
+			if (newLimit <= 0) {
+				return;
+			}
+			if (newLimit > limit) {
+				release(newLimit - limit);
+			} else if (newLimit < limit) {
+				reducePermits(limit - newLimit);
+			}
+			limit = newLimit;
+		}
+	}
+
+	/**
+	 * Permit to run a task on a model, taken from
+	 * {@link #acquireTask(String, String)}.
+	 */
+	public static class TaskPermit {
+
+		static final TaskPermit NONE = new TaskPermit(null);
+
+		private final Semaphore tasks;
+		private boolean released = false;
+
+		private TaskPermit(Semaphore tasks) {
+			this.tasks = tasks;
+		}
+
+		/**
+		 * Releases the permit, releasing it more than once having no effect.
+		 */
+		public synchronized void release() {
+			if (!released && tasks != null) {
+				released = true;
+				tasks.release();
+			}
+		}
+	}
+}
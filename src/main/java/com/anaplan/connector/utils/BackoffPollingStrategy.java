@@ -0,0 +1,95 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.utils;
+
+import com.anaplan.client.TaskStatus;
+
+import java.util.Random;
+
+
+/**
+ * Polls quickly at first and backs off exponentially, with random jitter,
+ * up to a maximum interval. Once the task reports progress, the delay is
+ * also capped at half the estimated remaining time so that tasks about to
+ * finish are not left waiting a full backoff interval.
+ */
+public class BackoffPollingStrategy implements PollingStrategy {
+
+    public static final long DEFAULT_MIN_INTERVAL = 250;
+    public static final long DEFAULT_MAX_INTERVAL = 10000;
+    public static final double DEFAULT_MULTIPLIER = 2.0;
+    public static final double DEFAULT_JITTER = 0.2;
+
+    private final long minInterval;
+    private final long maxInterval;
+    private final double multiplier;
+    private final double jitter;
+    private final Random random = new Random();
+
+    /**
+     * Constructor using the default intervals, multiplier and jitter.
+     */
+    public BackoffPollingStrategy() {
+        this(DEFAULT_MIN_INTERVAL, DEFAULT_MAX_INTERVAL, DEFAULT_MULTIPLIER,
+                DEFAULT_JITTER);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param minInterval Delay in milliseconds before the first re-poll.
+     * @param maxInterval Upper bound in milliseconds for any delay.
+     * @param multiplier Factor by which the delay grows with each poll.
+     * @param jitter Fraction, between 0 and 1, by which each delay is
+     *      randomly shortened or lengthened.
+     * @throws IllegalArgumentException If any value is out of range.
+     */
+    public BackoffPollingStrategy(long minInterval, long maxInterval,
+                                  double multiplier, double jitter) {
+        if (minInterval < 0 || maxInterval < minInterval) {
+            throw new IllegalArgumentException("Invalid polling interval range: "
+                    + minInterval + " - " + maxInterval);
+        }
+        if (multiplier < 1.0) {
+            throw new IllegalArgumentException("Multiplier must be at least 1: "
+                    + multiplier);
+        }
+        if (jitter < 0.0 || jitter > 1.0) {
+            throw new IllegalArgumentException("Jitter must be between 0 and 1: "
+                    + jitter);
+        }
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.multiplier = multiplier;
+        this.jitter = jitter;
+    }
+
+    @Override
+    public long nextDelay(int attempt, long elapsedMillis, TaskStatus status) {
+        double delay = minInterval * Math.pow(multiplier, Math.max(0, attempt - 1));
+
+        // progress-aware pacing: no point sleeping past the expected finish
+        final Double progress = status == null ? null : status.getProgress();
+        if (progress != null && progress > 0.0 && progress < 1.0) {
+            final double remaining = elapsedMillis * (1.0 - progress) / progress;
+            delay = Math.min(delay, remaining / 2);
+        }
+
+        delay *= 1.0 + jitter * (2 * random.nextDouble() - 1.0);
+        return Math.max(minInterval, Math.min(maxInterval, Math.round(delay)));
+    }
+}
@@ -20,6 +20,7 @@ package com.anaplan.connector.utils;
 import com.anaplan.client.AnaplanAPIException;
 import com.anaplan.client.Model;
 import com.anaplan.client.Service;
+import com.anaplan.client.TaskFactory;
 import com.anaplan.client.TaskResult;
 import com.anaplan.client.TaskResultDetail;
 import com.anaplan.client.TaskStatus;
@@ -44,15 +45,42 @@ public class BaseAnaplanOperation {
 	private static Logger logger = LogManager.getLogger(
 			BaseAnaplanOperation.class.getName());
 
+	// types of model metadata kept in the metadata cache
+	protected static final String IMPORT_METADATA = "import";
+	protected static final String EXPORT_METADATA = "export";
+	protected static final String EXPORT_DEFINITION_METADATA = "exportMetadata";
+	protected static final String PROCESS_METADATA = "process";
+	protected static final String ACTION_METADATA = "action";
+
 	protected AnaplanConnection apiConn;
 	protected Service service;
 	protected Workspace workspace = null;
 	protected Model model = null;
-	// TODO: Needs a setter as well.
-	private static String runStatusDetails = null;
+	protected final MetadataCache metadataCache;
+	protected final ApiGovernor governor;
+	private String workspaceId = null;
+	private String modelId = null;
+	// server logs of the action run by this operation
+	private String runStatusDetails = null;
+	// outcome of the action run by this operation, null until it completes
+	private OperationStatus responseStatus = null;
 
 	public BaseAnaplanOperation(AnaplanConnection apiConn) {
-		setApiConn(apiConn);
+		this(apiConn, apiConn.getConnection());
+	}
+
+	/**
+	 * Constructor for operations running on a service borrowed from the
+	 * connection's pool.
+	 *
+	 * @param apiConn Anaplan API connection object.
+	 * @param service Service object to run the operation with.
+	 */
+	public BaseAnaplanOperation(AnaplanConnection apiConn, Service service) {
+		this.apiConn = apiConn;
+		this.service = service;
+		this.metadataCache = apiConn.getMetadataCache(service);
+		this.governor = apiConn.getGovernor();
 	}
 
 	/**
@@ -62,7 +90,7 @@ public class BaseAnaplanOperation {
 	 * @return String containing the run-detail logs sent back from the server
 	 * 		for running a particular action.
 	 */
-	public static String getRunStatusDetails() {
+	public String getRunStatusDetails() {
 		return runStatusDetails;
 	}
 
@@ -72,19 +100,27 @@ public class BaseAnaplanOperation {
 	 *
 	 * @param statusMsgs String containing status message logs.
 	 */
-	public static void setRunStatusDetails(String statusMsgs) {
+	public void setRunStatusDetails(String statusMsgs) {
 		runStatusDetails = statusMsgs;
 	}
 
 	/**
-	 * Helper method to set internal reference of API connStrategy and service
-	 * parameters.
+	 * Getter for the outcome of the action run by this operation.
 	 *
-	 * @param apiConn Anaplan API connection object.
+	 * @return Status of the server response, or null if the operation did not
+	 * 		get a response.
 	 */
-	private void setApiConn(AnaplanConnection apiConn) {
-		this.apiConn = apiConn;
-		this.service = apiConn.getConnection();
+	public OperationStatus getResponseStatus() {
+		return responseStatus;
+	}
+
+	/**
+	 * Setter for the outcome of the action run by this operation.
+	 *
+	 * @param responseStatus Status of the server response.
+	 */
+	protected void setResponseStatus(OperationStatus responseStatus) {
+		this.responseStatus = responseStatus;
 	}
 
 	/**
@@ -94,17 +130,25 @@ public class BaseAnaplanOperation {
 	 * @return Workspace keyed by provided "workspaceId".
 	 * @throws AnaplanOperationException Thrown when failure fetching workspace.
 	 */
-	public Workspace getWorkspace(String workspaceId)
+	public Workspace getWorkspace(final String workspaceId)
 			throws AnaplanOperationException {
 
 		try {
-			workspace = service.getWorkspace(workspaceId);
+			workspace = metadataCache.get(MetadataCache.key(workspaceId),
+					governed(new MetadataCache.Loader<Workspace>() {
+						@Override
+						public Workspace load() throws AnaplanAPIException {
+							return service.getWorkspace(workspaceId);
+						}
+					}));
 			if (workspace == null) {
 				throw new AnaplanOperationException("Could not fetch "
 						+ "workspace with provided Workspace ID: "
 						+ workspaceId);
 			}
 		} catch (AnaplanAPIException e) {
+			// drop the session, so that the next operation re-authenticates
+			apiConn.invalidateConnection(service);
 			throw new AnaplanOperationException("Error when fetching "
 					+ "workspace for Workspace ID: " + workspaceId);
 		}
@@ -120,14 +164,20 @@ public class BaseAnaplanOperation {
 	 * @return Model keyed by the model and workspace IDs.
 	 * @throws AnaplanOperationException Thrown when failure fetching model.
 	 */
-	public Model getModel(String workspaceId, String modelId)
+	public Model getModel(String workspaceId, final String modelId)
 			throws AnaplanOperationException {
 
 		// get the workspace
 		getWorkspace(workspaceId);
 
 		try {
-			model = workspace.getModel(modelId);
+			model = metadataCache.get(MetadataCache.key(workspaceId, modelId),
+					governed(new MetadataCache.Loader<Model>() {
+						@Override
+						public Model load() throws AnaplanAPIException {
+							return workspace.getModel(modelId);
+						}
+					}));
 			if (model == null) {
 				throw new AnaplanOperationException("Could not fetch "
 						+ "model with provided model ID: " + modelId);
@@ -137,9 +187,145 @@ public class BaseAnaplanOperation {
 					+ "model for Workspace ID: " + workspaceId + ", Model ID"
 					+ modelId);
 		}
+		this.workspaceId = workspaceId;
+		this.modelId = modelId;
 		return model;
 	}
 
+	/**
+	 * Fetches metadata of the current model, e.g. an action, through the
+	 * metadata cache so that repeated operations do not fetch it again.
+	 * Expects {@link #getModel(String, String)} to have been called.
+	 *
+	 * @param type Type of the metadata, e.g. "import".
+	 * @param id ID or name of the metadata object.
+	 * @param loader Fetches the object from the model on a cache miss.
+	 * @return Cached or freshly fetched object, or null if none exists.
+	 * @throws AnaplanAPIException Thrown when fetching the object fails.
+	 */
+	protected <T> T fetchModelMetadata(String type, String id,
+			MetadataCache.Loader<T> loader) throws AnaplanAPIException {
+		final Span span = startSpan(Tracing.METADATA_SPAN, id);
+		span.setAttribute(Tracing.METADATA_TYPE, type);
+		try {
+			return metadataCache.get(modelMetadataKey(type, id),
+					governed(loader));
+		} catch (AnaplanAPIException | RuntimeException e) {
+			span.recordException(e);
+			throw e;
+		} finally {
+			span.end();
+		}
+	}
+
+	/**
+	 * Drops the cached metadata of the current model for the provided type
+	 * and ID, e.g. when the server no longer accepts a cached action.
+	 *
+	 * @param type Type of the metadata, e.g. "import".
+	 * @param id ID or name of the metadata object.
+	 */
+	protected void invalidateModelMetadata(String type, String id) {
+		metadataCache.invalidate(modelMetadataKey(type, id));
+	}
+
+	/**
+	 * Wraps the provided loader so that cache misses wait for the API
+	 * governor before fetching from the server.
+	 */
+	private <T> MetadataCache.Loader<T> governed(
+			final MetadataCache.Loader<T> loader) {
+		return new MetadataCache.Loader<T>() {
+			@Override
+			public T load() throws AnaplanAPIException {
+				awaitRequest();
+				return loader.load();
+			}
+		};
+	}
+
+	/**
+	 * Waits until the API governor lets a request through.
+	 *
+	 * @throws AnaplanAPIException Thrown when interrupted while waiting.
+	 */
+	protected void awaitRequest() throws AnaplanAPIException {
+		try {
+			governor.acquireRequest();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AnaplanAPIException("Interrupted while waiting to call "
+					+ "the API!", e);
+		}
+	}
+
+	private String modelMetadataKey(String type, String id) {
+		return MetadataCache.key(workspaceId, modelId, type, id);
+	}
+
+	/**
+	 * Starts a span of a phase of this operation with the shared tracer,
+	 * with the IDs of the current model, once validated, and of the provided
+	 * action as attributes.
+	 *
+	 * @param name Name of the span, e.g. "anaplan.task".
+	 * @param actionId ID of the action, may be null.
+	 * @return Started span.
+	 */
+	protected Span startSpan(String name, String actionId) {
+		final Span span = Tracing.startSpan(name);
+		if (workspaceId != null) {
+			span.setAttribute(Tracing.WORKSPACE_ID, workspaceId);
+		}
+		if (modelId != null) {
+			span.setAttribute(Tracing.MODEL_ID, modelId);
+		}
+		if (actionId != null) {
+			span.setAttribute(Tracing.ACTION_ID, actionId);
+		}
+		return span;
+	}
+
+	/**
+	 * Creates a task of the provided action and runs it on the server until
+	 * it completes, traced as the task phase of this operation. Waits first
+	 * until the API governor lets another task run on the model.
+	 *
+	 * @param action Import, export, delete or process action.
+	 * @param actionId ID of the action.
+	 * @return Final status of the task.
+	 * @throws AnaplanAPIException Thrown when creating or running the task
+	 * 		fails.
+	 */
+	protected TaskStatus runTask(TaskFactory action, String actionId)
+			throws AnaplanAPIException {
+		final ApiGovernor.TaskPermit permit;
+		try {
+			// keyed by the resolved IDs, as flows may name the model instead
+			permit = governor.acquireTask(workspace.getId(), model.getId());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AnaplanAPIException("Interrupted while waiting to run "
+					+ "a task!", e);
+		}
+		final Span span = startSpan(Tracing.TASK_SPAN, actionId);
+		try {
+			awaitRequest();
+			final TaskStatus status = AnaplanUtil.runServerTask(
+					action.createTask(), AnaplanUtil.DEFAULT_POLLING_STRATEGY,
+					governor);
+			span.setAttribute(Tracing.TASK_STATE,
+					String.valueOf(status.getTaskState()));
+			return status;
+		} catch (AnaplanAPIException | RuntimeException e) {
+			span.recordException(e);
+			throw e;
+		} finally {
+			span.end();
+			permit.release();
+		}
+	}
+
 	/**
 	 * Simple validation that tries to fetch the workspace and model using
 	 * provided IDs. If any of the operation fails, then an exception is thrown.
@@ -153,7 +339,17 @@ public class BaseAnaplanOperation {
 			throws AnaplanOperationException {
 
 		// validate workspace and model
-		getModel(workspaceId, modelId);
+		final Span span = Tracing.startSpan(Tracing.VALIDATE_INPUT_SPAN)
+				.setAttribute(Tracing.WORKSPACE_ID, String.valueOf(workspaceId))
+				.setAttribute(Tracing.MODEL_ID, String.valueOf(modelId));
+		try {
+			getModel(workspaceId, modelId);
+		} catch (AnaplanOperationException | RuntimeException e) {
+			span.recordException(e);
+			throw e;
+		} finally {
+			span.end();
+		}
 		logger.info("Workspace ID is valid: {}", workspaceId);
 		logger.info("Model ID is valid: {}", modelId);
 		// validate export ID
@@ -179,6 +375,48 @@ public class BaseAnaplanOperation {
 		return null;
 	}
 
+	/**
+	 * Validates that the operation did not fail, without building any
+	 * response message.
+	 *
+	 * @param anaplanResponse Anaplan response containing API response details.
+	 * @throws AnaplanOperationException Thrown when the response is missing or
+	 *      the operation failed.
+	 */
+	protected static void checkResponseStatus(
+			MulesoftAnaplanResponse anaplanResponse)
+					throws AnaplanOperationException {
+
+		if (anaplanResponse == null) {
+			throw new AnaplanOperationException("Null response found!");
+		}
+		if (anaplanResponse.getStatus() == OperationStatus.FAILURE) {
+			throw new AnaplanOperationException(
+					MessageFormat.format("Operation failed!\n{0}",
+							anaplanResponse.getResponseMessage()));
+		}
+		if (anaplanResponse.getStatus() == null) {
+			throw new AnaplanOperationException(
+					"Could not determine run status of " + "Anaplan Import!");
+		}
+	}
+
+	/**
+	 * Reads the rejected rows of the failure dump of the provided response,
+	 * up to the configured number of rows.
+	 */
+	private String readFailureDump(MulesoftAnaplanResponse anaplanResponse) {
+		final Span span = startSpan(Tracing.FAILURE_DUMP_SPAN, null);
+		try {
+			final String dumpFileContents = anaplanResponse.getDumpFileContents(
+					apiConn.getFailureDumpRows());
+			span.setAttribute(Tracing.CHARACTERS, dumpFileContents.length());
+			return dumpFileContents;
+		} finally {
+			span.end();
+		}
+	}
+
 	/**
 	 * Creating response based on operation status.
 	 * TODO: Move this to Anaplan-Connect
@@ -188,9 +426,10 @@ public class BaseAnaplanOperation {
 	protected String createResponse(MulesoftAnaplanResponse anaplanResponse)
 			throws AnaplanOperationException {
 
-		if (anaplanResponse == null) {
-			throw new AnaplanOperationException("Null response found!");
+		if (anaplanResponse != null) {
+			setResponseStatus(anaplanResponse.getStatus());
 		}
+		checkResponseStatus(anaplanResponse);
 
 		// validate import to Anaplan
 		OperationStatus os = anaplanResponse.getStatus();
@@ -206,7 +445,7 @@ public class BaseAnaplanOperation {
 						"successfully but with warnings!\nResponse Message:\n" +
 						"{0}\nDump File contents:\n{1}",
 						anaplanResponse.getResponseMessage(),
-						anaplanResponse.getDumpFileContents());
+						readFailureDump(anaplanResponse));
 				break;
 			case FAILURE:
 				throw new AnaplanOperationException(
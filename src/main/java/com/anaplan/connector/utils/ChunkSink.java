@@ -0,0 +1,61 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.anaplan.connector.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+
+/**
+ * Destination of the numbered chunks of an upload, written in order by
+ * {@link ChunkedUploader}. A failed upload cannot continue where it failed,
+ * it can only be started over from chunk 0, and only if its data can be
+ * read again.
+ */
+public interface ChunkSink {
+
+	/**
+	 * Writes a chunk, which counts as acknowledged once this returns.
+	 *
+	 * @param index Index of the chunk, starting at 0.
+	 * @param chunk Bytes of the chunk, from its position to its limit.
+	 * @throws IOException Thrown when the write fails.
+	 */
+	void writeChunk(int index, ByteBuffer chunk) throws IOException;
+
+	/**
+	 * Discards all chunks written so far, so that the upload can start over
+	 * from chunk 0.
+	 *
+	 * @throws IOException Thrown when the upload cannot start over.
+	 */
+	void restart() throws IOException;
+
+	/**
+	 * Abandons the upload without completing it, once it failed for good,
+	 * releasing what was held for it. The sink cannot be used afterwards.
+	 */
+	void abort();
+
+	/**
+	 * Completes the upload once all chunks have been written.
+	 *
+	 * @throws IOException Thrown when completing the upload fails.
+	 */
+	void close() throws IOException;
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Origin of the data of a download, which {@link ChunkedDownloader} reads in
+ * fixed-size chunks. The data can be opened again at any byte offset, so a
+ * download that failed part way writes on from the first chunk that was not
+ * completed. A source that cannot seek, like a server-file, reads and
+ * discards the bytes before the offset, so every resume downloads the
+ * completed chunks again and only saves writing them.
+ */
+public interface ChunkSource {
+
+	/**
+	 * Opens the data at the provided offset, which may download the data
+	 * before it and discard it.
+	 *
+	 * @param offset Number of bytes to skip from the start of the data.
+	 * @return Stream of the data from the offset on, closed by the caller.
+	 * @throws IOException Thrown when the data cannot be opened.
+	 */
+	InputStream open(long offset) throws IOException;
+}
@@ -0,0 +1,547 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Fetches the chunks of a server-file download into a bounded queue of
+ * ordered buffers, so that the round trips for the next chunks overlap with
+ * the consumer processing the current one. The consumer reads the
+ * reassembled data through a regular InputStream.
+ *
+ * A download is a single stream, so its chunks are fetched one after the
+ * other, in order, by one fetcher task; the prefetch depth only sizes the
+ * queue the fetcher fills ahead of the consumer, and never fetches chunks
+ * concurrently. The fetcher tasks of all downloads run on a shared pool of
+ * at most {@link #MAX_FETCHER_THREADS} daemon threads. A fetcher holds its
+ * thread until its download is read to the end or closed, so the fetcher of
+ * a download started while all threads are taken waits for one of them.
+ *
+ * Downloads from a {@link ChunkSource} are retried according to the
+ * downloader's retry policy: when reading a chunk fails, the source is
+ * opened again at the start of that chunk, so chunks already completed are
+ * neither fetched into the queue nor written out again. Sources that cannot
+ * be opened at an offset, like server-files, download and discard the bytes
+ * before it, so every retry transfers the completed chunks again. Downloads
+ * to a local file also record their completed chunks in a
+ * {@link DownloadCheckpoint}, from which a later attempt resumes after
+ * reading the completed chunks from the source again and checking them
+ * against the file, so that the data of another export run is never
+ * appended to them.
+ */
+public class ChunkedDownloader {
+
+    private static final Logger logger = LogManager.getLogger(
+            ChunkedDownloader.class.getName());
+
+    public static final int DEFAULT_CHUNK_SIZE = ChunkedUploader.MEGABYTE;
+    public static final int DEFAULT_PREFETCH_CHUNKS = 4;
+    public static final int MAX_FETCHER_THREADS = 16;
+    private static final ThreadPoolExecutor fetchers = new ThreadPoolExecutor(
+            MAX_FETCHER_THREADS, MAX_FETCHER_THREADS, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new DownloadThreadFactory());
+
+    static {
+        fetchers.allowCoreThreadTimeOut(true);
+    }
+
+    private final int chunkSize;
+    private final int prefetchChunks;
+    private final RetryPolicy retryPolicy;
+
+    /**
+     * Constructor using the default chunk size, prefetch depth and retry
+     * policy.
+     */
+    public ChunkedDownloader() {
+        this(DEFAULT_CHUNK_SIZE, DEFAULT_PREFETCH_CHUNKS);
+    }
+
+    /**
+     * Constructor using the default retry policy.
+     *
+     * @param chunkSize Size of each buffered chunk in bytes.
+     * @param prefetchChunks Size of the read-ahead queue, i.e. the maximum
+     *      number of chunks fetched ahead of the consumer.
+     * @throws IllegalArgumentException If either value is less than one.
+     */
+    public ChunkedDownloader(int chunkSize, int prefetchChunks) {
+        this(chunkSize, prefetchChunks, RetryPolicy.DEFAULT);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param chunkSize Size of each buffered chunk in bytes.
+     * @param prefetchChunks Size of the read-ahead queue, i.e. the maximum
+     *      number of chunks fetched ahead of the consumer.
+     * @param retryPolicy Policy for retrying failed chunks of downloads from
+     *      a {@link ChunkSource}.
+     * @throws IllegalArgumentException If either value is less than one.
+     */
+    public ChunkedDownloader(int chunkSize, int prefetchChunks,
+                             RetryPolicy retryPolicy) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive: "
+                    + chunkSize);
+        }
+        if (prefetchChunks < 1) {
+            throw new IllegalArgumentException("At least one prefetched chunk "
+                    + "is required: " + prefetchChunks);
+        }
+        this.chunkSize = chunkSize;
+        this.prefetchChunks = prefetchChunks;
+        this.retryPolicy = retryPolicy;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getPrefetchChunks() {
+        return prefetchChunks;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Starts fetching the provided download stream in the background.
+     *
+     * @param source Download stream of the server-file.
+     * @return Stream of the reassembled data, which must be closed by the
+     *      caller to release the background fetcher and the source.
+     */
+    public InputStream download(InputStream source) {
+        return new PrefetchingInputStream(new ResumingReader(null, source,
+                RetryPolicy.NONE));
+    }
+
+    /**
+     * Starts fetching the provided source in the background, resuming at
+     * the failed chunk when reading a chunk fails.
+     *
+     * @param source Source of the data.
+     * @return Stream of the reassembled data, which must be closed by the
+     *      caller to release the background fetcher and the source.
+     * @throws IOException Thrown when the source cannot be opened.
+     */
+    public InputStream download(ChunkSource source) throws IOException {
+        return new PrefetchingInputStream(new ResumingReader(source,
+                source.open(0), retryPolicy));
+    }
+
+    /**
+     * Downloads the provided source into a local file, starting at the first
+     * chunk missing from the provided checkpoint. The source is read from its
+     * start to check that it still begins with the completed chunks of the
+     * file; if it does not, its data was replaced since, and the checkpoint
+     * is reset so that the download starts over. Every chunk is synced to
+     * the file before it is recorded as completed, and the checkpoint is
+     * deleted once the download completed.
+     *
+     * @param source Source of the data.
+     * @param target File to write the data to, which holds the completed
+     *      chunks of the checkpoint if any.
+     * @param checkpoint Checkpoint of the chunks already in the file.
+     * @return Size of the downloaded data in bytes.
+     * @throws IOException Thrown when reading a chunk fails for good, or
+     *      writing the file or checkpoint fails.
+     */
+    public long download(ChunkSource source, File target,
+                         DownloadCheckpoint checkpoint) throws IOException {
+        final ConnectorMetrics metrics = ConnectorMetrics.getShared();
+        final long startNanos = System.nanoTime();
+        boolean failed = true;
+        ResumingReader reader = null;
+        final RandomAccessFile file = new RandomAccessFile(target, "rw");
+        try {
+            int chunkIndex = checkpoint.getFirstMissingChunk();
+            long length = (long) chunkIndex * chunkSize;
+            if (file.length() < length) {
+                throw new IOException(target + " is shorter than the "
+                        + chunkIndex + " chunks of " + checkpoint);
+            }
+            InputStream resumed = null;
+            if (chunkIndex > 0) {
+                resumed = openAfter(source, file, length);
+                if (resumed == null) {
+                    logger.warn("The completed chunks of {} differ from the "
+                            + "source, whose data was replaced since, "
+                            + "downloading it again", checkpoint);
+                    checkpoint.reset();
+                    chunkIndex = 0;
+                    length = 0;
+                } else {
+                    logger.info("Resuming download to {} at chunk {}",
+                            target, chunkIndex);
+                }
+            }
+            reader = new ResumingReader(source, resumed, retryPolicy);
+            byte[] chunk;
+            while ((chunk = reader.read(chunkIndex)) != null) {
+                file.seek(length);
+                file.write(chunk);
+                // never record a chunk that could still be lost
+                file.getFD().sync();
+                checkpoint.markCompleted(chunkIndex++);
+                length += chunk.length;
+                metrics.increment(ConnectorMetrics.Counter.BYTES_DOWNLOADED,
+                        chunk.length);
+            }
+            file.setLength(length);
+            checkpoint.delete();
+            failed = false;
+            return length;
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
+            file.close();
+            metrics.recordPhase(ConnectorMetrics.Phase.DOWNLOAD, startNanos,
+                    failed);
+        }
+    }
+
+    /**
+     * Opens the source from its start, retrying according to the retry
+     * policy, and checks that it begins with the provided number of bytes of
+     * the file.
+     *
+     * @return The source positioned after these bytes, or null if it does
+     *      not begin with them.
+     */
+    private InputStream openAfter(ChunkSource source, RandomAccessFile file,
+                                  long length) throws IOException {
+        int failedAttempts = 0;
+        while (true) {
+            InputStream stream = null;
+            boolean matching = false;
+            try {
+                stream = source.open(0);
+                matching = startsWith(stream, file, length);
+                return matching ? stream : null;
+            } catch (IOException e) {
+                failedAttempts++;
+                if (!retryPolicy.shouldRetry(e, failedAttempts)) {
+                    throw e;
+                }
+                logger.warn("Attempt {} of {} at reading the completed chunks "
+                        + "failed, retrying: {}", failedAttempts,
+                        retryPolicy.getMaxAttempts(), e.getMessage());
+                retryPolicy.backoff(failedAttempts);
+            } finally {
+                if (!matching) {
+                    IOUtils.closeQuietly(stream);
+                }
+            }
+        }
+    }
+
+    private boolean startsWith(InputStream stream, RandomAccessFile file,
+                               long length) throws IOException {
+        final byte[] expected = new byte[chunkSize];
+        final byte[] actual = new byte[chunkSize];
+        file.seek(0);
+        long left = length;
+        while (left > 0) {
+            final int count = (int) Math.min(chunkSize, left);
+            file.readFully(expected, 0, count);
+            int filled = 0;
+            while (filled < count) {
+                final int read = stream.read(actual, filled, count - filled);
+                if (read == -1) {
+                    return false;
+                }
+                filled += read;
+            }
+            for (int i = 0; i < count; i++) {
+                if (expected[i] != actual[i]) {
+                    return false;
+                }
+            }
+            left -= count;
+        }
+        return true;
+    }
+
+    /**
+     * Reads a source in fixed-size chunks.
+     *
+     * @return The next chunk, shorter than the chunk size only at the end of
+     *      the data, or null if no data is left.
+     */
+    private byte[] readChunk(InputStream source) throws IOException {
+        final byte[] buffer = new byte[chunkSize];
+        int filled = 0;
+        int read;
+        while (filled < chunkSize
+                && (read = source.read(buffer, filled, chunkSize - filled)) != -1) {
+            filled += read;
+        }
+        if (filled == 0) {
+            return null;
+        }
+        return filled == chunkSize ? buffer : Arrays.copyOf(buffer, filled);
+    }
+
+    /**
+     * Reads the chunks of a source in order, opening the source again at the
+     * start of a chunk whose read failed.
+     */
+    private class ResumingReader implements Closeable {
+
+        private final ChunkSource source;
+        private final RetryPolicy retry;
+        // guards the stream, which the consumer may close while the
+        // background fetcher opens it again
+        private final Object lock = new Object();
+        private InputStream stream;
+        private boolean closed = false;
+
+        /**
+         * Constructor.
+         *
+         * @param source Source to open at failed chunks, may be null if
+         *      the retry policy makes a single attempt only.
+         * @param stream Source already opened at the first chunk, or null to
+         *      open it when the first chunk is read.
+         * @param retry Policy for retrying failed chunks.
+         */
+        ResumingReader(ChunkSource source, InputStream stream,
+                       RetryPolicy retry) {
+            this.source = source;
+            this.stream = stream;
+            this.retry = retry;
+        }
+
+        /**
+         * Reads the chunk at the provided index, which follows the chunk read
+         * last.
+         *
+         * @return The chunk, or null if no data is left.
+         * @throws IOException Thrown when reading fails for good.
+         */
+        byte[] read(int index) throws IOException {
+            int failedAttempts = 0;
+            while (true) {
+                final InputStream current = open(index);
+                try {
+                    return readChunk(current);
+                } catch (IOException e) {
+                    discard(current);
+                    failedAttempts++;
+                    if (!retry.shouldRetry(e, failedAttempts)) {
+                        throw e;
+                    }
+                    logger.warn("Download attempt {} of {} for chunk {} "
+                            + "failed, resuming at it: {}", failedAttempts,
+                            retry.getMaxAttempts(), index, e.getMessage());
+                    retry.backoff(failedAttempts);
+                }
+            }
+        }
+
+        /**
+         * Returns the open stream, opening the source at the provided chunk
+         * if there is none. The source is opened outside the lock, and the
+         * new stream closed right away if the reader was closed meanwhile.
+         */
+        private InputStream open(int index) throws IOException {
+            synchronized (lock) {
+                checkOpen();
+                if (stream != null) {
+                    return stream;
+                }
+            }
+            final InputStream opened = source.open((long) index * chunkSize);
+            synchronized (lock) {
+                if (closed) {
+                    IOUtils.closeQuietly(opened);
+                }
+                checkOpen();
+                stream = opened;
+                return opened;
+            }
+        }
+
+        private void checkOpen() throws InterruptedIOException {
+            if (closed) {
+                throw new InterruptedIOException("Download was closed");
+            }
+        }
+
+        private void discard(InputStream failed) {
+            synchronized (lock) {
+                if (stream == failed) {
+                    stream = null;
+                }
+            }
+            IOUtils.closeQuietly(failed);
+        }
+
+        @Override
+        public void close() {
+            synchronized (lock) {
+                closed = true;
+                IOUtils.closeQuietly(stream);
+                stream = null;
+            }
+        }
+    }
+
+    /**
+     * InputStream fed by a background thread that reads the source ahead in
+     * fixed-size chunks.
+     */
+    private class PrefetchingInputStream extends InputStream {
+
+        private final byte[] endOfStream = new byte[0];
+        private final ResumingReader reader;
+        private final BlockingQueue<byte[]> chunks;
+        private final Future<?> fetcher;
+        private volatile IOException failure;
+        private byte[] current;
+        private int position = 0;
+        private boolean finished = false;
+
+        PrefetchingInputStream(ResumingReader reader) {
+            this.reader = reader;
+            this.chunks = new ArrayBlockingQueue<>(prefetchChunks);
+            this.fetcher = fetchers.submit(new Runnable() {
+                @Override
+                public void run() {
+                    fetchChunks();
+                }
+            });
+        }
+
+        private void fetchChunks() {
+            final ConnectorMetrics metrics = ConnectorMetrics.getShared();
+            final long startNanos = System.nanoTime();
+            int chunkIndex = 0;
+            try {
+                byte[] chunk;
+                while ((chunk = reader.read(chunkIndex)) != null) {
+                    metrics.increment(ConnectorMetrics.Counter.BYTES_DOWNLOADED,
+                            chunk.length);
+                    chunks.put(chunk);
+                    logger.debug("Fetched chunk {} ({} bytes)", chunkIndex++,
+                            chunk.length);
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                // consumer closed the stream, stop fetching
+                metrics.recordPhase(ConnectorMetrics.Phase.DOWNLOAD, startNanos,
+                        false);
+                return;
+            }
+            metrics.recordPhase(ConnectorMetrics.Phase.DOWNLOAD, startNanos,
+                    failure != null);
+            try {
+                chunks.put(endOfStream);
+            } catch (InterruptedException e) {
+                // consumer closed the stream, nothing left to signal
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (finished) {
+                return -1;
+            }
+            while (current == null || position == current.length) {
+                try {
+                    current = chunks.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while "
+                            + "waiting for the next chunk");
+                }
+                position = 0;
+                if (current == endOfStream) {
+                    finished = true;
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    return -1;
+                }
+            }
+            final int count = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            finished = true;
+            // interrupts the fetcher, or drops it if it did not start yet
+            fetcher.cancel(true);
+            reader.close();
+        }
+    }
+
+    /**
+     * Names fetcher threads and marks them as daemons so that the shared pool
+     * never keeps the JVM alive.
+     */
+    private static class DownloadThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "anaplan-download-"
+                    + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
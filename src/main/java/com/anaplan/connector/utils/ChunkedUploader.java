@@ -0,0 +1,641 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Splits import data into independently numbered chunks and prepares them
+ * on a worker pool shared by all uploads, while the prepared chunks are
+ * written in order to the server-file's upload stream. The anaplan-connect
+ * client uploads a server-file through that single stream, so chunks are
+ * sent over the network one at a time; what runs ahead is preparing them, up
+ * to a bounded number of chunks ahead of the one being written. String
+ * chunks are encoded concurrently, whereas stream chunks are read one after
+ * the other, in order, by the tasks prepared ahead. Preparing chunks and the
+ * network writes therefore overlap, and memory use is capped at roughly
+ * (chunks prepared ahead + 1) * chunk size.
+ *
+ * Chunks are prepared in byte buffers recycled through a per-upload pool.
+ * String data is encoded straight from the string into these buffers by a
+ * per-thread encoder, and stream data is read into them as raw bytes, so
+ * no intermediate strings or byte arrays are allocated per chunk.
+ *
+ * Uploads to a {@link ChunkSink} are retried as a whole according to the
+ * uploader's retry policy: after a transient failure the sink is restarted
+ * and the upload starts over from chunk 0. Strings and
+ * {@link ReplayableInputStream}s are read again from their start, while any
+ * other stream is spooled to a temporary file as it is uploaded, unless the
+ * policy makes a single attempt only.
+ */
+public class ChunkedUploader {
+
+    private static final Logger logger = LogManager.getLogger(
+            ChunkedUploader.class.getName());
+
+    public static final int MEGABYTE = 1024 * 1024;
+    public static final int MIN_CHUNK_SIZE = MEGABYTE;
+    public static final int MAX_CHUNK_SIZE = 50 * MEGABYTE;
+    public static final int DEFAULT_CHUNK_SIZE = MEGABYTE;
+    public static final int DEFAULT_CHUNKS_PREPARED_AHEAD = 4;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    // encoding is CPU bound, so the shared pool is sized to the processors
+    private static final ExecutorService workers = Executors.newFixedThreadPool(
+            Math.max(DEFAULT_CHUNKS_PREPARED_AHEAD,
+                    Runtime.getRuntime().availableProcessors()),
+            new UploadThreadFactory());
+    // encoders are stateful, so every worker thread gets one of its own,
+    // replacing malformed input just like String.getBytes() does
+    private static final ThreadLocal<CharsetEncoder> UTF_8_ENCODER =
+            new ThreadLocal<CharsetEncoder>() {
+                @Override
+                protected CharsetEncoder initialValue() {
+                    return UTF_8.newEncoder()
+                            .onMalformedInput(CodingErrorAction.REPLACE)
+                            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+                }
+            };
+
+    private final int chunkSize;
+    private final int chunksPreparedAhead;
+    private final RetryPolicy retryPolicy;
+
+    /**
+     * Constructor using the default chunk size, read-ahead and retry policy.
+     */
+    public ChunkedUploader() {
+        this(DEFAULT_CHUNK_SIZE, DEFAULT_CHUNKS_PREPARED_AHEAD);
+    }
+
+    /**
+     * Constructor using the default retry policy.
+     *
+     * @param chunkSize Size of each chunk in bytes, between 1 and 50 MB.
+     * @param chunksPreparedAhead Maximum number of chunks prepared ahead of
+     *      the chunk being written.
+     * @throws IllegalArgumentException If either value is out of range.
+     */
+    public ChunkedUploader(int chunkSize, int chunksPreparedAhead) {
+        this(chunkSize, chunksPreparedAhead, RetryPolicy.DEFAULT);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param chunkSize Size of each chunk in bytes, between 1 and 50 MB.
+     * @param chunksPreparedAhead Maximum number of chunks prepared ahead of
+     *      the chunk being written.
+     * @param retryPolicy Policy for retrying failed uploads to a
+     *      {@link ChunkSink}.
+     * @throws IllegalArgumentException If either value is out of range.
+     */
+    public ChunkedUploader(int chunkSize, int chunksPreparedAhead,
+                           RetryPolicy retryPolicy) {
+        if (chunkSize < MIN_CHUNK_SIZE || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Chunk size must be between "
+                    + MIN_CHUNK_SIZE + " and " + MAX_CHUNK_SIZE + " bytes: "
+                    + chunkSize);
+        }
+        if (chunksPreparedAhead < 1) {
+            throw new IllegalArgumentException("At least one chunk prepared "
+                    + "ahead is required: " + chunksPreparedAhead);
+        }
+        this.chunkSize = chunkSize;
+        this.chunksPreparedAhead = chunksPreparedAhead;
+        this.retryPolicy = retryPolicy;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getChunksPreparedAhead() {
+        return chunksPreparedAhead;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Uploads the provided string data, UTF-8 encoding each chunk on the
+     * worker pool directly into a pooled buffer.
+     *
+     * @param data String data to upload.
+     * @param target Upload stream of the server-file.
+     * @return Number of bytes written to the upload stream.
+     * @throws IOException Thrown when writing to the upload stream fails.
+     */
+    public long upload(String data, OutputStream target) throws IOException {
+        return upload(data, new OutputStreamSink(target), RetryPolicy.NONE);
+    }
+
+    /**
+     * Uploads the provided string data to the provided sink, retrying
+     * according to the uploader's retry policy. The caller completes the
+     * upload by closing the sink.
+     *
+     * @param data String data to upload.
+     * @param sink Sink to write the chunks to.
+     * @return Number of bytes written to the sink by the successful attempt.
+     * @throws IOException Thrown when writing to the sink fails for good.
+     */
+    public long upload(String data, ChunkSink sink) throws IOException {
+        return upload(data, sink, retryPolicy);
+    }
+
+    private long upload(String data, ChunkSink sink, RetryPolicy retry)
+            throws IOException {
+        int failedAttempts = 0;
+        while (true) {
+            final BufferPool buffers = new BufferPool(chunkSize);
+            try {
+                return upload(stringChunks(data, buffers), chunksPreparedAhead,
+                        buffers, sink);
+            } catch (IOException e) {
+                failedAttempts++;
+                if (!retry.shouldRetry(e, failedAttempts)) {
+                    throw e;
+                }
+                logger.warn("Upload attempt {} of {} failed, starting over: {}",
+                        failedAttempts, retry.getMaxAttempts(), e.getMessage());
+                retry.backoff(failedAttempts);
+                sink.restart();
+            }
+        }
+    }
+
+    /**
+     * Splits the provided string into tasks UTF-8 encoding each chunk.
+     */
+    private Iterator<Callable<ByteBuffer>> stringChunks(final String data,
+                                                        final BufferPool buffers) {
+        return new Iterator<Callable<ByteBuffer>>() {
+
+            int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < data.length();
+            }
+
+            @Override
+            public Callable<ByteBuffer> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException("No more chunks to fetch!");
+                }
+                final int start = index;
+                int end = Math.min(start + chunkSize, data.length());
+                // never split a surrogate pair across two chunks
+                if (end < data.length()
+                        && Character.isHighSurrogate(data.charAt(end - 1))) {
+                    end++;
+                }
+                index = end;
+                final int chunkEnd = end;
+                return new Callable<ByteBuffer>() {
+                    @Override
+                    public ByteBuffer call() throws CharacterCodingException {
+                        return encode(CharBuffer.wrap(data, start, chunkEnd),
+                                buffers);
+                    }
+                };
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException(
+                        "Iterator not fail-safe!");
+            }
+        };
+    }
+
+    /**
+     * Uploads the provided stream, reading the following chunks in order on
+     * the worker pool while the previous one is being written.
+     *
+     * @param data Stream of data to upload.
+     * @param target Upload stream of the server-file.
+     * @return Number of bytes written to the upload stream.
+     * @throws IOException Thrown when reading the data or writing to the
+     *      upload stream fails.
+     */
+    public long upload(InputStream data, OutputStream target)
+            throws IOException {
+        return uploadOnce(data, new OutputStreamSink(target));
+    }
+
+    /**
+     * Uploads the provided stream to the provided sink, retrying according
+     * to the uploader's retry policy. A {@link ReplayableInputStream} is
+     * rewound to start a failed upload over. Any other stream is spooled to
+     * a temporary file while it is uploaded, unless the policy makes a
+     * single attempt only, and is closed along with the spool file once the
+     * upload completed or failed. The caller completes the upload by closing
+     * the sink.
+     *
+     * @param data Stream of data to upload.
+     * @param sink Sink to write the chunks to.
+     * @return Number of bytes written to the sink by the successful attempt.
+     * @throws IOException Thrown when reading the data or writing to the
+     *      sink fails for good.
+     */
+    public long upload(InputStream data, ChunkSink sink) throws IOException {
+        if (data instanceof ReplayableInputStream) {
+            return upload((ReplayableInputStream) data, sink, retryPolicy);
+        }
+        if (retryPolicy.getMaxAttempts() < 2) {
+            return uploadOnce(data, sink);
+        }
+        final ReplayableInputStream spooled = ReplayableInputStream.spool(
+                data);
+        try {
+            return upload(spooled, sink, retryPolicy);
+        } finally {
+            spooled.close();
+        }
+    }
+
+    private long upload(ReplayableInputStream data, ChunkSink sink,
+                        RetryPolicy retry) throws IOException {
+        int failedAttempts = 0;
+        while (true) {
+            try {
+                return uploadOnce(data, sink);
+            } catch (IOException e) {
+                failedAttempts++;
+                if (!retry.shouldRetry(e, failedAttempts)) {
+                    throw e;
+                }
+                logger.warn("Upload attempt {} of {} failed, starting over: {}",
+                        failedAttempts, retry.getMaxAttempts(), e.getMessage());
+                retry.backoff(failedAttempts);
+                data.rewind();
+                sink.restart();
+            }
+        }
+    }
+
+    private long uploadOnce(InputStream data, ChunkSink sink)
+            throws IOException {
+        final BufferPool buffers = new BufferPool(chunkSize);
+        return upload(new ChunkReadingIterator(data, buffers),
+                chunksPreparedAhead, buffers, sink);
+    }
+
+    /**
+     * UTF-8 encodes the provided characters into a pooled buffer, growing it
+     * if the encoded bytes do not fit.
+     *
+     * @param chars Characters of a single chunk.
+     * @param buffers Pool to take the buffer from.
+     * @return Buffer holding the encoded bytes, ready to be read.
+     * @throws CharacterCodingException Thrown when encoding fails.
+     */
+    private static ByteBuffer encode(CharBuffer chars, BufferPool buffers)
+            throws CharacterCodingException {
+        final CharsetEncoder encoder = UTF_8_ENCODER.get();
+        encoder.reset();
+        ByteBuffer out = buffers.acquire();
+        while (true) {
+            CoderResult result = chars.hasRemaining()
+                    ? encoder.encode(chars, out, true) : CoderResult.UNDERFLOW;
+            if (result.isUnderflow()) {
+                result = encoder.flush(out);
+                if (result.isUnderflow()) {
+                    break;
+                }
+            }
+            if (result.isOverflow()) {
+                final ByteBuffer larger = ByteBuffer.allocate(
+                        out.capacity() * 2);
+                out.flip();
+                larger.put(out);
+                out = larger;
+            } else {
+                result.throwException();
+            }
+        }
+        out.flip();
+        return out;
+    }
+
+    /**
+     * Prepares the provided chunks on the worker pool and writes them in
+     * order to the sink, keeping a bounded number of chunks prepared ahead
+     * while a chunk is being written. Written buffers are handed back to the pool
+     * for the following chunks.
+     *
+     * @param chunks Iterator of tasks producing the bytes of each chunk, or
+     *      null once no data is left.
+     * @param maxInFlight Maximum number of chunks prepared ahead.
+     * @param buffers Pool the chunk buffers are taken from.
+     * @param sink Sink to write the chunks to.
+     * @return Number of bytes written to the sink.
+     * @throws IOException Thrown when preparing or writing a chunk fails.
+     */
+    private long upload(Iterator<Callable<ByteBuffer>> chunks,
+                        int maxInFlight, BufferPool buffers, ChunkSink sink)
+            throws IOException {
+
+        final Queue<Future<ByteBuffer>> pending = new ArrayDeque<>();
+        long bytesWritten = 0;
+        int chunkIndex = 0;
+        try {
+            submit(chunks, maxInFlight, pending);
+            while (!pending.isEmpty()) {
+                final ByteBuffer chunk = awaitChunk(pending.poll(), chunkIndex);
+                if (chunk == null) {
+                    break;
+                }
+                // prepare the following chunks while this one is written
+                submit(chunks, maxInFlight, pending);
+                final int chunkLength = chunk.remaining();
+                sink.writeChunk(chunkIndex, chunk);
+                buffers.release(chunk);
+                bytesWritten += chunkLength;
+                logger.debug("Uploaded chunk {} ({} bytes)", chunkIndex,
+                        chunkLength);
+                chunkIndex++;
+            }
+        } finally {
+            drain(pending);
+        }
+        logger.info("Uploaded {} chunks ({} bytes)", chunkIndex, bytesWritten);
+        return bytesWritten;
+    }
+
+    /**
+     * Waits for the chunks still in flight after a failure, so that none of
+     * them is still reading the data when the upload is started over.
+     */
+    private static void drain(Queue<Future<ByteBuffer>> pending) {
+        for (Future<ByteBuffer> future : pending) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (Future<ByteBuffer> abandoned : pending) {
+                    abandoned.cancel(true);
+                }
+                return;
+            } catch (ExecutionException e) {
+                // the upload already failed, this chunk is not needed
+            }
+        }
+    }
+
+    private static void submit(Iterator<Callable<ByteBuffer>> chunks,
+                               int maxInFlight,
+                               Queue<Future<ByteBuffer>> pending) {
+        while (pending.size() < maxInFlight && chunks.hasNext()) {
+            pending.add(workers.submit(chunks.next()));
+        }
+    }
+
+    /**
+     * Waits for a chunk to be prepared, unwrapping any failure.
+     */
+    private static ByteBuffer awaitChunk(Future<ByteBuffer> future,
+                                         int chunkIndex)
+            throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while preparing "
+                    + "chunk " + chunkIndex);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error preparing chunk " + chunkIndex,
+                    e.getCause());
+        }
+    }
+
+    /**
+     * Splits an input stream into tasks reading fixed-size chunks of raw
+     * bytes into pooled buffers. Each task waits for the tasks created
+     * before it, so that the chunks are read in order however the pool runs
+     * them, and a task returns null if no data was left. The pool starts
+     * tasks in the order they were submitted, so the task a waiting one
+     * depends on is always running already.
+     */
+    private class ChunkReadingIterator
+            implements Iterator<Callable<ByteBuffer>> {
+
+        private final InputStream data;
+        private final BufferPool buffers;
+        // guards the turns of the tasks reading the stream
+        private final Object turns = new Object();
+        private int nextTask = 0;
+        private int nextTurn = 0;
+        private boolean stopped = false;
+        private volatile boolean exhausted = false;
+
+        ChunkReadingIterator(InputStream data, BufferPool buffers) {
+            this.data = data;
+            this.buffers = buffers;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !exhausted;
+        }
+
+        @Override
+        public Callable<ByteBuffer> next() {
+            // a task may exhaust the data right after hasNext(), so no check
+            // here: the tasks handed out past its end return null anyway
+            final int turn = nextTask++;
+            return new Callable<ByteBuffer>() {
+                @Override
+                public ByteBuffer call() throws IOException {
+                    return readChunk(turn);
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Iterator not fail-safe!");
+        }
+
+        /**
+         * Reads the chunk of the provided turn once all earlier turns are
+         * over. A turn that fails stops all later ones, which then return
+         * null, as the upload fails anyway, and the turns after the end of
+         * the data return null as well.
+         */
+        private ByteBuffer readChunk(int turn) throws IOException {
+            synchronized (turns) {
+                try {
+                    // once the data is exhausted every later turn returns
+                    // null, so those turns need not wait for each other
+                    while (nextTurn != turn && !stopped && !exhausted) {
+                        turns.wait();
+                    }
+                } catch (InterruptedException e) {
+                    stopped = true;
+                    turns.notifyAll();
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while "
+                            + "waiting to read chunk " + turn);
+                }
+                if (stopped || exhausted) {
+                    return null;
+                }
+            }
+            boolean succeeded = false;
+            try {
+                final ByteBuffer chunk = readChunk();
+                succeeded = true;
+                return chunk;
+            } finally {
+                synchronized (turns) {
+                    stopped |= !succeeded;
+                    nextTurn++;
+                    turns.notifyAll();
+                }
+            }
+        }
+
+        private ByteBuffer readChunk() throws IOException {
+            final ByteBuffer buffer = buffers.acquire();
+            final byte[] bytes = buffer.array();
+            final int offset = buffer.arrayOffset();
+            int filled = 0;
+            int read = 0;
+            while (filled < chunkSize && (read = data.read(bytes,
+                    offset + filled, chunkSize - filled)) != -1) {
+                filled += read;
+            }
+            exhausted = read == -1;
+            if (filled == 0) {
+                buffers.release(buffer);
+                return null;
+            }
+            buffer.limit(filled);
+            return buffer;
+        }
+    }
+
+    /**
+     * Writes the chunks to a plain output stream, in order and only once.
+     */
+    private static class OutputStreamSink implements ChunkSink {
+
+        private final OutputStream target;
+
+        OutputStreamSink(OutputStream target) {
+            this.target = target;
+        }
+
+        @Override
+        public void writeChunk(int index, ByteBuffer chunk) throws IOException {
+            target.write(chunk.array(), chunk.arrayOffset() + chunk.position(),
+                    chunk.remaining());
+        }
+
+        @Override
+        public void restart() throws IOException {
+            throw new IOException("Cannot restart an upload to a stream!");
+        }
+
+        @Override
+        public void abort() {
+            // the target belongs to the caller, who closes it
+        }
+
+        @Override
+        public void close() throws IOException {
+            target.close();
+        }
+    }
+
+    /**
+     * Recycles chunk buffers within a single upload. At most
+     * chunksPreparedAhead + 1 buffers are ever in use at once: the chunks
+     * prepared ahead and the one being written.
+     */
+    private static class BufferPool {
+
+        private final int bufferSize;
+        private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+
+        BufferPool(int bufferSize) {
+            this.bufferSize = bufferSize;
+        }
+
+        ByteBuffer acquire() {
+            final ByteBuffer buffer = free.poll();
+            if (buffer == null) {
+                return ByteBuffer.allocate(bufferSize);
+            }
+            buffer.clear();
+            return buffer;
+        }
+
+        void release(ByteBuffer buffer) {
+            free.offer(buffer);
+        }
+    }
+
+    /**
+     * Names worker threads and marks them as daemons so that the shared pool
+     * never keeps the JVM alive.
+     */
+    private static class UploadThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "anaplan-upload-"
+                    + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
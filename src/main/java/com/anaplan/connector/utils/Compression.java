@@ -0,0 +1,152 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+
+/**
+ * Compression applied to streamed import payloads and export data, so that
+ * compressed files are inflated and deflated on the fly instead of ever
+ * being held uncompressed in memory.
+ */
+public enum Compression {
+
+	NONE,
+	GZIP;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Wraps a stream of data compressed with this compression in a stream of
+	 * the uncompressed data.
+	 *
+	 * @param compressed Compressed data.
+	 * @return Stream of the uncompressed data.
+	 * @throws IOException Thrown when the compression header cannot be read.
+	 */
+	public InputStream decompress(InputStream compressed) throws IOException {
+		if (this == GZIP) {
+			return new GZIPInputStream(compressed, BUFFER_SIZE);
+		}
+		return compressed;
+	}
+
+	/**
+	 * Wraps a stream of uncompressed data in a stream of the data compressed
+	 * with this compression, compressing as the returned stream is read.
+	 *
+	 * @param uncompressed Uncompressed data.
+	 * @return Stream of the compressed data.
+	 */
+	public InputStream compress(InputStream uncompressed) {
+		if (this == GZIP) {
+			return new GzipCompressingInputStream(uncompressed);
+		}
+		return uncompressed;
+	}
+
+	/**
+	 * Pulls data from the source through a GZIPOutputStream, one read buffer
+	 * at a time, and hands out the compressed bytes.
+	 */
+	private static class GzipCompressingInputStream extends InputStream {
+
+		/**
+		 * Exposes its buffer, so compressed bytes can be read without copies.
+		 */
+		private static class CompressedBuffer extends ByteArrayOutputStream {
+			CompressedBuffer() {
+				super(BUFFER_SIZE);
+			}
+
+			byte[] buffer() {
+				return buf;
+			}
+		}
+
+		private final InputStream source;
+		private final byte[] readBuffer = new byte[BUFFER_SIZE];
+		private final CompressedBuffer compressed = new CompressedBuffer();
+		private GZIPOutputStream gzip;
+		private int position = 0;
+		private boolean finished = false;
+
+		GzipCompressingInputStream(InputStream source) {
+			this.source = source;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final byte[] single = new byte[1];
+			return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			while (position == compressed.size()) {
+				if (finished) {
+					return -1;
+				}
+				fill();
+			}
+			final int count = Math.min(len, compressed.size() - position);
+			System.arraycopy(compressed.buffer(), position, b, off, count);
+			position += count;
+			return count;
+		}
+
+		/**
+		 * Compresses the next read buffer of the source, finishing the gzip
+		 * trailer once the source is exhausted.
+		 */
+		private void fill() throws IOException {
+			compressed.reset();
+			position = 0;
+			if (gzip == null) {
+				gzip = new GZIPOutputStream(compressed, BUFFER_SIZE);
+			}
+			final int read = source.read(readBuffer);
+			if (read == -1) {
+				gzip.finish();
+				finished = true;
+			} else {
+				gzip.write(readBuffer, 0, read);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			finished = true;
+			try {
+				source.close();
+			} finally {
+				// releases the deflater's native memory
+				if (gzip != null) {
+					gzip.close();
+				}
+			}
+		}
+	}
+}
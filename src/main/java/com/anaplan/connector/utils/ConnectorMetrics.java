@@ -0,0 +1,386 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Measures the connector operations and their phases: timers of the
+ * authentication, metadata, upload, task and download phases and of the time
+ * spent queueing for the API governor, byte and row counters, the number of
+ * operations in flight and the outcomes of the operations. The shared
+ * instance is exposed through JMX, and measurements are forwarded to any
+ * registered {@link MetricsListener}.
+ */
+public class ConnectorMetrics implements ConnectorMetricsMXBean {
+
+	private static final Logger logger = LogManager.getLogger(
+			ConnectorMetrics.class.getName());
+
+	public static final String OBJECT_NAME =
+			"com.anaplan.connector:type=ConnectorMetrics";
+	private static ConnectorMetrics sharedMetrics;
+
+	/**
+	 * Timed phases of the connector operations.
+	 */
+	public enum Phase {
+		AUTHENTICATION,
+		METADATA,
+		UPLOAD,
+		TASK,
+		DOWNLOAD,
+		QUEUEING
+	}
+
+	/**
+	 * Byte and row counters.
+	 */
+	public enum Counter {
+		BYTES_UPLOADED,
+		BYTES_DOWNLOADED,
+		ROWS_IMPORTED,
+		ROWS_IGNORED,
+		ROWS_EXPORTED
+	}
+
+	private final Map<Phase, Timer> phases = new EnumMap<>(Phase.class);
+	private final Map<Counter, AtomicLong> counters =
+			new EnumMap<>(Counter.class);
+	private final ConcurrentMap<String, OperationStats> operations =
+			new ConcurrentHashMap<>();
+	private final AtomicInteger operationsInFlight = new AtomicInteger();
+	private final List<MetricsListener> listeners =
+			new CopyOnWriteArrayList<>();
+
+	public ConnectorMetrics() {
+		for (Phase phase : Phase.values()) {
+			phases.put(phase, new Timer());
+		}
+		for (Counter counter : Counter.values()) {
+			counters.put(counter, new AtomicLong());
+		}
+	}
+
+	/**
+	 * Getter for the metrics shared by all connector operations, which are
+	 * registered with the platform MBean server when first used.
+	 *
+	 * @return Shared connector metrics.
+	 */
+	public static synchronized ConnectorMetrics getShared() {
+		if (sharedMetrics == null) {
+			sharedMetrics = new ConnectorMetrics();
+			sharedMetrics.registerMBean();
+		}
+		return sharedMetrics;
+	}
+
+	private void registerMBean() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+					new ObjectName(OBJECT_NAME));
+		} catch (InstanceAlreadyExistsException e) {
+			// another copy of the connector, e.g. of another application,
+			// registered its metrics first
+			logger.info("Connector metrics already registered as {}",
+					OBJECT_NAME);
+		} catch (JMException e) {
+			logger.warn("Could not register connector metrics with JMX", e);
+		}
+	}
+
+	public void addListener(MetricsListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(MetricsListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Records a finished run of the provided phase.
+	 *
+	 * @param phase Phase that finished.
+	 * @param startNanos {@link System#nanoTime()} when the phase started.
+	 * @param failed Whether the phase failed.
+	 */
+	public void recordPhase(Phase phase, long startNanos, boolean failed) {
+		final long nanos = System.nanoTime() - startNanos;
+		phases.get(phase).record(nanos, failed);
+		for (MetricsListener listener : listeners) {
+			listener.phaseRecorded(phase, nanos, failed);
+		}
+	}
+
+	/**
+	 * Increments the provided counter.
+	 *
+	 * @param counter Counter to increment.
+	 * @param delta Amount to increment it by.
+	 */
+	public void increment(Counter counter, long delta) {
+		counters.get(counter).addAndGet(delta);
+		for (MetricsListener listener : listeners) {
+			listener.counterIncremented(counter, delta);
+		}
+	}
+
+	/**
+	 * Starts measuring a connector operation, which counts as in flight
+	 * until the returned handle is closed. The operation is also traced as a
+	 * span of the shared tracer, the parent of the spans of its phases.
+	 *
+	 * @param operation Name of the operation, e.g. "import".
+	 * @return Handle to complete the operation with.
+	 */
+	public Operation startOperation(String operation) {
+		OperationStats stats = operations.get(operation);
+		if (stats == null) {
+			final OperationStats created = new OperationStats();
+			stats = operations.putIfAbsent(operation, created);
+			if (stats == null) {
+				stats = created;
+			}
+		}
+		operationsInFlight.incrementAndGet();
+		stats.inFlight.incrementAndGet();
+		return new Operation(operation, stats);
+	}
+
+	private void completeOperation(String operation, OperationStats stats,
+			OperationStatus status, long nanos) {
+		operationsInFlight.decrementAndGet();
+		stats.inFlight.decrementAndGet();
+		stats.totalNanos.addAndGet(nanos);
+		stats.outcomes.get(status).incrementAndGet();
+		for (MetricsListener listener : listeners) {
+			listener.operationCompleted(operation, status, nanos);
+		}
+	}
+
+	@Override
+	public int getOperationsInFlight() {
+		return operationsInFlight.get();
+	}
+
+	@Override
+	public Map<String, Integer> getOperationsInFlightByName() {
+		final Map<String, Integer> inFlight = new TreeMap<>();
+		for (Map.Entry<String, OperationStats> entry : operations.entrySet()) {
+			inFlight.put(entry.getKey(), entry.getValue().inFlight.get());
+		}
+		return inFlight;
+	}
+
+	@Override
+	public Map<String, Long> getOperationCounts() {
+		final Map<String, Long> counts = new TreeMap<>();
+		for (Map.Entry<String, OperationStats> entry : operations.entrySet()) {
+			for (Map.Entry<OperationStatus, AtomicLong> outcome
+					: entry.getValue().outcomes.entrySet()) {
+				counts.put(entry.getKey() + "." + outcome.getKey(),
+						outcome.getValue().get());
+			}
+		}
+		return counts;
+	}
+
+	@Override
+	public Map<String, Long> getOperationTotalMillis() {
+		final Map<String, Long> totals = new TreeMap<>();
+		for (Map.Entry<String, OperationStats> entry : operations.entrySet()) {
+			totals.put(entry.getKey(), TimeUnit.NANOSECONDS.toMillis(
+					entry.getValue().totalNanos.get()));
+		}
+		return totals;
+	}
+
+	@Override
+	public Map<String, Long> getPhaseCounts() {
+		final Map<String, Long> counts = new TreeMap<>();
+		for (Map.Entry<Phase, Timer> entry : phases.entrySet()) {
+			counts.put(entry.getKey().name(), entry.getValue().count.get());
+		}
+		return counts;
+	}
+
+	@Override
+	public Map<String, Long> getPhaseErrors() {
+		final Map<String, Long> errors = new TreeMap<>();
+		for (Map.Entry<Phase, Timer> entry : phases.entrySet()) {
+			errors.put(entry.getKey().name(), entry.getValue().errors.get());
+		}
+		return errors;
+	}
+
+	@Override
+	public Map<String, Long> getPhaseTotalMillis() {
+		final Map<String, Long> totals = new TreeMap<>();
+		for (Map.Entry<Phase, Timer> entry : phases.entrySet()) {
+			totals.put(entry.getKey().name(), TimeUnit.NANOSECONDS.toMillis(
+					entry.getValue().totalNanos.get()));
+		}
+		return totals;
+	}
+
+	@Override
+	public Map<String, Long> getPhaseMaxMillis() {
+		final Map<String, Long> maxima = new TreeMap<>();
+		for (Map.Entry<Phase, Timer> entry : phases.entrySet()) {
+			maxima.put(entry.getKey().name(), TimeUnit.NANOSECONDS.toMillis(
+					entry.getValue().maxNanos.get()));
+		}
+		return maxima;
+	}
+
+	@Override
+	public Map<String, Long> getCounters() {
+		final Map<String, Long> values = new TreeMap<>();
+		for (Map.Entry<Counter, AtomicLong> entry : counters.entrySet()) {
+			values.put(entry.getKey().name(), entry.getValue().get());
+		}
+		return values;
+	}
+
+	@Override
+	public void reset() {
+		for (Timer timer : phases.values()) {
+			timer.reset();
+		}
+		for (AtomicLong counter : counters.values()) {
+			counter.set(0);
+		}
+		for (OperationStats stats : operations.values()) {
+			stats.totalNanos.set(0);
+			for (AtomicLong outcome : stats.outcomes.values()) {
+				outcome.set(0);
+			}
+		}
+	}
+
+	/**
+	 * Handle of an operation in flight. Completing it more than once has no
+	 * effect, and closing it without completing it counts the operation as
+	 * failed, so that it can be closed in a finally block. Completing it
+	 * ends the span of the operation.
+	 */
+	public class Operation {
+
+		private final String name;
+		private final OperationStats stats;
+		private final long startNanos = System.nanoTime();
+		private final AtomicInteger completed = new AtomicInteger();
+		private final Span span;
+
+		private Operation(String name, OperationStats stats) {
+			this.name = name;
+			this.stats = stats;
+			this.span = Tracing.startSpan(Tracing.OPERATION_SPAN_PREFIX + name);
+		}
+
+		/**
+		 * Completes the operation with the provided outcome.
+		 *
+		 * @param status Outcome of the operation, null counting as failed.
+		 */
+		public void complete(OperationStatus status) {
+			if (completed.compareAndSet(0, 1)) {
+				final OperationStatus outcome = status == null
+						? OperationStatus.FAILURE : status;
+				completeOperation(name, stats, outcome,
+						System.nanoTime() - startNanos);
+				span.setAttribute(Tracing.STATUS, outcome.name());
+				span.setStatus(outcome == OperationStatus.FAILURE
+						? Span.StatusCode.ERROR : Span.StatusCode.OK, null);
+				span.end();
+			}
+		}
+
+		/**
+		 * Completes the operation as failed, unless already completed.
+		 */
+		public void close() {
+			complete(OperationStatus.FAILURE);
+		}
+	}
+
+	/**
+	 * Count, errors, total and maximum duration of a phase.
+	 */
+	private static class Timer {
+
+		final AtomicLong count = new AtomicLong();
+		final AtomicLong errors = new AtomicLong();
+		final AtomicLong totalNanos = new AtomicLong();
+		final AtomicLong maxNanos = new AtomicLong();
+
+		void record(long nanos, boolean failed) {
+			count.incrementAndGet();
+			if (failed) {
+				errors.incrementAndGet();
+			}
+			totalNanos.addAndGet(nanos);
+			long max;
+			while (nanos > (max = maxNanos.get())
+					&& !maxNanos.compareAndSet(max, nanos)) {
+				// retry until the maximum is updated or exceeded
+			}
+		}
+
+		void reset() {
+			count.set(0);
+			errors.set(0);
+			totalNanos.set(0);
+			maxNanos.set(0);
+		}
+	}
+
+	/**
+	 * Operations in flight, outcomes and total duration of an operation.
+	 */
+	private static class OperationStats {
+
+		final AtomicInteger inFlight = new AtomicInteger();
+		final AtomicLong totalNanos = new AtomicLong();
+		final Map<OperationStatus, AtomicLong> outcomes =
+				new EnumMap<>(OperationStatus.class);
+
+		OperationStats() {
+			for (OperationStatus status : OperationStatus.values()) {
+				outcomes.put(status, new AtomicLong());
+			}
+		}
+	}
+}
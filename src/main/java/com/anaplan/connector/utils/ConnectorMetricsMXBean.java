@@ -0,0 +1,78 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.utils;
+
+import java.util.Map;
+
+
+/**
+ * Management interface of {@link ConnectorMetrics}, registered with the
+ * platform MBean server as {@value ConnectorMetrics#OBJECT_NAME}.
+ */
+public interface ConnectorMetricsMXBean {
+
+	/**
+	 * Number of connector operations currently running.
+	 */
+	int getOperationsInFlight();
+
+	/**
+	 * Number of currently running operations, by operation name.
+	 */
+	Map<String, Integer> getOperationsInFlightByName();
+
+	/**
+	 * Number of completed operations, keyed by operation name and outcome,
+	 * e.g. "import.FAILURE".
+	 */
+	Map<String, Long> getOperationCounts();
+
+	/**
+	 * Total milliseconds spent in completed operations, by operation name.
+	 */
+	Map<String, Long> getOperationTotalMillis();
+
+	/**
+	 * Number of times each phase ran, e.g. "AUTHENTICATION".
+	 */
+	Map<String, Long> getPhaseCounts();
+
+	/**
+	 * Number of times each phase failed.
+	 */
+	Map<String, Long> getPhaseErrors();
+
+	/**
+	 * Total milliseconds spent in each phase.
+	 */
+	Map<String, Long> getPhaseTotalMillis();
+
+	/**
+	 * Longest time in milliseconds a single run of each phase took.
+	 */
+	Map<String, Long> getPhaseMaxMillis();
+
+	/**
+	 * Values of the byte and row counters, e.g. "BYTES_UPLOADED".
+	 */
+	Map<String, Long> getCounters();
+
+	/**
+	 * Resets all measurements, except for the operations in flight.
+	 */
+	void reset();
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.utils;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+
+/**
+ * RFC-4180 CSV serializer writing rows of cells straight to a Writer. A cell
+ * is only quoted when it contains the separator, the quote character or a
+ * line break, and quote characters within it are doubled. Cells are written
+ * as runs of the original string, so no joined or escaped copies are ever
+ * allocated. Rows are separated by a line-feed, without one after the last.
+ */
+public class CsvWriter implements Closeable, Flushable {
+
+	public static final char DEFAULT_SEPARATOR = ',';
+	public static final char DEFAULT_QUOTE = '"';
+	private static final char LINE_FEED = '\n';
+	private static final char CARRIAGE_RETURN = '\r';
+
+	private final Writer out;
+	private final char separator;
+	private final char quote;
+	private long rowCount = 0;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param out Writer to write the CSV data to.
+	 * @param separator Column separator.
+	 * @param quote Character to quote cells with.
+	 */
+	public CsvWriter(Writer out, char separator, char quote) {
+		this.out = out;
+		this.separator = separator;
+		this.quote = quote;
+	}
+
+	/**
+	 * Creates a writer for the separator and delimiter strings used by
+	 * Anaplan and the connector, falling back to a comma and double-quotes
+	 * respectively when they are not set.
+	 *
+	 * @param out Writer to write the CSV data to.
+	 * @param separator Column separator, e.g. "," or {@link Delimiters#TAB}.
+	 * @param delimiter Cell escape character, e.g. "\"".
+	 * @return CSV writer.
+	 */
+	public static CsvWriter create(Writer out, String separator,
+			String delimiter) {
+		return new CsvWriter(out, toChar(separator, DEFAULT_SEPARATOR),
+				toChar(delimiter, DEFAULT_QUOTE));
+	}
+
+	private static char toChar(String value, char fallback) {
+		if (value == null || value.isEmpty()) {
+			return fallback;
+		}
+		if (Delimiters.TAB.equals(value)) {
+			return '\t';
+		}
+		return value.charAt(0);
+	}
+
+	/**
+	 * Writes a single row, with null cells written as empty ones.
+	 *
+	 * @param cells Cell values of the row.
+	 * @throws IOException Thrown when writing to the underlying writer fails.
+	 */
+	public void writeRow(String[] cells) throws IOException {
+		if (rowCount > 0) {
+			out.write(LINE_FEED);
+		}
+		for (int i = 0; i < cells.length; i++) {
+			if (i > 0) {
+				out.write(separator);
+			}
+			writeCell(cells[i]);
+		}
+		rowCount++;
+	}
+
+	private void writeCell(String cell) throws IOException {
+		if (cell == null || cell.isEmpty()) {
+			return;
+		}
+		if (!needsQuoting(cell)) {
+			out.write(cell);
+			return;
+		}
+		out.write(quote);
+		int runStart = 0;
+		for (int i = 0; i < cell.length(); i++) {
+			if (cell.charAt(i) == quote) {
+				// write up to and including the quote, then double it
+				out.write(cell, runStart, i + 1 - runStart);
+				out.write(quote);
+				runStart = i + 1;
+			}
+		}
+		out.write(cell, runStart, cell.length() - runStart);
+		out.write(quote);
+	}
+
+	private boolean needsQuoting(String cell) {
+		for (int i = 0; i < cell.length(); i++) {
+			final char c = cell.charAt(i);
+			if (c == separator || c == quote || c == LINE_FEED
+					|| c == CARRIAGE_RETURN) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+}
@@ -0,0 +1,215 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.BitSet;
+
+
+/**
+ * Records the chunks of a download that were completed, so that a failed
+ * download resumes at the first missing chunk. The checkpoint is kept in
+ * memory, and optionally in a local file listing the index of every
+ * completed chunk on its own line, so that the download can also resume
+ * after the process itself was restarted. The file starts with a line
+ * identifying the download it belongs to, see {@link #bind(String)}, and is
+ * deleted once the download completed.
+ */
+public class DownloadCheckpoint implements Closeable {
+
+	private static Logger logger = LogManager.getLogger(
+			DownloadCheckpoint.class.getName());
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final String IDENTITY_PREFIX = "#";
+
+	private final BitSet completed = new BitSet();
+	private final File file;
+	private Writer writer;
+	private String identity;
+
+	/**
+	 * Constructor of a checkpoint kept in memory only.
+	 */
+	public DownloadCheckpoint() {
+		this.file = null;
+	}
+
+	/**
+	 * Constructor of a checkpoint kept in the provided file, loading the
+	 * chunks recorded in it if it exists.
+	 *
+	 * @param file Checkpoint file.
+	 * @throws IOException Thrown when the file cannot be read or opened for
+	 *      writing.
+	 */
+	public DownloadCheckpoint(File file) throws IOException {
+		this.file = file;
+		if (file.exists()) {
+			load(file);
+		}
+		this.writer = new OutputStreamWriter(new FileOutputStream(file, true),
+				UTF_8);
+	}
+
+	private void load(File file) throws IOException {
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), UTF_8));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith(IDENTITY_PREFIX)) {
+					identity = line.substring(IDENTITY_PREFIX.length());
+					continue;
+				}
+				try {
+					completed.set(Integer.parseInt(line.trim()));
+				} catch (NumberFormatException | IndexOutOfBoundsException e) {
+					// a line cut short by a crash, its chunk is fetched again
+					logger.warn("Ignoring invalid line of {}: {}", file, line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		logger.info("Loaded checkpoint of {} completed chunks from {}",
+				completed.cardinality(), file);
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public synchronized String getIdentity() {
+		return identity;
+	}
+
+	/**
+	 * Binds the checkpoint to the provided download, such as the source and
+	 * target of the data and the chunk size. Chunks recorded for any other
+	 * download, or by a file without identity, are discarded, and the file
+	 * is started over with the new identity.
+	 *
+	 * @param identity Identity of the download, on a single line.
+	 * @return Whether the completed chunks were kept.
+	 * @throws IOException Thrown when writing the checkpoint file fails.
+	 */
+	public synchronized boolean bind(String identity) throws IOException {
+		if (identity.equals(this.identity)) {
+			return true;
+		}
+		if (!completed.isEmpty()) {
+			logger.warn("Discarding {} completed chunks of {}, recorded for "
+					+ "{} rather than {}", completed.cardinality(),
+					this, this.identity, identity);
+		}
+		this.identity = identity;
+		reset();
+		return false;
+	}
+
+	/**
+	 * Forgets all completed chunks, keeping the identity of the download,
+	 * once they turned out not to hold the data being downloaded.
+	 *
+	 * @throws IOException Thrown when writing the checkpoint file fails.
+	 */
+	public synchronized void reset() throws IOException {
+		completed.clear();
+		if (file != null) {
+			close();
+			writer = new OutputStreamWriter(new FileOutputStream(file, false),
+					UTF_8);
+			if (identity != null) {
+				writer.write(IDENTITY_PREFIX + identity + "\n");
+				writer.flush();
+			}
+		}
+	}
+
+	public synchronized boolean isCompleted(int index) {
+		return completed.get(index);
+	}
+
+	/**
+	 * Index of the first chunk that was not completed, where the download
+	 * resumes.
+	 */
+	public synchronized int getFirstMissingChunk() {
+		return completed.nextClearBit(0);
+	}
+
+	public synchronized int getCompletedCount() {
+		return completed.cardinality();
+	}
+
+	/**
+	 * Records the provided chunk as completed, flushing it to the checkpoint
+	 * file if any.
+	 *
+	 * @param index Index of the completed chunk.
+	 * @throws IOException Thrown when writing the checkpoint file fails.
+	 */
+	public synchronized void markCompleted(int index) throws IOException {
+		completed.set(index);
+		if (writer != null) {
+			writer.write(index + "\n");
+			writer.flush();
+		}
+	}
+
+	/**
+	 * Forgets all completed chunks and deletes the checkpoint file, once the
+	 * download completed.
+	 *
+	 * @throws IOException Thrown when the checkpoint file cannot be deleted.
+	 */
+	public synchronized void delete() throws IOException {
+		close();
+		completed.clear();
+		if (file != null && file.exists() && !file.delete()) {
+			throw new IOException("Could not delete checkpoint " + file);
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (writer != null) {
+			writer.close();
+			writer = null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "DownloadCheckpoint of " + getCompletedCount()
+				+ " completed chunks" + (file == null ? "" : " in " + file);
+	}
+}
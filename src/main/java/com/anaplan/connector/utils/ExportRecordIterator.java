@@ -0,0 +1,189 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.utils;
+
+import com.anaplan.client.AnaplanAPIException;
+import com.anaplan.client.CellReader;
+import com.anaplan.client.ExportMetadata;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+
+/**
+ * Lazily reads the rows of an export as records keyed by the export's column
+ * names, converting NUMBER cells to Doubles and BOOLEAN cells to Booleans
+ * according to the export metadata. Other cells are kept as strings and
+ * empty cells become null. Rows are only downloaded as they are iterated,
+ * and the underlying reader is closed once the last row has been read or
+ * {@link #close()} is called.
+ *
+ * Since iterators cannot throw checked exceptions, a failure to read a row
+ * is rethrown as an IllegalStateException.
+ */
+public class ExportRecordIterator implements Iterator<Map<String, Object>>,
+		Closeable {
+
+	private static final Logger logger = LogManager.getLogger(
+			ExportRecordIterator.class.getName());
+
+	public static final String NUMBER_TYPE = "NUMBER";
+	public static final String BOOLEAN_TYPE = "BOOLEAN";
+
+	private final CellReader cellReader;
+	private final Closeable onClose;
+	private final String[] columnNames;
+	private final String[] dataTypes;
+	private String[] nextRow;
+	private boolean closed = false;
+	private long rowCount = 0;
+
+	/**
+	 * Constructor, which reads the header row right away.
+	 *
+	 * @param cellReader Reader of the export's server-file.
+	 * @param exportMetadata Metadata of the export, defining the column names
+	 *      and data types. May be null, in which case the header row of the
+	 *      file is used for the names and all cells are kept as strings.
+	 * @param onClose Resource to close along with the reader, may be null.
+	 * @throws AnaplanAPIException Thrown when reading the header row fails.
+	 * @throws IOException Thrown when reading the header row fails.
+	 */
+	public ExportRecordIterator(CellReader cellReader,
+			ExportMetadata exportMetadata, Closeable onClose)
+					throws AnaplanAPIException, IOException {
+		this.cellReader = cellReader;
+		this.onClose = onClose;
+		final String[] headerRow = cellReader.getHeaderRow();
+		final String[] headerNames = exportMetadata == null ? null
+				: exportMetadata.getHeaderNames();
+		this.columnNames = headerNames != null ? headerNames
+				: (headerRow != null ? headerRow : new String[0]);
+		this.dataTypes = exportMetadata == null ? null
+				: exportMetadata.getDataTypes();
+	}
+
+	public String[] getColumnNames() {
+		return columnNames.clone();
+	}
+
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (nextRow == null && !closed) {
+			try {
+				nextRow = cellReader.readDataRow();
+			} catch (AnaplanAPIException | IOException e) {
+				closeQuietly();
+				throw new IllegalStateException("Error reading export row "
+						+ (rowCount + 1), e);
+			}
+			if (nextRow == null) {
+				logger.debug("Read {} export records", rowCount);
+				closeQuietly();
+			}
+		}
+		return nextRow != null;
+	}
+
+	@Override
+	public Map<String, Object> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException("No more export records!");
+		}
+		final String[] row = nextRow;
+		nextRow = null;
+		rowCount++;
+
+		final Map<String, Object> record = new LinkedHashMap<>(
+				(int) (Math.max(row.length, columnNames.length) / 0.75f) + 1);
+		for (int i = 0; i < row.length; i++) {
+			final String name = i < columnNames.length ? columnNames[i]
+					: "Column " + (i + 1);
+			record.put(name, convert(row[i], i));
+		}
+		return record;
+	}
+
+	/**
+	 * Converts a cell to the data type of its column.
+	 */
+	private Object convert(String cell, int column) {
+		if (cell == null || cell.isEmpty()) {
+			return null;
+		}
+		final String dataType = dataTypes != null && column < dataTypes.length
+				? dataTypes[column] : null;
+		if (NUMBER_TYPE.equalsIgnoreCase(dataType)) {
+			try {
+				return Double.valueOf(cell);
+			} catch (NumberFormatException e) {
+				// formatted numbers are kept as they were exported
+				return cell;
+			}
+		}
+		if (BOOLEAN_TYPE.equalsIgnoreCase(dataType)) {
+			return Boolean.valueOf(cell);
+		}
+		return cell;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("Iterator not fail-safe!");
+	}
+
+	/**
+	 * Closes the underlying reader, ending the iteration.
+	 *
+	 * @throws IOException Thrown when closing the reader fails.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		nextRow = null;
+		ConnectorMetrics.getShared().increment(
+				ConnectorMetrics.Counter.ROWS_EXPORTED, rowCount);
+		try {
+			cellReader.close();
+		} finally {
+			if (onClose != null) {
+				onClose.close();
+			}
+		}
+	}
+
+	private void closeQuietly() {
+		try {
+			close();
+		} catch (IOException e) {
+			logger.warn("Error closing export reader", e);
+		}
+	}
+}
@@ -0,0 +1,202 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.utils;
+
+import com.anaplan.client.AnaplanAPIException;
+import com.anaplan.client.TaskResult;
+import com.anaplan.client.TaskResultDetail;
+import com.anaplan.connector.MulesoftAnaplanResponse;
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * Outcome of an import, with the row counts of the task result available as
+ * numbers. The counts are taken from the task result details once, when the
+ * result is created, and any other details are kept as warnings. Rows
+ * rejected by the import are only counted from the failure dump when first
+ * asked for, since that requires downloading the dump.
+ */
+public class ImportResult implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	// summary detail of every imported list or module, for example
+	// "Employees: 1,000 (0/1,000) rows successful, 12 ignored"
+	private static final Pattern ROWS_PROCESSED = Pattern.compile(
+			"([\\d,]+) \\([\\d,]+/[\\d,]+\\) rows? successful, ([\\d,]+) ignored");
+
+	private final String importId;
+	private final OperationStatus status;
+	private final String responseMessage;
+	private final long rowsImported;
+	private final long rowsIgnored;
+	private final List<String> warnings;
+	private final long durationMillis;
+	private final transient MulesoftAnaplanResponse response;
+	private long rowsFailed = -1;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param importId Import action ID.
+	 * @param response Response of the import, holding the failure dump if any.
+	 * @param taskResult Result of the import task, may be null.
+	 * @param durationMillis Milliseconds it took to run the import task.
+	 */
+	public ImportResult(String importId, MulesoftAnaplanResponse response,
+			TaskResult taskResult, long durationMillis) {
+		this.importId = importId;
+		this.response = response;
+		this.status = response.getStatus();
+		this.responseMessage = response.getResponseMessage();
+		this.durationMillis = durationMillis;
+
+		long imported = 0;
+		long ignored = 0;
+		final List<String> details = new ArrayList<>();
+		if (taskResult != null && taskResult.getDetails() != null) {
+			for (TaskResultDetail detail : taskResult.getDetails()) {
+				final String message = detail.getLocalizedMessageText();
+				if (message == null) {
+					continue;
+				}
+				final Matcher matcher = ROWS_PROCESSED.matcher(message);
+				if (matcher.find()) {
+					imported += parseCount(matcher.group(1));
+					ignored += parseCount(matcher.group(2));
+				} else {
+					details.add(message);
+				}
+			}
+		}
+		this.rowsImported = imported;
+		this.rowsIgnored = ignored;
+		this.warnings = Collections.unmodifiableList(details);
+	}
+
+	private static long parseCount(String count) {
+		return Long.parseLong(count.replace(",", ""));
+	}
+
+	/**
+	 * Response of the import, for the operation to build its message from.
+	 */
+	MulesoftAnaplanResponse getResponse() {
+		return response;
+	}
+
+	public String getImportId() {
+		return importId;
+	}
+
+	public OperationStatus getStatus() {
+		return status;
+	}
+
+	public boolean isSuccessful() {
+		return status == OperationStatus.SUCCESS;
+	}
+
+	public String getResponseMessage() {
+		return responseMessage;
+	}
+
+	public long getRowsImported() {
+		return rowsImported;
+	}
+
+	public long getRowsIgnored() {
+		return rowsIgnored;
+	}
+
+	/**
+	 * Messages of all task result details other than the row counts.
+	 */
+	public List<String> getWarnings() {
+		return warnings;
+	}
+
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	public boolean isFailureDumpAvailable() {
+		return status == OperationStatus.APPLICATION_ERROR && response != null
+				&& response.getServerFile() != null;
+	}
+
+	/**
+	 * Opens the failure dump listing the rejected rows, downloading it as it
+	 * is read. The caller is responsible for closing the reader.
+	 *
+	 * @return Reader of the failure dump, or null if there is none.
+	 * @throws AnaplanAPIException Thrown when the download cannot be started.
+	 */
+	public BufferedReader openFailureDump() throws AnaplanAPIException {
+		return isFailureDumpAvailable() ? response.openDumpFileReader() : null;
+	}
+
+	/**
+	 * Number of rows rejected by the import, counted from the failure dump
+	 * the first time this is called.
+	 *
+	 * @return Number of rejected rows, 0 if there is no failure dump.
+	 * @throws IOException Thrown when the failure dump cannot be read.
+	 * @throws AnaplanAPIException Thrown when the download cannot be started.
+	 */
+	public synchronized long getRowsFailed() throws IOException,
+			AnaplanAPIException {
+		if (rowsFailed < 0) {
+			rowsFailed = countFailedRows();
+		}
+		return rowsFailed;
+	}
+
+	private long countFailedRows() throws IOException, AnaplanAPIException {
+		final BufferedReader dump = openFailureDump();
+		if (dump == null) {
+			return 0;
+		}
+		try {
+			long lines = 0;
+			while (dump.readLine() != null) {
+				lines++;
+			}
+			// not counting the header row
+			return Math.max(lines - 1, 0);
+		} finally {
+			IOUtils.closeQuietly(dump);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ImportResult for " + importId + " with status " + status
+				+ "; rows imported: " + rowsImported + ", ignored: "
+				+ rowsIgnored + "; warnings: " + warnings.size()
+				+ "; took " + durationMillis + " ms";
+	}
+}
@@ -0,0 +1,226 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.anaplan.connector.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Tracer keeping the spans it created in memory once they end, for tests to
+ * check which phases an operation went through and with which attributes.
+ * Spans are nested by thread: a span started while another span of the same
+ * thread is open is a child of it.
+ */
+public class InMemoryTracer implements Tracer {
+
+	private final AtomicLong spanIds = new AtomicLong();
+	private final ThreadLocal<RecordingSpan> currentSpan = new ThreadLocal<>();
+	private final List<SpanData> finishedSpans = new ArrayList<>();
+
+	@Override
+	public Span startSpan(String name) {
+		final RecordingSpan span = new RecordingSpan(name,
+				spanIds.incrementAndGet(), currentSpan.get());
+		currentSpan.set(span);
+		return span;
+	}
+
+	/**
+	 * Getter for the spans that ended, in the order they ended in.
+	 *
+	 * @return Copy of the finished spans.
+	 */
+	public synchronized List<SpanData> getFinishedSpans() {
+		return new ArrayList<>(finishedSpans);
+	}
+
+	/**
+	 * Getter for the spans of the provided name that ended.
+	 *
+	 * @param name Name of the spans.
+	 * @return Finished spans of the provided name, in the order they ended in.
+	 */
+	public synchronized List<SpanData> getFinishedSpans(String name) {
+		final List<SpanData> spans = new ArrayList<>();
+		for (SpanData span : finishedSpans) {
+			if (span.getName().equals(name)) {
+				spans.add(span);
+			}
+		}
+		return spans;
+	}
+
+	/**
+	 * Drops all finished spans.
+	 */
+	public synchronized void reset() {
+		finishedSpans.clear();
+	}
+
+	private synchronized void finish(SpanData span) {
+		finishedSpans.add(span);
+	}
+
+	private class RecordingSpan implements Span {
+
+		private final String name;
+		private final long spanId;
+		private final RecordingSpan parent;
+		private final long startNanos = System.nanoTime();
+		private final Map<String, Object> attributes = new LinkedHashMap<>();
+		private final AtomicBoolean ended = new AtomicBoolean();
+		private StatusCode statusCode = StatusCode.UNSET;
+		private String statusDescription;
+		private Throwable exception;
+
+		RecordingSpan(String name, long spanId, RecordingSpan parent) {
+			this.name = name;
+			this.spanId = spanId;
+			this.parent = parent;
+		}
+
+		@Override
+		public synchronized Span setAttribute(String key, String value) {
+			attributes.put(key, value);
+			return this;
+		}
+
+		@Override
+		public synchronized Span setAttribute(String key, long value) {
+			attributes.put(key, value);
+			return this;
+		}
+
+		@Override
+		public synchronized Span setStatus(StatusCode statusCode,
+				String description) {
+			this.statusCode = statusCode;
+			this.statusDescription = description;
+			return this;
+		}
+
+		@Override
+		public synchronized Span recordException(Throwable exception) {
+			this.exception = exception;
+			return setStatus(StatusCode.ERROR, exception.getMessage());
+		}
+
+		@Override
+		public void end() {
+			if (!ended.compareAndSet(false, true)) {
+				return;
+			}
+			if (currentSpan.get() == this) {
+				if (parent == null) {
+					currentSpan.remove();
+				} else {
+					currentSpan.set(parent);
+				}
+			}
+			final SpanData data;
+			synchronized (this) {
+				data = new SpanData(name, spanId,
+						parent == null ? 0 : parent.spanId, attributes,
+						statusCode, statusDescription, exception,
+						System.nanoTime() - startNanos);
+			}
+			finish(data);
+		}
+	}
+
+	/**
+	 * Snapshot of a span that ended.
+	 */
+	public static class SpanData {
+
+		private final String name;
+		private final long spanId;
+		private final long parentSpanId;
+		private final Map<String, Object> attributes;
+		private final Span.StatusCode statusCode;
+		private final String statusDescription;
+		private final Throwable exception;
+		private final long durationNanos;
+
+		SpanData(String name, long spanId, long parentSpanId,
+				Map<String, Object> attributes, Span.StatusCode statusCode,
+				String statusDescription, Throwable exception,
+				long durationNanos) {
+			this.name = name;
+			this.spanId = spanId;
+			this.parentSpanId = parentSpanId;
+			this.attributes = Collections.unmodifiableMap(
+					new LinkedHashMap<>(attributes));
+			this.statusCode = statusCode;
+			this.statusDescription = statusDescription;
+			this.exception = exception;
+			this.durationNanos = durationNanos;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getSpanId() {
+			return spanId;
+		}
+
+		/**
+		 * ID of the parent span, 0 for a span without parent.
+		 */
+		public long getParentSpanId() {
+			return parentSpanId;
+		}
+
+		public Map<String, Object> getAttributes() {
+			return attributes;
+		}
+
+		public Object getAttribute(String key) {
+			return attributes.get(key);
+		}
+
+		public Span.StatusCode getStatusCode() {
+			return statusCode;
+		}
+
+		public String getStatusDescription() {
+			return statusDescription;
+		}
+
+		public Throwable getException() {
+			return exception;
+		}
+
+		public long getDurationNanos() {
+			return durationNanos;
+		}
+
+		@Override
+		public String toString() {
+			return name + " " + attributes + " " + statusCode + " in "
+					+ durationNanos + " ns";
+		}
+	}
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.utils;
+
+import com.anaplan.client.AnaplanAPIException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Bounded cache of workspace, model and action metadata keyed by the
+ * hierarchical path of IDs, e.g. workspace/model/import/importId. Entries
+ * expire after a time-to-live, the least recently used entries are evicted
+ * once the cache is full, and whole sub-trees can be invalidated explicitly.
+ *
+ * Metadata objects are bound to the service that fetched them, so a cache
+ * must only ever be used with a single service.
+ */
+public class MetadataCache {
+
+    private static final Logger logger = LogManager.getLogger(
+            MetadataCache.class.getName());
+
+    public static final long DEFAULT_TTL = 10 * 60 * 1000L;
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+    private static final String KEY_SEPARATOR = "/";
+
+    /**
+     * Fetches a metadata object from the server on a cache miss.
+     */
+    public interface Loader<T> {
+        T load() throws AnaplanAPIException;
+    }
+
+    private static class CacheEntry {
+        final Object value;
+        final long expiresAt;
+
+        CacheEntry(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final long ttl;
+    private final Map<String, CacheEntry> entries;
+
+    /**
+     * Constructor using the default time-to-live and size.
+     */
+    public MetadataCache() {
+        this(DEFAULT_TTL, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param ttl Milliseconds after which an entry is fetched again.
+     * @param maxEntries Maximum number of cached entries.
+     * @throws IllegalArgumentException If maxEntries is less than one.
+     */
+    public MetadataCache(long ttl, final int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("At least one cache entry is "
+                    + "required: " + maxEntries);
+        }
+        this.ttl = ttl;
+        this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, CacheEntry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Builds a cache key from the provided path of IDs.
+     *
+     * @param ids Workspace, model, action-type and action IDs, outermost
+     *      first.
+     * @return Cache key.
+     */
+    public static String key(String... ids) {
+        final StringBuilder key = new StringBuilder();
+        for (String id : ids) {
+            if (key.length() > 0) {
+                key.append(KEY_SEPARATOR);
+            }
+            key.append(id);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the cached object for the provided key, fetching it using the
+     * loader if it is missing or expired. Null results are never cached, so
+     * that a missing object is looked up again next time. The loader runs
+     * outside the cache's lock.
+     *
+     * @param key Cache key built using {@link #key(String...)}.
+     * @param loader Fetches the object from the server on a miss.
+     * @return Cached or freshly fetched object, or null if none exists.
+     * @throws AnaplanAPIException Thrown by the loader.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Loader<T> loader) throws AnaplanAPIException {
+        synchronized (this) {
+            final CacheEntry entry = entries.get(key);
+            if (entry != null) {
+                if (System.currentTimeMillis() < entry.expiresAt) {
+                    logger.debug("Metadata cache hit: {}", key);
+                    return (T) entry.value;
+                }
+                entries.remove(key);
+            }
+        }
+        logger.debug("Metadata cache miss: {}", key);
+        final T value = load(loader);
+        if (value != null) {
+            synchronized (this) {
+                entries.put(key, new CacheEntry(value,
+                        System.currentTimeMillis() + ttl));
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Runs the loader, timing it as a metadata fetch in the connector
+     * metrics.
+     */
+    private static <T> T load(Loader<T> loader) throws AnaplanAPIException {
+        final long startNanos = System.nanoTime();
+        boolean failed = true;
+        try {
+            final T value = loader.load();
+            failed = false;
+            return value;
+        } finally {
+            ConnectorMetrics.getShared().recordPhase(
+                    ConnectorMetrics.Phase.METADATA, startNanos, failed);
+        }
+    }
+
+    /**
+     * Drops the entry for the provided key along with every entry nested
+     * under it, e.g. invalidating a model drops all of its actions.
+     *
+     * @param key Cache key built using {@link #key(String...)}.
+     */
+    public synchronized void invalidate(String key) {
+        final String prefix = key + KEY_SEPARATOR;
+        final Iterator<String> keys = entries.keySet().iterator();
+        while (keys.hasNext()) {
+            final String cached = keys.next();
+            if (cached.equals(key) || cached.startsWith(prefix)) {
+                keys.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops all entries.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.utils;
+
+/**
+ * Receives the measurements of {@link ConnectorMetrics} as they are
+ * recorded, e.g. to forward them to a monitoring system's registry.
+ * Listeners are called on the thread recording the measurement, so they
+ * must be thread-safe and return quickly.
+ *
+ * Listeners configured by class name on the connector's configuration need
+ * a public no-argument constructor.
+ */
+public interface MetricsListener {
+
+	/**
+	 * Called once a phase of an operation, e.g. an upload, has finished.
+	 *
+	 * @param phase Phase that finished.
+	 * @param nanos Nanoseconds the phase took.
+	 * @param failed Whether the phase failed.
+	 */
+	void phaseRecorded(ConnectorMetrics.Phase phase, long nanos,
+			boolean failed);
+
+	/**
+	 * Called whenever a counter, e.g. of uploaded bytes, is incremented.
+	 *
+	 * @param counter Counter that was incremented.
+	 * @param delta Amount it was incremented by.
+	 */
+	void counterIncremented(ConnectorMetrics.Counter counter, long delta);
+
+	/**
+	 * Called once a connector operation has completed.
+	 *
+	 * @param operation Name of the operation, e.g. "import".
+	 * @param status Outcome of the operation.
+	 * @param nanos Nanoseconds the operation took.
+	 */
+	void operationCompleted(String operation, OperationStatus status,
+			long nanos);
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.utils;
+
+import com.anaplan.client.TaskStatus;
+
+
+/**
+ * Decides how long to wait before polling the status of a running Anaplan
+ * server task again. Implementations must be stateless so that a single
+ * instance can pace any number of tasks.
+ */
+public interface PollingStrategy {
+
+    /**
+     * Computes the delay before the next status poll.
+     *
+     * @param attempt Number of polls made so far, starting at 1.
+     * @param elapsedMillis Milliseconds elapsed since the task was started.
+     * @param status Status fetched by the latest poll.
+     * @return Delay in milliseconds before polling again.
+     */
+    long nextDelay(int attempt, long elapsedMillis, TaskStatus status);
+}
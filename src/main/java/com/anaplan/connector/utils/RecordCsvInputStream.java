@@ -0,0 +1,202 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.Map;
+
+
+/**
+ * Serializes records into UTF-8 CSV as the stream is read, a fixed-size
+ * batch of records at a time, so that a collection of records can be piped
+ * into an import without ever rendering it as one CSV string. The first row
+ * holds the column names, followed by one row per record.
+ *
+ * Columns are defined by a mapping of Anaplan column names to record keys.
+ * Without a mapping, the keys of the first record are used for both.
+ */
+public class RecordCsvInputStream extends InputStream {
+
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * Exposes its buffer, so serialized bytes can be read without copies.
+	 */
+	private static class BatchBuffer extends ByteArrayOutputStream {
+		byte[] buffer() {
+			return buf;
+		}
+	}
+
+	private final Iterator<? extends Map<String, ?>> records;
+	private final int batchSize;
+	private final BatchBuffer batch = new BatchBuffer();
+	private final Writer batchWriter = new OutputStreamWriter(batch, UTF_8);
+	private final CsvWriter csvWriter;
+	private String[] columnNames;
+	private String[] recordKeys;
+	private String[] row;
+	private int position = 0;
+	private boolean headerWritten = false;
+	private long recordCount = 0;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param records Records to serialize, read as the stream is consumed.
+	 * @param columnMapping Anaplan column names mapped to the record keys
+	 *      holding their values, in column order. May be null or empty, in
+	 *      which case the keys of the first record are used.
+	 * @param separator Column separator, e.g. "," or {@link Delimiters#TAB}.
+	 * @param delimiter Cell escape character, e.g. "\"".
+	 * @param batchSize Number of records serialized at a time.
+	 * @throws IllegalArgumentException If the batch size is not positive.
+	 */
+	public RecordCsvInputStream(Iterator<? extends Map<String, ?>> records,
+			Map<String, String> columnMapping, String separator,
+			String delimiter, int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("At least one record per batch "
+					+ "is required: " + batchSize);
+		}
+		this.records = records;
+		this.batchSize = batchSize;
+		this.csvWriter = CsvWriter.create(batchWriter, separator, delimiter);
+		if (columnMapping != null && !columnMapping.isEmpty()) {
+			setColumns(columnMapping.keySet().toArray(
+					new String[columnMapping.size()]),
+					columnMapping.values().toArray(
+							new String[columnMapping.size()]));
+		}
+	}
+
+	private void setColumns(String[] columnNames, String[] recordKeys) {
+		this.columnNames = columnNames;
+		this.recordKeys = recordKeys;
+		this.row = new String[recordKeys.length];
+	}
+
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	@Override
+	public int read() throws IOException {
+		final byte[] single = new byte[1];
+		return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		while (position == batch.size()) {
+			if (!fill()) {
+				return -1;
+			}
+		}
+		final int count = Math.min(len, batch.size() - position);
+		System.arraycopy(batch.buffer(), position, b, off, count);
+		position += count;
+		return count;
+	}
+
+	/**
+	 * Serializes the next batch of records, preceded by the header row on
+	 * the first call.
+	 *
+	 * @return Whether anything was left to serialize.
+	 */
+	private boolean fill() throws IOException {
+		batch.reset();
+		position = 0;
+		int batched = 0;
+		while (batched < batchSize && records.hasNext()) {
+			final Map<String, ?> record = records.next();
+			if (!headerWritten) {
+				if (recordKeys == null) {
+					final String[] keys = record.keySet().toArray(
+							new String[record.size()]);
+					setColumns(keys, keys);
+				}
+				csvWriter.writeRow(columnNames);
+				headerWritten = true;
+			}
+			for (int i = 0; i < recordKeys.length; i++) {
+				row[i] = format(record.get(recordKeys[i]));
+			}
+			csvWriter.writeRow(row);
+			batched++;
+		}
+		if (!headerWritten && columnNames != null) {
+			// a mapped header is written even without any records
+			csvWriter.writeRow(columnNames);
+			headerWritten = true;
+		} else if (batched == 0) {
+			return false;
+		}
+		recordCount += batched;
+		batchWriter.flush();
+		return true;
+	}
+
+	/**
+	 * Closes the records as well, if they hold any resources.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (records instanceof Closeable) {
+			((Closeable) records).close();
+		}
+	}
+
+	/**
+	 * Formats a record value as cell text. Numbers are written in plain
+	 * notation, without exponents or a trailing ".0".
+	 */
+	private static String format(Object value) {
+		if (value == null) {
+			return null;
+		}
+		if (value instanceof Double || value instanceof Float) {
+			final double number = ((Number) value).doubleValue();
+			if (Double.isNaN(number) || Double.isInfinite(number)) {
+				return value.toString();
+			}
+			if (number == 0) {
+				// stripTrailingZeros() leaves zero as it is before Java 8
+				return "0";
+			}
+			return new BigDecimal(value.toString()).stripTrailingZeros()
+					.toPlainString();
+		}
+		if (value instanceof BigDecimal) {
+			return ((BigDecimal) value).toPlainString();
+		}
+		return value.toString();
+	}
+}
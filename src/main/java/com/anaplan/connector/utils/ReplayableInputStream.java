@@ -0,0 +1,176 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.utils;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+
+/**
+ * Input stream that can be read again from its start, which
+ * {@link ChunkedUploader} uses to start a failed upload over. Byte arrays
+ * are read again from memory. Any other stream is spooled to a temporary
+ * file as it is read, so the first attempt does not wait for the data to be
+ * copied, and a rewound stream reads the spooled bytes back before reading
+ * on from the wrapped stream.
+ */
+public abstract class ReplayableInputStream extends InputStream {
+
+	private static Logger logger = LogManager.getLogger(
+			ReplayableInputStream.class.getName());
+
+	/**
+	 * Starts reading the data over from its first byte.
+	 *
+	 * @throws IOException Thrown when the data cannot be read again.
+	 */
+	public abstract void rewind() throws IOException;
+
+	@Override
+	public int read() throws IOException {
+		final byte[] single = new byte[1];
+		return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+	}
+
+	/**
+	 * Wraps the provided bytes.
+	 *
+	 * @param data Data to read.
+	 * @return Stream reading the data from memory.
+	 */
+	public static ReplayableInputStream of(byte[] data) {
+		return new MemoryStream(data);
+	}
+
+	/**
+	 * Wraps the provided stream, spooling the bytes read to a temporary file
+	 * which is deleted when the stream is closed.
+	 *
+	 * @param source Stream to read, closed along with the returned stream.
+	 * @return Stream reading the source.
+	 * @throws IOException Thrown when the spool file cannot be created.
+	 */
+	public static ReplayableInputStream spool(InputStream source)
+			throws IOException {
+		return new SpoolingStream(source, File.createTempFile(
+				"anaplan-upload-", ".spool"));
+	}
+
+	private static class MemoryStream extends ReplayableInputStream {
+
+		private final byte[] data;
+		private int position = 0;
+
+		MemoryStream(byte[] data) {
+			this.data = data;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) {
+				return 0;
+			}
+			if (position >= data.length) {
+				return -1;
+			}
+			final int count = Math.min(len, data.length - position);
+			System.arraycopy(data, position, b, off, count);
+			position += count;
+			return count;
+		}
+
+		@Override
+		public void rewind() {
+			position = 0;
+		}
+	}
+
+	private static class SpoolingStream extends ReplayableInputStream {
+
+		private final InputStream source;
+		private final File spool;
+		private final OutputStream spoolOut;
+		// bytes in the spool file, and those left to read back from it
+		private long spooled = 0;
+		private long replayLeft = 0;
+		private InputStream replay;
+
+		SpoolingStream(InputStream source, File spool) throws IOException {
+			this.source = source;
+			this.spool = spool;
+			this.spoolOut = new BufferedOutputStream(
+					new FileOutputStream(spool));
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (replay != null) {
+				if (replayLeft > 0) {
+					final int read = replay.read(b, off,
+							(int) Math.min(len, replayLeft));
+					if (read == -1) {
+						throw new EOFException("Upload spool " + spool
+								+ " ended " + replayLeft + " bytes early");
+					}
+					replayLeft -= read;
+					return read;
+				}
+				replay.close();
+				replay = null;
+			}
+			final int read = source.read(b, off, len);
+			if (read > 0) {
+				spoolOut.write(b, off, read);
+				spooled += read;
+			}
+			return read;
+		}
+
+		@Override
+		public void rewind() throws IOException {
+			spoolOut.flush();
+			IOUtils.closeQuietly(replay);
+			// the spool file grows as the source is read on, so the replay
+			// stops at the bytes spooled so far
+			replay = new FileInputStream(spool);
+			replayLeft = spooled;
+		}
+
+		@Override
+		public void close() throws IOException {
+			IOUtils.closeQuietly(replay);
+			IOUtils.closeQuietly(spoolOut);
+			try {
+				source.close();
+			} finally {
+				if (!spool.delete() && spool.exists()) {
+					logger.warn("Could not delete upload spool {}", spool);
+				}
+			}
+		}
+	}
+}
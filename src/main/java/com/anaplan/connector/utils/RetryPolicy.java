@@ -0,0 +1,164 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.anaplan.connector.utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+
+/**
+ * Decides whether and when a failed transfer is attempted again, backing off
+ * exponentially between attempts: the n-th retry waits between half and all
+ * of initialBackoff * 2^(n-1), capped at maxBackoff, the random part keeping
+ * concurrent transfers from retrying in lockstep.
+ */
+public class RetryPolicy {
+
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+	public static final long DEFAULT_INITIAL_BACKOFF = 1000L;
+	public static final long DEFAULT_MAX_BACKOFF = 30 * 1000L;
+
+	/**
+	 * Policy making a single attempt only.
+	 */
+	public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0);
+	public static final RetryPolicy DEFAULT = new RetryPolicy(
+			DEFAULT_MAX_ATTEMPTS, DEFAULT_INITIAL_BACKOFF, DEFAULT_MAX_BACKOFF);
+
+	// server errors and throttling responses, by status code or reason
+	private static final Pattern RETRYABLE_STATUS = Pattern.compile(
+			"(?i)\\b(?:http|status)\\b\\D{0,20}\\b(?:429|5\\d\\d)\\b"
+					+ "|too many requests|internal server error|bad gateway"
+					+ "|service unavailable|gateway timeout");
+
+	private final int maxAttempts;
+	private final long initialBackoff;
+	private final long maxBackoff;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxAttempts Maximum number of attempts, including the first one.
+	 * @param initialBackoff Milliseconds to back off before the first retry.
+	 * @param maxBackoff Maximum milliseconds to back off before any retry.
+	 * @throws IllegalArgumentException If a value is out of range.
+	 */
+	public RetryPolicy(int maxAttempts, long initialBackoff, long maxBackoff) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("At least one attempt is "
+					+ "required: " + maxAttempts);
+		}
+		if (initialBackoff < 0 || maxBackoff < initialBackoff) {
+			throw new IllegalArgumentException("Invalid backoff of "
+					+ initialBackoff + " to " + maxBackoff + " ms");
+		}
+		this.maxAttempts = maxAttempts;
+		this.initialBackoff = initialBackoff;
+		this.maxBackoff = maxBackoff;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	public long getInitialBackoff() {
+		return initialBackoff;
+	}
+
+	public long getMaxBackoff() {
+		return maxBackoff;
+	}
+
+	/**
+	 * Checks whether a transfer should be attempted again after the provided
+	 * failure.
+	 *
+	 * @param failure Cause of the last failed attempt.
+	 * @param failedAttempts Number of attempts that failed so far.
+	 * @return True if attempts are left and the failure is transient.
+	 */
+	public boolean shouldRetry(IOException failure, int failedAttempts) {
+		return failedAttempts < maxAttempts && isTransient(failure);
+	}
+
+	/**
+	 * Checks whether the provided failure may not happen again, i.e. it or
+	 * one of its causes is a socket error, a timeout, or a server error or
+	 * throttling response (HTTP 5xx or 429). Anything else, e.g. a rejected
+	 * request or an interruption, fails the transfer right away.
+	 */
+	public static boolean isTransient(IOException failure) {
+		for (Throwable cause = failure; cause != null;
+				cause = cause.getCause()) {
+			if (cause instanceof SocketTimeoutException
+					|| cause instanceof SocketException) {
+				return true;
+			}
+			if (cause instanceof InterruptedIOException) {
+				return false;
+			}
+			if (cause.getMessage() != null
+					&& RETRYABLE_STATUS.matcher(cause.getMessage()).find()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Milliseconds to back off before the next attempt.
+	 *
+	 * @param failedAttempts Number of attempts that failed so far, at least 1.
+	 * @return Backoff in milliseconds.
+	 */
+	public long getBackoff(int failedAttempts) {
+		long backoff = initialBackoff;
+		for (int i = 1; i < failedAttempts && backoff < maxBackoff; i++) {
+			backoff *= 2;
+		}
+		backoff = Math.min(backoff, maxBackoff);
+		final long half = backoff / 2;
+		return half + ThreadLocalRandom.current().nextLong(backoff - half + 1);
+	}
+
+	/**
+	 * Backs off before the next attempt.
+	 *
+	 * @param failedAttempts Number of attempts that failed so far, at least 1.
+	 * @throws InterruptedIOException If interrupted while backing off.
+	 */
+	public void backoff(int failedAttempts) throws InterruptedIOException {
+		try {
+			Thread.sleep(getBackoff(failedAttempts));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while backing off "
+					+ "before retrying!");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "RetryPolicy of " + maxAttempts + " attempts, backing off "
+				+ initialBackoff + " to " + maxBackoff + " ms";
+	}
+}
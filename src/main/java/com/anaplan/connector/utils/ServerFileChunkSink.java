@@ -0,0 +1,130 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.anaplan.connector.utils;
+
+import com.anaplan.client.AnaplanAPIException;
+import com.anaplan.client.ServerFile;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+
+/**
+ * Writes chunks to the upload stream of a server-file. The stream numbers
+ * the chunks itself as they are written, so a failed chunk cannot be written
+ * again on its own: restarting the sink opens a new upload stream, which
+ * replaces the contents of the server-file.
+ *
+ * The stream buffers a chunk and sends it as a request of its own, so it
+ * holds no connection between chunks. Closing it completes the upload with
+ * the chunks written so far, so a stream abandoned by a restart or an abort
+ * is dropped without being closed, which releases its buffer. The client
+ * cannot discard the chunks already sent: an aborted upload stays
+ * incomplete on the server, where no import reads it, until the next upload
+ * to the server-file starts it over.
+ */
+public class ServerFileChunkSink implements ChunkSink {
+
+	private final ServerFile serverFile;
+	private final ApiGovernor governor;
+	private OutputStream uploadStream;
+	private int nextIndex = 0;
+
+	/**
+	 * Constructor, opening the upload stream of the provided server-file.
+	 *
+	 * @param serverFile Server-file to upload to.
+	 * @throws AnaplanAPIException Thrown when the upload cannot be started.
+	 */
+	public ServerFileChunkSink(ServerFile serverFile)
+			throws AnaplanAPIException {
+		this(serverFile, null);
+	}
+
+	/**
+	 * Constructor, opening the upload stream of the provided server-file.
+	 * Every chunk, which the stream sends as a request of its own, first
+	 * waits for the provided API governor.
+	 *
+	 * @param serverFile Server-file to upload to.
+	 * @param governor Governor of the chunk requests, null for none.
+	 * @throws AnaplanAPIException Thrown when the upload cannot be started.
+	 */
+	public ServerFileChunkSink(ServerFile serverFile, ApiGovernor governor)
+			throws AnaplanAPIException {
+		this.serverFile = serverFile;
+		this.governor = governor;
+		this.uploadStream = serverFile.getUploadStream();
+	}
+
+	@Override
+	public void writeChunk(int index, ByteBuffer chunk) throws IOException {
+		checkOpen();
+		if (index != nextIndex) {
+			throw new IOException("Chunk " + index + " written out of order, "
+					+ "expected chunk " + nextIndex);
+		}
+		if (governor != null) {
+			try {
+				governor.acquireRequest();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting "
+						+ "to upload chunk " + index);
+			}
+		}
+		uploadStream.write(chunk.array(), chunk.arrayOffset()
+				+ chunk.position(), chunk.remaining());
+		nextIndex++;
+	}
+
+	@Override
+	public void restart() throws IOException {
+		checkOpen();
+		// the stream is dropped rather than closed, since closing it would
+		// complete the upload with the chunks written so far
+		uploadStream = null;
+		try {
+			uploadStream = serverFile.getUploadStream();
+		} catch (AnaplanAPIException e) {
+			throw new IOException("Could not restart the upload: "
+					+ e.getMessage(), e);
+		}
+		nextIndex = 0;
+	}
+
+	@Override
+	public void abort() {
+		uploadStream = null;
+	}
+
+	@Override
+	public void close() throws IOException {
+		checkOpen();
+		uploadStream.close();
+	}
+
+	private void checkOpen() throws IOException {
+		if (uploadStream == null) {
+			throw new IOException("Upload to " + serverFile.getName()
+					+ " was aborted");
+		}
+	}
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.utils;
+
+import com.anaplan.client.AnaplanAPIException;
+import com.anaplan.client.ServerFile;
+import org.apache.commons.io.IOUtils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Reads the data of a server-file through its download stream. The stream
+ * can only be read from the start of the server-file, so opening it at an
+ * offset downloads the bytes before the offset again and discards them.
+ */
+public class ServerFileChunkSource implements ChunkSource {
+
+	private final ServerFile serverFile;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param serverFile Server-file to download.
+	 */
+	public ServerFileChunkSource(ServerFile serverFile) {
+		this.serverFile = serverFile;
+	}
+
+	@Override
+	public InputStream open(long offset) throws IOException {
+		final InputStream download;
+		try {
+			download = serverFile.getDownloadStream();
+		} catch (AnaplanAPIException e) {
+			throw new IOException("Could not start the download: "
+					+ e.getMessage(), e);
+		}
+		try {
+			skip(download, offset);
+		} catch (IOException e) {
+			IOUtils.closeQuietly(download);
+			throw e;
+		}
+		return download;
+	}
+
+	private static void skip(InputStream download, long offset)
+			throws IOException {
+		long left = offset;
+		while (left > 0) {
+			final long skipped = download.skip(left);
+			if (skipped > 0) {
+				left -= skipped;
+			} else if (download.read() == -1) {
+				throw new EOFException("Download ended " + left + " bytes "
+						+ "before offset " + offset);
+			} else {
+				left--;
+			}
+		}
+	}
+}
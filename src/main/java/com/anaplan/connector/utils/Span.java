@@ -0,0 +1,63 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.anaplan.connector.utils;
+
+/**
+ * Timed phase of a connector operation, shaped after the OpenTelemetry span
+ * API so that a {@link Tracer} can forward it to an OpenTelemetry span as is.
+ * A span is ended exactly once, by the thread that started it.
+ */
+public interface Span {
+
+	/**
+	 * Outcome of a span, as in OpenTelemetry.
+	 */
+	enum StatusCode {
+		UNSET,
+		OK,
+		ERROR
+	}
+
+	Span setAttribute(String key, String value);
+
+	Span setAttribute(String key, long value);
+
+	/**
+	 * Sets the outcome of the span, e.g. {@link StatusCode#ERROR} when the
+	 * phase failed.
+	 *
+	 * @param statusCode Outcome of the span.
+	 * @param description Cause of an error, may be null.
+	 * @return This span.
+	 */
+	Span setStatus(StatusCode statusCode, String description);
+
+	/**
+	 * Records the exception that failed the phase, and sets the status of the
+	 * span to {@link StatusCode#ERROR}.
+	 *
+	 * @param exception Cause of the failure.
+	 * @return This span.
+	 */
+	Span recordException(Throwable exception);
+
+	/**
+	 * Ends the span, which stops being the current span of its thread.
+	 */
+	void end();
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.utils;
+
+import java.io.Serializable;
+
+
+/**
+ * Outcome of importing into a single workspace and model as part of a
+ * broadcast import.
+ */
+public class TargetImportResult implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String workspaceId;
+	private final String modelId;
+	private final OperationStatus status;
+	private final String message;
+	private final long durationMillis;
+	private final ImportResult importResult;
+
+	/**
+	 * Constructor for an import that ran.
+	 *
+	 * @param workspaceId Anaplan workspace ID of the target.
+	 * @param modelId Anaplan model ID of the target.
+	 * @param importResult Result of the import.
+	 */
+	public TargetImportResult(String workspaceId, String modelId,
+			ImportResult importResult) {
+		this.workspaceId = workspaceId;
+		this.modelId = modelId;
+		this.status = importResult.getStatus();
+		this.message = importResult.getResponseMessage();
+		this.durationMillis = importResult.getDurationMillis();
+		this.importResult = importResult;
+	}
+
+	/**
+	 * Constructor for an import that failed.
+	 *
+	 * @param workspaceId Anaplan workspace ID of the target.
+	 * @param modelId Anaplan model ID of the target.
+	 * @param message Cause of the failure.
+	 * @param durationMillis Milliseconds it took until the import failed.
+	 */
+	public TargetImportResult(String workspaceId, String modelId,
+			String message, long durationMillis) {
+		this.workspaceId = workspaceId;
+		this.modelId = modelId;
+		this.status = OperationStatus.FAILURE;
+		this.message = message;
+		this.durationMillis = durationMillis;
+		this.importResult = null;
+	}
+
+	public String getWorkspaceId() {
+		return workspaceId;
+	}
+
+	public String getModelId() {
+		return modelId;
+	}
+
+	public OperationStatus getStatus() {
+		return status;
+	}
+
+	/**
+	 * Whether the import ran, even if some rows were rejected.
+	 */
+	public boolean isSuccessful() {
+		return status != OperationStatus.FAILURE;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	/**
+	 * Result of the import with its row counts, or null if it failed.
+	 */
+	public ImportResult getImportResult() {
+		return importResult;
+	}
+
+	@Override
+	public String toString() {
+		return workspaceId + "/" + modelId + " " + status + " in "
+				+ durationMillis + " ms";
+	}
+}
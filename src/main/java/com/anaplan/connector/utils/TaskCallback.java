@@ -0,0 +1,42 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.utils;
+
+import com.anaplan.client.TaskStatus;
+
+
+/**
+ * Notified once an Anaplan server task submitted to the {@link TaskScheduler}
+ * reaches a final state. Callbacks run on the scheduler's polling thread and
+ * must therefore not block.
+ */
+public interface TaskCallback {
+
+    /**
+     * Called when the task completed or was cancelled on the server.
+     *
+     * @param status Final status of the task.
+     */
+    void onComplete(TaskStatus status);
+
+    /**
+     * Called when polling the task failed, or the handle was cancelled.
+     *
+     * @param cause Cause of the failure.
+     */
+    void onFailure(Throwable cause);
+}
@@ -0,0 +1,197 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.utils;
+
+import com.anaplan.client.AnaplanAPIException;
+import com.anaplan.client.Task;
+import com.anaplan.client.TaskStatus;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+
+/**
+ * Handle to an Anaplan server task being polled by the {@link TaskScheduler}.
+ * Can be waited upon like any other Future, or have callbacks registered that
+ * are notified once the task reaches a final state.
+ */
+public class TaskHandle implements Future<TaskStatus> {
+
+    private static final Logger logger = LogManager.getLogger(
+            TaskHandle.class.getName());
+
+    private final Task task;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final List<TaskCallback> callbacks = new ArrayList<>();
+    private TaskStatus status;
+    private Throwable failure;
+    private boolean cancelled = false;
+    private Future<?> nextPoll;
+
+    TaskHandle(Task task) {
+        this.task = task;
+    }
+
+    /**
+     * Getter for the server task being polled.
+     *
+     * @return Server task object.
+     */
+    public Task getTask() {
+        return task;
+    }
+
+    /**
+     * Registers a callback, which is invoked immediately if the task has
+     * already finished.
+     *
+     * @param callback Callback to notify of the task outcome.
+     */
+    public void addCallback(TaskCallback callback) {
+        synchronized (this) {
+            if (!isDone()) {
+                callbacks.add(callback);
+                return;
+            }
+        }
+        notifyCallback(callback);
+    }
+
+    /**
+     * Registers the scheduled next poll, so that it can be dropped when the
+     * handle is cancelled.
+     */
+    synchronized void setNextPoll(Future<?> poll) {
+        if (isDone()) {
+            poll.cancel(false);
+        } else {
+            nextPoll = poll;
+        }
+    }
+
+    void complete(TaskStatus finalStatus) {
+        finish(finalStatus, null, false);
+    }
+
+    void fail(Throwable cause) {
+        finish(null, cause, false);
+    }
+
+    /**
+     * Stops polling and cancels the task on the server. A failure to cancel
+     * the server task is logged, the handle is cancelled regardless.
+     *
+     * @param mayInterruptIfRunning Ignored, status polls are never
+     *                              interrupted.
+     * @return False if the handle was already done.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!finish(null, new CancellationException("Task cancelled"),
+                true)) {
+            return false;
+        }
+        try {
+            task.cancel();
+            logger.info("Cancelled server task {}", task.getId());
+        } catch (AnaplanAPIException | RuntimeException e) {
+            logger.warn("Could not cancel server task {}: {}", task.getId(),
+                    e.getMessage());
+        }
+        return true;
+    }
+
+    private boolean finish(TaskStatus finalStatus, Throwable cause,
+                           boolean cancel) {
+        final List<TaskCallback> toNotify;
+        synchronized (this) {
+            if (isDone()) {
+                return false;
+            }
+            status = finalStatus;
+            failure = cause;
+            cancelled = cancel;
+            if (nextPoll != null) {
+                nextPoll.cancel(false);
+                nextPoll = null;
+            }
+            toNotify = new ArrayList<>(callbacks);
+            callbacks.clear();
+            done.countDown();
+        }
+        for (TaskCallback callback : toNotify) {
+            notifyCallback(callback);
+        }
+        return true;
+    }
+
+    private void notifyCallback(TaskCallback callback) {
+        try {
+            if (failure == null) {
+                callback.onComplete(status);
+            } else {
+                callback.onFailure(failure);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Task callback failed!", e);
+        }
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    @Override
+    public TaskStatus get() throws InterruptedException, ExecutionException {
+        done.await();
+        return report();
+    }
+
+    @Override
+    public TaskStatus get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException("Task still running after " + timeout
+                    + " " + unit);
+        }
+        return report();
+    }
+
+    private synchronized TaskStatus report() throws ExecutionException {
+        if (cancelled) {
+            throw new CancellationException("Task cancelled");
+        }
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        return status;
+    }
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.anaplan.connector.utils;
+
+import com.anaplan.client.AnaplanAPIException;
+import com.anaplan.client.Task;
+import com.anaplan.client.TaskStatus;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Polls any number of in-flight Anaplan server tasks. A single scheduler
+ * thread only times the polls, while the status requests themselves block on
+ * a bounded pool of poller threads, which grows with the number of polls due
+ * at once and shrinks again when idle. A slow status request therefore never
+ * delays the polls of other tasks beyond the size of that pool. Between
+ * polls no thread is held by a task, so callers can submit tasks without
+ * blocking and either wait on or register callbacks with the returned
+ * {@link TaskHandle}.
+ */
+public class TaskScheduler {
+
+    private static final Logger logger = LogManager.getLogger(
+            TaskScheduler.class.getName());
+
+    public static final int DEFAULT_POLLER_THREADS = 8;
+    private static final long POLLER_IDLE_SECONDS = 60;
+    private static TaskScheduler sharedScheduler;
+
+    private final ScheduledExecutorService scheduler;
+    private final ThreadPoolExecutor pollers;
+
+    /**
+     * Constructor.
+     *
+     * @param pollerThreads Maximum number of status requests sent at once.
+     * @throws IllegalArgumentException If no poller thread is allowed.
+     */
+    public TaskScheduler(int pollerThreads) {
+        if (pollerThreads < 1) {
+            throw new IllegalArgumentException("At least one poller thread is "
+                    + "required: " + pollerThreads);
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                new NamedThreadFactory("anaplan-task-scheduler-"));
+        pollers = new ThreadPoolExecutor(pollerThreads, pollerThreads,
+                POLLER_IDLE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new NamedThreadFactory("anaplan-task-poller-"));
+        pollers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Getter for the scheduler shared by all connector operations.
+     *
+     * @return Shared task scheduler.
+     */
+    public static synchronized TaskScheduler getShared() {
+        if (sharedScheduler == null) {
+            sharedScheduler = new TaskScheduler(DEFAULT_POLLER_THREADS);
+        }
+        return sharedScheduler;
+    }
+
+    /**
+     * Starts polling the provided task using the default polling strategy.
+     *
+     * @param task Server task object to poll.
+     * @return Handle completed with the final task status.
+     */
+    public TaskHandle submit(Task task) {
+        return submit(task, AnaplanUtil.DEFAULT_POLLING_STRATEGY);
+    }
+
+    /**
+     * Starts polling the provided task, pacing the polls with the provided
+     * strategy. The status is fetched only once per poll.
+     *
+     * @param task Server task object to poll.
+     * @param pollingStrategy Strategy deciding the delay between polls.
+     * @return Handle completed with the final task status.
+     */
+    public TaskHandle submit(Task task, PollingStrategy pollingStrategy) {
+        return submit(task, pollingStrategy, null);
+    }
+
+    /**
+     * Starts polling the provided task, pacing the polls with the provided
+     * strategy, and every status request with the provided API governor.
+     *
+     * @param task Server task object to poll.
+     * @param pollingStrategy Strategy deciding the delay between polls.
+     * @param governor Governor of the status requests, null for none.
+     * @return Handle completed with the final task status.
+     */
+    public TaskHandle submit(final Task task,
+                             final PollingStrategy pollingStrategy,
+                             final ApiGovernor governor) {
+        final TaskHandle handle = new TaskHandle(task);
+        final long startTime = System.currentTimeMillis();
+        pollers.execute(new Runnable() {
+
+            private int attempt = 0;
+
+            @Override
+            public void run() {
+                if (handle.isDone()) {
+                    return;
+                }
+                final TaskStatus status;
+                try {
+                    if (governor != null) {
+                        governor.acquireRequest();
+                    }
+                    status = task.getStatus();
+                    if (attempt == 0) {
+                        logger.info("TASK STATUS: {}", status.getTaskState());
+                    } else {
+                        logger.info("Running Task = {}", status.getProgress());
+                    }
+                    if (AnaplanUtil.isTaskDone(status)) {
+                        handle.complete(status);
+                        return;
+                    }
+                } catch (AnaplanAPIException | RuntimeException e) {
+                    handle.fail(e);
+                    return;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    handle.fail(e);
+                    return;
+                }
+                final long delay = pollingStrategy.nextDelay(++attempt,
+                        System.currentTimeMillis() - startTime, status);
+                schedule(this, delay, handle);
+            }
+        });
+        return handle;
+    }
+
+    /**
+     * Hands the provided poll to the poller threads once its delay elapsed.
+     */
+    private void schedule(final Runnable poll, long delay,
+                          final TaskHandle handle) {
+        handle.setNextPoll(scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    pollers.execute(poll);
+                } catch (RejectedExecutionException e) {
+                    handle.fail(e);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Grows the pool of poller threads to the provided size, if smaller.
+     * The shared pool is never shrunk, so that connections configuring
+     * different sizes get the largest one.
+     *
+     * @param pollerThreads Maximum number of status requests sent at once.
+     */
+    public synchronized void ensurePollerThreads(int pollerThreads) {
+        if (pollerThreads > pollers.getMaximumPoolSize()) {
+            pollers.setMaximumPoolSize(pollerThreads);
+            pollers.setCorePoolSize(pollerThreads);
+            logger.info("Task polls use up to {} threads", pollerThreads);
+        }
+    }
+
+    public int getPollerThreads() {
+        return pollers.getMaximumPoolSize();
+    }
+
+    /**
+     * Stops polling; tasks still in flight are left running on the server.
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+        pollers.shutdownNow();
+    }
+
+    /**
+     * Names the threads and marks them as daemons, so that polling never
+     * keeps the JVM alive.
+     */
+    private static class NamedThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable,
+                    prefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
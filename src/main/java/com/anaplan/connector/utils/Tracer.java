@@ -0,0 +1,36 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.anaplan.connector.utils;
+
+/**
+ * Creates the spans of the connector operations, e.g. by delegating to an
+ * OpenTelemetry tracer. Set through {@link Tracing#setTracer(Tracer)}, or the
+ * "tracerClass" setting of the connector configuration, in which case the
+ * class needs a public no-argument constructor.
+ */
+public interface Tracer {
+
+	/**
+	 * Starts a span, as a child of the current span of the calling thread if
+	 * any. The new span is the current span of the thread until it ends.
+	 *
+	 * @param name Name of the span, e.g. "anaplan.upload".
+	 * @return Started span.
+	 */
+	Span startSpan(String name);
+}
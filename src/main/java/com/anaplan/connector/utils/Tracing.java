@@ -0,0 +1,117 @@
+/**
+ * Copyright 2015 Anaplan Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License.md file for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.anaplan.connector.utils;
+
+
+/**
+ * Holds the tracer shared by all connector operations, along with the names
+ * of their spans and attributes. Spans are not recorded anywhere unless a
+ * tracer is set, the default tracer doing nothing at all.
+ */
+public final class Tracing {
+
+	// spans of the phases of the operations
+	public static final String VALIDATE_INPUT_SPAN = "anaplan.validate_input";
+	public static final String METADATA_SPAN = "anaplan.metadata";
+	public static final String SERVER_FILE_SPAN = "anaplan.server_file";
+	public static final String UPLOAD_SPAN = "anaplan.upload";
+	public static final String TASK_SPAN = "anaplan.task";
+	public static final String FAILURE_DUMP_SPAN = "anaplan.failure_dump";
+	public static final String DOWNLOAD_SPAN = "anaplan.download";
+	// prefix of the spans of whole operations, e.g. "anaplan.import"
+	public static final String OPERATION_SPAN_PREFIX = "anaplan.";
+
+	// span attributes
+	public static final String WORKSPACE_ID = "anaplan.workspace.id";
+	public static final String MODEL_ID = "anaplan.model.id";
+	public static final String ACTION_ID = "anaplan.action.id";
+	public static final String METADATA_TYPE = "anaplan.metadata.type";
+	public static final String BYTES = "anaplan.bytes";
+	public static final String CHARACTERS = "anaplan.characters";
+	public static final String TASK_STATE = "anaplan.task.state";
+	public static final String STATUS = "anaplan.status";
+
+	private static final Span NOOP_SPAN = new Span() {
+		@Override
+		public Span setAttribute(String key, String value) {
+			return this;
+		}
+
+		@Override
+		public Span setAttribute(String key, long value) {
+			return this;
+		}
+
+		@Override
+		public Span setStatus(StatusCode statusCode, String description) {
+			return this;
+		}
+
+		@Override
+		public Span recordException(Throwable exception) {
+			return this;
+		}
+
+		@Override
+		public void end() {
+		}
+	};
+
+	/**
+	 * Tracer that does nothing, the default one.
+	 */
+	public static final Tracer NOOP_TRACER = new Tracer() {
+		@Override
+		public Span startSpan(String name) {
+			return NOOP_SPAN;
+		}
+	};
+
+	private static volatile Tracer tracer = NOOP_TRACER;
+
+	private Tracing() {
+	}
+
+	/**
+	 * Getter for the tracer shared by all connector operations.
+	 *
+	 * @return Shared tracer, never null.
+	 */
+	public static Tracer getTracer() {
+		return tracer;
+	}
+
+	/**
+	 * Setter for the tracer shared by all connector operations.
+	 *
+	 * @param tracer Tracer to use, null to stop tracing.
+	 */
+	public static void setTracer(Tracer tracer) {
+		Tracing.tracer = tracer == null ? NOOP_TRACER : tracer;
+	}
+
+	/**
+	 * Starts a span with the shared tracer.
+	 *
+	 * @param name Name of the span.
+	 * @return Started span.
+	 */
+	public static Span startSpan(String name) {
+		return tracer.startSpan(name);
+	}
+}
@@ -86,6 +86,8 @@ public class UserMessages {
 				"Error accessing Anaplan Workspace or Model");
 		addMessage("failureDump", "Failed records report available");
 		addMessage("noFailureDump", "No failed records report available");
+		addMessage("failureDumpTruncated",
+				"Failed records report truncated, rows shown");
 		addMessage("importBadData",
 				"Some records were not imported: check connector output data for details");
 		addMessage("executeActionSuccess", "Successfully executed delete Action");
@@ -1,11 +1,24 @@
 package com.anaplan.connector.runner;
 
+import com.anaplan.connector.unit.AnaplanActionChainTestCases;
+import com.anaplan.connector.unit.AnaplanBroadcastImportTestCases;
 import com.anaplan.connector.unit.AnaplanUtilTestCases;
+import com.anaplan.connector.unit.ApiGovernorTestCases;
+import com.anaplan.connector.unit.ChunkedDownloaderTestCases;
+import com.anaplan.connector.unit.ChunkedUploaderTestCases;
+import com.anaplan.connector.unit.CompressionTestCases;
+import com.anaplan.connector.unit.ConnectorMetricsTestCases;
 import com.anaplan.connector.unit.ConnectionUnitTestCases;
+import com.anaplan.connector.unit.CsvWriterTestCases;
 import com.anaplan.connector.unit.DeleteOperationUnitTestCases;
 import com.anaplan.connector.unit.ExportOperationUnitTestCases;
+import com.anaplan.connector.unit.ExportRecordIteratorTestCases;
 import com.anaplan.connector.unit.ImportOperationUnitTestCases;
+import com.anaplan.connector.unit.MetadataCacheTestCases;
 import com.anaplan.connector.unit.ProcessOperationUnitTestCases;
+import com.anaplan.connector.unit.RecordCsvInputStreamTestCases;
+import com.anaplan.connector.unit.ServicePoolTestCases;
+import com.anaplan.connector.unit.TracingTestCases;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
@@ -17,7 +30,20 @@ import org.junit.runners.Suite.SuiteClasses;
         ImportOperationUnitTestCases.class,
         ExportOperationUnitTestCases.class,
         ProcessOperationUnitTestCases.class,
-        DeleteOperationUnitTestCases.class})
+        DeleteOperationUnitTestCases.class,
+        ChunkedUploaderTestCases.class,
+        ChunkedDownloaderTestCases.class,
+        ServicePoolTestCases.class,
+        MetadataCacheTestCases.class,
+        CompressionTestCases.class,
+        CsvWriterTestCases.class,
+        ExportRecordIteratorTestCases.class,
+        RecordCsvInputStreamTestCases.class,
+        AnaplanActionChainTestCases.class,
+        AnaplanBroadcastImportTestCases.class,
+        ConnectorMetricsTestCases.class,
+        TracingTestCases.class,
+        ApiGovernorTestCases.class})
 public class UnitTestSuite {
 
 }
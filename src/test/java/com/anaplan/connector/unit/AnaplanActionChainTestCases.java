@@ -0,0 +1,165 @@
+package com.anaplan.connector.unit;
+
+
+import com.anaplan.connector.exceptions.AnaplanOperationException;
+import com.anaplan.connector.utils.ActionResult;
+import com.anaplan.connector.utils.ActionType;
+import com.anaplan.connector.utils.AnaplanActionChain;
+import com.anaplan.connector.utils.OperationStatus;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class AnaplanActionChainTestCases {
+
+    private static final String workspaceId = "workspaceId";
+    private static final String modelId = "modelId";
+
+    /**
+     * Chain running actions in memory, recording the order they ran in and
+     * the highest number of actions running at once.
+     */
+    private static class RecordingChain extends AnaplanActionChain {
+
+        final List<String> ran = Collections.synchronizedList(
+                new ArrayList<String>());
+        final Set<String> failing = new HashSet<>();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        RecordingChain(int maxConcurrentActions, String... failing) {
+            super(null, maxConcurrentActions);
+            this.failing.addAll(Arrays.asList(failing));
+        }
+
+        @Override
+        protected ActionResult runAction(String workspaceId, String modelId,
+                ActionType actionType, String actionId) {
+            final int now = running.incrementAndGet();
+            synchronized (maxRunning) {
+                maxRunning.set(Math.max(maxRunning.get(), now));
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            ran.add(actionId);
+            return new ActionResult(actionType, actionId,
+                    failing.contains(actionId) ? OperationStatus.FAILURE
+                            : OperationStatus.SUCCESS,
+                    "ran " + actionId, 20, false);
+        }
+    }
+
+    @Test
+    public void testDependenciesRunInOrder() throws Exception {
+        RecordingChain chain = new RecordingChain(4);
+        List<ActionResult> results = chain.run(workspaceId, modelId,
+                Arrays.asList("process:Sync", "import:Load", "delete:Clear"),
+                Arrays.asList("delete:Clear -> import:Load",
+                        "Import:Load->process:Sync"));
+
+        assertEquals(Arrays.asList("Clear", "Load", "Sync"), chain.ran);
+        assertEquals(1, chain.maxRunning.get());
+        // results are in the order the actions were provided in
+        assertEquals("Sync", results.get(0).getActionId());
+        assertEquals(ActionType.PROCESS, results.get(0).getActionType());
+        assertEquals("Load", results.get(1).getActionId());
+        assertEquals("Clear", results.get(2).getActionId());
+        for (ActionResult result : results) {
+            assertTrue(result.isSuccessful());
+            assertFalse(result.isSkipped());
+        }
+    }
+
+    @Test
+    public void testConcurrencyIsBounded() throws Exception {
+        RecordingChain chain = new RecordingChain(2);
+        List<String> actions = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            actions.add("export:Export " + i);
+        }
+        List<ActionResult> results = chain.run(workspaceId, modelId, actions,
+                null);
+
+        assertEquals(6, results.size());
+        assertEquals(6, chain.ran.size());
+        assertTrue(chain.maxRunning.get() <= 2);
+    }
+
+    @Test
+    public void testFailureSkipsDependents() throws Exception {
+        RecordingChain chain = new RecordingChain(4, "Load");
+        List<ActionResult> results = chain.run(workspaceId, modelId,
+                Arrays.asList("import:Load", "process:Sync", "export:Report",
+                        "import:Other"),
+                Arrays.asList("import:Load -> process:Sync",
+                        "process:Sync -> export:Report"));
+
+        assertEquals(new HashSet<>(Arrays.asList("Load", "Other")),
+                new HashSet<>(chain.ran));
+        assertEquals(OperationStatus.FAILURE, results.get(0).getStatus());
+        assertFalse(results.get(0).isSkipped());
+        assertTrue(results.get(1).isSkipped());
+        assertEquals("Skipped since import:Load failed",
+                results.get(1).getMessage());
+        assertTrue(results.get(2).isSkipped());
+        assertEquals("Skipped since process:Sync failed",
+                results.get(2).getMessage());
+        assertTrue(results.get(3).isSuccessful());
+    }
+
+    @Test
+    public void testCyclicDependencies() throws Exception {
+        RecordingChain chain = new RecordingChain(4);
+        try {
+            chain.run(workspaceId, modelId,
+                    Arrays.asList("import:A", "process:B", "export:C"),
+                    Arrays.asList("import:A -> process:B",
+                            "process:B -> import:A"));
+            fail("Cyclic dependencies were accepted");
+        } catch (AnaplanOperationException e) {
+            assertEquals("Cyclic dependencies between actions: "
+                    + "[import:A, process:B]", e.getMessage());
+        }
+        assertTrue(chain.ran.isEmpty());
+    }
+
+    @Test(expected = AnaplanOperationException.class)
+    public void testUnknownDependency() throws Exception {
+        new RecordingChain(4).run(workspaceId, modelId,
+                Arrays.asList("import:A"),
+                Arrays.asList("import:A -> process:B"));
+    }
+
+    @Test(expected = AnaplanOperationException.class)
+    public void testInvalidAction() throws Exception {
+        new RecordingChain(4).run(workspaceId, modelId,
+                Arrays.asList("upload:A"), null);
+    }
+
+    @Test(expected = AnaplanOperationException.class)
+    public void testDuplicateAction() throws Exception {
+        new RecordingChain(4).run(workspaceId, modelId,
+                Arrays.asList("import:A", "IMPORT: A"), null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidConcurrency() throws Exception {
+        new RecordingChain(0);
+    }
+}
@@ -0,0 +1,135 @@
+package com.anaplan.connector.unit;
+
+
+import com.anaplan.connector.MulesoftAnaplanResponse;
+import com.anaplan.connector.exceptions.AnaplanOperationException;
+import com.anaplan.connector.utils.AnaplanBroadcastImport;
+import com.anaplan.connector.utils.ChunkedUploader;
+import com.anaplan.connector.utils.ImportResult;
+import com.anaplan.connector.utils.OperationStatus;
+import com.anaplan.connector.utils.TargetImportResult;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class AnaplanBroadcastImportTestCases {
+
+    private static final String importId = "importId";
+    private static final byte[] data = "Name,Code\nRepair,R01".getBytes();
+
+    /**
+     * Broadcast import running the imports in memory, recording the data and
+     * models they received and the highest number running at once.
+     */
+    private static class RecordingBroadcast extends AnaplanBroadcastImport {
+
+        final List<String> imported = Collections.synchronizedList(
+                new ArrayList<String>());
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final String failingModel;
+
+        RecordingBroadcast(int maxConcurrentImports, String failingModel) {
+            super(null, new ChunkedUploader(), maxConcurrentImports);
+            this.failingModel = failingModel;
+        }
+
+        @Override
+        protected ImportResult runImport(InputStream data, String workspaceId,
+                String modelId, String importId, String columnSeparator,
+                String delimiter) throws AnaplanOperationException {
+            final int now = running.incrementAndGet();
+            synchronized (maxRunning) {
+                maxRunning.set(Math.max(maxRunning.get(), now));
+            }
+            try {
+                Thread.sleep(20);
+                assertEquals(new String(AnaplanBroadcastImportTestCases.data),
+                        new String(IOUtils.toByteArray(data)));
+                imported.add(workspaceId + "/" + modelId);
+            } catch (Exception e) {
+                throw new AnaplanOperationException("Could not read data", e);
+            } finally {
+                running.decrementAndGet();
+            }
+            if (modelId.equals(failingModel)) {
+                throw new AnaplanOperationException("Invalid import ID "
+                        + "provided: " + importId);
+            }
+            return new ImportResult(importId,
+                    MulesoftAnaplanResponse.importSuccess("imported", null),
+                    null, 20);
+        }
+    }
+
+    @Test
+    public void testImportIntoEveryModel() throws Exception {
+        RecordingBroadcast broadcast = new RecordingBroadcast(2, null);
+        List<String> targets = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            targets.add("Workspace " + (i % 2) + " / Model " + i);
+        }
+        List<TargetImportResult> results = broadcast.run(data, targets,
+                importId, ",", "\"");
+
+        assertEquals(6, broadcast.imported.size());
+        assertTrue(broadcast.maxRunning.get() <= 2);
+        assertEquals(6, results.size());
+        for (int i = 0; i < 6; i++) {
+            TargetImportResult result = results.get(i);
+            assertEquals("Workspace " + (i % 2), result.getWorkspaceId());
+            assertEquals("Model " + i, result.getModelId());
+            assertEquals(OperationStatus.SUCCESS, result.getStatus());
+            assertEquals("imported", result.getMessage());
+            assertEquals(importId, result.getImportResult().getImportId());
+        }
+    }
+
+    @Test
+    public void testFailureDoesNotStopOtherModels() throws Exception {
+        RecordingBroadcast broadcast = new RecordingBroadcast(4, "Budget");
+        List<TargetImportResult> results = broadcast.run(data,
+                Arrays.asList("Finance/Budget", "Finance/Forecast",
+                        "Sales/Pipeline"), importId, ",", "\"");
+
+        assertEquals(3, broadcast.imported.size());
+        assertFalse(results.get(0).isSuccessful());
+        assertEquals("Invalid import ID provided: importId",
+                results.get(0).getMessage());
+        assertNull(results.get(0).getImportResult());
+        assertTrue(results.get(1).isSuccessful());
+        assertTrue(results.get(2).isSuccessful());
+    }
+
+    @Test(expected = AnaplanOperationException.class)
+    public void testInvalidTarget() throws Exception {
+        new RecordingBroadcast(4, null).run(data,
+                Arrays.asList("Finance/Budget", "Forecast"), importId, ",",
+                "\"");
+    }
+
+    @Test(expected = AnaplanOperationException.class)
+    public void testDuplicateTarget() throws Exception {
+        new RecordingBroadcast(4, null).run(data,
+                Arrays.asList("Finance/Budget", "Finance / Budget"), importId,
+                ",", "\"");
+    }
+
+    @Test(expected = AnaplanOperationException.class)
+    public void testNoTargets() throws Exception {
+        new RecordingBroadcast(4, null).run(data, new ArrayList<String>(),
+                importId, ",", "\"");
+    }
+}
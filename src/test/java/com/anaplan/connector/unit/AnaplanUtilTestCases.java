@@ -4,9 +4,16 @@ package com.anaplan.connector.unit;
 import com.anaplan.client.Task;
 import com.anaplan.client.TaskStatus;
 import com.anaplan.connector.utils.AnaplanUtil;
+import com.anaplan.connector.utils.BackoffPollingStrategy;
+import com.anaplan.connector.utils.PollingStrategy;
+import com.anaplan.connector.utils.TaskCallback;
+import com.anaplan.connector.utils.TaskHandle;
+import com.anaplan.connector.utils.TaskScheduler;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
@@ -15,7 +22,12 @@ import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 
 @RunWith(PowerMockRunner.class)
@@ -26,6 +38,8 @@ public class AnaplanUtilTestCases {
 
     private Task mockTask;
     private TaskStatus mockTaskStatus;
+    @Rule
+    public ExpectedException expectedEx = ExpectedException.none();
 
     @Before
     public void setUp() {
@@ -59,4 +73,113 @@ public class AnaplanUtilTestCases {
         TaskStatus resultStatus = AnaplanUtil.runServerTask(mockTask);
         assertEquals(mockTaskStatus, resultStatus);
     }
+
+    @Test
+    public void testRunServerTaskFetchesStatusOncePerPoll() throws Exception {
+        PowerMockito.doReturn(mockTaskStatus).when(mockTask).getStatus();
+        Mockito.when(mockTaskStatus.getTaskState()).thenReturn(
+                TaskStatus.State.IN_PROGRESS, TaskStatus.State.IN_PROGRESS,
+                TaskStatus.State.IN_PROGRESS, TaskStatus.State.COMPLETE);
+        PollingStrategy noDelay = new BackoffPollingStrategy(0, 0, 1.0, 0.0);
+
+        TaskStatus resultStatus = AnaplanUtil.runServerTask(mockTask, noDelay);
+        assertEquals(mockTaskStatus, resultStatus);
+        Mockito.verify(mockTask, Mockito.times(3)).getStatus();
+    }
+
+    @Test
+    public void testBackoffPollingStrategyGrowsToMaxInterval() {
+        PollingStrategy backoff = new BackoffPollingStrategy(100, 1000, 2.0,
+                0.0);
+        assertEquals(100, backoff.nextDelay(1, 0, mockTaskStatus));
+        assertEquals(200, backoff.nextDelay(2, 0, mockTaskStatus));
+        assertEquals(400, backoff.nextDelay(3, 0, mockTaskStatus));
+        assertEquals(1000, backoff.nextDelay(10, 0, mockTaskStatus));
+    }
+
+    @Test
+    public void testBackoffPollingStrategyJitterStaysInBounds() {
+        PollingStrategy backoff = new BackoffPollingStrategy(100, 1000, 2.0,
+                0.5);
+        for (int i = 0; i < 100; i++) {
+            long delay = backoff.nextDelay(3, 0, mockTaskStatus);
+            assertTrue(delay >= 200 && delay <= 600);
+        }
+    }
+
+    @Test
+    public void testBackoffPollingStrategyIsProgressAware() {
+        PollingStrategy backoff = new BackoffPollingStrategy(100, 60000, 2.0,
+                0.0);
+        // 90% done after 9 seconds: about a second left, so poll in 500ms
+        PowerMockito.doReturn(0.9).when(mockTaskStatus).getProgress();
+        assertEquals(500, backoff.nextDelay(10, 9000, mockTaskStatus));
+    }
+
+    @Test
+    public void testSubmitTaskNotifiesCallback() throws Exception {
+        PowerMockito.doReturn(mockTaskStatus).when(mockTask).getStatus();
+        Mockito.when(mockTaskStatus.getTaskState()).thenReturn(
+                TaskStatus.State.IN_PROGRESS, TaskStatus.State.IN_PROGRESS,
+                TaskStatus.State.COMPLETE);
+        final TaskStatus[] notified = new TaskStatus[1];
+        final CountDownLatch callbackDone = new CountDownLatch(1);
+
+        TaskScheduler scheduler = new TaskScheduler(1);
+        try {
+            TaskHandle handle = scheduler.submit(mockTask,
+                    new BackoffPollingStrategy(0, 0, 1.0, 0.0));
+            handle.addCallback(new TaskCallback() {
+                @Override
+                public void onComplete(TaskStatus status) {
+                    notified[0] = status;
+                    callbackDone.countDown();
+                }
+
+                @Override
+                public void onFailure(Throwable cause) {
+                    callbackDone.countDown();
+                }
+            });
+            assertEquals(mockTaskStatus, handle.get(5, TimeUnit.SECONDS));
+            assertTrue(callbackDone.await(5, TimeUnit.SECONDS));
+            assertEquals(mockTaskStatus, notified[0]);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testEnsurePollerThreadsOnlyGrows() {
+        TaskScheduler scheduler = new TaskScheduler(2);
+        try {
+            scheduler.ensurePollerThreads(4);
+            assertEquals(4, scheduler.getPollerThreads());
+            scheduler.ensurePollerThreads(1);
+            assertEquals(4, scheduler.getPollerThreads());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testCancelTaskHandleCancelsServerTask() throws Exception {
+        PowerMockito.doReturn(mockTaskStatus).when(mockTask).getStatus();
+        PowerMockito.doReturn(TaskStatus.State.IN_PROGRESS).when(mockTaskStatus)
+                .getTaskState();
+
+        TaskScheduler scheduler = new TaskScheduler(1);
+        try {
+            TaskHandle handle = scheduler.submit(mockTask,
+                    new BackoffPollingStrategy(10000, 10000, 1.0, 0.0));
+            assertTrue(handle.cancel(false));
+            assertTrue(handle.isCancelled());
+            assertTrue(handle.isDone());
+            Mockito.verify(mockTask).cancel();
+            expectedEx.expect(CancellationException.class);
+            handle.get();
+        } finally {
+            scheduler.shutdown();
+        }
+    }
 }
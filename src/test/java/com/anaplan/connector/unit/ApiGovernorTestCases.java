@@ -0,0 +1,157 @@
+package com.anaplan.connector.unit;
+
+
+import com.anaplan.connector.utils.ApiGovernor;
+import com.anaplan.connector.utils.ConnectorMetrics;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+public class ApiGovernorTestCases {
+
+    @Test
+    public void testUnlimitedByDefault() throws Exception {
+        ApiGovernor governor = new ApiGovernor();
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            governor.acquireRequest();
+        }
+        governor.acquireTask("ws", "model").release();
+        governor.acquireTask("ws", "model").release();
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void testRequestsArePaced() throws Exception {
+        ApiGovernor governor = new ApiGovernor();
+        governor.configure(20, 0);
+        long queued = queueingCount();
+
+        // a second's worth of requests is let through at once
+        long start = System.nanoTime();
+        governor.acquireRequests(20);
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(
+                200));
+
+        start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            governor.acquireRequest();
+        }
+        long elapsed = System.nanoTime() - start;
+        assertTrue("Paced for " + elapsed + " ns",
+                elapsed >= TimeUnit.MILLISECONDS.toNanos(400));
+        assertEquals(queued + 11, queueingCount());
+    }
+
+    @Test
+    public void testTasksPerModelAreCapped() throws Exception {
+        final ApiGovernor governor = new ApiGovernor();
+        governor.configure(0, 1);
+        ApiGovernor.TaskPermit permit = governor.acquireTask("ws", "model");
+        // other models are not affected
+        governor.acquireTask("ws", "other").release();
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicReference<ApiGovernor.TaskPermit> waiting =
+                new AtomicReference<>();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    waiting.set(governor.acquireTask("ws", "model"));
+                } catch (InterruptedException e) {
+                    // test failed
+                }
+            }
+        });
+        thread.start();
+        started.await();
+        thread.join(200);
+        assertTrue(thread.isAlive());
+
+        permit.release();
+        // releasing twice has no effect
+        permit.release();
+        thread.join(5000);
+        assertFalse(thread.isAlive());
+        waiting.get().release();
+    }
+
+    @Test
+    public void testResizedTaskLimitCountsRunningTasks() throws Exception {
+        final ApiGovernor governor = new ApiGovernor();
+        governor.configure(0, 2);
+        ApiGovernor.TaskPermit first = governor.acquireTask("ws", "model");
+        ApiGovernor.TaskPermit second = governor.acquireTask("ws", "model");
+        governor.configure(0, 1);
+        first.release();
+
+        // the second task still runs, which is all the new limit allows
+        Thread thread = acquireInBackground(governor);
+        thread.join(200);
+        assertTrue(thread.isAlive());
+
+        second.release();
+        thread.join(5000);
+        assertFalse(thread.isAlive());
+    }
+
+    @Test
+    public void testGrownTaskLimitLetsTasksStart() throws Exception {
+        ApiGovernor governor = new ApiGovernor();
+        governor.configure(0, 1);
+        ApiGovernor.TaskPermit first = governor.acquireTask("ws", "model");
+        governor.configure(0, 2);
+
+        Thread thread = acquireInBackground(governor);
+        thread.join(5000);
+        assertFalse(thread.isAlive());
+        first.release();
+    }
+
+    @Test
+    public void testGovernorsAreSharedPerTenant() {
+        ApiGovernor governor = ApiGovernor.forTenant("https://api|user");
+        assertSame(governor, ApiGovernor.forTenant("https://api|user"));
+        assertNotSame(governor, ApiGovernor.forTenant("https://api|other"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeLimit() {
+        new ApiGovernor().configure(-1, 0);
+    }
+
+    /**
+     * Starts a thread acquiring a task permit on the test model, and releasing
+     * it right away.
+     */
+    private static Thread acquireInBackground(final ApiGovernor governor) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    governor.acquireTask("ws", "model").release();
+                } catch (InterruptedException e) {
+                    // test failed
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static long queueingCount() {
+        return ConnectorMetrics.getShared().getPhaseCounts().get(
+                ConnectorMetrics.Phase.QUEUEING.name());
+    }
+}
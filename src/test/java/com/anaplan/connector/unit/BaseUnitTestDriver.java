@@ -5,8 +5,11 @@ import com.anaplan.client.transport.AnaplanAPITransportException;
 import com.anaplan.client.transport.ApacheHttpProvider;
 import com.anaplan.client.transport.TransportProvider;
 import com.anaplan.client.transport.TransportProviderFactory;
+import com.anaplan.connector.MulesoftAnaplanResponse;
 import com.anaplan.connector.connection.AnaplanConnection;
 import com.anaplan.connector.utils.AnaplanUtil;
+import com.anaplan.connector.utils.ApiGovernor;
+import com.anaplan.connector.utils.MetadataCache;
 import org.apache.commons.io.IOUtils;
 import org.junit.After;
 import org.junit.Before;
@@ -155,6 +158,15 @@ public abstract class BaseUnitTestDriver {
         PowerMockito.doReturn(mockService)
                 .when(mockAnaplanConnection)
                 .getConnection();
+        PowerMockito.doReturn(new MetadataCache())
+                .when(mockAnaplanConnection)
+                .getMetadataCache(Mockito.any(Service.class));
+        PowerMockito.doReturn(MulesoftAnaplanResponse.NO_DUMP_ROW_LIMIT)
+                .when(mockAnaplanConnection)
+                .getFailureDumpRows();
+        PowerMockito.doReturn(new ApiGovernor())
+                .when(mockAnaplanConnection)
+                .getGovernor();
         mockService.setServiceCredentials(Mockito.mock(Credentials.class));
     }
 
@@ -0,0 +1,371 @@
+package com.anaplan.connector.unit;
+
+
+import com.anaplan.connector.utils.ChunkSource;
+import com.anaplan.connector.utils.ChunkedDownloader;
+import com.anaplan.connector.utils.DownloadCheckpoint;
+import com.anaplan.connector.utils.RetryPolicy;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class ChunkedDownloaderTestCases {
+
+    private static final RetryPolicy retryPolicy = new RetryPolicy(3, 1, 1);
+
+    private static byte[] sequence(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    /**
+     * Source failing a number of times once a given offset is reached,
+     * recording the offsets it was opened at.
+     */
+    private static class FlakySource implements ChunkSource {
+
+        final byte[] data;
+        final int failingOffset;
+        int failuresLeft;
+        final List<Long> opened = new ArrayList<>();
+
+        FlakySource(byte[] data, int failingOffset, int failures) {
+            this.data = data;
+            this.failingOffset = failingOffset;
+            this.failuresLeft = failures;
+        }
+
+        @Override
+        public InputStream open(final long offset) {
+            opened.add(offset);
+            return new InputStream() {
+                int position = (int) offset;
+
+                @Override
+                public int read() throws IOException {
+                    byte[] single = new byte[1];
+                    return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len)
+                        throws IOException {
+                    int end = data.length;
+                    if (failuresLeft > 0 && position <= failingOffset) {
+                        if (position == failingOffset) {
+                            failuresLeft--;
+                            throw new SocketException("Test exception");
+                        }
+                        end = failingOffset;
+                    }
+                    if (position >= end) {
+                        return -1;
+                    }
+                    int count = Math.min(len, end - position);
+                    System.arraycopy(data, position, b, off, count);
+                    position += count;
+                    return count;
+                }
+            };
+        }
+    }
+
+    private static byte[] readFully(InputStream stream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7];
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testDownloadFetchesOnSharedPool() throws Exception {
+        final List<String> fetchers = new ArrayList<>();
+        InputStream source = new ByteArrayInputStream(sequence(300)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                fetchers.add(Thread.currentThread().getName());
+                return super.read(b, off, len);
+            }
+        };
+
+        InputStream result = new ChunkedDownloader(64, 2).download(source);
+        readFully(result);
+        result.close();
+
+        assertFalse(fetchers.isEmpty());
+        for (String fetcher : fetchers) {
+            assertTrue(fetcher, fetcher.startsWith("anaplan-download-"));
+        }
+    }
+
+    @Test
+    public void testDownloadReassemblesChunksInOrder() throws Exception {
+        byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        InputStream result = new ChunkedDownloader(64, 2).download(
+                new ByteArrayInputStream(data));
+
+        assertArrayEquals(data, readFully(result));
+        assertEquals(-1, result.read());
+        result.close();
+    }
+
+    @Test
+    public void testDownloadEmptySource() throws Exception {
+        InputStream result = new ChunkedDownloader().download(
+                new ByteArrayInputStream(new byte[0]));
+
+        assertEquals(-1, result.read());
+        result.close();
+    }
+
+    @Test
+    public void testDownloadPropagatesFailure() throws Exception {
+        InputStream failingSource = new InputStream() {
+            private int count = 0;
+
+            @Override
+            public int read() throws IOException {
+                if (count++ < 10) {
+                    return 'a';
+                }
+                throw new IOException("Test exception");
+            }
+        };
+        InputStream result = new ChunkedDownloader(4, 1).download(failingSource);
+        try {
+            readFully(result);
+        } catch (IOException e) {
+            assertEquals("Test exception", e.getMessage());
+            return;
+        } finally {
+            result.close();
+        }
+        fail("Expected the source failure to be rethrown");
+    }
+
+    @Test
+    public void testCloseBeforeFullyRead() throws Exception {
+        InputStream result = new ChunkedDownloader(8, 1).download(
+                new ByteArrayInputStream(new byte[1024]));
+
+        assertEquals(0, result.read());
+        result.close();
+        assertEquals(-1, result.read());
+    }
+
+    @Test
+    public void testDownloadResumesAtFailedChunk() throws Exception {
+        byte[] data = sequence(1000);
+        FlakySource source = new FlakySource(data, 200, 2);
+
+        InputStream result = new ChunkedDownloader(64, 2, retryPolicy)
+                .download(source);
+
+        assertArrayEquals(data, readFully(result));
+        assertEquals("[0, 192, 192]", source.opened.toString());
+        result.close();
+    }
+
+    @Test
+    public void testDownloadFailsOnceAttemptsAreUsedUp() throws Exception {
+        FlakySource source = new FlakySource(sequence(100), 10, 3);
+
+        InputStream result = new ChunkedDownloader(8, 1, retryPolicy)
+                .download(source);
+        try {
+            readFully(result);
+            fail("Expected the source failure to be rethrown");
+        } catch (IOException e) {
+            assertEquals(3, source.opened.size());
+        } finally {
+            result.close();
+        }
+    }
+
+    @Test
+    public void testCloseWhileReopeningClosesNewStream() throws Exception {
+        final CountDownLatch reopening = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        final CountDownLatch reopenedClosed = new CountDownLatch(1);
+        ChunkSource source = new ChunkSource() {
+            private int opens = 0;
+
+            @Override
+            public InputStream open(long offset) throws IOException {
+                if (opens++ == 0) {
+                    return new InputStream() {
+                        @Override
+                        public int read() throws IOException {
+                            throw new SocketException("Test exception");
+                        }
+                    };
+                }
+                reopening.countDown();
+                try {
+                    proceed.await();
+                } catch (InterruptedException e) {
+                    // closed by the consumer, open the stream regardless
+                }
+                return new ByteArrayInputStream(new byte[64]) {
+                    @Override
+                    public void close() {
+                        reopenedClosed.countDown();
+                    }
+                };
+            }
+        };
+
+        InputStream result = new ChunkedDownloader(8, 1, retryPolicy)
+                .download(source);
+        assertTrue(reopening.await(5, TimeUnit.SECONDS));
+        result.close();
+        proceed.countDown();
+
+        assertTrue(reopenedClosed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDownloadToFileResumesFromCheckpoint() throws Exception {
+        byte[] data = sequence(1000);
+        FlakySource source = new FlakySource(data, 300, 1);
+        File target = File.createTempFile("export", ".csv");
+        target.deleteOnExit();
+        File checkpointFile = new File(target.getPath() + ".checkpoint");
+        checkpointFile.deleteOnExit();
+
+        DownloadCheckpoint checkpoint = new DownloadCheckpoint(checkpointFile);
+        try {
+            new ChunkedDownloader(64, 1, RetryPolicy.NONE).download(source,
+                    target, checkpoint);
+            fail("Expected the source failure to be rethrown");
+        } catch (IOException e) {
+            assertEquals(4, checkpoint.getCompletedCount());
+        } finally {
+            checkpoint.close();
+        }
+
+        checkpoint = new DownloadCheckpoint(checkpointFile);
+        assertEquals(4, checkpoint.getFirstMissingChunk());
+        long length = new ChunkedDownloader(64, 1, RetryPolicy.NONE).download(
+                source, target, checkpoint);
+
+        assertEquals(data.length, length);
+        assertArrayEquals(data, readFully(new FileInputStream(target)));
+        // the completed chunks are read again to check them
+        assertEquals("[0, 0]", source.opened.toString());
+        assertFalse(checkpointFile.exists());
+    }
+
+    @Test
+    public void testResumeAfterExportRunAgainStartsOver() throws Exception {
+        byte[] data = sequence(1000);
+        File target = File.createTempFile("export", ".csv");
+        target.deleteOnExit();
+        File checkpointFile = new File(target.getPath() + ".checkpoint");
+        checkpointFile.deleteOnExit();
+
+        DownloadCheckpoint checkpoint = new DownloadCheckpoint(checkpointFile);
+        checkpoint.bind("export=1 chunks=1");
+        try {
+            new ChunkedDownloader(64, 1, RetryPolicy.NONE).download(
+                    new FlakySource(data, 300, 1), target, checkpoint);
+            fail("Expected the source failure to be rethrown");
+        } catch (IOException e) {
+            assertEquals(4, checkpoint.getCompletedCount());
+        } finally {
+            checkpoint.close();
+        }
+
+        // the same server-file, holding the data of another run
+        byte[] rerun = new byte[data.length];
+        for (int i = 0; i < rerun.length; i++) {
+            rerun[i] = (byte) (i * 7 + 1);
+        }
+        FlakySource source = new FlakySource(rerun, 0, 0);
+        checkpoint = new DownloadCheckpoint(checkpointFile);
+        assertTrue(checkpoint.bind("export=1 chunks=1"));
+        long length = new ChunkedDownloader(64, 1, RetryPolicy.NONE).download(
+                source, target, checkpoint);
+
+        assertEquals(rerun.length, length);
+        assertArrayEquals(rerun, readFully(new FileInputStream(target)));
+        assertEquals("[0, 0]", source.opened.toString());
+        assertFalse(checkpointFile.exists());
+    }
+
+    @Test
+    public void testCheckpointIsKeptForTheSameDownloadOnly() throws Exception {
+        File checkpointFile = File.createTempFile("export", ".checkpoint");
+        checkpointFile.deleteOnExit();
+
+        DownloadCheckpoint checkpoint = new DownloadCheckpoint(checkpointFile);
+        assertFalse(checkpoint.bind("export=1 target=a.csv"));
+        checkpoint.markCompleted(0);
+        checkpoint.markCompleted(1);
+        checkpoint.close();
+
+        checkpoint = new DownloadCheckpoint(checkpointFile);
+        assertEquals("export=1 target=a.csv", checkpoint.getIdentity());
+        assertTrue(checkpoint.bind("export=1 target=a.csv"));
+        assertEquals(2, checkpoint.getCompletedCount());
+        checkpoint.close();
+
+        checkpoint = new DownloadCheckpoint(checkpointFile);
+        assertFalse(checkpoint.bind("export=1 target=b.csv"));
+        assertEquals(0, checkpoint.getFirstMissingChunk());
+        checkpoint.close();
+
+        // the chunks of the other download are gone from the file too
+        checkpoint = new DownloadCheckpoint(checkpointFile);
+        assertEquals(0, checkpoint.getCompletedCount());
+        assertTrue(checkpoint.bind("export=1 target=b.csv"));
+        checkpoint.delete();
+    }
+
+    @Test
+    public void testCheckpointWithoutIdentityIsDiscarded() throws Exception {
+        File checkpointFile = File.createTempFile("export", ".checkpoint");
+        checkpointFile.deleteOnExit();
+
+        DownloadCheckpoint checkpoint = new DownloadCheckpoint(checkpointFile);
+        checkpoint.markCompleted(0);
+        checkpoint.close();
+
+        checkpoint = new DownloadCheckpoint(checkpointFile);
+        assertEquals(1, checkpoint.getCompletedCount());
+        assertFalse(checkpoint.bind("export=1 target=a.csv"));
+        assertEquals(0, checkpoint.getCompletedCount());
+        checkpoint.delete();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoPrefetchChunks() {
+        new ChunkedDownloader(1024, 0);
+    }
+}
@@ -0,0 +1,406 @@
+package com.anaplan.connector.unit;
+
+
+import com.anaplan.connector.utils.ChunkSink;
+import com.anaplan.connector.utils.ChunkedUploader;
+import com.anaplan.connector.utils.ReplayableInputStream;
+import com.anaplan.connector.utils.RetryPolicy;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class ChunkedUploaderTestCases {
+
+    private static final int chunkSize = ChunkedUploader.MIN_CHUNK_SIZE;
+    private static final RetryPolicy retryPolicy = new RetryPolicy(3, 1, 1);
+
+    private static String repeat(String token, int times) {
+        StringBuilder sb = new StringBuilder(token.length() * times);
+        for (int i = 0; i < times; i++) {
+            sb.append(token);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Sink failing the write of one chunk a number of times with a network
+     * error, recording the indices of all writes.
+     */
+    private static class FlakySink implements ChunkSink {
+
+        final int failingChunk;
+        int failuresLeft;
+        final List<Integer> writes = new ArrayList<>();
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int restarts = 0;
+        boolean aborted = false;
+
+        FlakySink(int failingChunk, int failures) {
+            this.failingChunk = failingChunk;
+            this.failuresLeft = failures;
+        }
+
+        @Override
+        public void writeChunk(int index, ByteBuffer chunk) throws IOException {
+            writes.add(index);
+            if (index == failingChunk && failuresLeft > 0) {
+                failuresLeft--;
+                throw new SocketException("Test exception");
+            }
+            byte[] bytes = new byte[chunk.remaining()];
+            chunk.get(bytes);
+            data.write(bytes);
+        }
+
+        @Override
+        public void restart() {
+            restarts++;
+            data = new ByteArrayOutputStream();
+        }
+
+        @Override
+        public void abort() {
+            aborted = true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public void testUploadStringPreservesChunkOrder() throws Exception {
+        String data = repeat("0123456789,abcdefghij\n", chunkSize / 5);
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+
+        long written = new ChunkedUploader(chunkSize, 3).upload(data, target);
+
+        assertEquals(data.getBytes("UTF-8").length, written);
+        assertEquals(data, target.toString("UTF-8"));
+    }
+
+    @Test
+    public void testUploadStringKeepsSurrogatePairsIntact() throws Exception {
+        // pad so that a surrogate pair straddles the first chunk boundary
+        String data = repeat("a", chunkSize - 1) + "\uD83D\uDE00" + "tail";
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+
+        new ChunkedUploader(chunkSize, 2).upload(data, target);
+
+        assertEquals(data, target.toString("UTF-8"));
+    }
+
+    @Test
+    public void testUploadStringWithMultiByteCharacters() throws Exception {
+        // encodes to twice the chunk size, so chunk buffers have to grow
+        String data = repeat("\u00e9\u00e8", chunkSize + 3);
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+
+        long written = new ChunkedUploader(chunkSize, 2).upload(data, target);
+
+        assertEquals(data.getBytes("UTF-8").length, written);
+        assertEquals(data, target.toString("UTF-8"));
+    }
+
+    @Test
+    public void testUploadStringReplacesMalformedInput() throws Exception {
+        // lone surrogates are replaced just like String.getBytes() does
+        String data = "a\uD83Db\uDE00c";
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+
+        new ChunkedUploader().upload(data, target);
+
+        assertArrayEquals(data.getBytes("UTF-8"), target.toByteArray());
+    }
+
+    @Test
+    public void testUploadStream() throws Exception {
+        byte[] data = new byte[chunkSize * 2 + 17];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+
+        long written = new ChunkedUploader(chunkSize, 2).upload(
+                new ByteArrayInputStream(data), target);
+
+        assertEquals(data.length, written);
+        assertArrayEquals(data, target.toByteArray());
+    }
+
+    @Test
+    public void testUploadStreamReadsChunksAheadInOrder() throws Exception {
+        byte[] bytes = new byte[chunkSize * 5 + 3];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i / chunkSize);
+        }
+        // short reads, so that every chunk takes many reads to fill
+        InputStream data = new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 4096));
+            }
+        };
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+
+        long written = new ChunkedUploader(chunkSize, 4).upload(data, target);
+
+        assertEquals(bytes.length, written);
+        assertArrayEquals(bytes, target.toByteArray());
+    }
+
+    @Test(timeout = 30000)
+    public void testUploadEndsWhileChunksAreReadAhead() throws Exception {
+        // several turns past the end of the data are waiting at once, which
+        // must all give up instead of waiting for one another
+        ChunkedUploader uploader = new ChunkedUploader(chunkSize, 4);
+        for (int i = 0; i < 200; i++) {
+            ByteArrayOutputStream target = new ByteArrayOutputStream();
+
+            long written = uploader.upload(
+                    new ByteArrayInputStream(new byte[3]), target);
+
+            assertEquals(3, written);
+            assertEquals(3, target.size());
+        }
+    }
+
+    @Test
+    public void testUploadStreamReadsOnWorkerPool() throws Exception {
+        final List<String> readers = new ArrayList<>();
+        InputStream data = new ByteArrayInputStream(new byte[chunkSize * 2]) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                readers.add(Thread.currentThread().getName());
+                return super.read(b, off, len);
+            }
+        };
+
+        new ChunkedUploader(chunkSize, 2).upload(data,
+                new ByteArrayOutputStream());
+
+        for (String reader : readers) {
+            assertTrue(reader, reader.startsWith("anaplan-upload-"));
+        }
+    }
+
+    @Test
+    public void testUploadEmptyStream() throws Exception {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+
+        long written = new ChunkedUploader().upload(
+                new ByteArrayInputStream(new byte[0]), target);
+
+        assertEquals(0, written);
+        assertEquals(0, target.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void testUploadStreamReadFailure() throws Exception {
+        InputStream failingStream = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Test exception");
+            }
+        };
+        new ChunkedUploader().upload(failingStream, new ByteArrayOutputStream());
+    }
+
+    @Test
+    public void testUploadStringStartsOver() throws Exception {
+        String data = repeat("y", chunkSize * 3);
+        FlakySink sink = new FlakySink(2, 1);
+
+        long written = new ChunkedUploader(chunkSize, 2, retryPolicy).upload(
+                data, sink);
+
+        assertEquals(data.length(), written);
+        assertEquals(data, sink.data.toString("UTF-8"));
+        assertEquals(1, sink.restarts);
+        assertEquals("[0, 1, 2, 0, 1, 2]", sink.writes.toString());
+    }
+
+    @Test
+    public void testUploadByteArrayStreamStartsOver() throws Exception {
+        byte[] data = new byte[chunkSize * 2];
+        FlakySink sink = new FlakySink(1, 1);
+
+        long written = new ChunkedUploader(chunkSize, 2, retryPolicy).upload(
+                new ByteArrayInputStream(data), sink);
+
+        assertEquals(data.length, written);
+        assertArrayEquals(data, sink.data.toByteArray());
+        assertEquals(1, sink.restarts);
+    }
+
+    @Test
+    public void testUploadFailsOnceAttemptsAreUsedUp() throws Exception {
+        FlakySink sink = new FlakySink(0, 3);
+        try {
+            new ChunkedUploader(chunkSize, 2, retryPolicy).upload("data", sink);
+            fail("Upload should have failed");
+        } catch (IOException e) {
+            assertEquals("[0, 0, 0]", sink.writes.toString());
+            assertEquals(2, sink.restarts);
+        }
+    }
+
+    @Test
+    public void testUploadIsNotRetriedAfterPermanentFailure() throws Exception {
+        FlakySink sink = new FlakySink(0, 0) {
+            @Override
+            public void writeChunk(int index, ByteBuffer chunk)
+                    throws IOException {
+                writes.add(index);
+                throw new IOException("HTTP 400 Bad Request");
+            }
+        };
+        try {
+            new ChunkedUploader(chunkSize, 2, retryPolicy).upload("data", sink);
+            fail("Upload should have failed");
+        } catch (IOException e) {
+            assertEquals("[0]", sink.writes.toString());
+            assertEquals(0, sink.restarts);
+        }
+    }
+
+    /**
+     * Stream that cannot be read again, recording whether it was closed.
+     */
+    private static class OneTimeStream extends InputStream {
+
+        final InputStream data;
+        boolean closed = false;
+
+        OneTimeStream(byte[] data) {
+            this.data = new ByteArrayInputStream(data);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return data.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return data.read(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Test
+    public void testUploadOtherStreamStartsOverFromSpool() throws Exception {
+        byte[] data = new byte[chunkSize * 3 + 5];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        OneTimeStream stream = new OneTimeStream(data);
+        FlakySink sink = new FlakySink(2, 1);
+
+        long written = new ChunkedUploader(chunkSize, 2, retryPolicy).upload(
+                stream, sink);
+
+        assertEquals(data.length, written);
+        assertArrayEquals(data, sink.data.toByteArray());
+        assertEquals(1, sink.restarts);
+        assertTrue(stream.closed);
+    }
+
+    @Test
+    public void testUploadIsNotSpooledForSingleAttempt() throws Exception {
+        OneTimeStream stream = new OneTimeStream(new byte[chunkSize]);
+        FlakySink sink = new FlakySink(0, 1);
+        try {
+            new ChunkedUploader(chunkSize, 2, RetryPolicy.NONE).upload(stream,
+                    sink);
+            fail("Upload should have failed");
+        } catch (IOException e) {
+            assertEquals(0, sink.restarts);
+            assertFalse(stream.closed);
+        }
+    }
+
+    @Test
+    public void testSpooledStreamReadsOnAfterRewind() throws Exception {
+        byte[] data = new byte[100];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        OneTimeStream source = new OneTimeStream(data);
+        ReplayableInputStream stream = ReplayableInputStream.spool(source);
+        byte[] read = new byte[data.length];
+        assertEquals(40, stream.read(read, 0, 40));
+
+        stream.rewind();
+        int filled = 0;
+        int count;
+        while ((count = stream.read(read, filled, read.length - filled)) > 0) {
+            filled += count;
+        }
+        stream.close();
+
+        assertEquals(data.length, filled);
+        assertArrayEquals(data, read);
+        assertTrue(source.closed);
+    }
+
+    @Test
+    public void testBackoffIsBoundedAndCapped() {
+        RetryPolicy policy = new RetryPolicy(5, 100, 300);
+        for (int i = 0; i < 20; i++) {
+            long first = policy.getBackoff(1);
+            assertTrue(first >= 50 && first <= 100);
+            long capped = policy.getBackoff(4);
+            assertTrue(capped >= 150 && capped <= 300);
+        }
+    }
+
+    @Test
+    public void testRetryOnlyTransientFailures() {
+        assertTrue(retryPolicy.shouldRetry(new SocketException(), 2));
+        assertFalse(retryPolicy.shouldRetry(new SocketException(), 3));
+        assertTrue(retryPolicy.shouldRetry(
+                new SocketTimeoutException(), 1));
+        assertTrue(retryPolicy.shouldRetry(new IOException("Upload failed",
+                new SocketException("Connection reset")), 1));
+        assertTrue(retryPolicy.shouldRetry(
+                new IOException("HTTP 503 Service Unavailable"), 1));
+        assertTrue(retryPolicy.shouldRetry(
+                new IOException("Unexpected status: 429"), 1));
+        assertFalse(retryPolicy.shouldRetry(
+                new IOException("HTTP 404 Not Found"), 1));
+        assertFalse(retryPolicy.shouldRetry(new IOException(), 1));
+        assertFalse(retryPolicy.shouldRetry(
+                new InterruptedIOException(), 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testChunkSizeTooLarge() {
+        new ChunkedUploader(ChunkedUploader.MAX_CHUNK_SIZE + 1, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoChunksPreparedAhead() {
+        new ChunkedUploader(chunkSize, 0);
+    }
+}
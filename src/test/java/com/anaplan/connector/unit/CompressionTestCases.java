@@ -0,0 +1,86 @@
+package com.anaplan.connector.unit;
+
+
+import com.anaplan.connector.utils.Compression;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+public class CompressionTestCases {
+
+    private static byte[] readFully(InputStream stream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] sampleCsv() {
+        StringBuilder sb = new StringBuilder();
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            sb.append("Item ").append(i).append(",Region ")
+              .append(random.nextInt(10)).append(',')
+              .append(random.nextInt(1000)).append('\n');
+        }
+        return sb.toString().getBytes();
+    }
+
+    @Test
+    public void testNoneIsPassThrough() throws Exception {
+        InputStream data = new ByteArrayInputStream(sampleCsv());
+        assertSame(data, Compression.NONE.compress(data));
+        assertSame(data, Compression.NONE.decompress(data));
+    }
+
+    @Test
+    public void testGzipCompressRoundTrip() throws Exception {
+        byte[] data = sampleCsv();
+        byte[] compressed = readFully(Compression.GZIP.compress(
+                new ByteArrayInputStream(data)));
+
+        assertTrue(compressed.length < data.length / 4);
+        assertArrayEquals(data, readFully(new GZIPInputStream(
+                new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    public void testGzipDecompress() throws Exception {
+        byte[] data = sampleCsv();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+        gzip.write(data);
+        gzip.close();
+
+        assertArrayEquals(data, readFully(Compression.GZIP.decompress(
+                new ByteArrayInputStream(compressed.toByteArray()))));
+    }
+
+    @Test
+    public void testGzipCompressEmptyStream() throws Exception {
+        byte[] compressed = readFully(Compression.GZIP.compress(
+                new ByteArrayInputStream(new byte[0])));
+
+        assertArrayEquals(new byte[0], readFully(new GZIPInputStream(
+                new ByteArrayInputStream(compressed))));
+    }
+
+    @Test(expected = IOException.class)
+    public void testGzipDecompressUncompressedPayload() throws Exception {
+        Compression.GZIP.decompress(new ByteArrayInputStream(sampleCsv()));
+    }
+}
@@ -12,6 +12,7 @@ import com.anaplan.connector.exceptions.ConnectorPropertiesException;
 import org.hamcrest.CoreMatchers;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.Mockito;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
@@ -140,6 +141,40 @@ public class ConnectionUnitTestCases extends BaseUnitTestDriver {
 		assertNotNull(certAuth.getApiConnection());
 	}
 
+	@Test
+	public void testSessionReusedAcrossValidations() throws Exception {
+		CertAuthConnectionStrategy certAuth = PowerMockito.spy(
+				new CertAuthConnectionStrategy());
+		certAuth.connect(certificatePath, apiUrl, "proxyHost", "proxyUser",
+				"proxyPass");
+		certAuth.validateConnection();
+		certAuth.validateConnection();
+
+		// workspaces are only fetched once, when authenticating
+		Mockito.verify(mockTransportProvider, Mockito.times(1))
+			   .get(workspaceUrlPathToken, contentType);
+		assertFalse(certAuth.getApiConnection().isSessionExpired());
+	}
+
+	@Test
+	public void testExpiredSessionReauthenticates() throws Exception {
+		CertAuthConnectionStrategy certAuth = PowerMockito.spy(
+				new CertAuthConnectionStrategy());
+		certAuth.connect(certificatePath, apiUrl, "proxyHost", "proxyUser",
+				"proxyPass");
+		AnaplanConnection connection = certAuth.getApiConnection();
+		connection.closeConnection();
+		connection.setSessionTimeout(0);
+		connection.openConnection();
+		assertTrue(connection.isSessionExpired());
+
+		certAuth.validateConnection();
+
+		Mockito.verify(mockTransportProvider, Mockito.times(3))
+			   .get(workspaceUrlPathToken, contentType);
+		assertNotNull(connection.getConnection());
+	}
+
 	@Test
 	public void testConnectorProperties() throws Exception {
 		AnaplanConnectorProperties props = new AnaplanConnectorProperties();
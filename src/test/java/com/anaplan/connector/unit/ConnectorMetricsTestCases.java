@@ -0,0 +1,132 @@
+package com.anaplan.connector.unit;
+
+
+import com.anaplan.connector.utils.ConnectorMetrics;
+import com.anaplan.connector.utils.MetricsListener;
+import com.anaplan.connector.utils.OperationStatus;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+public class ConnectorMetricsTestCases {
+
+    private static class RecordingListener implements MetricsListener {
+
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void phaseRecorded(ConnectorMetrics.Phase phase, long nanos,
+                boolean failed) {
+            events.add(phase + (failed ? " failed" : ""));
+        }
+
+        @Override
+        public void counterIncremented(ConnectorMetrics.Counter counter,
+                long delta) {
+            events.add(counter + " +" + delta);
+        }
+
+        @Override
+        public void operationCompleted(String operation,
+                OperationStatus status, long nanos) {
+            events.add(operation + " " + status);
+        }
+    }
+
+    @Test
+    public void testPhases() throws Exception {
+        ConnectorMetrics metrics = new ConnectorMetrics();
+        long start = System.nanoTime();
+        Thread.sleep(5);
+        metrics.recordPhase(ConnectorMetrics.Phase.UPLOAD, start, false);
+        metrics.recordPhase(ConnectorMetrics.Phase.UPLOAD, System.nanoTime(),
+                true);
+
+        assertEquals(Long.valueOf(2), metrics.getPhaseCounts().get("UPLOAD"));
+        assertEquals(Long.valueOf(1), metrics.getPhaseErrors().get("UPLOAD"));
+        assertEquals(Long.valueOf(0), metrics.getPhaseCounts().get("TASK"));
+        assertTrue(metrics.getPhaseMaxMillis().get("UPLOAD") >= 5);
+        assertTrue(metrics.getPhaseTotalMillis().get("UPLOAD")
+                >= metrics.getPhaseMaxMillis().get("UPLOAD"));
+    }
+
+    @Test
+    public void testOperations() {
+        ConnectorMetrics metrics = new ConnectorMetrics();
+        ConnectorMetrics.Operation imported = metrics.startOperation("import");
+        ConnectorMetrics.Operation failed = metrics.startOperation("import");
+        ConnectorMetrics.Operation exported = metrics.startOperation("export");
+        assertEquals(3, metrics.getOperationsInFlight());
+        assertEquals(Integer.valueOf(2),
+                metrics.getOperationsInFlightByName().get("import"));
+
+        imported.complete(OperationStatus.APPLICATION_ERROR);
+        // closing after completing has no effect
+        imported.close();
+        failed.close();
+        exported.complete(OperationStatus.SUCCESS);
+
+        assertEquals(0, metrics.getOperationsInFlight());
+        Map<String, Long> counts = metrics.getOperationCounts();
+        assertEquals(Long.valueOf(1), counts.get("import.APPLICATION_ERROR"));
+        assertEquals(Long.valueOf(1), counts.get("import.FAILURE"));
+        assertEquals(Long.valueOf(0), counts.get("import.SUCCESS"));
+        assertEquals(Long.valueOf(1), counts.get("export.SUCCESS"));
+    }
+
+    @Test
+    public void testListenersAndReset() {
+        ConnectorMetrics metrics = new ConnectorMetrics();
+        RecordingListener listener = new RecordingListener();
+        metrics.addListener(listener);
+        metrics.increment(ConnectorMetrics.Counter.BYTES_UPLOADED, 1024);
+        metrics.increment(ConnectorMetrics.Counter.BYTES_UPLOADED, 512);
+        metrics.recordPhase(ConnectorMetrics.Phase.AUTHENTICATION,
+                System.nanoTime(), true);
+        metrics.startOperation("process").complete(OperationStatus.SUCCESS);
+        metrics.removeListener(listener);
+        metrics.increment(ConnectorMetrics.Counter.ROWS_EXPORTED, 10);
+
+        List<String> expected = new ArrayList<>();
+        expected.add("BYTES_UPLOADED +1024");
+        expected.add("BYTES_UPLOADED +512");
+        expected.add("AUTHENTICATION failed");
+        expected.add("process SUCCESS");
+        assertEquals(expected, listener.events);
+        assertEquals(Long.valueOf(1536),
+                metrics.getCounters().get("BYTES_UPLOADED"));
+        assertEquals(Long.valueOf(10),
+                metrics.getCounters().get("ROWS_EXPORTED"));
+
+        metrics.reset();
+        assertEquals(Long.valueOf(0),
+                metrics.getCounters().get("BYTES_UPLOADED"));
+        assertEquals(Long.valueOf(0),
+                metrics.getPhaseErrors().get("AUTHENTICATION"));
+        assertEquals(Long.valueOf(0),
+                metrics.getOperationCounts().get("process.SUCCESS"));
+    }
+
+    @Test
+    public void testSharedMetricsAreRegisteredWithJmx() throws Exception {
+        ConnectorMetrics metrics = ConnectorMetrics.getShared();
+        assertSame(metrics, ConnectorMetrics.getShared());
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(ConnectorMetrics.OBJECT_NAME);
+        assertTrue(server.isRegistered(name));
+        metrics.increment(ConnectorMetrics.Counter.ROWS_IMPORTED, 0);
+        assertEquals(metrics.getOperationsInFlight(),
+                server.getAttribute(name, "OperationsInFlight"));
+    }
+}
@@ -0,0 +1,67 @@
+package com.anaplan.connector.unit;
+
+
+import com.anaplan.connector.utils.CsvWriter;
+import com.anaplan.connector.utils.Delimiters;
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class CsvWriterTestCases {
+
+    private static String write(CsvWriter csvWriter, StringWriter out,
+                                String[]... rows) throws Exception {
+        for (String[] row : rows) {
+            csvWriter.writeRow(row);
+        }
+        csvWriter.flush();
+        return out.toString();
+    }
+
+    @Test
+    public void testPlainCellsAreNotQuoted() throws Exception {
+        StringWriter out = new StringWriter();
+        String csv = write(CsvWriter.create(out, ",", "\""), out,
+                new String[] {"", "Parent", "Code"},
+                new String[] {"\u00e9l\u00e9ment", "", "B01"});
+        assertEquals(",Parent,Code\n\u00e9l\u00e9ment,,B01", csv);
+    }
+
+    @Test
+    public void testSpecialCellsAreQuoted() throws Exception {
+        StringWriter out = new StringWriter();
+        String csv = write(CsvWriter.create(out, ",", "\""), out,
+                new String[] {"Text, With, Comma", "\"Hello\", world"},
+                new String[] {"multi\nline", "carriage\rreturn"});
+        assertEquals("\"Text, With, Comma\",\"\"\"Hello\"\", world\"\n"
+                + "\"multi\nline\",\"carriage\rreturn\"", csv);
+    }
+
+    @Test
+    public void testNullCellsAreEmpty() throws Exception {
+        StringWriter out = new StringWriter();
+        String csv = write(CsvWriter.create(out, ",", "\""), out,
+                new String[] {null, "a", null});
+        assertEquals(",a,", csv);
+    }
+
+    @Test
+    public void testTabSeparatorAndCustomQuote() throws Exception {
+        StringWriter out = new StringWriter();
+        String csv = write(CsvWriter.create(out, Delimiters.TAB, "'"), out,
+                new String[] {"a,b", "it's", "tab\there"});
+        assertEquals("a,b\t'it''s'\t'tab\there'", csv);
+    }
+
+    @Test
+    public void testDefaultsWhenUnset() throws Exception {
+        StringWriter out = new StringWriter();
+        CsvWriter csvWriter = CsvWriter.create(out, null, "");
+        String csv = write(csvWriter, out, new String[] {"a", "b,c"});
+        assertEquals("a,\"b,c\"", csv);
+        assertEquals(1, csvWriter.getRowCount());
+    }
+}
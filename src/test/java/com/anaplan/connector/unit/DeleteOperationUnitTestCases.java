@@ -2,13 +2,19 @@ package com.anaplan.connector.unit;
 
 
 import com.anaplan.connector.utils.AnaplanDeleteOperation;
+import com.anaplan.connector.utils.InMemoryTracer;
+import com.anaplan.connector.utils.Span;
+import com.anaplan.connector.utils.Tracing;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.util.List;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 @RunWith(PowerMockRunner.class)
 public class DeleteOperationUnitTestCases extends BaseUnitTestDriver {
@@ -44,4 +50,56 @@ public class DeleteOperationUnitTestCases extends BaseUnitTestDriver {
         String result = deleteOp.runDeleteAction(workspaceId, modelId, deleteId);
         assertEquals("[deleteId] completed successfully!\n\n", result);
     }
+
+    @Test
+    public void testRunStatusDetailsArePerOperation() throws Exception {
+        // mock out API calls
+        recordActionsFetchMockModels();
+        recordActionsFetchMockDeletes();
+        recordActionsFetchMockItems("files", filesResponseFile);
+        recordActionsRunServerTask(deleteUrlPathToken);
+        recordActionsTaskResultSuccess();
+
+        AnaplanDeleteOperation deleteOp = new AnaplanDeleteOperation(
+                mockAnaplanConnection);
+        AnaplanDeleteOperation otherOp = new AnaplanDeleteOperation(
+                mockAnaplanConnection);
+        deleteOp.runDeleteAction(workspaceId, modelId, deleteId);
+        otherOp.setRunStatusDetails("Logs of another flow");
+        assertEquals("", deleteOp.getRunStatusDetails());
+        assertNull(new AnaplanDeleteOperation(mockAnaplanConnection)
+                .getRunStatusDetails());
+    }
+
+    @Test
+    public void testDeletePhasesAreTraced() throws Exception {
+        // mock out API calls
+        recordActionsFetchMockModels();
+        recordActionsFetchMockDeletes();
+        recordActionsFetchMockItems("files", filesResponseFile);
+        recordActionsRunServerTask(deleteUrlPathToken);
+        recordActionsTaskResultSuccess();
+
+        InMemoryTracer tracer = new InMemoryTracer();
+        Tracing.setTracer(tracer);
+        try {
+            new AnaplanDeleteOperation(mockAnaplanConnection).runDeleteAction(
+                    workspaceId, modelId, deleteId);
+        } finally {
+            Tracing.setTracer(null);
+        }
+
+        assertEquals(1, tracer.getFinishedSpans(
+                Tracing.VALIDATE_INPUT_SPAN).size());
+        assertEquals(1, tracer.getFinishedSpans(Tracing.METADATA_SPAN).size());
+        List<InMemoryTracer.SpanData> tasks = tracer.getFinishedSpans(
+                Tracing.TASK_SPAN);
+        assertEquals(1, tasks.size());
+        InMemoryTracer.SpanData task = tasks.get(0);
+        assertEquals(workspaceId, task.getAttribute(Tracing.WORKSPACE_ID));
+        assertEquals(modelId, task.getAttribute(Tracing.MODEL_ID));
+        assertEquals(deleteId, task.getAttribute(Tracing.ACTION_ID));
+        assertEquals("COMPLETE", task.getAttribute(Tracing.TASK_STATE));
+        assertEquals(Span.StatusCode.UNSET, task.getStatusCode());
+    }
 }
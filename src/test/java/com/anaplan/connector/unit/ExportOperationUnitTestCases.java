@@ -3,13 +3,19 @@ package com.anaplan.connector.unit;
 import com.anaplan.client.Export;
 import com.anaplan.connector.exceptions.AnaplanOperationException;
 import com.anaplan.connector.utils.AnaplanExportOperation;
+import com.anaplan.connector.utils.ExportRecordIterator;
+import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.Mockito;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.io.InputStream;
+import java.util.Map;
+
 import static org.junit.Assert.assertEquals;
 
 
@@ -70,6 +76,59 @@ public class ExportOperationUnitTestCases extends BaseUnitTestDriver {
         assertEquals(sampleDataFile, result);
     }
 
+    @Test
+    public void testGoodExportStream() throws Exception {
+        // mock out API calls
+        recordActionsFetchMockModels();
+        recordActionsFetchMockExports();
+        recordActionsRunServerTask(exportUrlPathToken);
+        recordActionsGetExportMetadata();
+        recordActionsTaskResultSuccess();
+        recordActionsFetchMockItems("files", filesResponseFile);
+        recordActionsGetDownloadStream();
+
+        InputStream result = anaplanExportOperation.runExportStream(
+                workspaceId, modelId, exportId);
+        assertEquals(sampleDataFile, new String(IOUtils.toByteArray(result)));
+        result.close();
+        // the session is kept open for the next operation
+        Mockito.verify(mockAnaplanConnection, Mockito.never())
+               .closeConnection();
+    }
+
+    @Test
+    public void testGoodExportRecords() throws Exception {
+        // mock out API calls
+        recordActionsFetchMockModels();
+        recordActionsFetchMockExports();
+        recordActionsRunServerTask(exportUrlPathToken);
+        PowerMockito.doReturn(("{\"headerNames\":[\"Name\",\"Parent\","
+                + "\"Code\",\"Product Leasing\",\"Product Services\","
+                + "\"Product Wholesale\"],\"dataTypes\":[\"ENTITY\","
+                + "\"ENTITY\",\"TEXT\",\"BOOLEAN\",\"BOOLEAN\","
+                + "\"BOOLEAN\"]}").getBytes())
+                    .when(mockTransportProvider)
+                    .get(exportUrlPathToken, contentType);
+        recordActionsTaskResultSuccess();
+        recordActionsFetchMockItems("files", filesResponseFile);
+        recordActionsGetDownloadStream();
+
+        ExportRecordIterator records = anaplanExportOperation.runExportRecords(
+                workspaceId, modelId, exportId, null);
+        Map<String, Object> first = records.next();
+        assertEquals("Text, With, Comma", first.get("Name"));
+        assertEquals("Services", first.get("Parent"));
+        assertEquals("B014", first.get("Code"));
+        assertEquals(Boolean.FALSE, first.get("Product Leasing"));
+        int count = 1;
+        while (records.hasNext()) {
+            records.next();
+            count++;
+        }
+        assertEquals(23, count);
+        assertEquals(23, records.getRowCount());
+    }
+
     @Test
 	public void testErrorFetchingModelExport() throws Exception {
 		// mock out API calls
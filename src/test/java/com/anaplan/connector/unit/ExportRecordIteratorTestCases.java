@@ -0,0 +1,157 @@
+package com.anaplan.connector.unit;
+
+
+import com.anaplan.client.CellReader;
+import com.anaplan.connector.utils.ExportRecordIterator;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class ExportRecordIteratorTestCases {
+
+    /**
+     * Cell-reader over fixed rows, counting reads and closes.
+     */
+    private static class FakeCellReader implements CellReader {
+        private final String[] header;
+        private final Iterator<String[]> rows;
+        int rowsRead = 0;
+        int closed = 0;
+
+        FakeCellReader(String[] header, String[]... rows) {
+            this.header = header;
+            this.rows = Arrays.asList(rows).iterator();
+        }
+
+        @Override
+        public String[] getHeaderRow() {
+            return header;
+        }
+
+        @Override
+        public String[] readDataRow() throws IOException {
+            if (!rows.hasNext()) {
+                return null;
+            }
+            rowsRead++;
+            return rows.next();
+        }
+
+        @Override
+        public void close() {
+            closed++;
+        }
+    }
+
+    private static class CountingCloseable implements Closeable {
+        int closed = 0;
+
+        @Override
+        public void close() throws IOException {
+            closed++;
+        }
+    }
+
+    @Test
+    public void testRowsAreReadLazily() throws Exception {
+        FakeCellReader reader = new FakeCellReader(
+                new String[] {"Name", "Code"},
+                new String[] {"Repair", "B016"},
+                new String[] {"Services", "P04"});
+        ExportRecordIterator records = new ExportRecordIterator(reader, null,
+                null);
+        assertEquals(0, reader.rowsRead);
+
+        Map<String, Object> record = records.next();
+        assertEquals(1, reader.rowsRead);
+        assertArrayEquals(new String[] {"Name", "Code"},
+                record.keySet().toArray());
+        assertEquals("Repair", record.get("Name"));
+        assertEquals("B016", record.get("Code"));
+    }
+
+    @Test
+    public void testEmptyAndExtraCells() throws Exception {
+        FakeCellReader reader = new FakeCellReader(new String[] {"Name"},
+                new String[] {"", "extra"});
+        ExportRecordIterator records = new ExportRecordIterator(reader, null,
+                null);
+
+        Map<String, Object> record = records.next();
+        assertTrue(record.containsKey("Name"));
+        assertNull(record.get("Name"));
+        assertEquals("extra", record.get("Column 2"));
+    }
+
+    @Test
+    public void testExhaustionClosesOnce() throws Exception {
+        FakeCellReader reader = new FakeCellReader(new String[] {"Name"},
+                new String[] {"Repair"});
+        CountingCloseable onClose = new CountingCloseable();
+        ExportRecordIterator records = new ExportRecordIterator(reader, null,
+                onClose);
+
+        records.next();
+        assertFalse(records.hasNext());
+        assertFalse(records.hasNext());
+        records.close();
+        assertEquals(1, reader.closed);
+        assertEquals(1, onClose.closed);
+        assertEquals(1, records.getRowCount());
+    }
+
+    @Test
+    public void testCloseEndsIteration() throws Exception {
+        FakeCellReader reader = new FakeCellReader(new String[] {"Name"},
+                new String[] {"Repair"}, new String[] {"Services"});
+        CountingCloseable onClose = new CountingCloseable();
+        ExportRecordIterator records = new ExportRecordIterator(reader, null,
+                onClose);
+
+        records.close();
+        assertFalse(records.hasNext());
+        assertEquals(0, reader.rowsRead);
+        assertEquals(1, onClose.closed);
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testNextPastEnd() throws Exception {
+        ExportRecordIterator records = new ExportRecordIterator(
+                new FakeCellReader(new String[] {"Name"}), null, null);
+        records.next();
+    }
+
+    @Test
+    public void testReadFailureClosesAndIsRethrown() throws Exception {
+        FakeCellReader reader = new FakeCellReader(new String[] {"Name"}) {
+            @Override
+            public String[] readDataRow() throws IOException {
+                throw new IOException("connection reset");
+            }
+        };
+        CountingCloseable onClose = new CountingCloseable();
+        ExportRecordIterator records = new ExportRecordIterator(reader, null,
+                onClose);
+        try {
+            records.hasNext();
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals(1, reader.closed);
+        assertEquals(1, onClose.closed);
+    }
+}
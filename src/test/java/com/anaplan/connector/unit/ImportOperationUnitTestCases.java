@@ -1,9 +1,13 @@
 package com.anaplan.connector.unit;
 
 import com.anaplan.client.ServerFile;
+import com.anaplan.client.TaskResultDetail;
+import com.anaplan.connector.MulesoftAnaplanResponse;
 import com.anaplan.connector.exceptions.AnaplanOperationException;
 import com.anaplan.connector.utils.AnaplanImportOperation;
 import com.anaplan.connector.utils.AnaplanUtil;
+import com.anaplan.connector.utils.ImportResult;
+import com.anaplan.connector.utils.OperationStatus;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -14,13 +18,21 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 
 @RunWith(PowerMockRunner.class)
 @PrepareForTest({
-        ServerFile.class})
+        ServerFile.class,
+        TaskResultDetail.class})
 public class ImportOperationUnitTestCases extends BaseUnitTestDriver {
 
     private static final String importId = properties.getString(
@@ -87,6 +99,75 @@ public class ImportOperationUnitTestCases extends BaseUnitTestDriver {
                 importId, csvColumnSeparator, csvDelimiter);
     }
 
+    @Test
+    public void testGoodImportCsvStream() throws Exception {
+        // mock out API calls
+        recordActionsFetchMockModels();
+        recordActionsFetchMockImports();
+        recordActionsFetchMockItems("files", filesResponseFile);
+        recordActionsRunServerTask(importUrlPathToken);
+        recordActionsImportTaskResultSuccess();
+
+        InputStream dataStream = new ByteArrayInputStream(
+                getFixture(sampleDataFilePath));
+        String response = anaplanImportOperation.runImport(dataStream,
+                workspaceId, modelId, importId, csvColumnSeparator,
+                csvDelimiter);
+        assertEquals("Import ran successfully: null", response);
+    }
+
+    @Test
+    public void testGoodImportRecords() throws Exception {
+        // mock out API calls
+        recordActionsFetchMockModels();
+        recordActionsFetchMockImports();
+        recordActionsFetchMockItems("files", filesResponseFile);
+        recordActionsRunServerTask(importUrlPathToken);
+        recordActionsImportTaskResultSuccess();
+
+        List<Map<String, Object>> records = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Map<String, Object> record = new LinkedHashMap<>();
+            record.put("name", "Item " + i);
+            record.put("amount", i * 1.5);
+            records.add(record);
+        }
+        Map<String, String> columnMapping = new LinkedHashMap<>();
+        columnMapping.put("Name", "name");
+        columnMapping.put("Amount", "amount");
+        String response = anaplanImportOperation.runImportRecords(
+                records.iterator(), columnMapping, 2, workspaceId, modelId,
+                importId, csvColumnSeparator, csvDelimiter);
+        assertEquals("Import ran successfully: null", response);
+    }
+
+    @Test
+    public void testRepeatedImportReusesCachedMetadata() throws Exception {
+        // mock out API calls
+        recordActionsFetchMockModels();
+        recordActionsFetchMockImports();
+        recordActionsFetchMockItems("files", filesResponseFile);
+        recordActionsRunServerTask(importUrlPathToken);
+        recordActionsImportTaskResultSuccess();
+
+        for (int run = 0; run < 2; run++) {
+            AnaplanImportOperation importOperation = new AnaplanImportOperation(
+                    mockAnaplanConnection);
+            String response = importOperation.runImport(
+                    new ByteArrayInputStream(getFixture(sampleDataFilePath)),
+                    workspaceId, modelId, importId, csvColumnSeparator,
+                    csvDelimiter);
+            assertEquals("Import ran successfully: null", response);
+        }
+        // workspace, model and import are only fetched once, the server-file
+        // is fetched for every run
+        Mockito.verify(mockService, Mockito.times(1)).getWorkspace(workspaceId);
+        Mockito.verify(mockTransportProvider, Mockito.times(1))
+               .get(modelUrlPathToken + "/imports", contentType);
+        Mockito.verify(mockTransportProvider, Mockito.times(2))
+               .get(modelUrlPathToken + "/files", contentType);
+    }
+
 	private void recordActionsImportTaskResultFailureDump() throws Exception {
 		PowerMockito.doReturn(mockTaskResult).when(mockStatus).getResult();
 		PowerMockito.doReturn(null).when(mockTaskResult).getDetails();
@@ -119,6 +200,114 @@ public class ImportOperationUnitTestCases extends BaseUnitTestDriver {
 		assertEquals(expectedResponseMsg, response);
 	}
 
+    @Test
+    public void testImportWithTruncatedFailureDump() throws Exception {
+		// mock out API calls
+		recordActionsFetchMockModels();
+		recordActionsFetchMockImports();
+		recordActionsFetchMockItems("files", filesResponseFile);
+		recordActionsRunServerTask(importUrlPathToken);
+		recordActionsStrinkChunkReader();
+		recordActionsImportTaskResultFailureDump();
+		PowerMockito.doReturn(0).when(mockAnaplanConnection)
+					.getFailureDumpRows();
+
+		String response = anaplanImportOperation.runImport(sampleDataFile,
+				workspaceId, modelId, importId, csvColumnSeparator, csvDelimiter);
+		String dumpFile = new String(getFixture(dumpFileResponse));
+		String expectedResponseMsg = "Operation ran successfully but with warnings!\n" +
+				"Response Message:\nSome records were not imported: check " +
+				"connector output data for details: importId\nDump File " +
+				"contents:\n" + dumpFile.substring(0, dumpFile.indexOf('\n') + 1) +
+				"Failed records report truncated, rows shown: 0";
+		assertEquals(expectedResponseMsg, response);
+	}
+
+	@Test
+	public void testFailureDumpIsDecoded() throws Exception {
+		StringBuilder dump = new StringBuilder("Name,__Error__0\n");
+		for (int i = 0; i < 20000; i++) {
+			dump.append("\u00e9l\u00e9ment ").append(i)
+				.append(",Invalid \u20ac value\n");
+		}
+		PowerMockito.doReturn(new ByteArrayInputStream(
+				dump.toString().getBytes("UTF-8")))
+					.when(mockFailDumpServerFile).getDownloadStream();
+		MulesoftAnaplanResponse response = MulesoftAnaplanResponse
+				.importWithFailureDump("importBadData", mockFailDumpServerFile);
+
+		assertEquals(dump.toString(), response.getDumpFileContents(20000));
+	}
+
+	@Test
+	public void testFailureDumpIsNotTruncatedByDefault() throws Exception {
+		StringBuilder dump = new StringBuilder("Name,__Error__0\n");
+		for (int i = 0; i < 5000; i++) {
+			dump.append("Item ").append(i).append(",Invalid value\n");
+		}
+		PowerMockito.doReturn(new ByteArrayInputStream(
+				dump.toString().getBytes("UTF-8")))
+					.when(mockFailDumpServerFile).getDownloadStream();
+		MulesoftAnaplanResponse response = MulesoftAnaplanResponse
+				.importWithFailureDump("importBadData", mockFailDumpServerFile);
+
+		assertEquals(dump.toString(), response.getDumpFileContents());
+	}
+
+    @Test
+    public void testImportForResult() throws Exception {
+        // mock out API calls
+        recordActionsFetchMockModels();
+        recordActionsFetchMockImports();
+        recordActionsFetchMockItems("files", filesResponseFile);
+        recordActionsRunServerTask(importUrlPathToken);
+        recordActionsImportTaskResultSuccess();
+        TaskResultDetail listDetail = Mockito.mock(TaskResultDetail.class);
+        PowerMockito.doReturn("Employees: 1,000 (0/1,000) rows successful, "
+                + "12 ignored").when(listDetail).getLocalizedMessageText();
+        TaskResultDetail moduleDetail = Mockito.mock(TaskResultDetail.class);
+        PowerMockito.doReturn("Revenue: 20 (20/0) rows successful, 0 ignored")
+                    .when(moduleDetail).getLocalizedMessageText();
+        TaskResultDetail warningDetail = Mockito.mock(TaskResultDetail.class);
+        PowerMockito.doReturn("Ambiguous code for \"B01\"")
+                    .when(warningDetail).getLocalizedMessageText();
+        PowerMockito.doReturn(Arrays.asList(listDetail, moduleDetail,
+                warningDetail)).when(mockTaskResult).getDetails();
+
+        ImportResult result = anaplanImportOperation.runImportForResult(
+                new ByteArrayInputStream(getFixture(sampleDataFilePath)),
+                workspaceId, modelId, importId, csvColumnSeparator,
+                csvDelimiter);
+        assertTrue(result.isSuccessful());
+        assertEquals(1020, result.getRowsImported());
+        assertEquals(12, result.getRowsIgnored());
+        assertEquals(Arrays.asList("Ambiguous code for \"B01\""),
+                result.getWarnings());
+        assertFalse(result.isFailureDumpAvailable());
+        assertEquals(0, result.getRowsFailed());
+    }
+
+    @Test
+    public void testImportForResultWithFailureDump() throws Exception {
+        // mock out API calls
+        recordActionsFetchMockModels();
+        recordActionsFetchMockImports();
+        recordActionsFetchMockItems("files", filesResponseFile);
+        recordActionsRunServerTask(importUrlPathToken);
+        recordActionsImportTaskResultFailureDump();
+
+        ImportResult result = anaplanImportOperation.runImportForResult(
+                new ByteArrayInputStream(getFixture(sampleDataFilePath)),
+                workspaceId, modelId, importId, csvColumnSeparator,
+                csvDelimiter);
+        assertEquals(OperationStatus.APPLICATION_ERROR, result.getStatus());
+        assertTrue(result.isFailureDumpAvailable());
+        // the failure dump is only downloaded once the rows are counted
+        Mockito.verify(mockFailDumpServerFile, Mockito.never())
+               .getDownloadStream();
+        assertEquals(1, result.getRowsFailed());
+    }
+
     @Test
     public void testErrorFetchingModelImport() throws Exception {
         // mock out API calls
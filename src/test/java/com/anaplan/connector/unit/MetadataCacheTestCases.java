@@ -0,0 +1,102 @@
+package com.anaplan.connector.unit;
+
+import com.anaplan.client.AnaplanAPIException;
+import com.anaplan.connector.utils.MetadataCache;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+public class MetadataCacheTestCases {
+
+    /**
+     * Loader returning a fresh object on every load, counting the loads.
+     */
+    private static class CountingLoader implements MetadataCache.Loader<Object> {
+
+        int loads = 0;
+
+        @Override
+        public Object load() {
+            loads++;
+            return new Object();
+        }
+    }
+
+    @Test
+    public void testKey() {
+        assertEquals("ws/model/import/imp1",
+                MetadataCache.key("ws", "model", "import", "imp1"));
+    }
+
+    @Test
+    public void testHitDoesNotReload() throws Exception {
+        MetadataCache cache = new MetadataCache();
+        CountingLoader loader = new CountingLoader();
+        Object first = cache.get("ws", loader);
+        assertSame(first, cache.get("ws", loader));
+        assertEquals(1, loader.loads);
+    }
+
+    @Test
+    public void testExpiredEntryIsReloaded() throws Exception {
+        MetadataCache cache = new MetadataCache(0, 8);
+        CountingLoader loader = new CountingLoader();
+        Object first = cache.get("ws", loader);
+        Thread.sleep(2);
+        assertNotSame(first, cache.get("ws", loader));
+        assertEquals(2, loader.loads);
+    }
+
+    @Test
+    public void testNullIsNotCached() throws Exception {
+        MetadataCache cache = new MetadataCache();
+        MetadataCache.Loader<Object> missing = new MetadataCache.Loader<Object>() {
+            @Override
+            public Object load() {
+                return null;
+            }
+        };
+        assertNull(cache.get("ws", missing));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() throws Exception {
+        MetadataCache cache = new MetadataCache(60000, 2);
+        CountingLoader loader = new CountingLoader();
+        cache.get("a", loader);
+        cache.get("b", loader);
+        cache.get("a", loader);
+        cache.get("c", loader);
+        assertEquals(2, cache.size());
+        // "a" was used more recently than "b", so only "b" is reloaded
+        cache.get("a", loader);
+        assertEquals(3, loader.loads);
+        cache.get("b", loader);
+        assertEquals(4, loader.loads);
+    }
+
+    @Test
+    public void testInvalidateDropsNestedEntries() throws Exception {
+        MetadataCache cache = new MetadataCache();
+        CountingLoader loader = new CountingLoader();
+        cache.get(MetadataCache.key("ws", "model"), loader);
+        cache.get(MetadataCache.key("ws", "model", "import", "imp1"), loader);
+        cache.get(MetadataCache.key("ws", "model2"), loader);
+        cache.invalidate(MetadataCache.key("ws", "model"));
+        assertEquals(1, cache.size());
+        cache.get(MetadataCache.key("ws", "model2"), loader);
+        assertEquals(3, loader.loads);
+    }
+
+    @Test(expected = AnaplanAPIException.class)
+    public void testLoaderFailureIsPropagated() throws Exception {
+        new MetadataCache().get("ws", new MetadataCache.Loader<Object>() {
+            @Override
+            public Object load() throws AnaplanAPIException {
+                throw new AnaplanAPIException("Test exception");
+            }
+        });
+    }
+}
@@ -0,0 +1,120 @@
+package com.anaplan.connector.unit;
+
+
+import com.anaplan.connector.utils.RecordCsvInputStream;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class RecordCsvInputStreamTestCases {
+
+    private static String readFully(InputStream stream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7];
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), "UTF-8");
+    }
+
+    private static Map<String, Object> record(Object... keysAndValues) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            record.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return record;
+    }
+
+    @Test
+    public void testColumnsFromFirstRecord() throws Exception {
+        List<Map<String, Object>> records = new ArrayList<>();
+        records.add(record("Name", "Repair", "Parent", "Services",
+                "Leasing", false));
+        records.add(record("Name", "Text, With, Comma", "Parent", null,
+                "Leasing", true));
+        RecordCsvInputStream csv = new RecordCsvInputStream(
+                records.iterator(), null, ",", "\"", 1);
+
+        assertEquals("Name,Parent,Leasing\nRepair,Services,false\n"
+                + "\"Text, With, Comma\",,true", readFully(csv));
+        assertEquals(2, csv.getRecordCount());
+    }
+
+    @Test
+    public void testColumnMapping() throws Exception {
+        List<Map<String, Object>> records = new ArrayList<>();
+        records.add(record("code", "B01", "amount", 10.0, "unused", "x"));
+        records.add(record("code", "\u00e9l\u00e9ment", "amount", 1.0E7));
+        records.add(record("amount", 0.25));
+        Map<String, String> columnMapping = new LinkedHashMap<>();
+        columnMapping.put("Amount", "amount");
+        columnMapping.put("Code", "code");
+        RecordCsvInputStream csv = new RecordCsvInputStream(
+                records.iterator(), columnMapping, "\t", "\"", 2);
+
+        assertEquals("Amount\tCode\n10\tB01\n10000000\t\u00e9l\u00e9ment\n"
+                + "0.25\t", readFully(csv));
+    }
+
+    @Test
+    public void testBatchesAreReadLazily() throws Exception {
+        final int[] consumed = {0};
+        final Iterator<Map<String, Object>> records =
+                new Iterator<Map<String, Object>>() {
+            @Override
+            public boolean hasNext() {
+                return consumed[0] < 10;
+            }
+
+            @Override
+            public Map<String, Object> next() {
+                consumed[0]++;
+                return record("Id", consumed[0]);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        RecordCsvInputStream csv = new RecordCsvInputStream(records, null,
+                ",", "\"", 4);
+
+        assertEquals('I', csv.read());
+        assertEquals(4, consumed[0]);
+        readFully(csv);
+        assertEquals(10, consumed[0]);
+        assertEquals(10, csv.getRecordCount());
+    }
+
+    @Test
+    public void testNoRecords() throws Exception {
+        Iterator<Map<String, Object>> none = Collections.emptyIterator();
+        assertEquals("", readFully(new RecordCsvInputStream(none, null, ",",
+                "\"", 10)));
+
+        Map<String, String> columnMapping = new LinkedHashMap<>();
+        columnMapping.put("Name", "name");
+        none = Collections.emptyIterator();
+        assertEquals("Name", readFully(new RecordCsvInputStream(none,
+                columnMapping, ",", "\"", 10)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBatchSize() throws Exception {
+        Iterator<Map<String, Object>> none = Collections.emptyIterator();
+        new RecordCsvInputStream(none, null, ",", "\"", 0);
+    }
+}
@@ -0,0 +1,210 @@
+package com.anaplan.connector.unit;
+
+import com.anaplan.client.Service;
+import com.anaplan.connector.connection.ServicePool;
+import com.anaplan.connector.exceptions.AnaplanConnectionException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.Mockito;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+
+public class ServicePoolTestCases {
+
+    @Rule
+    public ExpectedException expectedEx = ExpectedException.none();
+
+    /**
+     * Factory handing out fresh mock services, counting how many were
+     * authenticated.
+     */
+    private static class CountingFactory implements ServicePool.ServiceFactory {
+
+        final AtomicInteger created = new AtomicInteger();
+        final Set<Service> rejected = new HashSet<>();
+        final Set<Service> destroyed = new HashSet<>();
+
+        @Override
+        public Service create() throws AnaplanConnectionException {
+            created.incrementAndGet();
+            return Mockito.mock(Service.class);
+        }
+
+        @Override
+        public boolean validate(Service service) {
+            return !rejected.contains(service);
+        }
+
+        @Override
+        public void destroy(Service service) {
+            destroyed.add(service);
+            service.close();
+        }
+    }
+
+    @Test
+    public void testReleasedServiceIsReused() throws Exception {
+        CountingFactory factory = new CountingFactory();
+        ServicePool pool = new ServicePool(factory, 1, 2, 60000, 1000, 60000);
+        Service first = pool.borrow();
+        assertEquals(1, pool.getLeasedCount());
+        assertTrue(pool.release(first));
+        assertEquals(1, pool.getIdleCount());
+        assertSame(first, pool.borrow());
+        assertEquals(1, factory.created.get());
+    }
+
+    @Test
+    public void testConcurrentBorrowsGetDistinctServices() throws Exception {
+        CountingFactory factory = new CountingFactory();
+        ServicePool pool = new ServicePool(factory, 1, 2, 60000, 1000, 60000);
+        Service first = pool.borrow();
+        Service second = pool.borrow();
+        assertNotSame(first, second);
+        assertEquals(2, pool.getLeasedCount());
+        assertEquals(2, factory.created.get());
+    }
+
+    @Test
+    public void testBorrowTimesOutWhenExhausted() throws Exception {
+        ServicePool pool = new ServicePool(new CountingFactory(), 0, 1, 60000,
+                50, 60000);
+        pool.borrow();
+        expectedEx.expect(AnaplanConnectionException.class);
+        expectedEx.expectMessage("Timed out after 50ms");
+        pool.borrow();
+    }
+
+    @Test
+    public void testReleaseUnblocksWaitingBorrower() throws Exception {
+        final ServicePool pool = new ServicePool(new CountingFactory(), 0, 1,
+                60000, 5000, 60000);
+        final Service first = pool.borrow();
+        Thread releaser = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                pool.release(first);
+            }
+        });
+        releaser.start();
+        assertSame(first, pool.borrow());
+        releaser.join();
+    }
+
+    @Test
+    public void testInvalidatedServiceIsClosedAndReplaced() throws Exception {
+        CountingFactory factory = new CountingFactory();
+        ServicePool pool = new ServicePool(factory, 1, 1, 60000, 1000, 60000);
+        Service broken = pool.borrow();
+        assertTrue(pool.invalidate(broken));
+        Mockito.verify(broken).close();
+        assertEquals(0, pool.getIdleCount());
+        assertNotSame(broken, pool.borrow());
+        assertEquals(2, factory.created.get());
+    }
+
+    @Test
+    public void testIdleServiceFailingValidationIsReplaced() throws Exception {
+        CountingFactory factory = new CountingFactory();
+        ServicePool pool = new ServicePool(factory, 1, 1, 60000, 1000, 60000,
+                0);
+        Service dropped = pool.borrow();
+        pool.release(dropped);
+        factory.rejected.add(dropped);
+        Thread.sleep(5);
+        assertNotSame(dropped, pool.borrow());
+        Mockito.verify(dropped).close();
+        assertEquals(2, factory.created.get());
+    }
+
+    @Test
+    public void testRecentlyUsedServiceIsNotValidated() throws Exception {
+        CountingFactory factory = new CountingFactory();
+        ServicePool pool = new ServicePool(factory, 1, 1, 60000, 1000, 60000);
+        Service service = pool.borrow();
+        pool.release(service);
+        factory.rejected.add(service);
+        assertSame(service, pool.borrow());
+    }
+
+    @Test
+    public void testExpiredServiceIsReauthenticated() throws Exception {
+        CountingFactory factory = new CountingFactory();
+        ServicePool pool = new ServicePool(factory, 1, 1, 60000, 1000, 0);
+        Service expired = pool.borrow();
+        pool.release(expired);
+        Mockito.verify(expired).close();
+        assertNotSame(expired, pool.borrow());
+        assertEquals(2, factory.created.get());
+    }
+
+    @Test
+    public void testClosedServicesAreDestroyedByFactory() throws Exception {
+        CountingFactory factory = new CountingFactory();
+        ServicePool pool = new ServicePool(factory, 1, 2, 60000, 1000, 60000);
+        Service idle = pool.borrow();
+        Service broken = pool.borrow();
+        pool.release(idle);
+        pool.invalidate(broken);
+        pool.close();
+        assertTrue(factory.destroyed.contains(idle));
+        assertTrue(factory.destroyed.contains(broken));
+    }
+
+    @Test
+    public void testSurplusIdleServicesAreEvicted() throws Exception {
+        CountingFactory factory = new CountingFactory();
+        ServicePool pool = new ServicePool(factory, 1, 3, 0, 1000, 60000);
+        Service first = pool.borrow();
+        Service second = pool.borrow();
+        Service third = pool.borrow();
+        pool.release(first);
+        pool.release(second);
+        Thread.sleep(5);
+        pool.release(third);
+        // only the most recently used service is kept as the minimum idle
+        assertEquals(1, pool.getIdleCount());
+        assertSame(third, pool.borrow());
+    }
+
+    @Test
+    public void testForeignServiceIsNotReleased() throws Exception {
+        ServicePool pool = new ServicePool(new CountingFactory(), 1, 1, 60000,
+                1000, 60000);
+        assertFalse(pool.release(Mockito.mock(Service.class)));
+        assertFalse(pool.invalidate(Mockito.mock(Service.class)));
+    }
+
+    @Test
+    public void testClosedPoolRefusesBorrows() throws Exception {
+        ServicePool pool = new ServicePool(new CountingFactory(), 1, 2, 60000,
+                1000, 60000);
+        Service idle = pool.borrow();
+        Service leased = pool.borrow();
+        pool.release(idle);
+        pool.close();
+        Mockito.verify(idle).close();
+        assertTrue(pool.release(leased));
+        Mockito.verify(leased).close();
+        expectedEx.expect(AnaplanConnectionException.class);
+        expectedEx.expectMessage("Connection pool is closed");
+        pool.borrow();
+    }
+
+    @Test
+    public void testInvalidPoolSize() {
+        expectedEx.expect(IllegalArgumentException.class);
+        new ServicePool(new CountingFactory(), 2, 1, 60000, 1000, 60000);
+    }
+}
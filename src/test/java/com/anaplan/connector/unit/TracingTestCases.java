@@ -0,0 +1,129 @@
+package com.anaplan.connector.unit;
+
+
+import com.anaplan.connector.utils.ConnectorMetrics;
+import com.anaplan.connector.utils.InMemoryTracer;
+import com.anaplan.connector.utils.OperationStatus;
+import com.anaplan.connector.utils.Span;
+import com.anaplan.connector.utils.Tracing;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+public class TracingTestCases {
+
+    @After
+    public void tearDown() {
+        Tracing.setTracer(null);
+    }
+
+    @Test
+    public void testNoopTracerByDefault() {
+        assertSame(Tracing.NOOP_TRACER, Tracing.getTracer());
+        Span span = Tracing.startSpan(Tracing.UPLOAD_SPAN);
+        span.setAttribute(Tracing.BYTES, 1024).end();
+
+        InMemoryTracer tracer = new InMemoryTracer();
+        Tracing.setTracer(tracer);
+        assertSame(tracer, Tracing.getTracer());
+        Tracing.setTracer(null);
+        assertSame(Tracing.NOOP_TRACER, Tracing.getTracer());
+    }
+
+    @Test
+    public void testSpansAreNestedByThread() throws Exception {
+        final InMemoryTracer tracer = new InMemoryTracer();
+        Span parent = tracer.startSpan("parent");
+        Span child = tracer.startSpan("child")
+                .setAttribute(Tracing.ACTION_ID, "Load")
+                .setAttribute(Tracing.BYTES, 2048);
+        child.end();
+        // ending twice has no effect
+        child.end();
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                tracer.startSpan("other").end();
+            }
+        });
+        thread.start();
+        thread.join();
+        Span sibling = tracer.startSpan("sibling");
+        sibling.end();
+        parent.end();
+
+        List<InMemoryTracer.SpanData> spans = tracer.getFinishedSpans();
+        assertEquals(4, spans.size());
+        InMemoryTracer.SpanData childData = spans.get(0);
+        InMemoryTracer.SpanData otherData = spans.get(1);
+        InMemoryTracer.SpanData siblingData = spans.get(2);
+        InMemoryTracer.SpanData parentData = spans.get(3);
+        assertEquals("child", childData.getName());
+        assertEquals("Load", childData.getAttribute(Tracing.ACTION_ID));
+        assertEquals(2048L, childData.getAttribute(Tracing.BYTES));
+        assertEquals(parentData.getSpanId(), childData.getParentSpanId());
+        assertEquals(parentData.getSpanId(), siblingData.getParentSpanId());
+        // spans of other threads are not nested in the spans of this one
+        assertEquals("other", otherData.getName());
+        assertEquals(0, otherData.getParentSpanId());
+        assertEquals(0, parentData.getParentSpanId());
+        assertTrue(parentData.getDurationNanos()
+                >= childData.getDurationNanos());
+        assertEquals(1, tracer.getFinishedSpans("sibling").size());
+
+        tracer.reset();
+        assertTrue(tracer.getFinishedSpans().isEmpty());
+    }
+
+    @Test
+    public void testRecordException() {
+        InMemoryTracer tracer = new InMemoryTracer();
+        IllegalStateException failure = new IllegalStateException("timed out");
+        tracer.startSpan(Tracing.TASK_SPAN).recordException(failure).end();
+        tracer.startSpan(Tracing.DOWNLOAD_SPAN).end();
+
+        InMemoryTracer.SpanData task = tracer.getFinishedSpans(
+                Tracing.TASK_SPAN).get(0);
+        assertEquals(Span.StatusCode.ERROR, task.getStatusCode());
+        assertEquals("timed out", task.getStatusDescription());
+        assertSame(failure, task.getException());
+        InMemoryTracer.SpanData download = tracer.getFinishedSpans(
+                Tracing.DOWNLOAD_SPAN).get(0);
+        assertEquals(Span.StatusCode.UNSET, download.getStatusCode());
+        assertNull(download.getException());
+    }
+
+    @Test
+    public void testOperationSpanIsParentOfPhases() {
+        InMemoryTracer tracer = new InMemoryTracer();
+        Tracing.setTracer(tracer);
+        ConnectorMetrics metrics = new ConnectorMetrics();
+
+        ConnectorMetrics.Operation imported = metrics.startOperation("import");
+        Tracing.startSpan(Tracing.UPLOAD_SPAN).end();
+        imported.complete(OperationStatus.APPLICATION_ERROR);
+        metrics.startOperation("export").close();
+
+        InMemoryTracer.SpanData upload = tracer.getFinishedSpans(
+                Tracing.UPLOAD_SPAN).get(0);
+        InMemoryTracer.SpanData importSpan = tracer.getFinishedSpans(
+                "anaplan.import").get(0);
+        assertEquals(importSpan.getSpanId(), upload.getParentSpanId());
+        assertEquals("APPLICATION_ERROR",
+                importSpan.getAttribute(Tracing.STATUS));
+        assertEquals(Span.StatusCode.OK, importSpan.getStatusCode());
+        InMemoryTracer.SpanData exportSpan = tracer.getFinishedSpans(
+                "anaplan.export").get(0);
+        assertEquals("FAILURE", exportSpan.getAttribute(Tracing.STATUS));
+        assertEquals(Span.StatusCode.ERROR, exportSpan.getStatusCode());
+        assertEquals(0, exportSpan.getParentSpanId());
+    }
+}